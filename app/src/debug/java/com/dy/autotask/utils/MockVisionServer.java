@@ -0,0 +1,375 @@
+package com.dy.autotask.utils;
+
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的视觉接口模拟服务器（OpenAI 兼容的 chat/completions）
+ *
+ * 只监听 127.0.0.1 的随机端口，每个连接一个线程，响应后关闭连接。
+ * 延迟、抖动、错误率、错误码、Retry-After 和返回内容都可以随时调整，
+ * 用于在没有真实服务的情况下测试重试、熔断、流式提前结束，以及测量流水线本身的开销。
+ * 请求体中带 "stream":true 时以 SSE 分块返回。
+ *
+ * 使用方式：
+ * MockVisionServer server = new MockVisionServer().setLatency(300, 50).setErrorRate(0.2, 503);
+ * server.start();
+ * GLMImageAnalysisTool.setBackend(new OpenAICompatibleBackend("mock", server.getUrl(), null, "mock-vision"));
+ * ...
+ * server.stop();
+ * GLMImageAnalysisTool.setBackend(null);
+ */
+public class MockVisionServer {
+    private static final String TAG = "MockVisionServer";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String PATH = "/v1/chat/completions";
+
+    private ServerSocket serverSocket;
+    private volatile boolean running = false;
+
+    // 可调参数
+    private volatile long latencyMs = 0;
+    private volatile long jitterMs = 0;
+    private volatile double errorRate = 0;
+    private volatile int errorStatus = 503;
+    private volatile int retryAfterSeconds = -1;
+    private volatile String responseText = "模拟分析结果：画面中有一个按钮";
+    private volatile int streamChunkChars = 4;
+    private volatile long streamChunkDelayMs = 0;
+
+    private final Random random = new Random();
+
+    // 统计
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * 设置响应延迟（收到完整请求后、开始响应前等待）
+     *
+     * @param latencyMs 基础延迟
+     * @param jitterMs 随机增加 [0, jitterMs] 的延迟
+     * @return 当前实例
+     */
+    public MockVisionServer setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = Math.max(0, latencyMs);
+        this.jitterMs = Math.max(0, jitterMs);
+        return this;
+    }
+
+    /**
+     * 设置错误率
+     *
+     * @param errorRate 返回错误的概率（0-1）
+     * @param status 错误时的 HTTP 状态码（如 429、503）
+     * @return 当前实例
+     */
+    public MockVisionServer setErrorRate(double errorRate, int status) {
+        this.errorRate = errorRate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * 错误响应中带的 Retry-After（秒），小于0时不带
+     *
+     * @return 当前实例
+     */
+    public MockVisionServer setRetryAfter(int seconds) {
+        this.retryAfterSeconds = seconds;
+        return this;
+    }
+
+    /**
+     * 设置返回的分析结果
+     *
+     * @return 当前实例
+     */
+    public MockVisionServer setResponseText(String text) {
+        this.responseText = text != null ? text : "";
+        return this;
+    }
+
+    /**
+     * 设置流式响应的分块
+     *
+     * @param chunkChars 每块的字符数
+     * @param chunkDelayMs 块之间的间隔
+     * @return 当前实例
+     */
+    public MockVisionServer setStreamChunks(int chunkChars, long chunkDelayMs) {
+        this.streamChunkChars = Math.max(1, chunkChars);
+        this.streamChunkDelayMs = Math.max(0, chunkDelayMs);
+        return this;
+    }
+
+    /**
+     * 启动服务器（随机端口）
+     *
+     * @throws IOException 端口绑定失败
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        running = true;
+        Thread acceptThread = new Thread(this::acceptLoop, "MockVisionServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        Log.d(TAG, "模拟服务器已启动: " + getUrl());
+    }
+
+    /**
+     * 停止服务器，正在处理的连接会在写入时失败
+     */
+    public synchronized void stop() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "关闭服务器失败: " + e.getMessage());
+            }
+            serverSocket = null;
+        }
+        Log.d(TAG, "模拟服务器已停止，" + getStatsSummary());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    /**
+     * chat/completions 完整地址
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + getPort() + PATH;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public String getStatsSummary() {
+        return "请求 " + requestCount.get() + " 次，返回错误 " + errorCount.get() + " 次，收到 "
+                + ImageCompressUtil.formatBytes(bytesReceived.get());
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                ServerSocket server = serverSocket;
+                if (server == null) {
+                    return;
+                }
+                Socket socket = server.accept();
+                Thread worker = new Thread(() -> handle(socket), "MockVisionServer-" + socket.getPort());
+                worker.setDaemon(true);
+                worker.start();
+            } catch (SocketException e) {
+                // 服务器已关闭
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "接受连接失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+
+            String requestLine = readLine(input);
+            if (requestLine == null) {
+                return;
+            }
+            int contentLength = 0;
+            String line;
+            while ((line = readLine(input)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+                }
+            }
+            byte[] body = readBody(input, contentLength);
+            requestCount.incrementAndGet();
+            bytesReceived.addAndGet(body.length);
+
+            String bodyText = new String(body, UTF_8);
+            boolean stream = bodyText.contains("\"stream\":true");
+
+            long delay = latencyMs;
+            double roll;
+            synchronized (random) {
+                if (jitterMs > 0) {
+                    delay += (long) (random.nextDouble() * jitterMs);
+                }
+                roll = random.nextDouble();
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            if (!requestLine.startsWith("POST ") || !requestLine.contains(PATH)) {
+                writeResponse(output, 404, "Not Found", "application/json", "{\"error\":{\"message\":\"not found\"}}", -1);
+            } else if (roll < errorRate) {
+                errorCount.incrementAndGet();
+                writeResponse(output, errorStatus, "Mock Error", "application/json",
+                        "{\"error\":{\"message\":\"模拟错误\"}}", retryAfterSeconds);
+            } else if (stream) {
+                writeStream(output);
+            } else {
+                writeResponse(output, 200, "OK", "application/json", completionJson(), -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 客户端提前断开（例如流式分析提前结束）属于正常情况
+            Log.d(TAG, "连接结束: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    private void writeResponse(OutputStream output, int status, String reason, String contentType,
+                               String body, int retryAfter) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        head.append("Content-Type: ").append(contentType).append("; charset=utf-8\r\n");
+        head.append("Content-Length: ").append(bytes.length).append("\r\n");
+        if (retryAfter >= 0) {
+            head.append("Retry-After: ").append(retryAfter).append("\r\n");
+        }
+        head.append("Connection: close\r\n\r\n");
+        output.write(head.toString().getBytes(UTF_8));
+        output.write(bytes);
+        output.flush();
+    }
+
+    /**
+     * SSE 响应：没有 Content-Length，写完后关闭连接
+     */
+    private void writeStream(OutputStream output) throws IOException, InterruptedException {
+        output.write(("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/event-stream; charset=utf-8\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: close\r\n\r\n").getBytes(UTF_8));
+        output.flush();
+        String text = responseText;
+        int chunkChars = streamChunkChars;
+        for (int i = 0; i < text.length(); i += chunkChars) {
+            if (i > 0 && streamChunkDelayMs > 0) {
+                Thread.sleep(streamChunkDelayMs);
+            }
+            String piece = text.substring(i, Math.min(text.length(), i + chunkChars));
+            output.write(("data: " + deltaJson(piece) + "\n\n").getBytes(UTF_8));
+            output.flush();
+        }
+        output.write("data: [DONE]\n\n".getBytes(UTF_8));
+        output.flush();
+    }
+
+    private String completionJson() {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", responseText);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+        return envelope(choice, "chat.completion").toString();
+    }
+
+    private String deltaJson(String piece) {
+        JsonObject delta = new JsonObject();
+        delta.addProperty("content", piece);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+        return envelope(choice, "chat.completion.chunk").toString();
+    }
+
+    private JsonObject envelope(JsonObject choice, String object) {
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject root = new JsonObject();
+        root.addProperty("id", String.format(Locale.US, "mock-%d", requestCount.get()));
+        root.addProperty("object", object);
+        root.addProperty("created", System.currentTimeMillis() / 1000);
+        root.addProperty("model", "mock-vision");
+        root.add("choices", choices);
+        return root;
+    }
+
+    /**
+     * 读取一行（ASCII，以 \r\n 或 \n 结尾），连接关闭时返回 null
+     */
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = input.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    private static byte[] readBody(InputStream input, int contentLength) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(0, contentLength));
+        byte[] buffer = new byte[16 * 1024];
+        int remaining = contentLength;
+        while (remaining > 0) {
+            int read = input.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new IOException("请求体不完整");
+            }
+            body.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,217 @@
+package com.dy.autotask.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Locale;
+
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * 图片分析流水线的基准测试（在设备上运行，需要在后台线程调用）
+ *
+ * 启动 {@link MockVisionServer}，用指向它的后端单独组装一条分析流水线，分别测量：
+ * - 编码：内容分类、缩放和压缩（{@link AdaptiveImageEncoder}）
+ * - 序列化：JSON 外壳和 Base64 写入（写到内存缓冲区，不经过网络）
+ * - 网络：发送已序列化的请求字节到读完响应（包含模拟服务器的固定延迟）
+ * - 解析：响应 JSON 解析（正常调用时解析与读取响应同时进行，这里单独测量）
+ * - 端到端：一次完整的同步分析（与 {@link GLMImageAnalysisTool#analyzeImage(Bitmap, String)} 相同的流程）
+ * 端到端减去网络时间即为流水线自身的开销。测量用的流水线不带分析缓存和限流，有自己的熔断器，
+ * 不修改全局的后端、缓存和限流配置，测量期间其他分析调用不受影响。
+ * 只在调试构建中提供。
+ *
+ * 使用方式：
+ * VisionBenchmark.Report report = VisionBenchmark.run(bitmap, 20, 200);
+ * Log.d(TAG, report.toString());
+ */
+public class VisionBenchmark {
+    private static final String TAG = "VisionBenchmark";
+
+    private static final String PROMPT = "请描述画面中的主要元素";
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    // 测量用流水线的熔断参数（与正式调用相同）
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MS = 30000;
+
+    private VisionBenchmark() {
+    }
+
+    /**
+     * 一个阶段的耗时样本
+     */
+    public static class Stage {
+        private final String name;
+        private final long[] samplesNanos;
+        private int count = 0;
+
+        Stage(String name, int rounds) {
+            this.name = name;
+            this.samplesNanos = new long[rounds];
+        }
+
+        void add(long nanos) {
+            samplesNanos[count++] = nanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getMedianMs() {
+            return percentileMs(50);
+        }
+
+        public double getP95Ms() {
+            return percentileMs(95);
+        }
+
+        public double getMeanMs() {
+            if (count == 0) {
+                return 0;
+            }
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += samplesNanos[i];
+            }
+            return sum / 1e6 / count;
+        }
+
+        private double percentileMs(int percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samplesNanos, count);
+            Arrays.sort(sorted);
+            int index = Math.min(count - 1, (int) Math.ceil(percentile / 100.0 * count) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: 中位 %.1f ms，P95 %.1f ms，平均 %.1f ms",
+                    name, getMedianMs(), getP95Ms(), getMeanMs());
+        }
+    }
+
+    /**
+     * 测量结果
+     */
+    public static class Report {
+        public final Stage encode;
+        public final Stage serialize;
+        public final Stage network;
+        public final Stage parse;
+        public final Stage endToEnd;
+        public final long serverLatencyMs;
+        private int uploadBytes;
+
+        Report(int rounds, long serverLatencyMs) {
+            this.encode = new Stage("编码", rounds);
+            this.serialize = new Stage("序列化", rounds);
+            this.network = new Stage("网络", rounds);
+            this.parse = new Stage("解析", rounds);
+            this.endToEnd = new Stage("端到端", rounds);
+            this.serverLatencyMs = serverLatencyMs;
+        }
+
+        /**
+         * 上传的图片字节数
+         */
+        public int getUploadBytes() {
+            return uploadBytes;
+        }
+
+        /**
+         * 流水线自身开销：端到端中位数减去网络中位数
+         */
+        public double getPipelineOverheadMs() {
+            return endToEnd.getMedianMs() - network.getMedianMs();
+        }
+
+        @Override
+        public String toString() {
+            return "分析流水线基准（模拟服务器延迟 " + serverLatencyMs + " ms，上传 "
+                    + ImageCompressUtil.formatBytes(uploadBytes) + "）\n"
+                    + encode + "\n" + serialize + "\n" + network + "\n" + parse + "\n" + endToEnd + "\n"
+                    + String.format(Locale.US, "流水线开销（端到端 - 网络）: %.1f ms", getPipelineOverheadMs());
+        }
+    }
+
+    /**
+     * 运行基准测试
+     *
+     * @param bitmap 测试图片（一般为一张真实截图）
+     * @param rounds 测量轮数（至少为1，另有预热轮）
+     * @param serverLatencyMs 模拟服务器的固定延迟
+     * @return 测量结果
+     * @throws IOException 模拟服务器启动或请求失败
+     */
+    public static Report run(Bitmap bitmap, int rounds, long serverLatencyMs) throws IOException {
+        rounds = Math.max(1, rounds);
+        MockVisionServer server = new MockVisionServer().setLatency(serverLatencyMs, 0);
+        server.start();
+
+        VisionBackend backend = new OpenAICompatibleBackend("mock", server.getUrl(), null, "mock-vision");
+        GLMImageAnalysisTool.Pipeline pipeline = new GLMImageAnalysisTool.Pipeline(backend, null, null,
+                new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS));
+        try {
+            Report report = new Report(rounds, serverLatencyMs);
+            for (int round = -WARMUP_ROUNDS; round < rounds; round++) {
+                long start = System.nanoTime();
+                AdaptiveImageEncoder.Encoded encoded = AdaptiveImageEncoder.getInstance().encode(bitmap);
+                long encodeNanos = System.nanoTime() - start;
+                if (encoded == null) {
+                    throw new IOException("图片编码失败");
+                }
+                report.uploadBytes = encoded.getLength();
+
+                start = System.nanoTime();
+                RequestBody body = backend.createBody(PROMPT, encoded, false);
+                Buffer sink = new Buffer();
+                body.writeTo(sink);
+                long serializeNanos = System.nanoTime() - start;
+                // 网络阶段发送已序列化好的字节，不再重新生成 JSON 和 Base64，序列化时间不计入网络时间
+                RequestBody serialized = RequestBody.create(sink.readByteString(), body.contentType());
+
+                start = System.nanoTime();
+                String json;
+                try (Response response = GLMImageAnalysisTool.getHttpClient()
+                        .newCall(backend.buildRequest(serialized)).execute()) {
+                    if (!response.isSuccessful() || response.body() == null) {
+                        throw new IOException("模拟服务器返回错误: " + response.code());
+                    }
+                    json = response.body().string();
+                }
+                long networkNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                backend.parseResponse(new StringReader(json));
+                long parseNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                GLMImageAnalysisTool.analyzeImage(pipeline, bitmap, PROMPT);
+                long endToEndNanos = System.nanoTime() - start;
+
+                // 预热轮不计入结果
+                if (round >= 0) {
+                    report.encode.add(encodeNanos);
+                    report.serialize.add(serializeNanos);
+                    report.network.add(networkNanos);
+                    report.parse.add(parseNanos);
+                    report.endToEnd.add(endToEndNanos);
+                }
+            }
+            Log.d(TAG, report.toString());
+            return report;
+        } finally {
+            server.stop();
+        }
+    }
+}
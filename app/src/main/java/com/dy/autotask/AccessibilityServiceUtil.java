@@ -799,39 +799,15 @@ public class AccessibilityServiceUtil extends AccessibilityService {
 
     /**
      * 截图整个屏幕（新增）
-     * 优先使用MediaProjection方式，否则使用无障碍方式
+     * 截图后端按 MediaProjection → 无障碍takeScreenshot（API 30+） → root 的顺序自动选择
      */
     private void takeScreenshot() {
         Log.d(TAG, "用户点击了截图按钮");
 
         try {
-            String filePath = null;
             com.dy.autotask.utils.ScreenshotUtil screenshotUtil =
                     new com.dy.autotask.utils.ScreenshotUtil(getApplicationContext());
-
-            // 检查是否已获取MediaProjection权限
-            if (com.dy.autotask.utils.ScreenshotUtil.getMediaProjection() != null) {
-                Log.d(TAG, "检测到MediaProjection可用，使用高效截图方式");
-                // 优先使用MediaProjection方式（高效）
-                filePath = screenshotUtil.captureWithMediaProjection(null);
-                if (filePath != null) {
-                    Log.i(TAG, "MediaProjection截图成功: " + filePath);
-                } else {
-                    // MediaProjection失败，fallback到无障碍方式
-                    Log.w(TAG, "MediaProjection截图失败，降级为无障碍方式");
-                    filePath = screenshotUtil.captureScreenWithAccessibility(null);
-                    if (filePath != null) {
-                        Log.i(TAG, "无障碍方式截图成功: " + filePath);
-                    }
-                }
-            } else {
-                Log.d(TAG, "MediaProjection不可用，使用无障碍服务截图方式");
-                // 降级为无障碍方式
-                filePath = screenshotUtil.captureScreenWithAccessibility(null);
-                if (filePath != null) {
-                    Log.i(TAG, "无障碍服务截图成功: " + filePath);
-                }
-            }
+            String filePath = screenshotUtil.captureScreenWithAccessibility(null);
 
             if (filePath != null) {
                 Log.i(TAG, "截图成功: " + filePath);
@@ -1756,6 +1732,9 @@ public class AccessibilityServiceUtil extends AccessibilityService {
             }
         }
         
+        // 服务解绑后进程可能随时被回收，先把缓冲中的任务日志写入文件
+        AutomationTaskManager.getInstance().flushLog();
+        
         // 清空实例引用
         instance = null;
         
@@ -2061,27 +2040,41 @@ public class AccessibilityServiceUtil extends AccessibilityService {
      * 使用Gesture方式点击节点
      */
     private boolean performGestureClick(AccessibilityNodeInfo node) {
+        Rect bounds = new Rect();
+        node.getBoundsInScreen(bounds);
+        int centerX = bounds.centerX();
+        int centerY = bounds.centerY();
+            
+        if (centerX <= 0 || centerY <= 0) {
+            return false;
+        }
+        return tapAt(centerX, centerY);
+    }
+        
+    /**
+     * 使用Gesture方式点击屏幕坐标（Android 7.0及以上）
+     * 用于没有无障碍节点的界面（图片匹配、颜色查找等得到的坐标）
+     *
+     * @param x 屏幕X坐标
+     * @param y 屏幕Y坐标
+     * @return 手势是否已派发
+     */
+    public boolean tapAt(int x, int y) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            Log.e(TAG, "当前系统版本不支持Gesture点击坐标");
+            return false;
+        }
         try {
             // 使用反射调用Gesture API，避免编译时依赖
-            Rect bounds = new Rect();
-            node.getBoundsInScreen(bounds);
-            int centerX = bounds.centerX();
-            int centerY = bounds.centerY();
-                
-            if (centerX <= 0 || centerY <= 0) {
-                return false;
-            }
-                
-            // 获取GestureDescription类
-            Class<?> gestureDescriptionClass = Class.forName("android.view.accessibility.GestureDescription");
-            Class<?> strokeDescriptionClass = Class.forName("android.view.accessibility.GestureDescription$StrokeDescription");
+            Class<?> gestureDescriptionClass = Class.forName("android.accessibilityservice.GestureDescription");
+            Class<?> strokeDescriptionClass = Class.forName("android.accessibilityservice.GestureDescription$StrokeDescription");
             Class<?> pathClass = Class.forName("android.graphics.Path");
-            Class<?> builderClass = Class.forName("android.view.accessibility.GestureDescription$Builder");
+            Class<?> builderClass = Class.forName("android.accessibilityservice.GestureDescription$Builder");
                 
             // 创建Path对象
             Object path = pathClass.newInstance();
             Method moveToMethod = pathClass.getMethod("moveTo", float.class, float.class);
-            moveToMethod.invoke(path, (float) centerX, (float) centerY);
+            moveToMethod.invoke(path, (float) x, (float) y);
                 
             // 创建StrokeDescription对象
             Object strokeDescription = strokeDescriptionClass.getConstructor(pathClass, long.class, long.class)
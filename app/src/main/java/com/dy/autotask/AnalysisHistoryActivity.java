@@ -0,0 +1,243 @@
+package com.dy.autotask;
+
+import android.app.AlertDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.widget.AbsListView;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.dy.autotask.model.AnalysisHistory;
+import com.dy.autotask.ui.imageanalysis.AnalysisHistoryAdapter;
+import com.dy.autotask.utils.AnalysisHistoryStore;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 分析历史 Activity
+ * 按时间倒序分页显示分析记录，滑动到接近底部时加载下一页，支持全文搜索
+ */
+public class AnalysisHistoryActivity extends AppCompatActivity {
+
+    private static final String TAG = "AnalysisHistoryActivity";
+
+    // 每页条数
+    private static final int PAGE_SIZE = 30;
+
+    // 距离底部还剩多少条时加载下一页
+    private static final int PRELOAD_DISTANCE = 10;
+
+    // UI 组件
+    private EditText etSearch;
+    private ListView lvHistory;
+    private TextView tvTitle;
+    private TextView tvEmpty;
+
+    private AnalysisHistoryStore store;
+    private AnalysisHistoryAdapter adapter;
+
+    // 数据库读写线程（单线程，保证分页顺序）
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+
+    // 分页状态（只在主线程访问）
+    private String searchText = "";
+    private boolean loading = false;
+    private boolean hasMore = true;
+    // 每次重新搜索加1，丢弃旧搜索的分页结果
+    private int generation = 0;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_analysis_history);
+
+        Log.d(TAG, "Activity 已创建");
+
+        store = AnalysisHistoryStore.getInstance(this);
+        adapter = new AnalysisHistoryAdapter(this);
+
+        initViews();
+        setupEventListeners();
+
+        reload();
+    }
+
+    /**
+     * 初始化 UI 组件
+     */
+    private void initViews() {
+        etSearch = findViewById(R.id.et_search);
+        lvHistory = findViewById(R.id.lv_history);
+        tvTitle = findViewById(R.id.tv_title);
+        tvEmpty = findViewById(R.id.tv_empty);
+        lvHistory.setAdapter(adapter);
+    }
+
+    /**
+     * 设置事件监听
+     */
+    private void setupEventListeners() {
+        Button btnBack = findViewById(R.id.btn_back);
+        btnBack.setOnClickListener(v -> finish());
+
+        Button btnSearch = findViewById(R.id.btn_search);
+        btnSearch.setOnClickListener(v -> startSearch());
+
+        etSearch.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                startSearch();
+                return true;
+            }
+            return false;
+        });
+
+        Button btnClear = findViewById(R.id.btn_clear);
+        btnClear.setOnClickListener(v -> confirmClear());
+
+        // 滑动到接近底部时加载下一页
+        lvHistory.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount - PRELOAD_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        lvHistory.setOnItemClickListener((parent, view, position, id) -> showDetail(id));
+    }
+
+    private void startSearch() {
+        searchText = etSearch.getText().toString().trim();
+        Log.d(TAG, "搜索: " + searchText);
+        reload();
+    }
+
+    /**
+     * 从第一页重新加载
+     */
+    private void reload() {
+        if (dbExecutor.isShutdown()) {
+            return;
+        }
+        generation++;
+        loading = false;
+        hasMore = true;
+        adapter.clear();
+        loadNextPage();
+        updateTitle();
+    }
+
+    private void loadNextPage() {
+        if (loading || !hasMore || dbExecutor.isShutdown()) {
+            return;
+        }
+        loading = true;
+        final int requestGeneration = generation;
+        final String query = searchText;
+        final AnalysisHistory after = adapter.getLast();
+        dbExecutor.execute(() -> {
+            List<AnalysisHistory> page = query.isEmpty()
+                    ? store.loadPage(after, PAGE_SIZE)
+                    : store.search(query, after, PAGE_SIZE);
+            runOnUiThread(() -> {
+                if (requestGeneration != generation || isFinishing()) {
+                    return;
+                }
+                loading = false;
+                hasMore = page.size() >= PAGE_SIZE;
+                adapter.addPage(page);
+                Log.d(TAG, "已加载 " + page.size() + " 条，共显示 " + adapter.getCount() + " 条");
+                boolean empty = adapter.getCount() == 0;
+                tvEmpty.setText(searchText.isEmpty() ? "暂无分析历史" : "没有匹配的记录");
+                tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+                lvHistory.setVisibility(empty ? View.GONE : View.VISIBLE);
+            });
+        });
+    }
+
+    private void updateTitle() {
+        dbExecutor.execute(() -> {
+            long count = store.getCount();
+            runOnUiThread(() -> tvTitle.setText("分析历史（" + count + "）"));
+        });
+    }
+
+    /**
+     * 显示完整结果
+     */
+    private void showDetail(long id) {
+        dbExecutor.execute(() -> {
+            AnalysisHistory history = store.get(id);
+            runOnUiThread(() -> {
+                if (history == null || isFinishing()) {
+                    return;
+                }
+                new AlertDialog.Builder(this)
+                        .setTitle(history.getDateTimeText() + "  " + history.getPromptSummary())
+                        .setMessage(history.getResult())
+                        .setPositiveButton("关闭", null)
+                        .setNeutralButton("复制", (dialog, which) -> copyToClipboard(history.getResult()))
+                        .setNegativeButton("删除", (dialog, which) -> deleteHistory(id))
+                        .show();
+            });
+        });
+    }
+
+    private void copyToClipboard(String text) {
+        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+        if (clipboard != null) {
+            clipboard.setPrimaryClip(ClipData.newPlainText("分析结果", text));
+            Toast.makeText(this, "已复制到剪贴板", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void deleteHistory(long id) {
+        dbExecutor.execute(() -> {
+            boolean deleted = store.delete(id);
+            runOnUiThread(() -> {
+                if (deleted) {
+                    reload();
+                } else {
+                    Toast.makeText(this, "删除失败", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+
+    private void confirmClear() {
+        new AlertDialog.Builder(this)
+                .setTitle("清空历史")
+                .setMessage("确定删除全部分析历史和缩略图吗？")
+                .setPositiveButton("清空", (dialog, which) -> dbExecutor.execute(() -> {
+                    store.clear();
+                    runOnUiThread(this::reload);
+                }))
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        dbExecutor.shutdownNow();
+        adapter.release();
+        Log.d(TAG, "Activity 已销毁");
+    }
+}
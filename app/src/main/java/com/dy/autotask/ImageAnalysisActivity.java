@@ -23,6 +23,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.dy.autotask.ui.imageanalysis.ImageAnalysisViewModel;
+import com.dy.autotask.utils.GLMImageAnalysisTool;
 import com.dy.autotask.utils.ImageCompressUtil;
 
 /**
@@ -40,6 +41,7 @@ public class ImageAnalysisActivity extends AppCompatActivity {
     private Button btnSubmit;
     private Button btnBack;
     private Button btnCopyResult;
+    private Button btnHistory;
     private TextView tvResult;
     private TextView tvError;
     private View loadingContainer;
@@ -67,6 +69,9 @@ public class ImageAnalysisActivity extends AppCompatActivity {
         // 初始化 ViewModel
         viewModel = new ViewModelProvider(this).get(ImageAnalysisViewModel.class);
 
+        // 分析结果缓存保存到磁盘，重复分析同一画面时不再请求接口
+        GLMImageAnalysisTool.enableDiskCache(getApplicationContext());
+
         // 初始化图片选择器
         initImagePicker();
 
@@ -87,6 +92,7 @@ public class ImageAnalysisActivity extends AppCompatActivity {
         btnSubmit = findViewById(R.id.btn_submit);
         btnBack = findViewById(R.id.btn_back);
         btnCopyResult = findViewById(R.id.btn_copy_result);
+        btnHistory = findViewById(R.id.btn_history);
         tvResult = findViewById(R.id.tv_result);
         tvError = findViewById(R.id.tv_error);
         loadingContainer = findViewById(R.id.loading_container);
@@ -187,6 +193,12 @@ public class ImageAnalysisActivity extends AppCompatActivity {
             submitAnalysis();
         });
 
+        // 分析历史按钮
+        btnHistory.setOnClickListener(v -> {
+            Log.d(TAG, "用户点击了历史按钮");
+            startActivity(new Intent(this, AnalysisHistoryActivity.class));
+        });
+
         // 复制结果按钮
         btnCopyResult.setOnClickListener(v -> {
             Log.d(TAG, "用户点击了复制按钮");
@@ -0,0 +1,532 @@
+package com.dy.autotask.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.PixelFormat;
+import android.hardware.display.VirtualDisplay;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.projection.MediaProjection;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * MediaProjection长期截图会话
+ *
+ * 会话建立后VirtualDisplay和ImageReader一直保留，通过OnImageAvailableListener跟踪最新一帧，
+ * 截图请求直接从最新帧转换，无需每次创建VirtualDisplay并等待渲染。
+ * 空闲一段时间后自动暂停（断开VirtualDisplay的Surface，停止合成），下次请求时恢复。
+ * 连续帧通过 {@link #subscribe(float, FrameStream.FrameListener)} 订阅，有订阅者时会话不会暂停。
+ *
+ * 会话可以按比例降低渲染分辨率（例如1/2、1/3），由VirtualDisplay直接按小尺寸合成，
+ * 内存带宽、像素转换和编码开销按比例的平方下降；帧携带缩放比例，用于把帧坐标换算回屏幕坐标。
+ *
+ * 使用方式：
+ * CaptureSession.start(projection, width, height, densityDpi);
+ * Bitmap bitmap = CaptureSession.getInstance().captureBitmap(1000);
+ */
+public class CaptureSession {
+    private static final String TAG = "CaptureSession";
+
+    // ImageReader缓冲数量：持有1张最新帧 + acquireLatestImage需要的空闲缓冲
+    private static final int MAX_IMAGES = 3;
+
+    // 空闲多久后暂停VirtualDisplay（毫秒）
+    private static final long IDLE_PAUSE_MS = 3000;
+
+    private static volatile CaptureSession instance;
+
+    private final MediaProjection mediaProjection;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final int densityDpi;
+
+    // 实际渲染尺寸与缩放比例，由frameLock保护
+    private int width;
+    private int height;
+    private float scale;
+
+    private HandlerThread handlerThread;
+    private Handler handler;
+    private ImageReader imageReader;
+    private VirtualDisplay virtualDisplay;
+
+    // 最新帧及其状态，由frameLock保护
+    private final Object frameLock = new Object();
+    private Image latestImage;
+    private long latestFrameTimeMs = 0;
+    private boolean paused = false;
+    private boolean released = false;
+
+    // 最近一次截图请求时间，用于空闲暂停
+    private volatile long lastRequestTimeMs = 0;
+
+    // 帧复用池与连续帧流
+    private final FramePool framePool = new FramePool();
+    private final FrameStream frameStream = new FrameStream();
+
+    private final Runnable idleCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (frameStream.hasSubscribers()) {
+                lastRequestTimeMs = SystemClock.uptimeMillis();
+            }
+            long idleMs = SystemClock.uptimeMillis() - lastRequestTimeMs;
+            if (idleMs >= IDLE_PAUSE_MS) {
+                pause();
+            } else {
+                handler.postDelayed(this, IDLE_PAUSE_MS - idleMs);
+            }
+        }
+    };
+
+    private final MediaProjection.Callback projectionCallback = new MediaProjection.Callback() {
+        @Override
+        public void onStop() {
+            Log.w(TAG, "MediaProjection已停止，释放截图会话");
+            release();
+        }
+    };
+
+    private CaptureSession(MediaProjection mediaProjection, int screenWidth, int screenHeight, int densityDpi, float scale) {
+        this.mediaProjection = mediaProjection;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.densityDpi = densityDpi;
+        applyScale(scale);
+    }
+
+    /**
+     * 按比例计算渲染尺寸（取偶数，部分设备的编码器和合成器要求偶数尺寸）
+     */
+    private void applyScale(float scale) {
+        this.scale = Math.max(0.1f, Math.min(1f, scale));
+        this.width = Math.max(2, Math.round(screenWidth * this.scale) & ~1);
+        this.height = Math.max(2, Math.round(screenHeight * this.scale) & ~1);
+    }
+
+    /**
+     * 建立（或重建）截图会话
+     *
+     * @param projection MediaProjection实例
+     * @param width 屏幕宽度
+     * @param height 屏幕高度
+     * @param densityDpi 屏幕密度
+     * @return 新的截图会话，创建失败返回null
+     */
+    public static CaptureSession start(MediaProjection projection, int width, int height, int densityDpi) {
+        return start(projection, width, height, densityDpi, 1f);
+    }
+
+    /**
+     * 建立（或重建）降分辨率的截图会话
+     *
+     * @param projection MediaProjection实例
+     * @param width 屏幕宽度
+     * @param height 屏幕高度
+     * @param densityDpi 屏幕密度
+     * @param scale 渲染比例（0.1-1，例如0.5表示宽高各为屏幕的一半）
+     * @return 新的截图会话，创建失败返回null
+     */
+    public static synchronized CaptureSession start(MediaProjection projection, int width, int height, int densityDpi, float scale) {
+        releaseInstance();
+        if (projection == null || width <= 0 || height <= 0) {
+            Log.e(TAG, "参数无效，无法创建截图会话: " + width + "x" + height);
+            return null;
+        }
+
+        CaptureSession session = new CaptureSession(projection, width, height, densityDpi, scale);
+        if (!session.open()) {
+            session.release();
+            return null;
+        }
+        instance = session;
+        return session;
+    }
+
+    /**
+     * 获取当前截图会话
+     *
+     * @return 截图会话或null
+     */
+    public static CaptureSession getInstance() {
+        return instance;
+    }
+
+    /**
+     * 释放当前截图会话
+     */
+    public static synchronized void releaseInstance() {
+        if (instance != null) {
+            instance.release();
+            instance = null;
+        }
+    }
+
+    /**
+     * 创建ImageReader与VirtualDisplay
+     */
+    private boolean open() {
+        try {
+            handlerThread = new HandlerThread("CaptureSession");
+            handlerThread.start();
+            handler = new Handler(handlerThread.getLooper());
+
+            imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES);
+            imageReader.setOnImageAvailableListener(this::onImageAvailable, handler);
+
+            // Android 14起必须在createVirtualDisplay之前注册回调
+            mediaProjection.registerCallback(projectionCallback, handler);
+
+            virtualDisplay = mediaProjection.createVirtualDisplay(
+                    "ScreenCapture",
+                    width,
+                    height,
+                    scaledDensity(),
+                    0,  // 不使用FLAG_SECURE（FLAG_SECURE会阻止截图）
+                    imageReader.getSurface(),
+                    null,
+                    handler
+            );
+            if (virtualDisplay == null) {
+                Log.e(TAG, "VirtualDisplay创建失败");
+                return false;
+            }
+
+            lastRequestTimeMs = SystemClock.uptimeMillis();
+            handler.postDelayed(idleCheck, IDLE_PAUSE_MS);
+            Log.d(TAG, "截图会话已建立: " + width + "x" + height + ", dpi=" + scaledDensity() + ", scale=" + scale);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "创建截图会话失败: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 新帧到达：只保留最新一帧，旧帧立即归还给ImageReader
+     */
+    private void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "获取最新帧失败: " + e.getMessage());
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+
+        synchronized (frameLock) {
+            // 调整渲染比例后，旧ImageReader中残留的帧直接丢弃
+            if (released || paused || reader != imageReader) {
+                image.close();
+                return;
+            }
+            if (latestImage != null) {
+                latestImage.close();
+            }
+            latestImage = image;
+            latestFrameTimeMs = SystemClock.uptimeMillis();
+            frameLock.notifyAll();
+
+            // 有订阅者需要新帧时才转换，一帧只转换一次，所有订阅者共享
+            if (frameStream.wantsFrame()) {
+                ScreenFrame frame = imageToFrame(image);
+                if (frame != null) {
+                    frameStream.publish(frame);
+                    frame.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 截取当前屏幕
+     * 会话运行中时直接转换最新帧；暂停状态下先恢复，再等待恢复后的第一帧
+     *
+     * @param timeoutMs 等待帧的超时时间（毫秒）
+     * @return 屏幕Bitmap（调用方持有），失败返回null
+     */
+    public Bitmap captureBitmap(long timeoutMs) {
+        markActive();
+
+        synchronized (frameLock) {
+            if (!awaitLatestImage(timeoutMs)) {
+                return null;
+            }
+            Bitmap bitmap = Bitmap.createBitmap(latestImage.getWidth(), latestImage.getHeight(), Bitmap.Config.ARGB_8888);
+            if (!ImageConverter.copyToBitmap(latestImage, bitmap, framePool)) {
+                bitmap.recycle();
+                return null;
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * 获取当前屏幕帧（Bitmap来自帧池）
+     * 用完后必须调用 {@link ScreenFrame#release()} 归还
+     *
+     * @param timeoutMs 等待帧的超时时间（毫秒）
+     * @return 屏幕帧，失败返回null
+     */
+    public ScreenFrame acquireFrame(long timeoutMs) {
+        markActive();
+
+        synchronized (frameLock) {
+            if (!awaitLatestImage(timeoutMs)) {
+                return null;
+            }
+            return imageToFrame(latestImage);
+        }
+    }
+
+    /**
+     * 订阅连续帧流
+     *
+     * @param maxFps 最大接收帧率（<=0 表示不限制）
+     * @param listener 帧监听器
+     * @return 订阅对象，不再需要时调用 {@link FrameStream.Subscription#cancel()}
+     */
+    public FrameStream.Subscription subscribe(float maxFps, FrameStream.FrameListener listener) {
+        FrameStream.Subscription subscription = frameStream.subscribe(maxFps, listener);
+        markActive();
+        return subscription;
+    }
+
+    /**
+     * 等待最新帧可用，调用方需持有frameLock
+     *
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 最新帧是否可用
+     */
+    private boolean awaitLatestImage(long timeoutMs) {
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        try {
+            while (latestImage == null && !released) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    Log.e(TAG, "等待屏幕帧超时: " + timeoutMs + "ms");
+                    return false;
+                }
+                frameLock.wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "等待屏幕帧被中断");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (released) {
+            Log.e(TAG, "截图会话已释放");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次使用，必要时恢复会话
+     */
+    private void markActive() {
+        lastRequestTimeMs = SystemClock.uptimeMillis();
+        if (paused) {
+            resume();
+        }
+    }
+
+    /**
+     * 暂停会话：断开VirtualDisplay的Surface，停止合成与帧拷贝
+     */
+    public void pause() {
+        synchronized (frameLock) {
+            if (paused || released) {
+                return;
+            }
+            paused = true;
+            if (latestImage != null) {
+                // 暂停期间屏幕可能变化，旧帧不再可信
+                latestImage.close();
+                latestImage = null;
+            }
+        }
+        if (virtualDisplay != null) {
+            virtualDisplay.setSurface(null);
+        }
+        Log.d(TAG, "截图会话空闲，已暂停");
+    }
+
+    /**
+     * 恢复会话：重新连接ImageReader的Surface
+     */
+    public void resume() {
+        synchronized (frameLock) {
+            if (!paused || released) {
+                return;
+            }
+            paused = false;
+        }
+        if (virtualDisplay != null && imageReader != null) {
+            virtualDisplay.setSurface(imageReader.getSurface());
+        }
+        handler.removeCallbacks(idleCheck);
+        handler.postDelayed(idleCheck, IDLE_PAUSE_MS);
+        Log.d(TAG, "截图会话已恢复");
+    }
+
+    /**
+     * 释放会话占用的全部资源
+     */
+    public void release() {
+        synchronized (frameLock) {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (latestImage != null) {
+                latestImage.close();
+                latestImage = null;
+            }
+            frameLock.notifyAll();
+        }
+
+        frameStream.close();
+        if (handler != null) {
+            handler.removeCallbacks(idleCheck);
+        }
+        try {
+            mediaProjection.unregisterCallback(projectionCallback);
+        } catch (Exception e) {
+            Log.w(TAG, "注销MediaProjection回调失败: " + e.getMessage());
+        }
+        if (virtualDisplay != null) {
+            virtualDisplay.release();
+            virtualDisplay = null;
+        }
+        if (imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+        if (handlerThread != null) {
+            handlerThread.quitSafely();
+            handlerThread = null;
+        }
+        framePool.clear();
+        if (instance == this) {
+            instance = null;
+        }
+        Log.d(TAG, "截图会话已释放");
+    }
+
+    /**
+     * 调整渲染比例
+     * 不重建VirtualDisplay（Android 14起每个MediaProjection只能创建一次），
+     * 而是调整VirtualDisplay尺寸并换用新尺寸的ImageReader
+     *
+     * @param newScale 渲染比例（0.1-1）
+     */
+    public void setScale(float newScale) {
+        ImageReader oldReader;
+        synchronized (frameLock) {
+            if (released || virtualDisplay == null) {
+                return;
+            }
+            float previous = scale;
+            applyScale(newScale);
+            if (scale == previous) {
+                return;
+            }
+            if (latestImage != null) {
+                latestImage.close();
+                latestImage = null;
+            }
+            oldReader = imageReader;
+            imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES);
+            imageReader.setOnImageAvailableListener(this::onImageAvailable, handler);
+            virtualDisplay.resize(width, height, scaledDensity());
+            if (!paused) {
+                virtualDisplay.setSurface(imageReader.getSurface());
+            }
+        }
+        oldReader.close();
+        Log.d(TAG, "截图会话渲染尺寸已调整: " + width + "x" + height + ", scale=" + scale);
+    }
+
+    /**
+     * 按渲染比例缩小的屏幕密度，保持界面布局与原屏幕一致
+     */
+    private int scaledDensity() {
+        return Math.max(1, Math.round(densityDpi * scale));
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * 会话是否已释放（主动释放，或MediaProjection被系统停止、授权被撤销）
+     */
+    public boolean isReleased() {
+        synchronized (frameLock) {
+            return released;
+        }
+    }
+
+    /**
+     * 渲染宽度（帧宽度）
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 渲染高度（帧高度）
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    /**
+     * 渲染比例，全分辨率时为1
+     */
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * 最新帧到达的时间（SystemClock.uptimeMillis）
+     *
+     * @return 时间戳，没有帧时为0
+     */
+    public long getLatestFrameTimeMs() {
+        return latestFrameTimeMs;
+    }
+
+    /**
+     * 将Image复制到帧池中的原始像素缓冲区并包装为屏幕帧
+     * 需要Bitmap的使用者在首次调用 {@link ScreenFrame#getBitmap()} 时才生成Bitmap
+     *
+     * @param image Image对象
+     * @return 屏幕帧或null
+     */
+    private ScreenFrame imageToFrame(Image image) {
+        PixelBuffer pixels = framePool.obtainPixelBuffer(image.getWidth(), image.getHeight());
+        if (!ImageConverter.copyToPixelBuffer(image, pixels)) {
+            framePool.recycle(pixels);
+            return null;
+        }
+        float scaleX = image.getWidth() / (float) screenWidth;
+        float scaleY = image.getHeight() / (float) screenHeight;
+        return new ScreenFrame(pixels, ScreenFrame.Source.MEDIA_PROJECTION, framePool, scaleX, scaleY);
+    }
+}
@@ -0,0 +1,126 @@
+package com.dy.autotask.capture;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 帧内存复用池
+ * 屏幕帧释放后把Bitmap和原始像素缓冲区归还到池中，下一帧直接复用同尺寸的对象，
+ * 避免每帧分配整屏内存（1440p下每帧约10MB）
+ */
+public class FramePool {
+    private static final String TAG = "FramePool";
+
+    // 默认每种对象最多缓存的数量
+    private static final int DEFAULT_MAX_SIZE = 4;
+
+    private final ArrayDeque<Bitmap> bitmaps = new ArrayDeque<>();
+    private final ArrayDeque<PixelBuffer> pixelBuffers = new ArrayDeque<>();
+    private final int maxSize;
+
+    public FramePool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize 每种对象最多缓存的数量
+     */
+    public FramePool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 获取指定尺寸的ARGB_8888 Bitmap，池中没有时新建
+     *
+     * @param width 宽度
+     * @param height 高度
+     * @return 可写的Bitmap（内容未定义）
+     */
+    public Bitmap obtain(int width, int height) {
+        synchronized (bitmaps) {
+            Iterator<Bitmap> iterator = bitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    iterator.remove();
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 归还Bitmap到池中，池满时直接回收
+     *
+     * @param bitmap 不再使用的Bitmap
+     */
+    public void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        synchronized (bitmaps) {
+            if (bitmaps.size() < maxSize) {
+                bitmaps.addLast(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * 获取指定尺寸的原始像素缓冲区，池中没有时新建
+     *
+     * @param width 宽度
+     * @param height 高度
+     * @return 像素缓冲区（内容未定义）
+     */
+    public PixelBuffer obtainPixelBuffer(int width, int height) {
+        synchronized (pixelBuffers) {
+            Iterator<PixelBuffer> iterator = pixelBuffers.iterator();
+            while (iterator.hasNext()) {
+                PixelBuffer buffer = iterator.next();
+                if (buffer.getWidth() == width && buffer.getHeight() == height) {
+                    iterator.remove();
+                    return buffer;
+                }
+            }
+        }
+        return new PixelBuffer(width, height);
+    }
+
+    /**
+     * 归还原始像素缓冲区到池中，池满时直接丢弃
+     *
+     * @param buffer 不再使用的缓冲区
+     */
+    public void recycle(PixelBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        synchronized (pixelBuffers) {
+            if (pixelBuffers.size() < maxSize) {
+                pixelBuffers.addLast(buffer);
+            }
+        }
+    }
+
+    /**
+     * 清空池并回收所有Bitmap
+     */
+    public void clear() {
+        synchronized (bitmaps) {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+            Log.d(TAG, "已清空帧池，回收 " + bitmaps.size() + " 个Bitmap");
+            bitmaps.clear();
+        }
+        synchronized (pixelBuffers) {
+            pixelBuffers.clear();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.dy.autotask.capture;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 连续帧流
+ * 截图会话的每一帧只转换一次，按订阅者要求的最大帧率分发给所有订阅者，
+ * 图片匹配等待、画面变化检测、录屏等功能共享同一条截图管线
+ *
+ * 背压策略：每个订阅者只有一个待处理帧槽位，处理不过来时新帧替换旧帧（丢弃最旧帧），
+ * 慢订阅者永远只看到最新画面，不会积压
+ *
+ * 注意：VirtualDisplay只在屏幕内容变化时产生新帧，画面静止期间订阅者不会收到帧
+ */
+public class FrameStream {
+    private static final String TAG = "FrameStream";
+
+    /**
+     * 帧监听器
+     * 在帧流的分发线程中回调；回调返回后帧会被自动释放，
+     * 如需在回调外继续使用帧，请先调用 {@link ScreenFrame#retain()} 并在用完后 {@link ScreenFrame#release()}
+     */
+    public interface FrameListener {
+        void onFrame(ScreenFrame frame);
+    }
+
+    /**
+     * 帧订阅
+     */
+    public class Subscription {
+        private final FrameListener listener;
+        private final long minIntervalMs;
+        private final AtomicReference<ScreenFrame> pending = new AtomicReference<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private volatile long lastAcceptedMs = 0;
+        private volatile boolean cancelled = false;
+        private volatile long droppedFrames = 0;
+        private Runnable cancelListener;
+
+        private Subscription(FrameListener listener, float maxFps) {
+            this.listener = listener;
+            this.minIntervalMs = maxFps > 0 ? (long) (1000f / maxFps) : 0;
+        }
+
+        /**
+         * 是否到了接收下一帧的时间（按最大帧率节流）
+         */
+        private boolean isDue(long nowMs) {
+            return !cancelled && nowMs - lastAcceptedMs >= minIntervalMs;
+        }
+
+        /**
+         * 投递一帧：替换掉尚未处理的旧帧
+         */
+        private void offer(ScreenFrame frame, long nowMs) {
+            lastAcceptedMs = nowMs;
+            ScreenFrame old = pending.getAndSet(frame.retain());
+            if (old != null) {
+                droppedFrames++;
+                old.release();
+            }
+            if (cancelled) {
+                // 与cancel()并发时，确保投递的帧不会滞留在槽位中
+                ScreenFrame stale = pending.getAndSet(null);
+                if (stale != null) {
+                    stale.release();
+                }
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                ScreenFrame frame = pending.getAndSet(null);
+                if (frame == null) {
+                    draining.set(false);
+                    // 释放标记后可能又有新帧到达，需要再检查一次
+                    if (pending.get() != null && draining.compareAndSet(false, true)) {
+                        continue;
+                    }
+                    return;
+                }
+                try {
+                    if (!cancelled) {
+                        listener.onFrame(frame);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "帧监听器异常: " + e.getMessage(), e);
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+
+        /**
+         * 取消订阅
+         */
+        public void cancel() {
+            Runnable listener;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                listener = cancelListener;
+                cancelListener = null;
+            }
+            subscriptions.remove(this);
+            ScreenFrame old = pending.getAndSet(null);
+            if (old != null) {
+                old.release();
+            }
+            Log.d(TAG, "已取消帧订阅，剩余订阅者: " + subscriptions.size() + "，丢弃帧数: " + droppedFrames);
+            if (listener != null) {
+                listener.run();
+            }
+        }
+
+        /**
+         * 设置取消回调：订阅被取消时（包括截图会话释放时）在取消的线程中调用一次
+         * 设置时已经取消则立即调用
+         *
+         * @param listener 取消回调
+         */
+        public void setOnCancelListener(Runnable listener) {
+            synchronized (this) {
+                if (!cancelled) {
+                    cancelListener = listener;
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 因处理不及时被丢弃的帧数
+         *
+         * @return 丢弃帧数
+         */
+        public long getDroppedFrames() {
+            return droppedFrames;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher = Executors.newCachedThreadPool();
+
+    /**
+     * 订阅帧流
+     *
+     * @param maxFps 最大接收帧率（<=0 表示不限制）
+     * @param listener 帧监听器
+     * @return 订阅对象，不再需要时调用 {@link Subscription#cancel()}
+     */
+    public Subscription subscribe(float maxFps, FrameListener listener) {
+        Subscription subscription = new Subscription(listener, maxFps);
+        subscriptions.add(subscription);
+        Log.d(TAG, "新增帧订阅，maxFps=" + maxFps + "，订阅者数量: " + subscriptions.size());
+        return subscription;
+    }
+
+    /**
+     * 是否有订阅者
+     *
+     * @return 是否有订阅者
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * 当前是否有订阅者需要新帧（用于决定是否转换当前Image）
+     *
+     * @return 是否需要新帧
+     */
+    public boolean wantsFrame() {
+        long now = SystemClock.uptimeMillis();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.isDue(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 向到期的订阅者分发一帧
+     * 调用方持有的引用不受影响，分发后仍需自行释放
+     *
+     * @param frame 新帧
+     */
+    public void publish(ScreenFrame frame) {
+        long now = SystemClock.uptimeMillis();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.isDue(now)) {
+                subscription.offer(frame, now);
+            }
+        }
+    }
+
+    /**
+     * 取消所有订阅并关闭分发线程
+     */
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+        dispatcher.shutdown();
+    }
+}
@@ -0,0 +1,177 @@
+package com.dy.autotask.capture;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Image到Bitmap/原始像素的转换器
+ *
+ * 处理ImageReader输出中的rowStride行填充（部分设备每行末尾有填充字节，
+ * 直接整块复制会导致画面错位倾斜），并直接从Image平面的直接内存缓冲区复制，
+ * 不再经过中间byte[]：
+ * 1. 行无填充时：平面缓冲区直接 copyPixelsFromBuffer 到复用的Bitmap（一次复制）
+ * 2. 行有填充时：逐行批量复制到无填充的PixelBuffer（一次复制）
+ */
+public class ImageConverter {
+    private static final String TAG = "ImageConverter";
+
+    private ImageConverter() {
+    }
+
+    /**
+     * Image平面是否为紧凑排列（行间无填充且像素跨度为4）
+     *
+     * @param image RGBA_8888格式的Image
+     * @return 是否紧凑排列
+     */
+    public static boolean isTightlyPacked(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        return plane.getPixelStride() == PixelBuffer.BYTES_PER_PIXEL
+                && plane.getRowStride() == image.getWidth() * PixelBuffer.BYTES_PER_PIXEL;
+    }
+
+    /**
+     * 将Image复制到无填充的原始像素缓冲区
+     *
+     * @param image RGBA_8888格式的Image
+     * @param target 目标缓冲区（尺寸与Image一致）
+     * @return 是否成功
+     */
+    public static boolean copyToPixelBuffer(Image image, PixelBuffer target) {
+        try {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            if (target.getWidth() != width || target.getHeight() != height) {
+                Log.e(TAG, "目标缓冲区尺寸不匹配: " + target.getWidth() + "x" + target.getHeight()
+                        + " != " + width + "x" + height);
+                return false;
+            }
+
+            Image.Plane plane = image.getPlanes()[0];
+            ByteBuffer src = plane.getBuffer();
+            ByteBuffer dst = target.getBuffer();
+            int pixelStride = plane.getPixelStride();
+            int rowStride = plane.getRowStride();
+            int rowBytes = width * PixelBuffer.BYTES_PER_PIXEL;
+
+            if (pixelStride == PixelBuffer.BYTES_PER_PIXEL && rowStride == rowBytes) {
+                // 紧凑排列：整块复制
+                src.position(0).limit(rowBytes * height);
+                dst.put(src);
+            } else if (pixelStride == PixelBuffer.BYTES_PER_PIXEL) {
+                // 行末有填充：逐行批量复制，跳过填充字节
+                for (int y = 0; y < height; y++) {
+                    int rowStart = y * rowStride;
+                    src.limit(rowStart + rowBytes).position(rowStart);
+                    dst.put(src);
+                }
+            } else {
+                // 非常规像素跨度：逐像素复制
+                for (int y = 0; y < height; y++) {
+                    int rowStart = y * rowStride;
+                    for (int x = 0; x < width; x++) {
+                        int offset = rowStart + x * pixelStride;
+                        dst.put(src.get(offset));
+                        dst.put(src.get(offset + 1));
+                        dst.put(src.get(offset + 2));
+                        dst.put(src.get(offset + 3));
+                    }
+                }
+            }
+            src.clear();
+            dst.rewind();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "复制Image像素失败: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 将Image复制到Bitmap
+     * 紧凑排列时平面缓冲区直接复制进Bitmap；有行填充时借助帧池中的PixelBuffer中转
+     *
+     * @param image RGBA_8888格式的Image
+     * @param target 目标Bitmap（ARGB_8888，尺寸与Image一致）
+     * @param pool 帧池（用于获取中转缓冲区，可为null）
+     * @return 是否成功
+     */
+    public static boolean copyToBitmap(Image image, Bitmap target, FramePool pool) {
+        try {
+            if (isTightlyPacked(image)) {
+                ByteBuffer src = image.getPlanes()[0].getBuffer();
+                src.rewind();
+                target.copyPixelsFromBuffer(src);
+                src.rewind();
+                return true;
+            }
+
+            PixelBuffer scratch = pool != null
+                    ? pool.obtainPixelBuffer(image.getWidth(), image.getHeight())
+                    : new PixelBuffer(image.getWidth(), image.getHeight());
+            try {
+                if (!copyToPixelBuffer(image, scratch)) {
+                    return false;
+                }
+                copyToBitmap(scratch, target);
+                return true;
+            } finally {
+                if (pool != null) {
+                    pool.recycle(scratch);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "转换Image为Bitmap失败: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 将原始像素缓冲区复制到Bitmap
+     *
+     * @param pixels 原始像素
+     * @param target 目标Bitmap（ARGB_8888，尺寸一致）
+     */
+    public static void copyToBitmap(PixelBuffer pixels, Bitmap target) {
+        ByteBuffer buffer = pixels.getBuffer();
+        target.copyPixelsFromBuffer(buffer);
+        buffer.rewind();
+    }
+
+    /**
+     * 从原始像素缓冲区中复制一块矩形区域
+     * 逐行批量复制，目标缓冲区的尺寸即为区域尺寸
+     *
+     * @param source 源像素
+     * @param left 区域左边界
+     * @param top 区域上边界
+     * @param target 目标缓冲区（区域必须完全位于源图像内）
+     */
+    public static void copyRegion(PixelBuffer source, int left, int top, PixelBuffer target) {
+        ByteBuffer src = source.getBuffer().duplicate();
+        ByteBuffer dst = target.getBuffer();
+        int srcStride = source.getRowStride();
+        int rowBytes = target.getRowStride();
+        for (int y = 0; y < target.getHeight(); y++) {
+            int rowStart = (top + y) * srcStride + left * PixelBuffer.BYTES_PER_PIXEL;
+            src.limit(rowStart + rowBytes).position(rowStart);
+            dst.put(src);
+        }
+        dst.rewind();
+    }
+
+    /**
+     * 将软件Bitmap复制到原始像素缓冲区
+     *
+     * @param bitmap ARGB_8888 Bitmap
+     * @param target 目标缓冲区（尺寸一致）
+     */
+    public static void copyToPixelBuffer(Bitmap bitmap, PixelBuffer target) {
+        ByteBuffer buffer = target.getBuffer();
+        bitmap.copyPixelsToBuffer(buffer);
+        buffer.rewind();
+    }
+}
@@ -0,0 +1,82 @@
+package com.dy.autotask.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 原始像素缓冲区（RGBA_8888，行间无填充）
+ * 供不需要Bitmap的使用者（颜色查找、图片匹配、画面哈希等）直接读取像素
+ *
+ * 像素 (x, y) 的字节偏移为 y * getRowStride() + x * 4，依次为 R、G、B、A
+ */
+public class PixelBuffer {
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+
+    /**
+     * 分配指定尺寸的直接内存缓冲区
+     *
+     * @param width 宽度
+     * @param height 高度
+     */
+    public PixelBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.buffer = ByteBuffer.allocateDirect(width * height * BYTES_PER_PIXEL);
+    }
+
+    /**
+     * 获取底层缓冲区
+     * 返回的缓冲区position为0，使用绝对位置读取（get(int)）不会影响其他使用者
+     *
+     * @return RGBA字节缓冲区
+     */
+    public ByteBuffer getBuffer() {
+        buffer.rewind();
+        return buffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 每行字节数（无填充）
+     *
+     * @return 行跨度
+     */
+    public int getRowStride() {
+        return width * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * 缓冲区总字节数
+     *
+     * @return 字节数
+     */
+    public int getByteCount() {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * 读取单个像素
+     *
+     * @param x X坐标
+     * @param y Y坐标
+     * @return ARGB颜色值（与android.graphics.Color一致）
+     */
+    public int getPixel(int x, int y) {
+        int offset = y * width * BYTES_PER_PIXEL + x * BYTES_PER_PIXEL;
+        int r = buffer.get(offset) & 0xFF;
+        int g = buffer.get(offset + 1) & 0xFF;
+        int b = buffer.get(offset + 2) & 0xFF;
+        int a = buffer.get(offset + 3) & 0xFF;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,396 @@
+package com.dy.autotask.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.hardware.HardwareBuffer;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 屏幕帧
+ * 统一封装不同截图后端（MediaProjection / 无障碍 takeScreenshot / root）得到的一帧画面
+ *
+ * 帧的内容可以是Bitmap，也可以是原始像素缓冲区（{@link PixelBuffer}）：
+ * MediaProjection帧以原始像素为主，只在需要时才生成Bitmap；
+ * 颜色查找、图片匹配等不需要Bitmap的使用者应通过 {@link #getPixels()} 直接读取像素
+ *
+ * 无障碍后端返回的是HardwareBuffer支持的硬件Bitmap，像素在GPU内存中，
+ * 需要读取像素或编码时通过 {@link #toSoftwareBitmap()} 复制到软件Bitmap
+ *
+ * 降分辨率截图时帧尺寸小于屏幕尺寸，帧坐标与屏幕坐标通过 {@link #toScreenX(int)}、
+ * {@link #toFrameX(int)} 等方法换算；由帧得到的点击坐标必须先换算回屏幕坐标
+ *
+ * 帧采用引用计数：创建时引用数为1，共享给其他使用者前调用 {@link #retain()}，
+ * 每个使用者用完后调用 {@link #release()}；引用归零时Bitmap归还帧池（或被回收）
+ */
+public class ScreenFrame {
+    private static final String TAG = "ScreenFrame";
+
+    /**
+     * 截图来源
+     */
+    public enum Source {
+        MEDIA_PROJECTION,   // MediaProjection + VirtualDisplay
+        ACCESSIBILITY,      // AccessibilityService.takeScreenshot（API 30+）
+        ROOT                // root权限下的screencap
+    }
+
+    private final HardwareBuffer hardwareBuffer;
+    private final Source source;
+    private final long timestampMs;
+    private final FramePool pool;
+    private final int width;
+    private final int height;
+    // 帧像素与屏幕像素的比例（帧宽 / 屏幕宽），全分辨率时为1
+    private final float scaleX;
+    private final float scaleY;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    // 帧内容，至少有一个不为null；另一个在首次访问时由帧池生成（由this保护）
+    private Bitmap bitmap;
+    private PixelBuffer pixels;
+
+    /**
+     * 构造软件Bitmap帧
+     *
+     * @param bitmap 帧内容
+     * @param source 截图来源
+     */
+    public ScreenFrame(Bitmap bitmap, Source source) {
+        this(bitmap, null, null, source, null, 1f, 1f);
+    }
+
+    /**
+     * 构造帧
+     *
+     * @param bitmap 帧内容（硬件帧时为wrapHardwareBuffer得到的Bitmap）
+     * @param hardwareBuffer 硬件缓冲区（可为null）
+     * @param source 截图来源
+     */
+    public ScreenFrame(Bitmap bitmap, HardwareBuffer hardwareBuffer, Source source) {
+        this(bitmap, null, hardwareBuffer, source, null, 1f, 1f);
+    }
+
+    /**
+     * 构造来自帧池的帧，释放时Bitmap归还帧池
+     *
+     * @param bitmap 帧池中获取的Bitmap
+     * @param source 截图来源
+     * @param pool 帧池
+     */
+    public ScreenFrame(Bitmap bitmap, Source source, FramePool pool) {
+        this(bitmap, null, null, source, pool, 1f, 1f);
+    }
+
+    /**
+     * 构造原始像素帧，释放时像素缓冲区归还帧池
+     *
+     * @param pixels 帧池中获取的像素缓冲区
+     * @param source 截图来源
+     * @param pool 帧池
+     */
+    public ScreenFrame(PixelBuffer pixels, Source source, FramePool pool) {
+        this(null, pixels, null, source, pool, 1f, 1f);
+    }
+
+    /**
+     * 构造降分辨率的原始像素帧
+     *
+     * @param pixels 帧池中获取的像素缓冲区
+     * @param source 截图来源
+     * @param pool 帧池
+     * @param scaleX 帧宽与屏幕宽的比例
+     * @param scaleY 帧高与屏幕高的比例
+     */
+    public ScreenFrame(PixelBuffer pixels, Source source, FramePool pool, float scaleX, float scaleY) {
+        this(null, pixels, null, source, pool, scaleX, scaleY);
+    }
+
+    private ScreenFrame(Bitmap bitmap, PixelBuffer pixels, HardwareBuffer hardwareBuffer, Source source, FramePool pool,
+                        float scaleX, float scaleY) {
+        this.bitmap = bitmap;
+        this.pixels = pixels;
+        this.hardwareBuffer = hardwareBuffer;
+        this.source = source;
+        this.pool = pool;
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.timestampMs = SystemClock.uptimeMillis();
+        if (bitmap != null) {
+            this.width = bitmap.getWidth();
+            this.height = bitmap.getHeight();
+        } else if (pixels != null) {
+            this.width = pixels.getWidth();
+            this.height = pixels.getHeight();
+        } else {
+            this.width = 0;
+            this.height = 0;
+        }
+    }
+
+    /**
+     * 获取帧的Bitmap
+     * 原始像素帧首次调用时从帧池获取Bitmap并复制像素，之后复用
+     *
+     * @return Bitmap（归帧所有，不要回收）
+     */
+    public synchronized Bitmap getBitmap() {
+        if (bitmap == null && pixels != null) {
+            Bitmap created = pool != null
+                    ? pool.obtain(width, height)
+                    : Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            ImageConverter.copyToBitmap(pixels, created);
+            bitmap = created;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 获取帧的原始像素（RGBA_8888，无行填充）
+     * Bitmap帧首次调用时复制一份像素，之后复用；硬件帧需要先读回到软件内存
+     *
+     * @return 原始像素缓冲区（归帧所有），失败返回null
+     */
+    public synchronized PixelBuffer getPixels() {
+        if (pixels == null && bitmap != null && !bitmap.isRecycled()) {
+            Bitmap software = toSoftwareBitmap();
+            if (software == null) {
+                return null;
+            }
+            PixelBuffer created = pool != null
+                    ? pool.obtainPixelBuffer(width, height)
+                    : new PixelBuffer(width, height);
+            ImageConverter.copyToPixelBuffer(software, created);
+            if (software != bitmap) {
+                software.recycle();
+            }
+            pixels = created;
+        }
+        return pixels;
+    }
+
+    public HardwareBuffer getHardwareBuffer() {
+        return hardwareBuffer;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 帧宽与屏幕宽的比例，全分辨率时为1
+     */
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    /**
+     * 帧高与屏幕高的比例，全分辨率时为1
+     */
+    public float getScaleY() {
+        return scaleY;
+    }
+
+    /**
+     * 是否为降分辨率的帧
+     */
+    public boolean isScaled() {
+        return scaleX != 1f || scaleY != 1f;
+    }
+
+    /**
+     * 帧X坐标换算为屏幕X坐标
+     */
+    public int toScreenX(int frameX) {
+        return Math.round(frameX / scaleX);
+    }
+
+    /**
+     * 帧Y坐标换算为屏幕Y坐标
+     */
+    public int toScreenY(int frameY) {
+        return Math.round(frameY / scaleY);
+    }
+
+    /**
+     * 屏幕X坐标换算为帧X坐标
+     */
+    public int toFrameX(int screenX) {
+        return Math.round(screenX * scaleX);
+    }
+
+    /**
+     * 屏幕Y坐标换算为帧Y坐标
+     */
+    public int toFrameY(int screenY) {
+        return Math.round(screenY * scaleY);
+    }
+
+    /**
+     * 屏幕区域换算为帧区域
+     *
+     * @param screenRect 屏幕坐标区域
+     * @return 帧坐标区域（新对象）
+     */
+    public Rect toFrameRect(Rect screenRect) {
+        return new Rect(toFrameX(screenRect.left), toFrameY(screenRect.top),
+                toFrameX(screenRect.right), toFrameY(screenRect.bottom));
+    }
+
+    /**
+     * 是否为GPU内存中的硬件帧
+     *
+     * @return 是否为硬件帧
+     */
+    public synchronized boolean isHardware() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && bitmap != null
+                && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+
+    /**
+     * 获取可读写像素的软件Bitmap
+     * 软件帧直接返回内部Bitmap；硬件帧会复制一份ARGB_8888的Bitmap，由调用方负责回收
+     *
+     * @return 软件Bitmap，失败返回null
+     */
+    public Bitmap toSoftwareBitmap() {
+        Bitmap current = getBitmap();
+        if (current == null || current.isRecycled()) {
+            return null;
+        }
+        if (!isHardware()) {
+            return current;
+        }
+        Bitmap copy = current.copy(Bitmap.Config.ARGB_8888, false);
+        if (copy == null) {
+            Log.e(TAG, "硬件帧复制为软件Bitmap失败");
+        }
+        return copy;
+    }
+
+    /**
+     * 裁剪出一块区域，生成新的帧
+     * 原始像素帧只复制区域内的行，不生成整屏Bitmap；区域超出画面的部分会被截掉
+     *
+     * @param region 裁剪区域（帧坐标）
+     * @return 新的帧（由调用方释放），区域与画面无交集时返回null
+     */
+    public ScreenFrame crop(Rect region) {
+        Rect clipped = new Rect(region);
+        if (!clipped.intersect(0, 0, width, height) || clipped.isEmpty()) {
+            Log.w(TAG, "裁剪区域与画面无交集: " + region.toShortString());
+            return null;
+        }
+
+        synchronized (this) {
+            if (pixels != null) {
+                PixelBuffer cropped = pool != null
+                        ? pool.obtainPixelBuffer(clipped.width(), clipped.height())
+                        : new PixelBuffer(clipped.width(), clipped.height());
+                ImageConverter.copyRegion(pixels, clipped.left, clipped.top, cropped);
+                return new ScreenFrame(null, cropped, null, source, pool, scaleX, scaleY);
+            }
+        }
+
+        Bitmap software = toSoftwareBitmap();
+        if (software == null) {
+            return null;
+        }
+        try {
+            Bitmap cropped = Bitmap.createBitmap(software, clipped.left, clipped.top,
+                    clipped.width(), clipped.height());
+            if (cropped == software) {
+                // 区域即整个画面时createBitmap返回原对象，需要复制一份
+                cropped = software.copy(Bitmap.Config.ARGB_8888, false);
+            }
+            return new ScreenFrame(cropped, null, null, source, null, scaleX, scaleY);
+        } finally {
+            if (software != getBitmap()) {
+                software.recycle();
+            }
+        }
+    }
+
+    /**
+     * 增加一次引用
+     *
+     * @return 当前帧
+     */
+    public ScreenFrame retain() {
+        int count = refCount.getAndIncrement();
+        if (count <= 0) {
+            refCount.getAndDecrement();
+            throw new IllegalStateException("帧已释放，不能再次引用");
+        }
+        return this;
+    }
+
+    /**
+     * 释放一次引用，引用归零时释放帧占用的资源
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count > 0) {
+            return;
+        }
+        if (count < 0) {
+            Log.w(TAG, "帧被重复释放: " + this);
+            return;
+        }
+        synchronized (this) {
+            if (pool != null) {
+                pool.recycle(bitmap);
+                pool.recycle(pixels);
+            } else if (bitmap != null && !bitmap.isRecycled()) {
+                bitmap.recycle();
+            }
+            bitmap = null;
+            pixels = null;
+        }
+        if (hardwareBuffer != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            hardwareBuffer.close();
+        }
+    }
+
+    /**
+     * 释放帧（等同于 {@link #release()}）
+     */
+    public void close() {
+        release();
+    }
+
+    /**
+     * 当前引用数
+     *
+     * @return 引用数
+     */
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ScreenFrame{" +
+                "source=" + source +
+                ", size=" + width + "x" + height +
+                (isScaled() ? ", scale=" + scaleX : "") +
+                ", hardware=" + isHardware() +
+                '}';
+    }
+}
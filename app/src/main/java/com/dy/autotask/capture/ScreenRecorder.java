@@ -0,0 +1,668 @@
+package com.dy.autotask.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务录屏
+ *
+ * 订阅截图会话的帧流，把帧绘制到MediaCodec硬件编码器的输入Surface上，编码为H.264并分段写入MP4。
+ * 录屏与截图共用同一个VirtualDisplay（Android 14起每个MediaProjection只能创建一个）。
+ *
+ * 每帧开销：ImageReader的Image先复制到像素缓冲区（帧流的一次转换，所有订阅者共享），
+ * 再复制到帧池中的Bitmap（{@link ScreenFrame#getBitmap()}），最后经硬件Canvas上传并缩放绘制到编码器Surface，
+ * 共三次整帧拷贝，都是内存复制；编码由硬件完成。每一步保存PNG截图同样需要前两次拷贝，
+ * 另外还有软件PNG压缩和写文件，这才是录屏省下的主要开销。
+ *
+ * 分段：每段达到设定时长后请求关键帧，从下一个关键帧开始写入新文件，每段都可以单独播放；
+ * 进程崩溃时只会丢失正在写入的一段。
+ * 环形缓冲：设置保留时长后，只保留最近N分钟的分段，更早的分段被删除。
+ * 书签：{@link #addBookmark(String)} 记录任务步骤边界，Android 8.0起写入MP4的元数据轨道，
+ * 同时写入同名的.vtt字幕文件，播放器打开字幕即可看到每一步的位置。
+ *
+ * 截图会话结束时（例如用户撤销了录屏授权）帧订阅被取消，录屏随之自动停止并写完最后一段。
+ *
+ * 使用方式：
+ * ScreenRecorder.getInstance().start(session, folder, new ScreenRecorder.Config().keepDuration(10 * 60 * 1000));
+ * ScreenRecorder.getInstance().addBookmark("第3步: CLICK");
+ * ScreenRecorder.getInstance().stop();
+ */
+public class ScreenRecorder {
+    private static final String TAG = "ScreenRecorder";
+
+    private static final String VIDEO_MIME_TYPE = "video/avc";
+
+    // 书签元数据轨道的类型（MediaMuxer要求以application/开头）
+    private static final String BOOKMARK_MIME_TYPE = "application/x-autotask-step";
+
+    // 关键帧间隔（秒），也决定分段切换的最大延迟
+    private static final int I_FRAME_INTERVAL_S = 2;
+
+    // 画面静止时重复上一帧的间隔，保证静止期间时间轴仍然连续
+    private static final long REPEAT_FRAME_US = 1000000L;
+
+    // 编码输出的读取间隔
+    private static final long DRAIN_INTERVAL_MS = 100;
+
+    // 停止时等待编码器输出结束的时间
+    private static final long STOP_TIMEOUT_MS = 3000;
+    private static final long EOS_DEQUEUE_TIMEOUT_US = 10000;
+
+    // 字幕文件中每个书签的显示时长
+    private static final long BOOKMARK_CUE_MS = 3000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile ScreenRecorder instance;
+
+    /**
+     * 录屏配置
+     */
+    public static class Config {
+        private float fps = 10f;
+        private float scale = 0.5f;
+        private int bitRate = 2000000;
+        private long segmentDurationMs = 60000;
+        private long keepDurationMs = 0;
+
+        /**
+         * 最大帧率（默认10，调试回看足够）
+         */
+        public Config fps(float fps) {
+            this.fps = fps;
+            return this;
+        }
+
+        /**
+         * 视频尺寸相对屏幕的比例（默认0.5）
+         */
+        public Config scale(float scale) {
+            this.scale = scale;
+            return this;
+        }
+
+        /**
+         * 码率（bps，默认2Mbps）
+         */
+        public Config bitRate(int bitRate) {
+            this.bitRate = bitRate;
+            return this;
+        }
+
+        /**
+         * 每段时长（毫秒，默认1分钟）
+         */
+        public Config segmentDuration(long segmentDurationMs) {
+            this.segmentDurationMs = segmentDurationMs;
+            return this;
+        }
+
+        /**
+         * 只保留最近多长时间的分段（毫秒，0表示全部保留）
+         */
+        public Config keepDuration(long keepDurationMs) {
+            this.keepDurationMs = keepDurationMs;
+            return this;
+        }
+    }
+
+    /**
+     * 已写完的分段
+     */
+    private static class Segment {
+        final File video;
+        final File bookmarks;
+        final long durationUs;
+
+        Segment(File video, File bookmarks, long durationUs) {
+            this.video = video;
+            this.bookmarks = bookmarks;
+            this.durationUs = durationUs;
+        }
+    }
+
+    /**
+     * 分段开始前到达的书签
+     */
+    private static class Bookmark {
+        final long timeUs;
+        final String label;
+
+        Bookmark(long timeUs, String label) {
+            this.timeUs = timeUs;
+            this.label = label;
+        }
+    }
+
+    // 录制状态，启动和停止由对象锁保护
+    private volatile boolean recording = false;
+    private Config config;
+    private File folder;
+    private int width;
+    private int height;
+
+    private HandlerThread handlerThread;
+    private Handler handler;
+    private MediaCodec encoder;
+    private FrameStream.Subscription subscription;
+
+    // 编码器输入Surface，帧流分发线程绘制，由surfaceLock保护
+    private final Object surfaceLock = new Object();
+    private Surface inputSurface;
+    private final Rect targetRect = new Rect();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // 以下字段只在录屏线程中访问
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private MediaFormat outputFormat;
+    private MediaMuxer muxer;
+    private int videoTrack = -1;
+    private int bookmarkTrack = -1;
+    private File segmentFile;
+    private File bookmarkFile;
+    private BufferedWriter bookmarkWriter;
+    private long segmentStartUs = -1;
+    private long lastVideoUs = 0;
+    private long lastBookmarkUs = 0;
+    private boolean rotatePending = false;
+    private final List<Bookmark> pendingBookmarks = new ArrayList<>();
+
+    // 已写完的分段，由自身加锁保护
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long encodedFrames = 0;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!recording) {
+                return;
+            }
+            drainEncoder(false);
+            handler.postDelayed(this, DRAIN_INTERVAL_MS);
+        }
+    };
+
+    private ScreenRecorder() {
+    }
+
+    public static ScreenRecorder getInstance() {
+        if (instance == null) {
+            synchronized (ScreenRecorder.class) {
+                if (instance == null) {
+                    instance = new ScreenRecorder();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 开始录屏
+     *
+     * @param session 截图会话（提供帧流）
+     * @param folder 分段保存目录
+     * @param config 录屏配置
+     * @return 是否成功开始，已在录制时返回true
+     */
+    public synchronized boolean start(CaptureSession session, File folder, Config config) {
+        if (recording) {
+            if (subscription != null && !subscription.isCancelled()) {
+                Log.w(TAG, "录屏已在进行中");
+                return true;
+            }
+            // 帧订阅已失效（会话已结束），先结束旧的录制再重新开始
+            stop();
+        }
+        if (session == null || session.isReleased()) {
+            Log.e(TAG, "截图会话不可用，无法录屏");
+            return false;
+        }
+        if (!folder.exists() && !folder.mkdirs()) {
+            Log.e(TAG, "无法创建录屏目录: " + folder.getAbsolutePath());
+            return false;
+        }
+
+        this.config = config != null ? config : new Config();
+        this.folder = folder;
+        float scale = Math.max(0.1f, Math.min(1f, this.config.scale));
+        // 部分硬件编码器要求宽高按16对齐
+        width = Math.max(16, Math.round(session.getScreenWidth() * scale) & ~15);
+        height = Math.max(16, Math.round(session.getScreenHeight() * scale) & ~15);
+
+        try {
+            MediaFormat format = MediaFormat.createVideoFormat(VIDEO_MIME_TYPE, width, height);
+            format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, this.config.bitRate);
+            format.setInteger(MediaFormat.KEY_FRAME_RATE, Math.max(1, Math.round(this.config.fps)));
+            format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_S);
+            format.setLong(MediaFormat.KEY_REPEAT_PREVIOUS_FRAME_AFTER, REPEAT_FRAME_US);
+
+            encoder = MediaCodec.createEncoderByType(VIDEO_MIME_TYPE);
+            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            synchronized (surfaceLock) {
+                inputSurface = encoder.createInputSurface();
+                targetRect.set(0, 0, width, height);
+            }
+            encoder.start();
+        } catch (Exception e) {
+            Log.e(TAG, "创建视频编码器失败: " + e.getMessage(), e);
+            releaseEncoder();
+            return false;
+        }
+
+        handlerThread = new HandlerThread("ScreenRecorder");
+        handlerThread.start();
+        handler = new Handler(handlerThread.getLooper());
+
+        synchronized (segments) {
+            segments.clear();
+        }
+        pendingBookmarks.clear();
+        outputFormat = null;
+        segmentStartUs = -1;
+        rotatePending = false;
+        encodedFrames = 0;
+        recording = true;
+        handler.postDelayed(drainTask, DRAIN_INTERVAL_MS);
+        final FrameStream.Subscription current = session.subscribe(this.config.fps, this::onFrame);
+        subscription = current;
+        // 会话释放时帧订阅被取消，此时停止录屏；订阅前会话已释放时立即停止
+        current.setOnCancelListener(() -> onSubscriptionCancelled(current));
+        if (!recording || session.isReleased()) {
+            stop();
+            Log.e(TAG, "截图会话已结束，无法录屏");
+            return false;
+        }
+        Log.d(TAG, "开始录屏: " + width + "x" + height + ", fps=" + this.config.fps
+                + ", 分段=" + this.config.segmentDurationMs + "ms, 保留=" + this.config.keepDurationMs + "ms");
+        return true;
+    }
+
+    /**
+     * 帧订阅被取消：不是 {@link #stop()} 主动取消的（截图会话已释放），停止录屏并写完最后一段
+     */
+    private synchronized void onSubscriptionCancelled(FrameStream.Subscription cancelled) {
+        if (!recording || subscription != cancelled) {
+            return;
+        }
+        Log.w(TAG, "截图会话已结束，停止录屏");
+        stop();
+    }
+
+    /**
+     * 停止录屏，等待编码器输出结束并写完最后一段
+     */
+    public synchronized void stop() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+
+        CountDownLatch finished = new CountDownLatch(1);
+        handler.removeCallbacks(drainTask);
+        handler.post(() -> {
+            try {
+                encoder.signalEndOfInputStream();
+                drainEncoder(true);
+            } catch (Exception e) {
+                Log.e(TAG, "结束编码失败: " + e.getMessage(), e);
+            } finally {
+                closeSegment();
+                finished.countDown();
+            }
+        });
+        try {
+            if (!finished.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "等待录屏结束超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        handlerThread.quitSafely();
+        handlerThread = null;
+        handler = null;
+        releaseEncoder();
+        Log.d(TAG, "录屏已停止，编码帧数: " + encodedFrames + "，分段数: " + getSegments().size());
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * 在当前时间点添加书签（例如任务步骤开始）
+     * 未在录制时直接忽略
+     *
+     * @param label 书签内容
+     */
+    public void addBookmark(String label) {
+        if (!recording) {
+            return;
+        }
+        long timeUs = System.nanoTime() / 1000;
+        Handler current = handler;
+        if (current != null) {
+            current.post(() -> writeBookmark(timeUs, label));
+        }
+    }
+
+    /**
+     * 获取已写完的分段文件（从旧到新）
+     *
+     * @return 分段文件列表
+     */
+    public List<File> getSegments() {
+        List<File> files = new ArrayList<>();
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                files.add(segment.video);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 帧流回调：把帧绘制到编码器输入Surface
+     * 帧的Bitmap由像素缓冲区复制得到（同一帧的其他订阅者复用），绘制时再上传到GPU并缩放到视频尺寸
+     * 编码器输入Surface的时间戳取绘制时的单调时钟，与书签时间一致
+     */
+    private void onFrame(ScreenFrame frame) {
+        Bitmap bitmap = frame.getBitmap();
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (surfaceLock) {
+            if (!recording || inputSurface == null) {
+                return;
+            }
+            Canvas canvas = null;
+            try {
+                canvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                        ? inputSurface.lockHardwareCanvas()
+                        : inputSurface.lockCanvas(null);
+                canvas.drawBitmap(bitmap, null, targetRect, paint);
+            } catch (Exception e) {
+                Log.e(TAG, "绘制录屏帧失败: " + e.getMessage());
+            } finally {
+                if (canvas != null) {
+                    inputSurface.unlockCanvasAndPost(canvas);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取编码输出并写入当前分段，在录屏线程中调用
+     *
+     * @param endOfStream 是否等待结束标记
+     */
+    private void drainEncoder(boolean endOfStream) {
+        long deadline = System.nanoTime() + STOP_TIMEOUT_MS * 1000000L;
+        while (true) {
+            int index = encoder.dequeueOutputBuffer(bufferInfo, endOfStream ? EOS_DEQUEUE_TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || System.nanoTime() > deadline) {
+                    return;
+                }
+                continue;
+            }
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                outputFormat = encoder.getOutputFormat();
+                continue;
+            }
+            if (index < 0) {
+                continue;
+            }
+
+            ByteBuffer data = encoder.getOutputBuffer(index);
+            if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                // 编码参数已包含在outputFormat中
+                bufferInfo.size = 0;
+            }
+            if (bufferInfo.size > 0 && data != null) {
+                writeVideoSample(data, bufferInfo);
+            }
+            encoder.releaseOutputBuffer(index, false);
+            if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                return;
+            }
+        }
+    }
+
+    private void writeVideoSample(ByteBuffer data, MediaCodec.BufferInfo info) {
+        boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        if (muxer != null && !rotatePending
+                && info.presentationTimeUs - segmentStartUs >= config.segmentDurationMs * 1000) {
+            // 到了分段时长，请求关键帧，从关键帧开始切换到新文件
+            rotatePending = true;
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            encoder.setParameters(params);
+        }
+        if (keyFrame && (muxer == null || rotatePending)) {
+            closeSegment();
+            openSegment(info.presentationTimeUs);
+        }
+        if (muxer == null) {
+            // 第一个关键帧之前的帧无法单独解码
+            return;
+        }
+
+        info.presentationTimeUs = Math.max(lastVideoUs, info.presentationTimeUs - segmentStartUs);
+        lastVideoUs = info.presentationTimeUs;
+        data.position(info.offset);
+        data.limit(info.offset + info.size);
+        try {
+            muxer.writeSampleData(videoTrack, data, info);
+            encodedFrames++;
+        } catch (Exception e) {
+            Log.e(TAG, "写入视频帧失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 开始新的分段，写入分段开始前到达的书签
+     */
+    private void openSegment(long startUs) {
+        if (outputFormat == null) {
+            Log.e(TAG, "编码器输出格式未知，无法开始分段");
+            return;
+        }
+        String name = "rec_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault()).format(new Date());
+        File video = new File(folder, name + ".mp4");
+        try {
+            muxer = new MediaMuxer(video.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            videoTrack = muxer.addTrack(outputFormat);
+            bookmarkTrack = -1;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                MediaFormat bookmarkFormat = new MediaFormat();
+                bookmarkFormat.setString(MediaFormat.KEY_MIME, BOOKMARK_MIME_TYPE);
+                bookmarkTrack = muxer.addTrack(bookmarkFormat);
+            }
+            muxer.start();
+        } catch (Exception e) {
+            Log.e(TAG, "创建录屏分段失败: " + e.getMessage(), e);
+            if (muxer != null) {
+                muxer.release();
+                muxer = null;
+            }
+            return;
+        }
+
+        segmentFile = video;
+        segmentStartUs = startUs;
+        lastVideoUs = 0;
+        lastBookmarkUs = 0;
+        rotatePending = false;
+        bookmarkFile = new File(folder, name + ".vtt");
+        try {
+            bookmarkWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(bookmarkFile), UTF_8));
+            bookmarkWriter.write("WEBVTT\n\n");
+            bookmarkWriter.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "创建书签文件失败: " + e.getMessage());
+            bookmarkWriter = null;
+        }
+        Log.d(TAG, "开始录屏分段: " + video.getName());
+
+        for (Bookmark bookmark : pendingBookmarks) {
+            writeBookmark(bookmark.timeUs, bookmark.label);
+        }
+        pendingBookmarks.clear();
+    }
+
+    /**
+     * 结束当前分段，并按保留时长删除旧分段
+     */
+    private void closeSegment() {
+        if (muxer == null) {
+            return;
+        }
+        boolean finished = true;
+        try {
+            muxer.stop();
+        } catch (Exception e) {
+            // 没有写入任何帧时stop会抛异常，未正常结束的MP4无法播放
+            Log.e(TAG, "结束录屏分段失败: " + e.getMessage());
+            finished = false;
+        }
+        muxer.release();
+        muxer = null;
+        if (bookmarkWriter != null) {
+            try {
+                bookmarkWriter.close();
+            } catch (IOException e) {
+                Log.e(TAG, "关闭书签文件失败: " + e.getMessage());
+            }
+            bookmarkWriter = null;
+        }
+
+        if (!finished) {
+            if (segmentFile.exists() && !segmentFile.delete()) {
+                Log.w(TAG, "删除无效录屏分段失败: " + segmentFile.getName());
+            }
+            if (bookmarkFile != null && bookmarkFile.exists() && !bookmarkFile.delete()) {
+                Log.w(TAG, "删除书签文件失败: " + bookmarkFile.getName());
+            }
+            Log.w(TAG, "录屏分段未正常结束，已丢弃: " + segmentFile.getName());
+            return;
+        }
+
+        synchronized (segments) {
+            segments.addLast(new Segment(segmentFile, bookmarkFile, lastVideoUs));
+            Log.d(TAG, "录屏分段已保存: " + segmentFile.getName() + "，时长: " + lastVideoUs / 1000 + "ms");
+            enforceKeepDuration();
+        }
+    }
+
+    /**
+     * 环形缓冲：删除最旧的分段，只要剩余分段仍覆盖保留时长
+     */
+    private void enforceKeepDuration() {
+        if (config.keepDurationMs <= 0) {
+            return;
+        }
+        long totalUs = 0;
+        for (Segment segment : segments) {
+            totalUs += segment.durationUs;
+        }
+        while (segments.size() > 1 && totalUs - segments.peekFirst().durationUs >= config.keepDurationMs * 1000) {
+            Segment oldest = segments.pollFirst();
+            totalUs -= oldest.durationUs;
+            if (!oldest.video.delete() || (oldest.bookmarks.exists() && !oldest.bookmarks.delete())) {
+                Log.w(TAG, "删除旧录屏分段失败: " + oldest.video.getName());
+            } else {
+                Log.d(TAG, "已删除旧录屏分段: " + oldest.video.getName());
+            }
+        }
+    }
+
+    /**
+     * 写入书签，在录屏线程中调用；分段尚未开始时先暂存
+     */
+    private void writeBookmark(long timeUs, String label) {
+        if (muxer == null) {
+            pendingBookmarks.add(new Bookmark(timeUs, label));
+            return;
+        }
+        long ptsUs = Math.max(lastBookmarkUs, timeUs - segmentStartUs);
+        lastBookmarkUs = ptsUs;
+
+        if (bookmarkTrack >= 0) {
+            byte[] bytes = label.getBytes(UTF_8);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            info.set(0, bytes.length, ptsUs, 0);
+            try {
+                muxer.writeSampleData(bookmarkTrack, ByteBuffer.wrap(bytes), info);
+            } catch (Exception e) {
+                Log.e(TAG, "写入书签轨道失败: " + e.getMessage());
+            }
+        }
+        if (bookmarkWriter != null) {
+            try {
+                long startMs = ptsUs / 1000;
+                bookmarkWriter.write(formatCueTime(startMs) + " --> " + formatCueTime(startMs + BOOKMARK_CUE_MS) + "\n");
+                bookmarkWriter.write(label.replace("\n", " ") + "\n\n");
+                bookmarkWriter.flush();
+            } catch (IOException e) {
+                Log.e(TAG, "写入书签文件失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String formatCueTime(long ms) {
+        return String.format(Locale.US, "%02d:%02d:%02d.%03d",
+                ms / 3600000, (ms / 60000) % 60, (ms / 1000) % 60, ms % 1000);
+    }
+
+    private void releaseEncoder() {
+        synchronized (surfaceLock) {
+            if (inputSurface != null) {
+                inputSurface.release();
+                inputSurface = null;
+            }
+        }
+        if (encoder != null) {
+            try {
+                encoder.stop();
+            } catch (Exception e) {
+                Log.w(TAG, "停止编码器失败: " + e.getMessage());
+            }
+            encoder.release();
+            encoder = null;
+        }
+    }
+}
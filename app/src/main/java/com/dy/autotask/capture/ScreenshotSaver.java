@@ -0,0 +1,615 @@
+package com.dy.autotask.capture;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 截图异步编码保存器
+ *
+ * 截图的编码和写盘放到后台线程执行，调用方（例如任务步骤）提交后立即返回，
+ * 通过回调或Future获取保存路径。
+ *
+ * 队列有上限：队列满时丢弃最旧的待保存请求；同一mergeKey的待保存请求会合并，
+ * 只保存最新的一帧，所有等待者都得到这次保存的结果。
+ */
+public class ScreenshotSaver {
+    private static final String TAG = "ScreenshotSaver";
+
+    // 最多排队的保存请求数
+    private static final int MAX_PENDING = 4;
+
+    // 文件写入缓冲区大小
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile ScreenshotSaver instance;
+
+    /**
+     * 保存格式
+     */
+    public enum Format {
+        PNG(".png"),                // 无损，编码最慢
+        WEBP_LOSSLESS(".webp"),     // 无损，体积明显小于PNG（API 29以下没有无损WEBP，改存PNG）
+        JPEG(".jpg"),               // 有损，编码最快
+        RAW(".rgba");               // 原始RGBA像素，不编码
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * 保存选项
+     */
+    public static class Options {
+        private Format format = Format.PNG;
+        private int quality = 90;
+        private float scale = 1f;
+        private String mergeKey;
+
+        public Options format(Format format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * 编码质量（0-100），仅对JPEG有效
+         */
+        public Options quality(int quality) {
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * 保存前缩放比例（0-1]，小于1时先缩小再编码
+         */
+        public Options scale(float scale) {
+            this.scale = scale;
+            return this;
+        }
+
+        /**
+         * 合并键：队列中已有相同键的待保存请求时，用新帧替换旧帧，只保存一次
+         */
+        public Options mergeKey(String mergeKey) {
+            this.mergeKey = mergeKey;
+            return this;
+        }
+
+        /**
+         * 实际使用的保存格式
+         * API 29以下的WEBP编码器只有有损模式（质量100也是有损），WEBP_LOSSLESS改存PNG
+         */
+        public Format getFormat() {
+            if (format == Format.WEBP_LOSSLESS && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                return Format.PNG;
+            }
+            return format;
+        }
+
+        /**
+         * 输出内容的描述：实际格式、输出尺寸和影响编码结果的质量参数
+         * 描述相同的两次保存，对相同的帧会得到相同的文件内容
+         *
+         * @param width 帧宽度
+         * @param height 帧高度
+         * @return 描述，如 "JPEG:540x1200:q90"
+         */
+        String describeOutput(int width, int height) {
+            Format actual = getFormat();
+            String size = scaledSize(width, scale) + "x" + scaledSize(height, scale);
+            return actual == Format.JPEG ? actual + ":" + size + ":q" + quality : actual + ":" + size;
+        }
+    }
+
+    /**
+     * 编码前后在保存线程中调用的钩子（截图目录用它做去重和登记）
+     */
+    interface SaveHook {
+        /**
+         * 编码前调用
+         *
+         * @return 非null时表示已用其他方式得到结果文件（例如硬链接到相同的截图），跳过编码，
+         *         返回值作为保存结果；null表示正常编码
+         */
+        String beforeEncode(ScreenFrame frame, File file, Options options) throws IOException;
+
+        /**
+         * 编码写盘成功后调用
+         */
+        void afterEncode(File file);
+    }
+
+    /**
+     * 保存结果回调（在保存线程中回调）
+     */
+    public interface SaveCallback {
+        void onSaved(String filePath);
+
+        void onFailed(Exception e);
+    }
+
+    /**
+     * 保存请求的结果
+     */
+    public static class SaveFuture implements Future<String> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final SaveCallback callback;
+        private volatile String filePath;
+        private volatile Exception error;
+        private volatile boolean cancelled = false;
+        // 所属的保存器和请求，取消时从队列中移除
+        private volatile ScreenshotSaver saver;
+        private volatile SaveJob job;
+
+        SaveFuture(SaveCallback callback) {
+            this.callback = callback;
+        }
+
+        void attach(ScreenshotSaver saver, SaveJob job) {
+            this.saver = saver;
+            this.job = job;
+        }
+
+        void complete(String path, Exception e) {
+            if (latch.getCount() == 0) {
+                return;
+            }
+            filePath = path;
+            error = e;
+            latch.countDown();
+            if (callback != null) {
+                try {
+                    if (e == null) {
+                        callback.onSaved(path);
+                    } else {
+                        callback.onFailed(e);
+                    }
+                } catch (Exception callbackError) {
+                    Log.e(TAG, "保存回调异常: " + callbackError.getMessage(), callbackError);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (latch.getCount() == 0) {
+                return false;
+            }
+            cancelled = true;
+            if (saver != null) {
+                saver.detach(this);
+            }
+            complete(null, new CancellationException("保存请求已取消"));
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public String get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return getResult();
+        }
+
+        @Override
+        public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException("等待截图保存超时");
+            }
+            return getResult();
+        }
+
+        private String getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException("保存请求已取消");
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return filePath;
+        }
+    }
+
+    /**
+     * 待保存请求
+     */
+    private static class SaveJob {
+        private ScreenFrame frame;
+        private final File file;
+        private final Options options;
+        private final SaveHook hook;
+        private final List<SaveFuture> futures = new ArrayList<>();
+
+        SaveJob(ScreenFrame frame, File file, Options options, SaveHook hook) {
+            this.frame = frame;
+            this.file = file;
+            this.options = options;
+            this.hook = hook;
+        }
+
+        void fail(Exception e) {
+            if (frame != null) {
+                frame.release();
+                frame = null;
+            }
+            for (SaveFuture future : futures) {
+                future.complete(null, e);
+            }
+        }
+    }
+
+    private final ArrayDeque<SaveJob> pendingJobs = new ArrayDeque<>();
+    private Thread workerThread;
+    private long droppedCount = 0;
+    private long mergedCount = 0;
+
+    private ScreenshotSaver() {
+    }
+
+    public static ScreenshotSaver getInstance() {
+        if (instance == null) {
+            synchronized (ScreenshotSaver.class) {
+                if (instance == null) {
+                    instance = new ScreenshotSaver();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 提交屏幕帧保存请求
+     * 保存器会持有帧的一次引用，调用方提交后可以立即释放自己的引用
+     *
+     * @param frame 屏幕帧
+     * @param file 目标文件
+     * @param options 保存选项（为null时使用默认选项）
+     * @param callback 结果回调（可为null）
+     * @return 保存结果
+     */
+    public SaveFuture save(ScreenFrame frame, File file, Options options, SaveCallback callback) {
+        return save(frame, file, options, null, callback);
+    }
+
+    /**
+     * 提交屏幕帧保存请求，编码前后调用钩子
+     * 合并到已有请求时沿用已有请求的钩子
+     */
+    SaveFuture save(ScreenFrame frame, File file, Options options, SaveHook hook, SaveCallback callback) {
+        SaveFuture future = new SaveFuture(callback);
+        if (frame == null || file == null) {
+            future.complete(null, new IllegalArgumentException("帧或目标文件为null"));
+            return future;
+        }
+        Options opts = options != null ? options : new Options();
+
+        SaveJob dropped = null;
+        synchronized (pendingJobs) {
+            SaveJob merged = findMergeTarget(opts.mergeKey);
+            if (merged != null) {
+                // 合并：用新帧替换旧帧，沿用旧请求的目标文件
+                merged.frame.release();
+                merged.frame = frame.retain();
+                merged.futures.add(future);
+                future.attach(this, merged);
+                mergedCount++;
+                Log.d(TAG, "合并待保存截图: " + opts.mergeKey);
+                return future;
+            }
+
+            if (pendingJobs.size() >= MAX_PENDING) {
+                dropped = pendingJobs.pollFirst();
+                droppedCount++;
+            }
+
+            SaveJob job = new SaveJob(frame.retain(), file, opts, hook);
+            job.futures.add(future);
+            future.attach(this, job);
+            pendingJobs.addLast(job);
+            ensureWorker();
+            pendingJobs.notifyAll();
+        }
+
+        if (dropped != null) {
+            Log.w(TAG, "保存队列已满，丢弃最旧的截图: " + dropped.file.getName());
+            dropped.fail(new RejectedExecutionException("保存队列已满，请求被丢弃"));
+        }
+        return future;
+    }
+
+    /**
+     * 提交Bitmap保存请求
+     * Bitmap的所有权转移给保存器，保存完成后会被回收，提交后调用方不能再使用
+     *
+     * @param bitmap 待保存的Bitmap
+     * @param file 目标文件
+     * @param options 保存选项（为null时使用默认选项）
+     * @param callback 结果回调（可为null）
+     * @return 保存结果
+     */
+    public SaveFuture save(Bitmap bitmap, File file, Options options, SaveCallback callback) {
+        if (bitmap == null) {
+            SaveFuture future = new SaveFuture(callback);
+            future.complete(null, new IllegalArgumentException("Bitmap为null"));
+            return future;
+        }
+        ScreenFrame frame = new ScreenFrame(bitmap, ScreenFrame.Source.MEDIA_PROJECTION);
+        try {
+            return save(frame, file, options, callback);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 取消单个请求：请求还在排队时移除它，没有其他等待者的请求直接出队并释放帧
+     * （已经开始保存的请求不受影响）
+     */
+    private void detach(SaveFuture future) {
+        SaveJob removed = null;
+        synchronized (pendingJobs) {
+            SaveJob job = future.job;
+            if (job == null || !pendingJobs.contains(job)) {
+                return;
+            }
+            job.futures.remove(future);
+            if (job.futures.isEmpty()) {
+                pendingJobs.remove(job);
+                removed = job;
+            }
+        }
+        if (removed != null) {
+            Log.d(TAG, "取消待保存截图: " + removed.file.getName());
+            removed.fail(new CancellationException("保存请求已取消"));
+        }
+    }
+
+    private SaveJob findMergeTarget(String mergeKey) {
+        if (mergeKey == null) {
+            return null;
+        }
+        for (SaveJob job : pendingJobs) {
+            if (mergeKey.equals(job.options.mergeKey)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 启动保存线程（调用方需持有pendingJobs锁）
+     */
+    private void ensureWorker() {
+        if (workerThread != null && workerThread.isAlive()) {
+            return;
+        }
+        workerThread = new Thread(this::runWorker, "ScreenshotSaver");
+        workerThread.setPriority(Thread.MIN_PRIORITY);
+        workerThread.start();
+    }
+
+    private void runWorker() {
+        while (true) {
+            SaveJob job;
+            synchronized (pendingJobs) {
+                if (pendingJobs.isEmpty()) {
+                    try {
+                        // 空闲一段时间后结束线程，下次提交时重新启动
+                        pendingJobs.wait(30000);
+                    } catch (InterruptedException e) {
+                        workerThread = null;
+                        return;
+                    }
+                    if (pendingJobs.isEmpty()) {
+                        workerThread = null;
+                        return;
+                    }
+                }
+                job = pendingJobs.pollFirst();
+            }
+            processJob(job);
+        }
+    }
+
+    private void processJob(SaveJob job) {
+        long start = SystemClock.uptimeMillis();
+        try {
+            String path = job.hook != null ? job.hook.beforeEncode(job.frame, job.file, job.options) : null;
+            if (path == null) {
+                path = encodeToFile(job.frame, job.file, job.options);
+                Log.d(TAG, "截图保存成功: " + path + "，格式: " + job.options.getFormat()
+                        + "，耗时: " + (SystemClock.uptimeMillis() - start) + "ms");
+                if (job.hook != null) {
+                    job.hook.afterEncode(job.file);
+                }
+            }
+            job.frame.release();
+            job.frame = null;
+            for (SaveFuture future : job.futures) {
+                future.complete(path, null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "截图保存失败: " + e.getMessage(), e);
+            job.fail(e);
+        }
+    }
+
+    /**
+     * 编码并写入文件
+     */
+    private String encodeToFile(ScreenFrame frame, File file, Options options) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        Format format = options.getFormat();
+        if (format == Format.RAW && options.scale >= 1f) {
+            // 原始像素直接写盘，不经过Bitmap
+            PixelBuffer pixels = frame.getPixels();
+            if (pixels == null) {
+                throw new IOException("无法读取帧像素");
+            }
+            FileOutputStream fos = new FileOutputStream(file);
+            try {
+                FileChannel channel = fos.getChannel();
+                ByteBuffer buffer = pixels.getBuffer().duplicate();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                fos.close();
+            }
+            return file.getAbsolutePath();
+        }
+
+        Bitmap source = frame.toSoftwareBitmap();
+        if (source == null) {
+            throw new IOException("无法获取帧Bitmap");
+        }
+        Bitmap scaled = source;
+        if (options.scale > 0f && options.scale < 1f) {
+            int width = scaledSize(source.getWidth(), options.scale);
+            int height = scaledSize(source.getHeight(), options.scale);
+            scaled = Bitmap.createScaledBitmap(source, width, height, true);
+        }
+
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE);
+        try {
+            if (format == Format.RAW) {
+                ByteBuffer buffer = ByteBuffer.allocate(scaled.getByteCount());
+                scaled.copyPixelsToBuffer(buffer);
+                os.write(buffer.array(), 0, buffer.position());
+            } else if (!scaled.compress(toCompressFormat(format), toQuality(format, options.quality), os)) {
+                throw new IOException("Bitmap编码失败");
+            }
+            os.flush();
+        } finally {
+            os.close();
+            if (scaled != source) {
+                scaled.recycle();
+            }
+            if (source != frame.getBitmap()) {
+                source.recycle();
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * 按保存比例换算的边长（比例不在(0,1)内时不缩放）
+     */
+    private static int scaledSize(int size, float scale) {
+        return scale > 0f && scale < 1f ? Math.max(1, Math.round(size * scale)) : size;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat toCompressFormat(Format format) {
+        switch (format) {
+            case JPEG:
+                return Bitmap.CompressFormat.JPEG;
+            case WEBP_LOSSLESS:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    return Bitmap.CompressFormat.WEBP_LOSSLESS;
+                }
+                // API 29起质量100的WEBP为无损编码（更低版本已在Options.getFormat中改为PNG）
+                return Bitmap.CompressFormat.WEBP;
+            case PNG:
+            default:
+                return Bitmap.CompressFormat.PNG;
+        }
+    }
+
+    private static int toQuality(Format format, int quality) {
+        switch (format) {
+            case JPEG:
+                return quality;
+            case WEBP_LOSSLESS:
+                // 无损WEBP的quality表示压缩力度，100表示体积最小
+                return 100;
+            case PNG:
+            default:
+                // PNG为无损格式，quality参数被忽略
+                return 100;
+        }
+    }
+
+    /**
+     * 当前排队中的保存请求数
+     *
+     * @return 请求数
+     */
+    public int getPendingCount() {
+        synchronized (pendingJobs) {
+            return pendingJobs.size();
+        }
+    }
+
+    /**
+     * 因队列已满被丢弃的请求数
+     *
+     * @return 请求数
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 被合并的请求数
+     *
+     * @return 请求数
+     */
+    public long getMergedCount() {
+        return mergedCount;
+    }
+
+    /**
+     * 取消所有排队中的保存请求
+     */
+    public void cancelPending() {
+        List<SaveJob> jobs;
+        synchronized (pendingJobs) {
+            jobs = new ArrayList<>(pendingJobs);
+            pendingJobs.clear();
+        }
+        Iterator<SaveJob> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().fail(new CancellationException("保存请求已取消"));
+        }
+    }
+}
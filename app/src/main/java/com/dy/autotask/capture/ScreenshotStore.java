@@ -0,0 +1,580 @@
+package com.dy.autotask.capture;
+
+import android.system.Os;
+import android.util.Log;
+
+import com.dy.autotask.vision.ImageHash;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 截图目录管理
+ *
+ * 1. 去重：在保存线程中、编码前计算帧的内容校验和与感知哈希，与已保存的截图相同
+ *    （且保存格式、输出尺寸和质量也相同）时跳过编码，直接返回已有文件（SKIP）或为其创建硬链接（HARD_LINK）。
+ *    调用方指定了文件名的保存总是得到该文件名，SKIP 对它们按 HARD_LINK 处理。
+ *    默认只有像素完全相同才算重复；设置哈希容差后按感知哈希判断"看起来相同"
+ * 2. 保留策略：按总大小和保存时长限制目录，超出时按最近使用时间从旧到新淘汰
+ * 3. 索引文件：记录每个截图的大小、时间和哈希，统计目录信息时不需要列目录
+ *
+ * 淘汰和索引写入都在后台线程执行，多次变更会合并为一次
+ */
+public class ScreenshotStore {
+    private static final String TAG = "ScreenshotStore";
+
+    private static final String INDEX_FILE_NAME = ".screenshot_index";
+
+    // 默认目录总大小上限：200MB
+    private static final long DEFAULT_MAX_BYTES = 200L * 1024 * 1024;
+
+    // 默认截图保留时长：7天
+    private static final long DEFAULT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final Map<String, ScreenshotStore> instances = new HashMap<>();
+
+    /**
+     * 重复截图的处理方式
+     */
+    public enum DedupeMode {
+        OFF,        // 不去重
+        SKIP,       // 跳过保存，返回已有文件路径（仅对自动生成文件名的保存生效）
+        HARD_LINK   // 用新文件名为已有文件创建硬链接
+    }
+
+    /**
+     * 索引条目
+     */
+    public static class Entry {
+        private final String name;
+        private long size;
+        private final long createdMs;
+        private long lastAccessMs;
+        private final long hash;
+        private final long contentHash;
+        private final int width;
+        private final int height;
+        // 输出描述（格式、输出尺寸、质量），见 ScreenshotSaver.Options#describeOutput
+        private final String output;
+        // 硬链接指向的原文件名，null表示自身即为原文件
+        private String linkedTo;
+
+        Entry(String name, long size, long createdMs, long lastAccessMs, long hash, long contentHash,
+              int width, int height, String output, String linkedTo) {
+            this.name = name;
+            this.size = size;
+            this.createdMs = createdMs;
+            this.lastAccessMs = lastAccessMs;
+            this.hash = hash;
+            this.contentHash = contentHash;
+            this.width = width;
+            this.height = height;
+            this.output = output;
+            this.linkedTo = linkedTo;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 文件占用的字节数（硬链接不重复计算，为0）
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public long getCreatedMs() {
+            return createdMs;
+        }
+
+        public long getLastAccessMs() {
+            return lastAccessMs;
+        }
+
+        public boolean isLink() {
+            return linkedTo != null;
+        }
+
+        private boolean hasHash() {
+            return width > 0 && height > 0 && output != null;
+        }
+
+        String toLine() {
+            return name + "\t" + size + "\t" + createdMs + "\t" + lastAccessMs + "\t"
+                    + hash + "\t" + contentHash + "\t" + width + "\t" + height + "\t"
+                    + (linkedTo != null ? linkedTo : "-") + "\t" + (output != null ? output : "-");
+        }
+
+        static Entry fromLine(String line) {
+            String[] parts = line.split("\t");
+            // 旧版索引没有输出描述（9列），这些条目不参与去重
+            if (parts.length != 9 && parts.length != 10) {
+                return null;
+            }
+            try {
+                return new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                        Long.parseLong(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]),
+                        Integer.parseInt(parts[6]), Integer.parseInt(parts[7]),
+                        parts.length == 10 && !"-".equals(parts[9]) ? parts[9] : null,
+                        "-".equals(parts[8]) ? null : parts[8]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final File folder;
+    private final File indexFile;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final ExecutorService worker;
+    private final AtomicBoolean maintenancePending = new AtomicBoolean(false);
+
+    private volatile DedupeMode dedupeMode = DedupeMode.SKIP;
+    private volatile int hashTolerance = 0;
+    private volatile long maxBytes = DEFAULT_MAX_BYTES;
+    private volatile long maxAgeMs = DEFAULT_MAX_AGE_MS;
+
+    private ScreenshotStore(File folder) {
+        this.folder = folder;
+        this.indexFile = new File(folder, INDEX_FILE_NAME);
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ScreenshotStore");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        loadIndex();
+        scheduleMaintenance();
+    }
+
+    /**
+     * 获取目录对应的实例（每个目录一个）
+     *
+     * @param folder 截图目录
+     * @return 实例
+     */
+    public static ScreenshotStore getInstance(File folder) {
+        synchronized (instances) {
+            String key = folder.getAbsolutePath();
+            ScreenshotStore store = instances.get(key);
+            if (store == null) {
+                store = new ScreenshotStore(folder);
+                instances.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * 设置重复截图的处理方式（默认SKIP，调用方指定文件名的保存按HARD_LINK处理）
+     */
+    public void setDedupeMode(DedupeMode mode) {
+        this.dedupeMode = mode;
+    }
+
+    /**
+     * 设置判定为重复的最大感知哈希距离
+     * 默认0，表示只有像素完全相同才算重复；大于0时感知哈希距离不超过该值即算重复
+     *
+     * @param tolerance 0-64
+     */
+    public void setHashTolerance(int tolerance) {
+        this.hashTolerance = tolerance;
+    }
+
+    /**
+     * 设置保留策略
+     *
+     * @param maxBytes 目录总大小上限（字节，<=0表示不限制）
+     * @param maxAgeMs 截图保留时长（毫秒，<=0表示不限制）
+     */
+    public void setRetention(long maxBytes, long maxAgeMs) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+        scheduleMaintenance();
+    }
+
+    /**
+     * 异步保存屏幕帧，重复画面按去重方式处理
+     * 哈希计算、查重和硬链接都在保存线程中进行，不占用调用线程
+     *
+     * @param frame 屏幕帧（保存期间会持有一次引用）
+     * @param filename 文件名
+     * @param named 文件名是否由调用方指定（指定时结果文件一定是该文件名）
+     * @param options 保存选项
+     * @param callback 结果回调（可为null）
+     * @return 保存结果
+     */
+    public ScreenshotSaver.SaveFuture save(ScreenFrame frame, String filename, boolean named,
+                                           ScreenshotSaver.Options options,
+                                           ScreenshotSaver.SaveCallback callback) {
+        File file = new File(folder, filename);
+        return ScreenshotSaver.getInstance().save(frame, file, options, new DedupeHook(named), callback);
+    }
+
+    /**
+     * 保存线程中的查重和登记（一次保存请求一个实例）
+     */
+    private class DedupeHook implements ScreenshotSaver.SaveHook {
+        private final boolean named;
+        private long hash;
+        private long contentHash;
+        private int width;
+        private int height;
+        private String output;
+
+        DedupeHook(boolean named) {
+            this.named = named;
+        }
+
+        @Override
+        public String beforeEncode(ScreenFrame frame, File file, ScreenshotSaver.Options options) {
+            DedupeMode mode = dedupeMode;
+            PixelBuffer pixels = mode != DedupeMode.OFF ? frame.getPixels() : null;
+            if (pixels == null) {
+                releaseName(file);
+                return null;
+            }
+            hash = ImageHash.dHash(pixels);
+            contentHash = ImageHash.contentHash(pixels);
+            width = frame.getWidth();
+            height = frame.getHeight();
+            output = (options != null ? options : new ScreenshotSaver.Options()).describeOutput(width, height);
+            Entry duplicate = findDuplicate(hash, contentHash, width, height, output);
+            if (duplicate == null) {
+                releaseName(file);
+                return null;
+            }
+            return reuseDuplicate(duplicate, file, named ? DedupeMode.HARD_LINK : mode, this);
+        }
+
+        @Override
+        public void afterEncode(File file) {
+            long now = System.currentTimeMillis();
+            addEntry(new Entry(file.getName(), file.length(), now, now, hash, contentHash, width, height, output, null));
+        }
+    }
+
+    /**
+     * 用已有的相同截图代替编码
+     *
+     * @return 结果文件路径；硬链接失败时返回null，改为正常编码
+     */
+    private String reuseDuplicate(Entry duplicate, File file, DedupeMode mode, DedupeHook key) {
+        File original = new File(folder, duplicate.linkedTo != null ? duplicate.linkedTo : duplicate.name);
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            duplicate.lastAccessMs = now;
+        }
+
+        if (duplicate.name.equals(file.getName())) {
+            // 同名文件已经是这个画面
+            Log.d(TAG, "画面与同名截图相同，跳过保存: " + file.getName());
+            scheduleMaintenance();
+            return file.getAbsolutePath();
+        }
+        if (mode == DedupeMode.SKIP) {
+            Log.d(TAG, "画面与已有截图相同，跳过保存: " + original.getName());
+            scheduleMaintenance();
+            return original.getAbsolutePath();
+        }
+
+        releaseName(file);
+        try {
+            Os.link(original.getAbsolutePath(), file.getAbsolutePath());
+        } catch (Exception e) {
+            Log.w(TAG, "创建硬链接失败，改为正常保存: " + e.getMessage());
+            return null;
+        }
+        addEntry(new Entry(file.getName(), 0, now, now, key.hash, key.contentHash, key.width, key.height,
+                key.output, original.getName()));
+        Log.d(TAG, "画面与已有截图相同，创建硬链接: " + file.getName() + " -> " + original.getName());
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * 覆盖同名文件前先删除它并移除条目
+     * 同名文件可能与其他截图共用数据（硬链接），直接写入会改掉其他截图的内容
+     */
+    private void releaseName(File file) {
+        synchronized (entries) {
+            Entry old = entries.get(file.getName());
+            if (old != null) {
+                removeEntryLocked(old);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "删除同名截图失败: " + file.getName());
+        }
+    }
+
+    private Entry findDuplicate(long hash, long contentHash, int width, int height, String output) {
+        int tolerance = hashTolerance;
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (!entry.hasHash() || entry.width != width || entry.height != height
+                        || !output.equals(entry.output)) {
+                    continue;
+                }
+                boolean same = tolerance <= 0
+                        ? entry.hash == hash && entry.contentHash == contentHash
+                        : ImageHash.distance(entry.hash, hash) <= tolerance;
+                if (same) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 记录一个已经写好的文件（同步保存的截图）
+     *
+     * @param file 截图文件
+     */
+    public void record(File file) {
+        long now = System.currentTimeMillis();
+        addEntry(new Entry(file.getName(), file.length(), now, now, 0, 0, 0, 0, null, null));
+    }
+
+    private void addEntry(Entry entry) {
+        synchronized (entries) {
+            entries.put(entry.name, entry);
+        }
+        scheduleMaintenance();
+    }
+
+    /**
+     * 截图文件数量
+     */
+    public int getFileCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 截图占用的总字节数
+     */
+    public long getTotalBytes() {
+        synchronized (entries) {
+            long total = 0;
+            for (Entry entry : entries.values()) {
+                total += entry.size;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * 所有截图条目（按保存时间排序）
+     *
+     * @return 条目列表副本
+     */
+    public List<Entry> getEntries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries.values());
+        }
+    }
+
+    /**
+     * 删除所有截图
+     *
+     * @return 删除的文件数
+     */
+    public int clear() {
+        List<Entry> removed;
+        synchronized (entries) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+        }
+        int deletedCount = 0;
+        for (Entry entry : removed) {
+            if (new File(folder, entry.name).delete()) {
+                deletedCount++;
+            } else {
+                Log.w(TAG, "删除截图失败: " + entry.name);
+            }
+        }
+        scheduleMaintenance();
+        return deletedCount;
+    }
+
+    /**
+     * 在后台线程执行淘汰和索引写入，已有待执行任务时合并
+     */
+    private void scheduleMaintenance() {
+        if (maintenancePending.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                maintenancePending.set(false);
+                enforceRetention();
+                writeIndex();
+            });
+        }
+    }
+
+    /**
+     * 按保存时长和总大小淘汰截图
+     */
+    private void enforceRetention() {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            long now = System.currentTimeMillis();
+            long ageLimit = maxAgeMs;
+            long byteLimit = maxBytes;
+
+            List<Entry> byAccess = new ArrayList<>(entries.values());
+            Collections.sort(byAccess, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    return Long.compare(a.lastAccessMs, b.lastAccessMs);
+                }
+            });
+
+            long total = 0;
+            for (Entry entry : byAccess) {
+                total += entry.size;
+            }
+            for (Entry entry : byAccess) {
+                boolean expired = ageLimit > 0 && now - entry.createdMs > ageLimit;
+                boolean overSize = byteLimit > 0 && total > byteLimit;
+                if (!expired && !overSize) {
+                    continue;
+                }
+                total -= removeEntryLocked(entry);
+                evicted.add(entry);
+            }
+        }
+
+        for (Entry entry : evicted) {
+            if (!new File(folder, entry.name).delete()) {
+                Log.w(TAG, "淘汰截图失败: " + entry.name);
+            }
+        }
+        if (!evicted.isEmpty()) {
+            Log.d(TAG, "按保留策略淘汰 " + evicted.size() + " 个截图");
+        }
+    }
+
+    /**
+     * 移除条目；原文件被移除时，把大小转给它的第一个硬链接
+     * 调用方需持有entries锁
+     *
+     * @return 实际释放的字节数（还有硬链接时数据仍在，为0）
+     */
+    private long removeEntryLocked(Entry entry) {
+        entries.remove(entry.name);
+        if (entry.linkedTo != null) {
+            return 0;
+        }
+        Entry heir = null;
+        for (Entry other : entries.values()) {
+            if (entry.name.equals(other.linkedTo)) {
+                if (heir == null) {
+                    heir = other;
+                    heir.linkedTo = null;
+                    heir.size = entry.size;
+                } else {
+                    other.linkedTo = heir.name;
+                }
+            }
+        }
+        return heir != null ? 0 : entry.size;
+    }
+
+    /**
+     * 加载索引文件；索引不存在时列一次目录重建
+     */
+    private void loadIndex() {
+        if (indexFile.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry = Entry.fromLine(line);
+                    if (entry != null) {
+                        entries.put(entry.name, entry);
+                    }
+                }
+                Log.d(TAG, "已加载截图索引，共 " + entries.size() + " 个文件");
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "读取截图索引失败，重建索引: " + e.getMessage());
+                entries.clear();
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "关闭索引文件失败: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().startsWith("screenshot_")) {
+                long modified = file.lastModified();
+                entries.put(file.getName(), new Entry(file.getName(), file.length(), modified, modified, 0, 0, 0, 0, null, null));
+            }
+        }
+        Log.d(TAG, "已重建截图索引，共 " + entries.size() + " 个文件");
+    }
+
+    /**
+     * 写入索引文件（先写临时文件再替换，避免写到一半时损坏）
+     */
+    private void writeIndex() {
+        List<Entry> snapshot = getEntries();
+        if (!folder.exists() && !folder.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(folder, INDEX_FILE_NAME + ".tmp");
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            Iterator<Entry> iterator = snapshot.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next().toLine());
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (!tempFile.renameTo(indexFile)) {
+                Log.e(TAG, "替换截图索引失败");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "写入截图索引失败: " + e.getMessage());
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "关闭索引文件失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,16 +1,26 @@
 package com.dy.autotask.model;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
 /**
  * 分析历史记录数据模型
- * 用于保存分析结果的历史记录
+ * 用于保存分析结果的历史记录（持久化见 AnalysisHistoryStore）
+ *
+ * 图片不放在内存中，只记录缩略图文件的路径；
+ * 分页查询得到的记录只包含结果的开头部分（{@link #isResultComplete()} 为 false），完整结果按 id 单独读取
  */
 public class AnalysisHistory {
 
+    private long id;                 // 数据库 id
     private long timestamp;          // 时间戳
     private String prompt;           // 分析提示词
-    private String result;           // 分析结果
+    private String result;           // 分析结果（分页查询时只有开头部分）
+    private int resultLength;        // 完整结果的长度
+    private String model;            // 模型名称
     private String imagePath;        // 图片路径（可选）
-    private String imageBase64;      // 图片 Base64（用于显示缩略图）
+    private String thumbnailPath;    // 缩略图文件路径（WebP）
 
     public AnalysisHistory() {
     }
@@ -19,6 +29,15 @@ public class AnalysisHistory {
         this.timestamp = timestamp;
         this.prompt = prompt;
         this.result = result;
+        this.resultLength = result != null ? result.length() : 0;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
     }
 
     public long getTimestamp() {
@@ -45,6 +64,29 @@ public class AnalysisHistory {
         this.result = result;
     }
 
+    public int getResultLength() {
+        return resultLength;
+    }
+
+    public void setResultLength(int resultLength) {
+        this.resultLength = resultLength;
+    }
+
+    /**
+     * 结果是否完整（分页查询只读取结果的开头）
+     */
+    public boolean isResultComplete() {
+        return result != null && result.length() >= resultLength;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
     public String getImagePath() {
         return imagePath;
     }
@@ -53,12 +95,12 @@ public class AnalysisHistory {
         this.imagePath = imagePath;
     }
 
-    public String getImageBase64() {
-        return imageBase64;
+    public String getThumbnailPath() {
+        return thumbnailPath;
     }
 
-    public void setImageBase64(String imageBase64) {
-        this.imageBase64 = imageBase64;
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
     }
 
     /**
@@ -74,6 +116,15 @@ public class AnalysisHistory {
         return String.format("%02d:%02d:%02d", hours, minutes, secs);
     }
 
+    /**
+     * 获取本地日期时间文本
+     *
+     * @return 日期时间文本，如 "05-20 14:30"
+     */
+    public String getDateTimeText() {
+        return new SimpleDateFormat("MM-dd HH:mm", Locale.getDefault()).format(new Date(timestamp));
+    }
+
     /**
      * 获取提示词的摘要（最多 50 字）
      *
@@ -101,9 +152,10 @@ public class AnalysisHistory {
     @Override
     public String toString() {
         return "AnalysisHistory{" +
-                "timestamp=" + timestamp +
+                "id=" + id +
+                ", timestamp=" + timestamp +
                 ", prompt='" + prompt + '\'' +
-                ", resultLength=" + (result != null ? result.length() : 0) +
+                ", resultLength=" + resultLength +
                 '}';
     }
 }
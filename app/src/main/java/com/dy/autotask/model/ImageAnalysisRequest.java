@@ -16,6 +16,10 @@ public class ImageAnalysisRequest {
     @SerializedName("messages")
     private List<Message> messages;
 
+    // 是否流式返回（为 null 时不序列化，使用接口默认的非流式）
+    @SerializedName("stream")
+    private Boolean stream;
+
     public ImageAnalysisRequest() {
         this.messages = new ArrayList<>();
     }
@@ -45,6 +49,14 @@ public class ImageAnalysisRequest {
         this.messages.add(message);
     }
 
+    public Boolean getStream() {
+        return stream;
+    }
+
+    public void setStream(Boolean stream) {
+        this.stream = stream;
+    }
+
     /**
      * 消息体
      */
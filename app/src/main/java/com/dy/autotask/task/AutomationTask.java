@@ -1,14 +1,30 @@
 package com.dy.autotask.task;
 
 import android.accessibilityservice.AccessibilityService;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Toast;
 
 import com.dy.autotask.AccessibilityServiceUtil;
+import com.dy.autotask.capture.CaptureSession;
+import com.dy.autotask.capture.FrameStream;
+import com.dy.autotask.capture.PixelBuffer;
+import com.dy.autotask.capture.ScreenFrame;
+import com.dy.autotask.capture.ScreenRecorder;
+import com.dy.autotask.capture.ScreenshotSaver;
+import com.dy.autotask.utils.GLMImageAnalysisTool;
+import com.dy.autotask.utils.ScreenshotUtil;
+import com.dy.autotask.vision.ColorFinder;
+import com.dy.autotask.vision.ImageLocator;
+import com.dy.autotask.vision.ScreenStabilityDetector;
+import com.dy.autotask.vision.TemplateMatcher;
+import com.dy.autotask.vision.VisionTargetLocator;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,6 +38,18 @@ import java.util.concurrent.TimeUnit;
 public class AutomationTask implements Runnable {
     private static final String TAG = "AutomationTask";
     
+    // 找色未命中时重新截图的间隔
+    private static final long COLOR_POLL_INTERVAL_MS = 100;
+    
+    // 等待画面稳定时订阅帧流的最大帧率
+    private static final float STABLE_STREAM_FPS = 15f;
+    
+    // 等待画面稳定时检查稳定状态的间隔
+    private static final long STABLE_CHECK_INTERVAL_MS = 50;
+    
+    // 没有帧流时重新截图的间隔
+    private static final long STABLE_POLL_INTERVAL_MS = 200;
+    
     // 任务名称
     private String taskName;
     
@@ -37,6 +65,9 @@ public class AutomationTask implements Runnable {
     // 任务超时时间（毫秒）
     private long timeoutMs = 30000; // 默认30秒
     
+    // 任务截止时间（SystemClock.uptimeMillis），开始执行时根据超时时间计算
+    private volatile long deadlineUptimeMs = 0;
+    
     // 当前执行的步骤索引
     private int currentStepIndex = 0;
     
@@ -52,6 +83,9 @@ public class AutomationTask implements Runnable {
     // AccessibilityService引用
     private AccessibilityServiceUtil accessibilityService;
     
+    // 截图工具（首次截图时创建）
+    private ScreenshotUtil screenshotUtil;
+    
     /**
      * 构造函数
      * @param taskName 任务名称
@@ -331,6 +365,198 @@ public class AutomationTask implements Runnable {
         return this;
     }
     
+    /**
+     * 链式调用：截图留证（PNG，文件名自动生成）
+     * 只等待截图完成，编码和写盘在后台进行，不阻塞后续步骤
+     * @return 当前任务实例
+     */
+    public AutomationTask takeScreenshot() {
+        return takeScreenshot(null, ScreenshotSaver.Format.PNG);
+    }
+    
+    /**
+     * 链式调用：截图留证
+     * @param filename 文件名（为null时自动生成）
+     * @param format 保存格式
+     * @return 当前任务实例
+     */
+    public AutomationTask takeScreenshot(String filename, ScreenshotSaver.Format format) {
+        String data = (filename != null ? filename : "") + "|" + format.name();
+        actions.add(new TaskAction(TaskActionType.TAKE_SCREENSHOT, data));
+        return this;
+    }
+    
+    /**
+     * 链式调用：截取元素区域（验证码、价格标签、二维码等）
+     * @param elementId 元素标识
+     * @param elementType 元素类型
+     * @return 当前任务实例
+     */
+    public AutomationTask captureElement(String elementId, ElementType elementType) {
+        return captureElement(elementId, elementType, null, ScreenshotSaver.Format.PNG);
+    }
+    
+    /**
+     * 链式调用：截取元素区域
+     * @param elementId 元素标识
+     * @param elementType 元素类型
+     * @param filename 文件名（为null时自动生成）
+     * @param format 保存格式
+     * @return 当前任务实例
+     */
+    public AutomationTask captureElement(String elementId, ElementType elementType, String filename, ScreenshotSaver.Format format) {
+        String extraData = (filename != null ? filename : "") + "|" + format.name();
+        actions.add(new TaskAction(TaskActionType.CAPTURE_ELEMENT, elementId, extraData, elementType, 1500));
+        return this;
+    }
+    
+    /**
+     * 链式调用：判断坐标点的颜色
+     * @param x X坐标
+     * @param y Y坐标
+     * @param color 期望颜色（"#RRGGBB"）
+     * @param tolerance 每个通道允许的最大差值（0-255）
+     * @return 当前任务实例
+     */
+    public AutomationTask checkColor(int x, int y, String color, int tolerance) {
+        String data = x + "," + y + "," + color + "," + tolerance;
+        actions.add(new TaskAction(TaskActionType.CHECK_COLOR, data));
+        return this;
+    }
+    
+    /**
+     * 链式调用：全屏查找颜色
+     * @param color 目标颜色（"#RRGGBB"）
+     * @param tolerance 每个通道允许的最大差值（0-255）
+     * @return 当前任务实例
+     */
+    public AutomationTask findColor(String color, int tolerance) {
+        return findMultiColors(color, null, tolerance, null, 1500);
+    }
+    
+    /**
+     * 链式调用：等待某个颜色出现
+     * @param color 目标颜色（"#RRGGBB"）
+     * @param tolerance 每个通道允许的最大差值（0-255）
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 当前任务实例
+     */
+    public AutomationTask waitForColor(String color, int tolerance, long timeoutMs) {
+        return findMultiColors(color, null, tolerance, null, timeoutMs);
+    }
+    
+    /**
+     * 链式调用：多点找色，未找到时在超时时间内重复截图查找
+     * @param firstColor 第一个点的颜色（"#RRGGBB"）
+     * @param offsets 其余点相对第一个点的偏移和颜色（"dx,dy,#RRGGBB;dx,dy,#RRGGBB"，可为null）
+     * @param tolerance 每个通道允许的最大差值（0-255）
+     * @param region 查找区域 {左, 上, 右, 下}（为null时全屏）
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 当前任务实例
+     */
+    public AutomationTask findMultiColors(String firstColor, String offsets, int tolerance, int[] region, long timeoutMs) {
+        String regionData = region != null ? region[0] + "," + region[1] + "," + region[2] + "," + region[3] : "";
+        String extraData = (offsets != null ? offsets : "") + "|" + tolerance + "|" + regionData + "|1";
+        actions.add(new TaskAction(TaskActionType.FIND_COLOR, firstColor, extraData, ElementType.COORDINATES, timeoutMs));
+        return this;
+    }
+    
+    /**
+     * 链式调用：等待多点颜色出现
+     * @param firstColor 第一个点的颜色（"#RRGGBB"）
+     * @param offsets 其余点相对第一个点的偏移和颜色（"dx,dy,#RRGGBB;dx,dy,#RRGGBB"）
+     * @param tolerance 每个通道允许的最大差值（0-255）
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 当前任务实例
+     */
+    public AutomationTask waitForMultiColors(String firstColor, String offsets, int tolerance, long timeoutMs) {
+        return findMultiColors(firstColor, offsets, tolerance, null, timeoutMs);
+    }
+    
+    /**
+     * 链式调用：等待整个画面稳定（动画、加载结束）
+     * @param quietMs 画面持续无变化的时长（毫秒）
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 当前任务实例
+     */
+    public AutomationTask waitForScreenStable(long quietMs, long timeoutMs) {
+        return waitForScreenStable(null, quietMs, timeoutMs);
+    }
+    
+    /**
+     * 链式调用：等待指定区域画面稳定
+     * @param region 检测区域 {左, 上, 右, 下}（为null时检测整个画面）
+     * @param quietMs 画面持续无变化的时长（毫秒）
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 当前任务实例
+     */
+    public AutomationTask waitForScreenStable(int[] region, long quietMs, long timeoutMs) {
+        String regionData = region != null ? region[0] + "," + region[1] + "," + region[2] + "," + region[3] : "";
+        actions.add(new TaskAction(TaskActionType.WAIT_SCREEN_STABLE, String.valueOf(quietMs), regionData,
+                ElementType.COORDINATES, timeoutMs));
+        return this;
+    }
+    
+    /**
+     * 链式调用：用AI分析当前屏幕，结果中出现任意关键字即成功
+     * 使用流式分析，关键字一出现就结束请求，不等待完整回答
+     * 请求（包括重试）不会超过任务的剩余时间
+     * @param prompt 分析提示词
+     * @param keywords 关键字（至少一个，空白关键字被忽略）
+     * @return 当前任务实例
+     */
+    public AutomationTask analyzeScreen(String prompt, String... keywords) {
+        return analyzeScreen(0, prompt, keywords);
+    }
+    
+    /**
+     * 链式调用：用AI分析当前屏幕，限定本步骤的最长时间
+     * @param timeoutMs 本步骤超时时间（毫秒，0表示只受任务超时限制）
+     * @param prompt 分析提示词
+     * @param keywords 关键字（至少一个，空白关键字被忽略）
+     * @return 当前任务实例
+     * @throws IllegalArgumentException 没有非空白的关键字
+     */
+    public AutomationTask analyzeScreen(long timeoutMs, String prompt, String... keywords) {
+        StringBuilder keywordData = new StringBuilder();
+        for (String keyword : keywords != null ? keywords : new String[0]) {
+            if (keyword == null || keyword.trim().isEmpty()) {
+                continue;
+            }
+            if (keywordData.length() > 0) {
+                keywordData.append("|");
+            }
+            keywordData.append(keyword);
+        }
+        if (keywordData.length() == 0) {
+            throw new IllegalArgumentException("analyzeScreen 至少需要一个非空关键字");
+        }
+        actions.add(new TaskAction(TaskActionType.ANALYZE_SCREEN, prompt, keywordData.toString(),
+                ElementType.COORDINATES, timeoutMs));
+        return this;
+    }
+    
+    /**
+     * 链式调用：用AI按描述在屏幕上定位目标并点击（用于没有无障碍节点的画布、游戏界面）
+     * 同一画面、同一描述的定位结果会被缓存，重复执行时不再请求模型
+     * @param instruction 目标描述（如 "蓝色的支付按钮"）
+     * @return 当前任务实例
+     */
+    public AutomationTask clickByVision(String instruction) {
+        return clickByVision(instruction, 0);
+    }
+    
+    /**
+     * 链式调用：用AI按描述定位并点击，限定本步骤的最长时间
+     * @param instruction 目标描述
+     * @param timeoutMs 本步骤超时时间（毫秒，0表示只受任务超时限制）
+     * @return 当前任务实例
+     */
+    public AutomationTask clickByVision(String instruction, long timeoutMs) {
+        actions.add(new TaskAction(TaskActionType.CLICK_BY_VISION, instruction, ElementType.COORDINATES, timeoutMs));
+        return this;
+    }
+    
     /**
      * 设置任务超时时间
      * @param timeoutMs 超时时间（毫秒）
@@ -373,6 +599,7 @@ public class AutomationTask implements Runnable {
         
         // 使用CountDownLatch实现超时控制
         CountDownLatch latch = new CountDownLatch(1);
+        deadlineUptimeMs = SystemClock.uptimeMillis() + timeoutMs;
         
         // 在后台线程执行任务操作
         Thread taskThread = new Thread(() -> {
@@ -441,6 +668,9 @@ public class AutomationTask implements Runnable {
             currentStepIndex++;
         }
         
+        // 录屏中时在视频里标记步骤边界
+        ScreenRecorder.getInstance().addBookmark(taskName + " 第" + currentStepIndex + "步: " + action.getType() + " " + action.getData());
+        
         // 添加到任务管理器日志
         if (taskManager != null) {
             mainHandler.post(() -> {
@@ -497,6 +727,27 @@ public class AutomationTask implements Runnable {
             case FIND_TEXT:
                 executeFindTextAction(action);
                 break;
+            case TAKE_SCREENSHOT:
+                executeTakeScreenshotAction(action);
+                break;
+            case CAPTURE_ELEMENT:
+                executeCaptureElementAction(action);
+                break;
+            case CHECK_COLOR:
+                executeCheckColorAction(action);
+                break;
+            case FIND_COLOR:
+                executeFindColorAction(action);
+                break;
+            case WAIT_SCREEN_STABLE:
+                executeWaitScreenStableAction(action);
+                break;
+            case ANALYZE_SCREEN:
+                executeAnalyzeScreenAction(action);
+                break;
+            case CLICK_BY_VISION:
+                executeClickByVisionAction(action);
+                break;
             default:
                 throw new UnsupportedOperationException("不支持的操作类型: " + action.getType());
         }
@@ -518,6 +769,20 @@ public class AutomationTask implements Runnable {
             });
         }
         
+        // 图片类型没有无障碍节点，按匹配位置点击坐标
+        if (elementType == ElementType.IMAGE) {
+            TemplateMatcher.Match match = locateImage(elementId, timeoutMs);
+            if (!accessibilityService.tapAt(match.getCenterX(), match.getCenterY())) {
+                throw new RuntimeException("点击图片位置失败: " + elementId);
+            }
+            if (taskManager != null) {
+                mainHandler.post(() -> {
+                    taskManager.addLog("点击图片成功: " + elementId + " (" + match.getCenterX() + "," + match.getCenterY() + ")");
+                });
+            }
+            return;
+        }
+        
         // 根据元素类型查找并点击元素
         AccessibilityNodeInfo node = findNodeByType(elementId, elementType, timeoutMs);
         if (node != null) {
@@ -554,9 +819,13 @@ public class AutomationTask implements Runnable {
         }
         
         // 根据元素类型查找元素
-        AccessibilityNodeInfo node = findNodeByType(elementId, elementType, timeoutMs);
-        if (node == null) {
-            throw new RuntimeException("未找到元素: " + elementId);
+        if (elementType == ElementType.IMAGE) {
+            locateImage(elementId, timeoutMs);
+        } else {
+            AccessibilityNodeInfo node = findNodeByType(elementId, elementType, timeoutMs);
+            if (node == null) {
+                throw new RuntimeException("未找到元素: " + elementId);
+            }
         }
         // 元素找到了，添加成功日志
         if (taskManager != null) {
@@ -930,6 +1199,8 @@ public class AutomationTask implements Runnable {
                 return null;
             case DESCRIPTION:
                 return accessibilityService.findNodeByDescription(elementId, timeoutMs);
+            case IMAGE:
+                throw new IllegalArgumentException("图片类型没有对应的无障碍节点: " + elementId);
             default:
                 throw new IllegalArgumentException("不支持的元素类型: " + elementType);
         }
@@ -960,6 +1231,404 @@ public class AutomationTask implements Runnable {
         return status;
     }
     
+    /**
+     * 执行截图留证操作
+     * 截图完成后立即返回，保存结果通过日志输出
+     */
+    private void executeTakeScreenshotAction(TaskAction action) throws Exception {
+        String[] parts = action.getData().split("\\|", -1);
+        String filename = parts[0].isEmpty() ? null : parts[0];
+        ScreenshotSaver.Format format = ScreenshotSaver.Format.valueOf(parts[1]);
+        Log.d(TAG, "截图留证: " + (filename != null ? filename : "自动命名") + ", 格式: " + format);
+        
+        if (screenshotUtil == null) {
+            screenshotUtil = new ScreenshotUtil(accessibilityService);
+        }
+        
+        ScreenshotSaver.Options options = new ScreenshotSaver.Options().format(format);
+        ScreenshotSaver.SaveFuture future = screenshotUtil.captureScreenAsync(filename, options, createSaveLogCallback());
+        
+        if (future == null) {
+            throw new RuntimeException("截图失败");
+        }
+    }
+    
+    /**
+     * 执行截取元素区域操作
+     */
+    private void executeCaptureElementAction(TaskAction action) throws Exception {
+        String elementId = action.getData();
+        ElementType elementType = action.getElementType();
+        String[] parts = action.getExtraData().split("\\|", -1);
+        String filename = parts[0].isEmpty() ? null : parts[0];
+        ScreenshotSaver.Format format = ScreenshotSaver.Format.valueOf(parts[1]);
+        Log.d(TAG, "截取元素: " + elementId + ", 类型: " + elementType);
+        
+        AccessibilityNodeInfo node = findNodeByType(elementId, elementType, action.getTimeoutMs());
+        if (node == null) {
+            throw new RuntimeException("未找到要截取的元素: " + elementId);
+        }
+        
+        if (screenshotUtil == null) {
+            screenshotUtil = new ScreenshotUtil(accessibilityService);
+        }
+        
+        ScreenshotSaver.Options options = new ScreenshotSaver.Options().format(format);
+        ScreenshotSaver.SaveFuture future = screenshotUtil.captureElement(node, filename, options, createSaveLogCallback());
+        
+        if (future == null) {
+            throw new RuntimeException("截取元素失败: " + elementId);
+        }
+    }
+    
+    /**
+     * 创建把保存结果写入任务日志的回调
+     */
+    private ScreenshotSaver.SaveCallback createSaveLogCallback() {
+        return new ScreenshotSaver.SaveCallback() {
+            @Override
+            public void onSaved(String filePath) {
+                if (taskManager != null) {
+                    mainHandler.post(() -> {
+                        taskManager.addLog("截图已保存: " + filePath);
+                    });
+                }
+            }
+            
+            @Override
+            public void onFailed(Exception e) {
+                Log.e(TAG, "截图保存失败: " + e.getMessage());
+                if (taskManager != null) {
+                    mainHandler.post(() -> {
+                        taskManager.addLog("截图保存失败: " + e.getMessage());
+                    });
+                }
+            }
+        };
+    }
+    
+    /**
+     * 执行判断坐标点颜色操作
+     */
+    private void executeCheckColorAction(TaskAction action) throws Exception {
+        String[] parts = action.getData().split(",");
+        int x = Integer.parseInt(parts[0]);
+        int y = Integer.parseInt(parts[1]);
+        int color = ColorFinder.parseColor(parts[2]);
+        int tolerance = Integer.parseInt(parts[3]);
+        Log.d(TAG, "判断颜色: (" + x + "," + y + ") " + parts[2] + ", 容差: " + tolerance);
+        
+        ScreenFrame frame = captureTaskFrame();
+        try {
+            PixelBuffer pixels = frame.getPixels();
+            if (pixels == null || !ColorFinder.matchesAt(pixels, frame.toFrameX(x), frame.toFrameY(y), color, tolerance)) {
+                throw new RuntimeException("坐标颜色不匹配: (" + x + "," + y + ") " + parts[2]);
+            }
+        } finally {
+            frame.release();
+        }
+        
+        if (taskManager != null) {
+            mainHandler.post(() -> {
+                taskManager.addLog("坐标颜色匹配: (" + x + "," + y + ") " + parts[2]);
+            });
+        }
+    }
+    
+    /**
+     * 执行找色操作，未找到时在超时时间内重复截图查找
+     */
+    private void executeFindColorAction(TaskAction action) throws Exception {
+        String colorText = action.getData();
+        int firstColor = ColorFinder.parseColor(colorText);
+        String[] parts = action.getExtraData().split("\\|", -1);
+        ColorFinder.OffsetColor[] offsets = ColorFinder.parseOffsets(parts[0]);
+        int tolerance = Integer.parseInt(parts[1]);
+        int[] region = null;
+        if (!parts[2].isEmpty()) {
+            String[] bounds = parts[2].split(",");
+            region = new int[]{Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]),
+                    Integer.parseInt(bounds[2]), Integer.parseInt(bounds[3])};
+        }
+        int step = Integer.parseInt(parts[3]);
+        long timeoutMs = action.getTimeoutMs();
+        Log.d(TAG, "找色: " + colorText + ", 偏移点: " + (offsets != null ? offsets.length : 0) + ", 超时: " + timeoutMs);
+        
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        while (true) {
+            ScreenFrame frame = captureTaskFrame();
+            ColorFinder.Point point = null;
+            try {
+                PixelBuffer pixels = frame.getPixels();
+                if (pixels != null) {
+                    // 区域和偏移按屏幕坐标定义，降分辨率帧需要换算到帧坐标
+                    ColorFinder.OffsetColor[] frameOffsets = ColorFinder.scaleOffsets(offsets,
+                            frame.getScaleX(), frame.getScaleY());
+                    long start = System.nanoTime();
+                    point = region != null
+                            ? ColorFinder.findMultiColors(pixels, firstColor, frameOffsets, tolerance,
+                                    frame.toFrameX(region[0]), frame.toFrameY(region[1]),
+                                    frame.toFrameX(region[2]), frame.toFrameY(region[3]), step)
+                            : ColorFinder.findMultiColors(pixels, firstColor, frameOffsets, tolerance,
+                                    0, 0, pixels.getWidth(), pixels.getHeight(), step);
+                    Log.d(TAG, "找色耗时: " + (System.nanoTime() - start) / 1000 + "us");
+                    if (point != null && frame.isScaled()) {
+                        point = new ColorFinder.Point(frame.toScreenX(point.x), frame.toScreenY(point.y));
+                    }
+                }
+            } finally {
+                frame.release();
+            }
+            
+            if (point != null) {
+                ColorFinder.Point found = point;
+                if (taskManager != null) {
+                    mainHandler.post(() -> {
+                        taskManager.addLog("找到颜色: " + colorText + ", 位置: " + found);
+                    });
+                }
+                return;
+            }
+            if (isCancelled || SystemClock.uptimeMillis() + COLOR_POLL_INTERVAL_MS > deadline) {
+                throw new RuntimeException("未找到颜色: " + colorText);
+            }
+            Thread.sleep(COLOR_POLL_INTERVAL_MS);
+        }
+    }
+    
+    /**
+     * 执行等待画面稳定操作
+     * 有MediaProjection截图会话时订阅帧流逐帧检测，否则定时截图检测
+     */
+    private void executeWaitScreenStableAction(TaskAction action) throws Exception {
+        long quietMs = Long.parseLong(action.getData());
+        String regionData = action.getExtraData();
+        long timeoutMs = action.getTimeoutMs();
+        Log.d(TAG, "等待画面稳定: " + quietMs + "ms, 区域: " + (regionData.isEmpty() ? "全屏" : regionData) + ", 超时: " + timeoutMs);
+        
+        long start = SystemClock.uptimeMillis();
+        long deadline = start + timeoutMs;
+        CaptureSession session = ScreenshotUtil.obtainCaptureSession();
+        
+        // 区域按屏幕坐标定义，降分辨率截图时按渲染比例换算到帧坐标
+        ScreenStabilityDetector detector;
+        if (!regionData.isEmpty()) {
+            float scale = session != null ? session.getScale() : 1f;
+            String[] bounds = regionData.split(",");
+            detector = new ScreenStabilityDetector(Math.round(Integer.parseInt(bounds[0]) * scale),
+                    Math.round(Integer.parseInt(bounds[1]) * scale),
+                    Math.round(Integer.parseInt(bounds[2]) * scale),
+                    Math.round(Integer.parseInt(bounds[3]) * scale));
+        } else {
+            detector = new ScreenStabilityDetector();
+        }
+        if (session != null) {
+            // 以当前画面为基准，之后每个新帧都更新格子校验和；没有新帧说明画面没有变化
+            ScreenFrame first = session.acquireFrame(1000);
+            if (first != null) {
+                updateStabilityDetector(detector, first);
+                first.release();
+            }
+            FrameStream.Subscription subscription = session.subscribe(STABLE_STREAM_FPS,
+                    frame -> updateStabilityDetector(detector, frame));
+            try {
+                while (!detector.isStable(SystemClock.uptimeMillis(), quietMs)) {
+                    if (isCancelled || SystemClock.uptimeMillis() > deadline) {
+                        throw new RuntimeException("等待画面稳定超时");
+                    }
+                    Thread.sleep(STABLE_CHECK_INTERVAL_MS);
+                }
+            } finally {
+                subscription.cancel();
+            }
+        } else {
+            while (true) {
+                ScreenFrame frame = captureTaskFrame();
+                try {
+                    updateStabilityDetector(detector, frame);
+                } finally {
+                    frame.release();
+                }
+                if (detector.isStable(SystemClock.uptimeMillis(), quietMs)) {
+                    break;
+                }
+                if (isCancelled || SystemClock.uptimeMillis() > deadline) {
+                    throw new RuntimeException("等待画面稳定超时");
+                }
+                Thread.sleep(STABLE_POLL_INTERVAL_MS);
+            }
+        }
+        
+        long elapsed = SystemClock.uptimeMillis() - start;
+        if (taskManager != null) {
+            mainHandler.post(() -> {
+                taskManager.addLog("画面已稳定，等待 " + elapsed + "ms");
+            });
+        }
+    }
+    
+    /**
+     * 把一帧输入画面稳定检测器
+     */
+    private static void updateStabilityDetector(ScreenStabilityDetector detector, ScreenFrame frame) {
+        PixelBuffer pixels = frame.getPixels();
+        if (pixels != null) {
+            detector.update(pixels, frame.getTimestampMs());
+        }
+    }
+    
+    /**
+     * 执行AI分析屏幕操作
+     * 流式接收分析结果，出现任意关键字后立即结束请求
+     */
+    private void executeAnalyzeScreenAction(TaskAction action) throws Exception {
+        String prompt = action.getData();
+        List<String> keywordList = new ArrayList<>();
+        for (String keyword : action.getExtraData().split("\\|")) {
+            if (!keyword.trim().isEmpty()) {
+                keywordList.add(keyword);
+            }
+        }
+        if (keywordList.isEmpty()) {
+            throw new RuntimeException("AI分析屏幕没有关键字，无法判断结果");
+        }
+        String[] keywords = keywordList.toArray(new String[0]);
+        Log.d(TAG, "AI分析屏幕: " + prompt + ", 关键字: " + action.getExtraData());
+        
+        long start = SystemClock.uptimeMillis();
+        long deadline = stepDeadline(action);
+        String matched;
+        ScreenFrame frame = captureTaskFrame();
+        try {
+            Bitmap bitmap = frame.toSoftwareBitmap();
+            if (bitmap == null) {
+                throw new RuntimeException("截图失败，无法分析屏幕");
+            }
+            try {
+                matched = GLMImageAnalysisTool.analyzeUntilKeyword(bitmap, prompt, keywords, deadline);
+            } finally {
+                if (bitmap != frame.getBitmap()) {
+                    bitmap.recycle();
+                }
+            }
+        } finally {
+            frame.release();
+        }
+        
+        if (matched == null) {
+            throw new RuntimeException("分析结果中未出现关键字: " + action.getExtraData());
+        }
+        long elapsed = SystemClock.uptimeMillis() - start;
+        Log.d(TAG, "分析结果命中关键字: " + matched + "，耗时: " + elapsed + "ms");
+        if (taskManager != null) {
+            mainHandler.post(() -> taskManager.addLog("AI分析命中关键字: " + matched + "，耗时: " + elapsed + "ms"));
+        }
+    }
+    
+    /**
+     * 执行AI定位点击操作
+     * 截图后由视觉模型给出目标区域，用无障碍节点树校验（能校验时点击节点中心），再按坐标点击
+     */
+    private void executeClickByVisionAction(TaskAction action) throws Exception {
+        String instruction = action.getData();
+        Log.d(TAG, "AI定位点击: " + instruction);
+        
+        long start = SystemClock.uptimeMillis();
+        long deadline = stepDeadline(action);
+        Rect box;
+        int screenWidth;
+        int screenHeight;
+        ScreenFrame frame = captureTaskFrame();
+        try {
+            Bitmap bitmap = frame.toSoftwareBitmap();
+            if (bitmap == null) {
+                throw new RuntimeException("截图失败，无法定位目标");
+            }
+            VisionTargetLocator.Target target;
+            try {
+                target = VisionTargetLocator.getInstance().locate(bitmap, instruction, deadline);
+            } finally {
+                if (bitmap != frame.getBitmap()) {
+                    bitmap.recycle();
+                }
+            }
+            if (target == null) {
+                throw new RuntimeException("AI未找到目标: " + instruction);
+            }
+            // 归一化区域换算到帧坐标，降分辨率帧再换算到屏幕坐标
+            Rect frameBox = target.toRect(frame.getWidth(), frame.getHeight());
+            box = new Rect(frame.toScreenX(frameBox.left), frame.toScreenY(frameBox.top),
+                    frame.toScreenX(frameBox.right), frame.toScreenY(frameBox.bottom));
+            screenWidth = frame.toScreenX(frame.getWidth());
+            screenHeight = frame.toScreenY(frame.getHeight());
+        } finally {
+            frame.release();
+        }
+        
+        AccessibilityNodeInfo root = accessibilityService.getRootInActiveWindow();
+        VisionTargetLocator.TapPoint point;
+        try {
+            point = VisionTargetLocator.resolveTapPoint(root, box, screenWidth, screenHeight);
+        } finally {
+            if (root != null) {
+                root.recycle();
+            }
+        }
+        if (!accessibilityService.tapAt(point.x, point.y)) {
+            throw new RuntimeException("点击AI定位的位置失败: " + instruction);
+        }
+        
+        long elapsed = SystemClock.uptimeMillis() - start;
+        Log.d(TAG, "AI定位点击: " + instruction + " 区域 " + box + " 点击 " + point + "，耗时: " + elapsed + "ms");
+        if (taskManager != null) {
+            mainHandler.post(() -> taskManager.addLog("AI定位点击成功: " + instruction + " " + point + "，耗时: " + elapsed + "ms"));
+        }
+    }
+    
+    /**
+     * 计算步骤的截止时间：不晚于任务截止时间，步骤设置了超时时取两者中较早的
+     * @param action 任务操作
+     * @return 截止时间（SystemClock.uptimeMillis），0表示不限
+     */
+    private long stepDeadline(TaskAction action) {
+        long deadline = deadlineUptimeMs;
+        if (action.getTimeoutMs() > 0) {
+            long actionDeadline = SystemClock.uptimeMillis() + action.getTimeoutMs();
+            deadline = deadline > 0 ? Math.min(deadline, actionDeadline) : actionDeadline;
+        }
+        return deadline;
+    }
+    
+    /**
+     * 截取当前屏幕帧
+     * @return 屏幕帧（由调用方释放）
+     */
+    private ScreenFrame captureTaskFrame() {
+        if (screenshotUtil == null) {
+            screenshotUtil = new ScreenshotUtil(accessibilityService);
+        }
+        ScreenFrame frame = screenshotUtil.captureFrame();
+        if (frame == null) {
+            throw new RuntimeException("截图失败");
+        }
+        return frame;
+    }
+    
+    /**
+     * 按参考图片在屏幕上定位
+     * @param query 图片查询（格式见ImageLocator）
+     * @param timeoutMs 超时时间
+     * @return 匹配结果
+     */
+    private TemplateMatcher.Match locateImage(String query, long timeoutMs) throws Exception {
+        TemplateMatcher.Match match = ImageLocator.getInstance(accessibilityService).locate(query, timeoutMs);
+        if (match == null) {
+            throw new RuntimeException("未找到图片: " + query);
+        }
+        Log.d(TAG, "找到图片: " + query + ", 位置: " + match);
+        return match;
+    }
+    
     /**
      * 判断操作是否应该计入步骤索引
      * @param type 操作类型
@@ -1018,6 +1687,7 @@ public class AutomationTask implements Runnable {
      */
     private void notifyResult(TaskStatus status, String message) {
         Log.d(TAG, "任务 " + taskName + " 状态: " + message);
+        ScreenRecorder.getInstance().addBookmark(taskName + " " + message + "（第" + currentStepIndex + "步）");
         
         // 添加到任务管理器日志
         if (taskManager != null) {
@@ -1073,7 +1743,14 @@ public class AutomationTask implements Runnable {
         PRESS_POWER,    // 点击电源键
         LAUNCH_APP,     // 启动应用程序
         CLEAR_RECENT_APPS, // 清理后台应用
-        FIND_TEXT       // 查找文本
+        FIND_TEXT,      // 查找文本
+        TAKE_SCREENSHOT, // 截图留证
+        CAPTURE_ELEMENT, // 截取元素区域
+        CHECK_COLOR,    // 判断坐标点颜色
+        FIND_COLOR,     // 单点/多点找色
+        WAIT_SCREEN_STABLE, // 等待画面稳定
+        ANALYZE_SCREEN, // AI分析屏幕并匹配关键字
+        CLICK_BY_VISION // AI定位并点击
     }
     
     /**
@@ -1083,7 +1760,8 @@ public class AutomationTask implements Runnable {
         ID,             // 元素ID
         TEXT,           // 文本
         COORDINATES,    // 坐标
-        DESCRIPTION     // 描述
+        DESCRIPTION,    // 描述
+        IMAGE           // 参考图片（格式: 图片路径[|阈值[|左,上,右,下]]）
     }
     
     /**
@@ -165,6 +165,15 @@ public class AutomationTaskManager {
         }
     }
     
+    /**
+     * 等待已提交的日志全部写入文件（日志文件是异步写入的）
+     */
+    public void flushLog() {
+        if (taskLogFileWriter != null) {
+            taskLogFileWriter.flush();
+        }
+    }
+    
     /**
      * 根据消息内容确定颜色
      * @param message 消息内容
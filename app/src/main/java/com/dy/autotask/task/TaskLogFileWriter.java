@@ -1,32 +1,93 @@
 package com.dy.autotask.task;
 
 import android.content.Context;
-import android.os.Environment;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 任务日志文件写入器
- * 负责将任务日志写入应用私有文件夹，并按时间分割日志文件
+ * 负责将任务日志写入到应用私有文件夹，并按时间分割日志文件
+ *
+ * 写入是异步的：writeLog 只记下时间和内容放进无锁环形队列，不碰磁盘，可以在主线程和任务线程中频繁调用；
+ * 专用的写入线程批量取出日志，格式化后经缓冲写入文件，缓冲内容达到 FLUSH_BYTES 或距上次刷新超过
+ * FLUSH_INTERVAL_MS 时才刷新到文件。队列满时丢弃新日志并计数，写入线程随后在文件中记录丢弃条数。
+ *
+ * flush() / cleanup() 会等待写入线程把已提交的日志全部写入文件，shutdown() 写完后结束写入线程。
  */
 public class TaskLogFileWriter {
     private static final String TAG = "TaskLogFileWriter";
     private static final String LOG_FOLDER_NAME = "task_logs";
     
+    // 环形队列容量（必须是2的幂）
+    private static final int QUEUE_CAPACITY = 4096;
+    
+    // 队列中积压超过该条数时立即唤醒写入线程，否则等到定时刷新
+    private static final int WAKE_THRESHOLD = QUEUE_CAPACITY / 4;
+    
+    // 文件缓冲区大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // 未刷新的字符数达到该值时刷新
+    private static final int FLUSH_BYTES = 32 * 1024;
+    
+    // 有未刷新内容时，最长多久刷新一次
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    
+    // flush / cleanup / shutdown 最长等待时间
+    private static final long DRAIN_TIMEOUT_MS = 3000;
+    
     private Context context;
     private File logFolder;
-    private FileOutputStream currentOutputStream;
-    private String currentLogFileName;
+    
+    private final LogRingBuffer queue = new LogRingBuffer(QUEUE_CAPACITY);
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    // 写入线程无事可做、无限期休眠时为 true，此时提交日志需要唤醒它
+    private volatile boolean idle = false;
+    
+    // flush 请求（由 flushLock 保护）
+    private final Object flushLock = new Object();
+    private long flushRequested;
+    private long flushCompleted;
+    private boolean closeRequested;
+    
+    // 以下字段只在写入线程中访问
+    private Writer currentWriter;
+    private long currentFileStart;
+    private long currentFileEnd;
+    private int pendingChars;
+    private long lastFlushTime;
+    private final SimpleDateFormat fileNameFormat = new SimpleDateFormat("yyyyMMdd_HH", Locale.getDefault());
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final StringBuilder timeBuilder = new StringBuilder(32);
+    // 缓存当前秒的时间前缀 "[yyyy-MM-dd HH:mm:ss."，同一秒内的日志只补毫秒
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedSecondPrefix;
     
     public TaskLogFileWriter(Context context) {
         this.context = context;
         initLogFolder();
+        writerThread = new Thread(this::runWriter, "TaskLogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
     }
     
     /**
@@ -47,83 +108,345 @@ public class TaskLogFileWriter {
     }
     
     /**
-     * 写入日志到文件
+     * 写入日志到文件（异步，不等待磁盘）
      * @param message 日志消息
      */
     public void writeLog(String message) {
+        if (!running) {
+            return;
+        }
+        if (!queue.offer(System.currentTimeMillis(), message)) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (idle || queue.size() >= WAKE_THRESHOLD) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+    
+    /**
+     * 等待已提交的日志全部写入文件
+     */
+    public void flush() {
+        awaitDrain(false);
+    }
+    
+    /**
+     * 清理资源
+     * 等待已提交的日志写入文件后关闭当前文件，之后的日志会重新打开文件继续写入
+     */
+    public void cleanup() {
+        awaitDrain(true);
+    }
+    
+    /**
+     * 写完已提交的日志后结束写入线程，之后的日志被忽略
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writerThread);
         try {
-            // 获取当前时间对应的日志文件名
-            String logFileName = getLogFileNameForCurrentTime();
+            writerThread.join(DRAIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            Log.w(TAG, "等待日志写入线程结束超时");
+        }
+    }
+    
+    /**
+     * 获取日志文件夹路径
+     * @return 日志文件夹路径
+     */
+    public String getLogFolderPath() {
+        return logFolder != null ? logFolder.getAbsolutePath() : null;
+    }
+    
+    private void awaitDrain(boolean close) {
+        if (!writerThread.isAlive() || Thread.currentThread() == writerThread) {
+            return;
+        }
+        long target;
+        synchronized (flushLock) {
+            target = ++flushRequested;
+            if (close) {
+                closeRequested = true;
+            }
+        }
+        LockSupport.unpark(writerThread);
+        long deadline = SystemClock.uptimeMillis() + DRAIN_TIMEOUT_MS;
+        synchronized (flushLock) {
+            while (flushCompleted < target && writerThread.isAlive()) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    Log.w(TAG, "等待日志写入超时");
+                    return;
+                }
+                try {
+                    flushLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * 写入线程：批量取出日志写入缓冲，按大小或时间刷新
+     */
+    private void runWriter() {
+        lastFlushTime = SystemClock.uptimeMillis();
+        while (true) {
+            // 先读取停止和 flush 请求，再取出队列：请求之前放入的日志一定在这次 flush 中写出
+            boolean stopping = !running;
+            long requested;
+            boolean close;
+            synchronized (flushLock) {
+                requested = flushRequested;
+                close = closeRequested;
+                closeRequested = false;
+            }
+            drainQueue();
             
-            // 如果文件名发生变化，需要关闭当前流并打开新的流
-            if (!logFileName.equals(currentLogFileName)) {
-                closeCurrentStream();
-                currentLogFileName = logFileName;
-                openNewStream(logFileName);
+            long now = SystemClock.uptimeMillis();
+            if (requested != flushCompleted || stopping || pendingChars >= FLUSH_BYTES
+                    || (pendingChars > 0 && now - lastFlushTime >= FLUSH_INTERVAL_MS)) {
+                flushWriter();
+            }
+            if (close || stopping) {
+                closeCurrentWriter();
+            }
+            if (requested != flushCompleted) {
+                synchronized (flushLock) {
+                    flushCompleted = requested;
+                    flushLock.notifyAll();
+                }
+            }
+            if (stopping) {
+                Log.d(TAG, "日志写入线程已结束");
+                return;
             }
             
-            // 写入日志
-            if (currentOutputStream != null) {
-                String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault()).format(new Date());
-                String logEntry = "[" + timestamp + "] " + message + "\n";
-                currentOutputStream.write(logEntry.getBytes());
-                currentOutputStream.flush();
+            if (pendingChars > 0) {
+                // 有未刷新的内容，最多睡到刷新时间；期间积压过多会被提前唤醒
+                long waitMs = FLUSH_INTERVAL_MS - (SystemClock.uptimeMillis() - lastFlushTime);
+                if (waitMs > 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMs));
+                }
+            } else {
+                // 无事可做，休眠到下一条日志或 flush 请求
+                idle = true;
+                if (queue.size() == 0 && running && !hasFlushRequest()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
             }
-        } catch (Exception e) {
+        }
+    }
+    
+    private boolean hasFlushRequest() {
+        synchronized (flushLock) {
+            return flushRequested != flushCompleted;
+        }
+    }
+    
+    /**
+     * 取出队列中的全部日志写入缓冲
+     */
+    private void drainQueue() {
+        int dropped = droppedCount.getAndSet(0);
+        if (dropped > 0) {
+            append(System.currentTimeMillis(), "日志队列已满，丢弃了 " + dropped + " 条日志");
+        }
+        while (queue.poll()) {
+            append(queue.polledTime, queue.polledMessage);
+        }
+    }
+    
+    private void append(long timeMs, String message) {
+        try {
+            if (timeMs >= currentFileEnd || timeMs < currentFileStart || currentWriter == null) {
+                // 跨小时（或时钟回拨）时切换文件
+                closeCurrentWriter();
+                openWriter(timeMs);
+            }
+            if (currentWriter == null) {
+                return;
+            }
+            String prefix = formatTime(timeMs);
+            String text = message != null ? message : "null";
+            currentWriter.write(prefix);
+            currentWriter.write(text);
+            currentWriter.write('\n');
+            pendingChars += prefix.length() + text.length() + 1;
+            if (pendingChars >= FLUSH_BYTES) {
+                flushWriter();
+            }
+        } catch (IOException e) {
             Log.e(TAG, "写入日志文件失败: " + e.getMessage());
+            closeCurrentWriter();
         }
     }
     
     /**
-     * 根据当前时间获取日志文件名
-     * @return 日志文件名 (格式: yyyyMMdd_HH.txt)
+     * 格式化日志时间前缀 "[yyyy-MM-dd HH:mm:ss.SSS] "
      */
-    private String getLogFileNameForCurrentTime() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HH", Locale.getDefault());
-        return "task_log_" + sdf.format(new Date()) + ".txt";
+    private String formatTime(long timeMs) {
+        long second = timeMs / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondPrefix = "[" + timeFormat.format(new Date(second * 1000)) + ".";
+        }
+        int millis = (int) (timeMs - second * 1000);
+        timeBuilder.setLength(0);
+        timeBuilder.append(cachedSecondPrefix);
+        if (millis < 100) {
+            timeBuilder.append('0');
+        }
+        if (millis < 10) {
+            timeBuilder.append('0');
+        }
+        return timeBuilder.append(millis).append("] ").toString();
     }
     
     /**
-     * 打开新的文件输出流
-     * @param fileName 文件名
+     * 打开日志时间所在小时的文件（追加模式）
+     * @param timeMs 日志时间
      */
-    private void openNewStream(String fileName) {
+    private void openWriter(long timeMs) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMs);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        currentFileStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.HOUR_OF_DAY, 1);
+        currentFileEnd = calendar.getTimeInMillis();
+        
+        // 文件名格式: task_log_yyyyMMdd_HH.txt
+        String fileName = "task_log_" + fileNameFormat.format(new Date(timeMs)) + ".txt";
         try {
             File logFile = new File(logFolder, fileName);
-            currentOutputStream = new FileOutputStream(logFile, true); // 追加模式
+            currentWriter = new OutputStreamWriter(
+                    new BufferedOutputStream(new FileOutputStream(logFile, true), BUFFER_SIZE),
+                    StandardCharsets.UTF_8);
         } catch (Exception e) {
             Log.e(TAG, "打开日志文件流失败: " + e.getMessage());
-            currentOutputStream = null;
+            currentWriter = null;
         }
     }
     
+    private void flushWriter() {
+        if (currentWriter != null) {
+            try {
+                currentWriter.flush();
+            } catch (IOException e) {
+                Log.e(TAG, "刷新日志文件失败: " + e.getMessage());
+            }
+        }
+        pendingChars = 0;
+        lastFlushTime = SystemClock.uptimeMillis();
+    }
+    
     /**
-     * 关闭当前文件输出流
+     * 关闭当前文件输出流（会先刷新缓冲）
      */
-    private void closeCurrentStream() {
-        if (currentOutputStream != null) {
+    private void closeCurrentWriter() {
+        if (currentWriter != null) {
             try {
-                currentOutputStream.close();
+                currentWriter.close();
             } catch (IOException e) {
                 Log.e(TAG, "关闭日志文件流失败: " + e.getMessage());
             } finally {
-                currentOutputStream = null;
+                currentWriter = null;
+                // 下一条日志重新打开文件
+                currentFileStart = 0;
+                currentFileEnd = 0;
             }
         }
+        pendingChars = 0;
     }
     
     /**
-     * 清理资源
+     * 多生产者、单消费者的有界无锁环形队列
+     *
+     * 每个槽位带一个序号：序号等于写入位置时可写，等于写入位置+1时可读。
+     * 生产者用 CAS 抢占写入位置，写完数据后发布序号；消费者（写入线程）读完后把序号推进一圈，
+     * 槽位可以被再次写入。队列满时 offer 直接返回 false，不会阻塞调用方。
      */
-    public void cleanup() {
-        closeCurrentStream();
-    }
-    
-    /**
-     * 获取日志文件夹路径
-     * @return 日志文件夹路径
-     */
-    public String getLogFolderPath() {
-        return logFolder != null ? logFolder.getAbsolutePath() : null;
+    static class LogRingBuffer {
+        private final int mask;
+        private final AtomicLongArray sequences;
+        private final long[] times;
+        private final String[] messages;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+        
+        // poll 取出的日志（只在消费者线程中访问）
+        long polledTime;
+        String polledMessage;
+        
+        LogRingBuffer(int capacity) {
+            mask = capacity - 1;
+            sequences = new AtomicLongArray(capacity);
+            times = new long[capacity];
+            messages = new String[capacity];
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+        
+        /**
+         * 放入一条日志（任意线程）
+         * @return 队列已满时返回 false
+         */
+        boolean offer(long time, String message) {
+            long pos = tail.get();
+            while (true) {
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        times[index] = time;
+                        messages[index] = message;
+                        // 发布：之前对数据的写入对读到该序号的消费者可见
+                        sequences.set(index, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+                } else if (diff < 0) {
+                    return false;
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+        
+        /**
+         * 取出一条日志到 polledTime / polledMessage（只能由消费者线程调用）
+         * @return 队列为空（或下一条还没写完）时返回 false
+         */
+        boolean poll() {
+            long pos = head;
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                return false;
+            }
+            polledTime = times[index];
+            polledMessage = messages[index];
+            messages[index] = null;
+            sequences.set(index, pos + mask + 1);
+            head = pos + 1;
+            return true;
+        }
+        
+        /**
+         * 已提交但未取出的日志条数（近似值）
+         */
+        int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package com.dy.autotask.ui.imageanalysis;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.dy.autotask.R;
+import com.dy.autotask.model.AnalysisHistory;
+import com.dy.autotask.utils.AnalysisHistoryStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 分析历史列表适配器
+ * 记录由界面分页追加；缩略图在后台线程从文件解码，只在内存中缓存最近显示的一部分
+ */
+public class AnalysisHistoryAdapter extends BaseAdapter {
+
+    // 缩略图内存缓存上限（字节）
+    private static final int THUMB_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final LayoutInflater inflater;
+    private final List<AnalysisHistory> items = new ArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService thumbExecutor = Executors.newSingleThreadExecutor();
+
+    private final LruCache<Long, Bitmap> thumbCache = new LruCache<Long, Bitmap>(THUMB_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    private static class ViewHolder {
+        ImageView ivThumbnail;
+        TextView tvPrompt;
+        TextView tvTime;
+        TextView tvResult;
+        volatile long historyId;
+    }
+
+    public AnalysisHistoryAdapter(Context context) {
+        this.inflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * 追加一页记录
+     */
+    public void addPage(List<AnalysisHistory> page) {
+        items.addAll(page);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 清空记录（重新搜索时）
+     */
+    public void clear() {
+        items.clear();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 最后一条记录，用于加载下一页
+     */
+    public AnalysisHistory getLast() {
+        return items.isEmpty() ? null : items.get(items.size() - 1);
+    }
+
+    /**
+     * 释放缩略图线程和缓存
+     */
+    public void release() {
+        thumbExecutor.shutdownNow();
+        thumbCache.evictAll();
+    }
+
+    @Override
+    public int getCount() {
+        return items.size();
+    }
+
+    @Override
+    public AnalysisHistory getItem(int position) {
+        return items.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return items.get(position).getId();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        ViewHolder holder;
+        if (convertView == null) {
+            convertView = inflater.inflate(R.layout.analysis_history_item, parent, false);
+            holder = new ViewHolder();
+            holder.ivThumbnail = convertView.findViewById(R.id.iv_thumbnail);
+            holder.tvPrompt = convertView.findViewById(R.id.tv_prompt);
+            holder.tvTime = convertView.findViewById(R.id.tv_time);
+            holder.tvResult = convertView.findViewById(R.id.tv_result);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
+        }
+
+        AnalysisHistory history = items.get(position);
+        holder.historyId = history.getId();
+        holder.tvPrompt.setText(history.getPromptSummary());
+        holder.tvTime.setText(history.getDateTimeText());
+        holder.tvResult.setText(history.getResultSummary());
+        bindThumbnail(holder, history);
+        return convertView;
+    }
+
+    private void bindThumbnail(ViewHolder holder, AnalysisHistory history) {
+        Bitmap cached = thumbCache.get(history.getId());
+        holder.ivThumbnail.setImageBitmap(cached);
+        if (cached != null || history.getThumbnailPath() == null || thumbExecutor.isShutdown()) {
+            return;
+        }
+        final long id = history.getId();
+        thumbExecutor.execute(() -> {
+            // 快速滑动时跳过已滑出屏幕的记录
+            if (holder.historyId != id) {
+                return;
+            }
+            Bitmap bitmap = AnalysisHistoryStore.loadThumbnail(history);
+            if (bitmap == null) {
+                return;
+            }
+            mainHandler.post(() -> {
+                thumbCache.put(id, bitmap);
+                // 视图已被复用到其他记录时不再设置
+                if (holder.historyId == id) {
+                    holder.ivThumbnail.setImageBitmap(bitmap);
+                }
+            });
+        });
+    }
+}
@@ -1,20 +1,23 @@
 package com.dy.autotask.ui.imageanalysis;
 
+import android.app.Application;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
 import com.dy.autotask.utils.AnalysisCallback;
+import com.dy.autotask.utils.AnalysisHistoryStore;
 import com.dy.autotask.utils.GLMImageAnalysisTool;
 
 /**
  * 图片分析的 ViewModel
- * 管理 UI 数据和业务逻辑
+ * 管理 UI 数据和业务逻辑，分析成功后保存到分析历史
  */
-public class ImageAnalysisViewModel extends ViewModel {
+public class ImageAnalysisViewModel extends AndroidViewModel {
 
     private static final String TAG = "ImageAnalysisViewModel";
 
@@ -25,6 +28,10 @@ public class ImageAnalysisViewModel extends ViewModel {
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
     private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
 
+    public ImageAnalysisViewModel(@NonNull Application application) {
+        super(application);
+    }
+
     public LiveData<Bitmap> getSelectedImage() {
         return selectedImage;
     }
@@ -76,8 +83,18 @@ public class ImageAnalysisViewModel extends ViewModel {
         // 显示加载状态
         isLoading.setValue(true);
 
-        // 使用异步方式调用 GLMImageAnalysisTool
-        GLMImageAnalysisTool.analyzeImageAsync(bitmap, prompt, new AnalysisCallback() {
+        // 先生成缩略图：分析期间原图可能被界面回收，保存历史时只需要缩略图
+        final Bitmap thumbnail = AnalysisHistoryStore.createThumbnail(bitmap);
+        final String model = GLMImageAnalysisTool.getBackend().getModel();
+
+        // 使用异步流式方式调用 GLMImageAnalysisTool，边生成边显示
+        GLMImageAnalysisTool.analyzeImageStreamAsync(bitmap, prompt, new AnalysisCallback() {
+            @Override
+            public boolean onPartialResult(String partialResult) {
+                analysisResult.postValue(partialResult);
+                return false;
+            }
+
             @Override
             public void onSuccess(String result) {
                 Log.d(TAG, "分析成功，结果长度: " + result.length());
@@ -85,6 +102,12 @@ public class ImageAnalysisViewModel extends ViewModel {
                 analysisResult.postValue(result);
                 isLoading.postValue(false);
                 errorMessage.postValue(null);
+
+                // 在分析线程中写入历史（磁盘操作）
+                AnalysisHistoryStore.getInstance(getApplication()).add(thumbnail, prompt, result, model);
+                if (thumbnail != null) {
+                    thumbnail.recycle();
+                }
             }
 
             @Override
@@ -94,6 +117,9 @@ public class ImageAnalysisViewModel extends ViewModel {
                 analysisResult.postValue(null);
                 isLoading.postValue(false);
                 errorMessage.postValue("分析失败: " + e.getMessage());
+                if (thumbnail != null) {
+                    thumbnail.recycle();
+                }
             }
         });
     }
@@ -122,8 +148,7 @@ public class ImageAnalysisViewModel extends ViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
+        // 分析服务是进程内共享的，不随界面关闭；进行中的分析结果只会更新已不再被观察的LiveData
         Log.d(TAG, "ViewModel 已清除");
-        // 关闭后台任务
-        GLMImageAnalysisTool.shutdown();
     }
 }
@@ -0,0 +1,456 @@
+package com.dy.autotask.utils;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import com.dy.autotask.vision.ContentClassifier;
+import com.dy.autotask.vision.GrayImage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按字节预算自适应编码上传图片
+ *
+ * 先判断画面内容（文字界面 / 照片 / 纯色），再用几次试编码搜索质量和尺寸，
+ * 在不超过字节预算的前提下尽量保留清晰度：
+ * - 文字界面：优先降低质量（不低于70），最后才缩小，短边不小于最小可读尺寸
+ * - 照片：长边上限更小、质量下限更低，尽早缩小
+ * 选出的参数按画面类别（调用方给的画面键 + 内容类型 + 原图尺寸）缓存，
+ * 同类画面下次只需一次编码验证。
+ *
+ * 使用方式：
+ * AdaptiveImageEncoder.Encoded image = AdaptiveImageEncoder.getInstance().encode(bitmap);
+ */
+public class AdaptiveImageEncoder {
+    private static final String TAG = "AdaptiveImageEncoder";
+
+    // 默认字节预算
+    private static final int DEFAULT_TARGET_BYTES = 200 * 1024;
+
+    // 默认最小可读尺寸（文字画面缩小后的短边下限）
+    private static final int DEFAULT_MIN_SHORT_SIDE = 540;
+
+    // 默认长边上限（文字画面）
+    private static final int DEFAULT_MAX_LONG_SIDE = 1600;
+
+    // 照片的长边上限和短边下限
+    private static final int PHOTO_MAX_LONG_SIDE = 1024;
+    private static final int PHOTO_MIN_SHORT_SIDE = 320;
+
+    // 质量搜索范围
+    private static final int TEXT_MAX_QUALITY = 90;
+    private static final int TEXT_MIN_QUALITY = 70;
+    private static final int PHOTO_MAX_QUALITY = 75;
+    private static final int PHOTO_MIN_QUALITY = 45;
+
+    // 单次编码最多试编码次数
+    private static final int MAX_TRIALS = 6;
+
+    // 缩小尺寸时在估算比例上再留的余量
+    private static final float SCALE_MARGIN = 0.9f;
+
+    // 内容分类用的缩略图宽度
+    private static final int CLASSIFY_WIDTH = 128;
+
+    // 参数缓存的画面类别数
+    private static final int MAX_CACHED_CLASSES = 32;
+
+    private static volatile AdaptiveImageEncoder instance;
+
+    private volatile int targetBytes = DEFAULT_TARGET_BYTES;
+    private volatile int minShortSide = DEFAULT_MIN_SHORT_SIDE;
+    private volatile int maxLongSide = DEFAULT_MAX_LONG_SIDE;
+    private volatile boolean preferWebP = false;
+
+    // 画面类别 -> 上次选出的参数，由自身加锁保护
+    private final Map<String, Params> paramCache = new LinkedHashMap<String, Params>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Params> eldest) {
+            return size() > MAX_CACHED_CLASSES;
+        }
+    };
+
+    // 统计
+    private long encodeCount = 0;
+    private long trialCount = 0;
+    private long cachedParamHitCount = 0;
+
+    /**
+     * 编码结果
+     */
+    public static class Encoded {
+        private final byte[] data;
+        private final int length;
+        private final String mimeType;
+        private final int width;
+        private final int height;
+        private final int quality;
+        private final ContentClassifier.ContentType contentType;
+
+        Encoded(byte[] data, int length, String mimeType, int width, int height, int quality,
+                ContentClassifier.ContentType contentType) {
+            this.data = data;
+            this.length = length;
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.contentType = contentType;
+        }
+
+        /**
+         * 编码数据（只有前 {@link #getLength()} 个字节有效，数组可能更长）
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public ContentClassifier.ContentType getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String toString() {
+            return mimeType + " " + width + "x" + height + " q" + quality + " " + length + "字节 (" + contentType + ")";
+        }
+    }
+
+    /**
+     * 选出的编码参数（缩放比例相对原图）
+     */
+    private static class Params {
+        final float scale;
+        final int quality;
+
+        Params(float scale, int quality) {
+            this.scale = scale;
+            this.quality = quality;
+        }
+    }
+
+    /**
+     * 可以直接访问内部缓冲区的输出流，避免toByteArray再复制一份
+     */
+    private static class ExposedOutputStream extends ByteArrayOutputStream {
+        ExposedOutputStream(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private AdaptiveImageEncoder() {
+    }
+
+    public static AdaptiveImageEncoder getInstance() {
+        if (instance == null) {
+            synchronized (AdaptiveImageEncoder.class) {
+                if (instance == null) {
+                    instance = new AdaptiveImageEncoder();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 设置字节预算
+     *
+     * @param bytes 编码后的最大字节数
+     */
+    public void setTargetBytes(int bytes) {
+        targetBytes = Math.max(16 * 1024, bytes);
+        clearParamCache();
+    }
+
+    /**
+     * 设置最小可读尺寸：文字画面缩小后短边不小于该值
+     *
+     * @param pixels 短边像素数
+     */
+    public void setMinShortSide(int pixels) {
+        minShortSide = Math.max(1, pixels);
+        clearParamCache();
+    }
+
+    /**
+     * 设置长边上限（文字画面；照片另有更小的上限）
+     *
+     * @param pixels 长边像素数
+     */
+    public void setMaxLongSide(int pixels) {
+        maxLongSide = Math.max(1, pixels);
+        clearParamCache();
+    }
+
+    /**
+     * 是否优先使用WebP（相同质量下通常更小，但需要接口支持 image/webp）
+     *
+     * @param prefer 是否优先WebP
+     */
+    public void setPreferWebP(boolean prefer) {
+        preferWebP = prefer;
+        clearParamCache();
+    }
+
+    public int getTargetBytes() {
+        return targetBytes;
+    }
+
+    /**
+     * 自适应编码
+     *
+     * @param bitmap 原图
+     * @return 编码结果，编码失败返回null
+     */
+    public Encoded encode(Bitmap bitmap) {
+        return encode(bitmap, null);
+    }
+
+    /**
+     * 自适应编码
+     *
+     * @param bitmap 原图
+     * @param screenKey 画面键（如当前应用页面），相同画面键的参数共享缓存，可为null
+     * @return 编码结果，编码失败返回null；最小尺寸、最低质量下仍超过预算时返回最小的结果
+     */
+    public Encoded encode(Bitmap bitmap, String screenKey) {
+        if (bitmap == null) {
+            Log.e(TAG, "Bitmap 为 null");
+            return null;
+        }
+        long start = System.nanoTime();
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        ContentClassifier.ContentType type = classify(bitmap);
+        boolean photo = type == ContentClassifier.ContentType.PHOTO;
+        int maxQuality = photo ? PHOTO_MAX_QUALITY : TEXT_MAX_QUALITY;
+        int minQuality = photo ? PHOTO_MIN_QUALITY : TEXT_MIN_QUALITY;
+        float maxScale = Math.min(1f, (float) (photo ? PHOTO_MAX_LONG_SIDE : maxLongSide) / Math.max(width, height));
+        float minScale = Math.min(maxScale, (float) (photo ? PHOTO_MIN_SHORT_SIDE : minShortSide) / Math.min(width, height));
+        int budget = targetBytes;
+        Bitmap.CompressFormat format = preferWebP ? webpFormat() : Bitmap.CompressFormat.JPEG;
+        String classKey = (screenKey != null ? screenKey + "|" : "") + type + "|" + width + "x" + height;
+
+        Params cached;
+        synchronized (paramCache) {
+            cached = paramCache.get(classKey);
+        }
+
+        Trial trial = new Trial(bitmap, format, type);
+        try {
+            Encoded result = null;
+            if (cached != null) {
+                result = trial.encode(cached.scale, cached.quality);
+                if (result != null && result.length <= budget) {
+                    synchronized (this) {
+                        cachedParamHitCount++;
+                    }
+                    return finish(result, trial, start);
+                }
+            }
+
+            float scale = cached != null ? Math.min(maxScale, cached.scale) : maxScale;
+            Encoded smallest = result;
+            while (trial.count < MAX_TRIALS) {
+                // 当前尺寸下最高质量能放下就直接用
+                Encoded high = trial.encode(scale, maxQuality);
+                if (high == null) {
+                    return null;
+                }
+                smallest = smaller(smallest, high);
+                if (high.length <= budget) {
+                    result = high;
+                    break;
+                }
+                if (trial.count >= MAX_TRIALS) {
+                    break;
+                }
+                Encoded low = trial.encode(scale, minQuality);
+                if (low == null) {
+                    return null;
+                }
+                smallest = smaller(smallest, low);
+                if (low.length > budget) {
+                    // 最低质量也放不下：按字节数与像素数近似成正比估算新的缩放比例
+                    if (scale <= minScale) {
+                        break;
+                    }
+                    float estimated = scale * (float) Math.sqrt((double) budget / low.length) * SCALE_MARGIN;
+                    scale = Math.max(minScale, estimated);
+                    continue;
+                }
+                // 质量在两次结果之间线性插值，再试一次
+                result = low;
+                if (trial.count < MAX_TRIALS && high.length > low.length) {
+                    int quality = minQuality + (int) ((long) (maxQuality - minQuality) * (budget - low.length)
+                            / (high.length - low.length));
+                    if (quality > minQuality) {
+                        Encoded middle = trial.encode(scale, quality);
+                        if (middle != null && middle.length <= budget) {
+                            result = middle;
+                        }
+                    }
+                }
+                break;
+            }
+
+            if (result == null || result.length > budget) {
+                Log.w(TAG, "最小尺寸、最低质量下仍超过预算 " + budget + " 字节");
+                result = smallest;
+            } else {
+                synchronized (paramCache) {
+                    paramCache.put(classKey, new Params((float) result.width / width, result.quality));
+                }
+            }
+            return finish(result, trial, start);
+        } finally {
+            trial.release();
+        }
+    }
+
+    /**
+     * 按固定格式和质量编码（不缩放、不搜索）
+     *
+     * @param bitmap 图片
+     * @param format 格式
+     * @param quality 质量（0-100）
+     * @return 编码结果，失败返回null
+     */
+    public static Encoded encodeFixed(Bitmap bitmap, Bitmap.CompressFormat format, int quality) {
+        return compress(bitmap, format, quality, null);
+    }
+
+    /**
+     * 一次编码中的试编码：同一缩放比例只生成一次缩放图
+     */
+    private static class Trial {
+        private final Bitmap source;
+        private final Bitmap.CompressFormat format;
+        private final ContentClassifier.ContentType type;
+        private Bitmap scaled;
+        private float scaledFor = -1;
+        int count = 0;
+
+        Trial(Bitmap source, Bitmap.CompressFormat format, ContentClassifier.ContentType type) {
+            this.source = source;
+            this.format = format;
+            this.type = type;
+        }
+
+        Encoded encode(float scale, int quality) {
+            if (scale != scaledFor) {
+                release();
+                int width = Math.max(1, Math.round(source.getWidth() * scale));
+                int height = Math.max(1, Math.round(source.getHeight() * scale));
+                scaled = width == source.getWidth() && height == source.getHeight()
+                        ? source : Bitmap.createScaledBitmap(source, width, height, true);
+                scaledFor = scale;
+            }
+            count++;
+            return compress(scaled, format, quality, type);
+        }
+
+        void release() {
+            if (scaled != null && scaled != source) {
+                scaled.recycle();
+            }
+            scaled = null;
+            scaledFor = -1;
+        }
+    }
+
+    private static Encoded compress(Bitmap bitmap, Bitmap.CompressFormat format, int quality,
+                                    ContentClassifier.ContentType type) {
+        // 压缩结果通常不到原始像素的1/8，按此预估初始容量，减少扩容复制
+        ExposedOutputStream output = new ExposedOutputStream(Math.max(16 * 1024, bitmap.getWidth() * bitmap.getHeight() / 8));
+        if (!bitmap.compress(format, quality, output)) {
+            Log.e(TAG, "图片编码失败: " + format);
+            return null;
+        }
+        String mimeType = format == Bitmap.CompressFormat.JPEG ? "image/jpeg"
+                : format == Bitmap.CompressFormat.PNG ? "image/png" : "image/webp";
+        return new Encoded(output.buffer(), output.size(), mimeType, bitmap.getWidth(), bitmap.getHeight(), quality, type);
+    }
+
+    private Encoded finish(Encoded result, Trial trial, long startNanos) {
+        synchronized (this) {
+            encodeCount++;
+            trialCount += trial.count;
+        }
+        Log.d(TAG, "自适应编码: " + result + "，试编码 " + trial.count + " 次，耗时 "
+                + (System.nanoTime() - startNanos) / 1000000 + "ms");
+        return result;
+    }
+
+    private static Encoded smaller(Encoded a, Encoded b) {
+        if (a == null) {
+            return b;
+        }
+        return b.length < a.length ? b : a;
+    }
+
+    /**
+     * 用最近邻缩略图判断内容类型（最近邻缩小保留文字的锐利边缘）
+     */
+    private static ContentClassifier.ContentType classify(Bitmap bitmap) {
+        int width = Math.min(CLASSIFY_WIDTH, bitmap.getWidth());
+        int height = Math.max(1, Math.round((float) bitmap.getHeight() * width / bitmap.getWidth()));
+        Bitmap thumb = Bitmap.createScaledBitmap(bitmap, width, height, false);
+        int[] argb = new int[width * height];
+        thumb.getPixels(argb, 0, width, 0, 0, width, height);
+        if (thumb != bitmap) {
+            thumb.recycle();
+        }
+        return ContentClassifier.classify(GrayImage.fromArgb(argb, width, height));
+    }
+
+    /**
+     * 有损 WebP 格式（API 30 起为 WEBP_LOSSY）
+     */
+    @SuppressWarnings("deprecation")
+    static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private void clearParamCache() {
+        synchronized (paramCache) {
+            paramCache.clear();
+        }
+    }
+
+    /**
+     * 统计摘要（用于日志）
+     */
+    public synchronized String getStatsSummary() {
+        return "编码 " + encodeCount + " 次，平均试编码 "
+                + (encodeCount > 0 ? String.format("%.1f", (double) trialCount / encodeCount) : "0")
+                + " 次，缓存参数命中 " + cachedParamHitCount + " 次";
+    }
+}
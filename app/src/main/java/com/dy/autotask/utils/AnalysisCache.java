@@ -0,0 +1,571 @@
+package com.dy.autotask.utils;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dy.autotask.capture.ImageConverter;
+import com.dy.autotask.capture.PixelBuffer;
+import com.dy.autotask.vision.GrayImage;
+import com.dy.autotask.vision.ImageHash;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图片分析结果缓存
+ *
+ * 两级缓存：内存LRU + 磁盘（带过期时间）。
+ * 键由三部分组成：压缩后图片的感知哈希（dHash）、提示词、模型名称；
+ * 同一画面、同一提示词重复分析时直接返回缓存结果，不发起网络请求，也不消耗token。
+ *
+ * 相似度容差为两张图片dHash允许的最大汉明距离：0表示哈希完全相同，
+ * 调大后轻微变化的画面（时间、角标）也能命中，但也可能把内容不同的画面当成同一画面，
+ * 对细小文字变化敏感的场景应保持为0或关闭缓存。
+ *
+ * 使用方式：
+ * AnalysisCache.getInstance().setDiskFolder(new File(context.getCacheDir(), "analysis_cache"));
+ * String cached = AnalysisCache.getInstance().get(hash, prompt, model);
+ */
+public class AnalysisCache {
+    private static final String TAG = "AnalysisCache";
+
+    // 内存中最多缓存的结果数
+    private static final int MEMORY_CACHE_SIZE = 64;
+
+    // 磁盘上最多保留的结果数
+    private static final int DISK_CACHE_MAX_FILES = 500;
+
+    // 默认过期时间：1天
+    private static final long DEFAULT_TTL_MS = 24L * 60 * 60 * 1000;
+
+    private static final String FILE_EXTENSION = ".cache";
+
+    // 写入后清理磁盘缓存的最小间隔
+    private static final long TRIM_INTERVAL_MS = 60 * 1000;
+
+    // 计算感知哈希的缩略图尺寸：dHash的9x8格子，每格4x4采样
+    private static final int THUMB_WIDTH = 36;
+    private static final int THUMB_HEIGHT = 32;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile AnalysisCache instance;
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry {
+        final String promptKey;
+        final long imageHash;
+        final String result;
+        final long createdMs;
+
+        Entry(String promptKey, long imageHash, String result, long createdMs) {
+            this.promptKey = promptKey;
+            this.imageHash = imageHash;
+            this.result = result;
+            this.createdMs = createdMs;
+        }
+    }
+
+    // 按访问顺序排列的LRU，由自身加锁保护
+    private final LinkedHashMap<String, Entry> memoryCache =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MEMORY_CACHE_SIZE;
+                }
+            };
+
+    private volatile File diskFolder;
+    private volatile boolean enabled = true;
+    private volatile int tolerance = 0;
+    private volatile long ttlMs = DEFAULT_TTL_MS;
+
+    // 命中统计
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // 磁盘清理（列出、排序、删除文件）在后台线程中执行，不阻塞调用方
+    private final ExecutorService trimExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AnalysisCacheTrim");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final AtomicBoolean trimPending = new AtomicBoolean(false);
+    private volatile long lastTrimMs = 0;
+
+    private AnalysisCache() {
+    }
+
+    public static AnalysisCache getInstance() {
+        if (instance == null) {
+            synchronized (AnalysisCache.class) {
+                if (instance == null) {
+                    instance = new AnalysisCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 设置磁盘缓存目录（不设置时只使用内存缓存），同时在后台清理过期文件
+     *
+     * @param folder 缓存目录
+     */
+    public void setDiskFolder(File folder) {
+        if (!folder.exists() && !folder.mkdirs()) {
+            Log.e(TAG, "无法创建分析缓存目录: " + folder.getAbsolutePath());
+            return;
+        }
+        diskFolder = folder;
+        scheduleTrim(true);
+    }
+
+    /**
+     * 启用或关闭缓存（关闭后get始终未命中，put不再写入）
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 设置相似度容差
+     *
+     * @param tolerance dHash允许的最大汉明距离（0-64，0表示完全相同）
+     */
+    public void setTolerance(int tolerance) {
+        this.tolerance = Math.max(0, Math.min(64, tolerance));
+    }
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * 设置缓存过期时间
+     *
+     * @param ttlMs 过期时间（毫秒）
+     */
+    public void setTtl(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * 计算图片的感知哈希（用于缓存键）
+     * 先缩小到缩略图再计算，缩放时的过滤相当于对每个格子取平均
+     *
+     * @param bitmap 图片（一般为压缩后的图片）
+     * @return 64位dHash
+     */
+    public static long hashBitmap(Bitmap bitmap) {
+        Bitmap thumb = Bitmap.createScaledBitmap(bitmap, THUMB_WIDTH, THUMB_HEIGHT, true);
+        int[] argb = new int[THUMB_WIDTH * THUMB_HEIGHT];
+        thumb.getPixels(argb, 0, THUMB_WIDTH, 0, 0, THUMB_WIDTH, THUMB_HEIGHT);
+        if (thumb != bitmap) {
+            thumb.recycle();
+        }
+        return ImageHash.dHash(GrayImage.fromArgb(argb, THUMB_WIDTH, THUMB_HEIGHT));
+    }
+
+    /**
+     * 计算图片全部像素的校验和（{@link ImageHash#contentHash(PixelBuffer)}，再混入宽高）
+     * 与感知哈希不同，任何一个像素变化都会改变结果，用于判断两张图片是否完全相同。
+     * 需要读取整张图片，应在后台线程调用
+     *
+     * @param bitmap 图片
+     * @return 64位校验和（包含宽高）
+     */
+    public static long contentHash(Bitmap bitmap) {
+        Bitmap source = bitmap;
+        // 硬件Bitmap和其他像素格式（如RGB_565）先转换为ARGB_8888，像素缓冲区按每像素4字节读取
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            source = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        PixelBuffer pixels = new PixelBuffer(width, height);
+        ImageConverter.copyToPixelBuffer(source, pixels);
+        if (source != bitmap) {
+            source.recycle();
+        }
+        // 像素序列相同、宽高不同的图片不是同一张
+        long hash = ImageHash.contentHash(pixels);
+        hash = (hash ^ width) * 0x100000001b3L;
+        return (hash ^ height) * 0x100000001b3L;
+    }
+
+    /**
+     * 查询缓存：先查内存，再查磁盘；磁盘命中的结果会放回内存
+     *
+     * @param imageHash 图片感知哈希
+     * @param prompt 提示词
+     * @param model 模型名称
+     * @return 缓存的分析结果，未命中返回null
+     */
+    public String get(long imageHash, String prompt, String model) {
+        if (!enabled) {
+            return null;
+        }
+        String promptKey = promptKey(prompt, model);
+        long now = System.currentTimeMillis();
+
+        Entry entry = findInMemory(promptKey, imageHash, now);
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            Log.d(TAG, "分析缓存命中（内存）: " + getStatsSummary());
+            return entry.result;
+        }
+
+        entry = findOnDisk(promptKey, imageHash, now);
+        if (entry != null) {
+            synchronized (memoryCache) {
+                memoryCache.put(cacheKey(entry.promptKey, entry.imageHash), entry);
+            }
+            diskHits.incrementAndGet();
+            Log.d(TAG, "分析缓存命中（磁盘）: " + getStatsSummary());
+            return entry.result;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param imageHash 图片感知哈希
+     * @param prompt 提示词
+     * @param model 模型名称
+     * @param result 分析结果
+     */
+    public void put(long imageHash, String prompt, String model, String result) {
+        if (!enabled || result == null) {
+            return;
+        }
+        String promptKey = promptKey(prompt, model);
+        Entry entry = new Entry(promptKey, imageHash, result, System.currentTimeMillis());
+        String key = cacheKey(promptKey, imageHash);
+        synchronized (memoryCache) {
+            memoryCache.put(key, entry);
+        }
+
+        File folder = diskFolder;
+        if (folder == null) {
+            return;
+        }
+        File file = new File(folder, key + FILE_EXTENSION);
+        File tmp = new File(folder, key + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tmp), UTF_8);
+            writer.write(entry.createdMs + "\n");
+            writer.write(result);
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(file)) {
+                Log.e(TAG, "写入分析缓存失败: 重命名失败");
+                tmp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "写入分析缓存失败: " + e.getMessage());
+            tmp.delete();
+            return;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "关闭缓存文件失败: " + e.getMessage());
+                }
+            }
+        }
+        scheduleTrim(false);
+    }
+
+    /**
+     * 删除一条缓存（例如结果无法使用时），只删除哈希完全相同的条目
+     *
+     * @param imageHash 图片感知哈希
+     * @param prompt 提示词
+     * @param model 模型名称
+     */
+    public void remove(long imageHash, String prompt, String model) {
+        String key = cacheKey(promptKey(prompt, model), imageHash);
+        synchronized (memoryCache) {
+            memoryCache.remove(key);
+        }
+        File folder = diskFolder;
+        if (folder != null) {
+            new File(folder, key + FILE_EXTENSION).delete();
+        }
+    }
+
+    /**
+     * 清空内存和磁盘缓存，并重置统计
+     */
+    public void clear() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+        }
+        File folder = diskFolder;
+        if (folder != null) {
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+        memoryHits.set(0);
+        diskHits.set(0);
+        misses.set(0);
+        Log.d(TAG, "分析缓存已清空");
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getHitCount() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * 命中率
+     *
+     * @return 0-1，没有查询时为0
+     */
+    public float getHitRate() {
+        long hits = getHitCount();
+        long total = hits + misses.get();
+        return total > 0 ? (float) hits / total : 0f;
+    }
+
+    /**
+     * 统计摘要（用于日志）
+     */
+    public String getStatsSummary() {
+        return "内存命中 " + memoryHits.get() + "，磁盘命中 " + diskHits.get()
+                + "，未命中 " + misses.get() + "，命中率 " + Math.round(getHitRate() * 100) + "%";
+    }
+
+    private Entry findInMemory(String promptKey, long imageHash, long now) {
+        synchronized (memoryCache) {
+            Entry exact = memoryCache.get(cacheKey(promptKey, imageHash));
+            if (exact != null && now - exact.createdMs <= ttlMs) {
+                return exact;
+            }
+            if (tolerance == 0) {
+                return null;
+            }
+            // 容差内取最相似的一条
+            Entry best = null;
+            int bestDistance = Integer.MAX_VALUE;
+            for (Entry entry : memoryCache.values()) {
+                if (!entry.promptKey.equals(promptKey) || now - entry.createdMs > ttlMs) {
+                    continue;
+                }
+                int distance = ImageHash.distance(entry.imageHash, imageHash);
+                if (distance <= tolerance && distance < bestDistance) {
+                    best = entry;
+                    bestDistance = distance;
+                }
+            }
+            if (best != null) {
+                // 更新访问顺序
+                memoryCache.get(cacheKey(best.promptKey, best.imageHash));
+            }
+            return best;
+        }
+    }
+
+    private Entry findOnDisk(String promptKey, long imageHash, long now) {
+        File folder = diskFolder;
+        if (folder == null) {
+            return null;
+        }
+        File file = new File(folder, cacheKey(promptKey, imageHash) + FILE_EXTENSION);
+        if (!file.exists()) {
+            file = null;
+            if (tolerance > 0) {
+                file = findSimilarFile(folder, promptKey, imageHash);
+            }
+            if (file == null) {
+                return null;
+            }
+        }
+        return readEntry(file, now);
+    }
+
+    /**
+     * 在磁盘上查找同一提示词下哈希在容差内、最相似的文件
+     * 文件名为 提示词键_图片哈希.cache，不需要读取文件内容
+     */
+    private File findSimilarFile(File folder, String promptKey, long imageHash) {
+        String prefix = promptKey + "_";
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return null;
+        }
+        File best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (File file : files) {
+            String name = file.getName();
+            long hash;
+            try {
+                hash = Long.parseLong(name.substring(prefix.length(), name.length() - FILE_EXTENSION.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            int distance = ImageHash.distance(hash, imageHash);
+            if (distance <= tolerance && distance < bestDistance) {
+                best = file;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 读取缓存文件，过期时删除并返回null
+     */
+    private Entry readEntry(File file, long now) {
+        String name = file.getName();
+        int separator = name.indexOf('_');
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            long createdMs = Long.parseLong(reader.readLine().trim());
+            if (now - createdMs > ttlMs) {
+                reader.close();
+                reader = null;
+                file.delete();
+                return null;
+            }
+            StringBuilder result = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                result.append(buffer, 0, read);
+            }
+            long hash = Long.parseLong(name.substring(separator + 1, name.length() - FILE_EXTENSION.length()));
+            return new Entry(name.substring(0, separator), hash, result.toString(), createdMs);
+        } catch (Exception e) {
+            Log.e(TAG, "读取分析缓存失败: " + name + ", " + e.getMessage());
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "关闭缓存文件失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 在后台线程清理磁盘缓存；写入后的清理按 {@link #TRIM_INTERVAL_MS} 节流，已有待执行的清理时不重复提交
+     *
+     * @param force 是否忽略节流（设置目录时）
+     */
+    private void scheduleTrim(boolean force) {
+        if (!force && SystemClock.uptimeMillis() - lastTrimMs < TRIM_INTERVAL_MS) {
+            return;
+        }
+        if (!trimPending.compareAndSet(false, true)) {
+            return;
+        }
+        trimExecutor.execute(() -> {
+            trimPending.set(false);
+            lastTrimMs = SystemClock.uptimeMillis();
+            trimDisk();
+        });
+    }
+
+    /**
+     * 删除过期文件，超过数量上限时按修改时间删除最旧的文件（在清理线程中调用）
+     */
+    private void trimDisk() {
+        File folder = diskFolder;
+        if (folder == null) {
+            return;
+        }
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int remaining = files.length;
+        for (File file : files) {
+            if (now - file.lastModified() > ttlMs && file.delete()) {
+                remaining--;
+            }
+        }
+        if (remaining <= DISK_CACHE_MAX_FILES) {
+            return;
+        }
+        files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - DISK_CACHE_MAX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static String cacheKey(String promptKey, long imageHash) {
+        return promptKey + "_" + imageHash;
+    }
+
+    /**
+     * 提示词和模型的64位FNV-1a哈希（十六进制），用作文件名前缀
+     */
+    private static String promptKey(String prompt, String model) {
+        byte[] bytes = ((model != null ? model : "") + "\n" + (prompt != null ? prompt : "")).getBytes(UTF_8);
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+}
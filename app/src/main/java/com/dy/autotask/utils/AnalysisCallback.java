@@ -19,4 +19,14 @@ public interface AnalysisCallback {
      * @param e 异常信息
      */
     void onError(Exception e);
+
+    /**
+     * 流式分析收到新内容时回调（在分析线程中）
+     *
+     * @param partialResult 目前为止收到的全部文本
+     * @return 返回 true 立即结束分析（例如已经出现需要的关键字），onSuccess 会收到当前文本
+     */
+    default boolean onPartialResult(String partialResult) {
+        return false;
+    }
 }
@@ -0,0 +1,578 @@
+package com.dy.autotask.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.dy.autotask.model.AnalysisHistory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分析历史存储（SQLite + 缩略图文件）
+ *
+ * - 记录存放在 analysis_history.db，缩略图为小尺寸 WebP 文件，不在内存中保存图片
+ * - 分页查询按（时间倒序, id倒序）做键集分页，传入上一页最后一条记录取下一页，翻页代价与页码无关
+ * - 分页结果只读取结果的开头 {@link #SUMMARY_CHARS} 个字符，完整结果用 {@link #get(long)} 读取
+ * - 全文搜索使用 FTS4：内置分词器不能切分中文，这里把中日韩文字切成相邻两字的词（二元分词）后存入索引，
+ *   查询时同样切分并按短语匹配
+ * - 超过 {@link #MAX_ENTRIES} 条时删除最旧的记录和缩略图
+ *
+ * 所有方法都会访问磁盘，需要在后台线程调用。
+ *
+ * 使用方式：
+ * AnalysisHistoryStore store = AnalysisHistoryStore.getInstance(context);
+ * store.add(AnalysisHistoryStore.createThumbnail(bitmap), prompt, result, model);
+ * List<AnalysisHistory> page = store.loadPage(null, 20);
+ * List<AnalysisHistory> next = store.loadPage(page.get(page.size() - 1), 20);
+ */
+public class AnalysisHistoryStore {
+    private static final String TAG = "AnalysisHistoryStore";
+
+    private static final String DB_NAME = "analysis_history.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE = "history";
+    private static final String FTS_TABLE = "history_fts";
+
+    // 缩略图目录（位于 filesDir 下）
+    private static final String THUMB_FOLDER = "analysis_history_thumbs";
+
+    // 缩略图长边和质量
+    private static final int THUMB_MAX_SIDE = 240;
+    private static final int THUMB_QUALITY = 70;
+
+    // 最多保留的记录数
+    public static final int MAX_ENTRIES = 5000;
+
+    // 分页结果中结果摘要的字符数
+    public static final int SUMMARY_CHARS = 200;
+
+    // 分页查询的列（结果只取开头）
+    private static final String PAGE_COLUMNS = "id, timestamp, prompt, substr(result, 1, " + SUMMARY_CHARS
+            + "), length(result), model, image_path, thumbnail_path";
+
+    private static final String FULL_COLUMNS = "id, timestamp, prompt, result, length(result), model, image_path, thumbnail_path";
+
+    // 键集分页条件：排在上一页最后一条之后
+    private static final String AFTER_CONDITION = "(timestamp < ? OR (timestamp = ? AND id < ?))";
+
+    private static final String ORDER = " ORDER BY timestamp DESC, id DESC LIMIT ?";
+
+    private static volatile AnalysisHistoryStore instance;
+
+    private final DbHelper helper;
+    private final File thumbFolder;
+
+    private static class DbHelper extends SQLiteOpenHelper {
+        DbHelper(Context context) {
+            super(context, DB_NAME, null, DB_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "timestamp INTEGER NOT NULL, "
+                    + "prompt TEXT, "
+                    + "result TEXT, "
+                    + "model TEXT, "
+                    + "image_path TEXT, "
+                    + "thumbnail_path TEXT)");
+            db.execSQL("CREATE INDEX idx_history_time ON " + TABLE + " (timestamp, id)");
+            db.execSQL("CREATE INDEX idx_history_prompt ON " + TABLE + " (prompt, timestamp, id)");
+            // 只存分词后的文本，docid 与 history.id 相同
+            db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE + " USING fts4(tokens)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // 目前只有一个版本
+        }
+    }
+
+    private AnalysisHistoryStore(Context context) {
+        helper = new DbHelper(context);
+        thumbFolder = new File(context.getFilesDir(), THUMB_FOLDER);
+    }
+
+    public static AnalysisHistoryStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AnalysisHistoryStore.class) {
+                if (instance == null) {
+                    instance = new AnalysisHistoryStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 按长边缩小生成缩略图（不回收原图）
+     * 在原图可能被回收之前调用，保存历史时只需持有缩略图
+     *
+     * @param bitmap 原图
+     * @return 缩略图，原图为 null 或已回收时返回 null
+     */
+    public static Bitmap createThumbnail(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = Math.min(1f, (float) THUMB_MAX_SIDE / Math.max(width, height));
+        if (scale >= 1f) {
+            return bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+    }
+
+    /**
+     * 保存一条分析记录
+     *
+     * @param thumbnail 缩略图（见 {@link #createThumbnail(Bitmap)}），可为 null
+     * @param prompt 提示词
+     * @param result 分析结果
+     * @param model 模型名称，可为 null
+     * @return 记录 id，失败返回 -1
+     */
+    public long add(Bitmap thumbnail, String prompt, String result, String model) {
+        long timestamp = System.currentTimeMillis();
+        SQLiteDatabase db;
+        try {
+            db = helper.getWritableDatabase();
+        } catch (Exception e) {
+            Log.e(TAG, "打开历史数据库失败: " + e.getMessage());
+            return -1;
+        }
+
+        long id;
+        String thumbnailPath = null;
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("timestamp", timestamp);
+            values.put("prompt", prompt);
+            values.put("result", result);
+            values.put("model", model);
+            id = db.insertOrThrow(TABLE, null, values);
+
+            thumbnailPath = writeThumbnail(thumbnail, id);
+            if (thumbnailPath != null) {
+                ContentValues update = new ContentValues();
+                update.put("thumbnail_path", thumbnailPath);
+                db.update(TABLE, update, "id = ?", new String[]{String.valueOf(id)});
+            }
+
+            ContentValues fts = new ContentValues();
+            fts.put("docid", id);
+            fts.put("tokens", toSearchTokens(prompt) + " " + toSearchTokens(result));
+            db.insertOrThrow(FTS_TABLE, null, fts);
+
+            trim(db);
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "保存分析历史失败: " + e.getMessage());
+            if (thumbnailPath != null) {
+                new File(thumbnailPath).delete();
+            }
+            return -1;
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "已保存分析历史: id=" + id);
+        return id;
+    }
+
+    /**
+     * 读取完整记录
+     *
+     * @param id 记录 id
+     * @return 记录（包含完整结果），不存在或失败时返回 null
+     */
+    public AnalysisHistory get(long id) {
+        List<AnalysisHistory> list = query("SELECT " + FULL_COLUMNS + " FROM " + TABLE + " WHERE id = ?",
+                new String[]{String.valueOf(id)});
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * 按时间倒序分页
+     *
+     * @param after 上一页的最后一条，第一页传 null
+     * @param pageSize 每页条数
+     * @return 本页记录（结果为摘要），少于 pageSize 条表示没有更多
+     */
+    public List<AnalysisHistory> loadPage(AnalysisHistory after, int pageSize) {
+        return queryPage(null, null, after, pageSize);
+    }
+
+    /**
+     * 按提示词分页（完全相同的提示词，时间倒序）
+     *
+     * @param prompt 提示词
+     * @param after 上一页的最后一条，第一页传 null
+     * @param pageSize 每页条数
+     * @return 本页记录
+     */
+    public List<AnalysisHistory> loadPageByPrompt(String prompt, AnalysisHistory after, int pageSize) {
+        return queryPage("prompt = ?", new String[]{prompt != null ? prompt : ""}, after, pageSize);
+    }
+
+    /**
+     * 按时间范围分页（时间倒序）
+     *
+     * @param fromMs 起始时间（含）
+     * @param toMs 结束时间（不含）
+     * @param after 上一页的最后一条，第一页传 null
+     * @param pageSize 每页条数
+     * @return 本页记录
+     */
+    public List<AnalysisHistory> loadPageInRange(long fromMs, long toMs, AnalysisHistory after, int pageSize) {
+        return queryPage("timestamp >= ? AND timestamp < ?",
+                new String[]{String.valueOf(fromMs), String.valueOf(toMs)}, after, pageSize);
+    }
+
+    /**
+     * 在提示词和结果中全文搜索（时间倒序分页）
+     * 多个关键词用空格分隔，需同时包含；英文和数字按前缀匹配
+     *
+     * @param text 搜索文本
+     * @param after 上一页的最后一条，第一页传 null
+     * @param pageSize 每页条数
+     * @return 本页记录，搜索文本为空时等同于 {@link #loadPage}
+     */
+    public List<AnalysisHistory> search(String text, AnalysisHistory after, int pageSize) {
+        String match = buildMatchQuery(text);
+        if (match.isEmpty()) {
+            return loadPage(after, pageSize);
+        }
+        return queryPage("id IN (SELECT docid FROM " + FTS_TABLE + " WHERE " + FTS_TABLE + " MATCH ?)",
+                new String[]{match}, after, pageSize);
+    }
+
+    /**
+     * 删除一条记录及其缩略图
+     *
+     * @param id 记录 id
+     * @return 是否删除成功
+     */
+    public boolean delete(long id) {
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                deleteEntries(db, "id = ?", new String[]{String.valueOf(id)});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "删除分析历史失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 清空全部历史和缩略图
+     */
+    public void clear() {
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TABLE, null, null);
+                db.delete(FTS_TABLE, null, null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "清空分析历史失败: " + e.getMessage());
+            return;
+        }
+        File[] files = thumbFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        Log.d(TAG, "分析历史已清空");
+    }
+
+    /**
+     * 记录总数
+     */
+    public long getCount() {
+        try {
+            return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), TABLE);
+        } catch (Exception e) {
+            Log.e(TAG, "读取历史条数失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 读取缩略图
+     *
+     * @param history 记录
+     * @return 缩略图，没有或读取失败时返回 null
+     */
+    public static Bitmap loadThumbnail(AnalysisHistory history) {
+        if (history == null || history.getThumbnailPath() == null) {
+            return null;
+        }
+        return BitmapFactory.decodeFile(history.getThumbnailPath());
+    }
+
+    private List<AnalysisHistory> queryPage(String condition, String[] conditionArgs,
+                                            AnalysisHistory after, int pageSize) {
+        List<String> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(PAGE_COLUMNS).append(" FROM ").append(TABLE);
+        String where = "";
+        if (condition != null) {
+            where = condition;
+            for (String arg : conditionArgs) {
+                args.add(arg);
+            }
+        }
+        if (after != null) {
+            where = where.isEmpty() ? AFTER_CONDITION : where + " AND " + AFTER_CONDITION;
+            args.add(String.valueOf(after.getTimestamp()));
+            args.add(String.valueOf(after.getTimestamp()));
+            args.add(String.valueOf(after.getId()));
+        }
+        if (!where.isEmpty()) {
+            sql.append(" WHERE ").append(where);
+        }
+        sql.append(ORDER);
+        args.add(String.valueOf(Math.max(1, pageSize)));
+        return query(sql.toString(), args.toArray(new String[0]));
+    }
+
+    private List<AnalysisHistory> query(String sql, String[] args) {
+        List<AnalysisHistory> list = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = helper.getReadableDatabase().rawQuery(sql, args);
+            while (cursor.moveToNext()) {
+                AnalysisHistory history = new AnalysisHistory(cursor.getLong(1), cursor.getString(2), cursor.getString(3));
+                history.setId(cursor.getLong(0));
+                history.setResultLength(cursor.getInt(4));
+                history.setModel(cursor.getString(5));
+                history.setImagePath(cursor.getString(6));
+                history.setThumbnailPath(cursor.getString(7));
+                list.add(history);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "查询分析历史失败: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return list;
+    }
+
+    private String writeThumbnail(Bitmap thumbnail, long id) {
+        if (thumbnail == null || thumbnail.isRecycled()) {
+            return null;
+        }
+        if (!thumbFolder.exists() && !thumbFolder.mkdirs()) {
+            Log.e(TAG, "创建缩略图目录失败");
+            return null;
+        }
+        File file = new File(thumbFolder, id + ".webp");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            if (!thumbnail.compress(AdaptiveImageEncoder.webpFormat(), THUMB_QUALITY, out)) {
+                Log.e(TAG, "缩略图编码失败");
+                file.delete();
+                return null;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "保存缩略图失败: " + e.getMessage());
+            file.delete();
+            return null;
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * 超过上限时删除最旧的记录
+     */
+    private void trim(SQLiteDatabase db) {
+        long excess = DatabaseUtils.queryNumEntries(db, TABLE) - MAX_ENTRIES;
+        if (excess <= 0) {
+            return;
+        }
+        deleteEntries(db, "id IN (SELECT id FROM " + TABLE + " ORDER BY timestamp ASC, id ASC LIMIT ?)",
+                new String[]{String.valueOf(excess)});
+        Log.d(TAG, "已删除最旧的 " + excess + " 条历史");
+    }
+
+    /**
+     * 删除符合条件的记录、索引和缩略图（调用方负责事务）
+     */
+    private void deleteEntries(SQLiteDatabase db, String condition, String[] args) {
+        List<Long> ids = new ArrayList<>();
+        List<String> thumbnails = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT id, thumbnail_path FROM " + TABLE + " WHERE " + condition, args)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+                if (!cursor.isNull(1)) {
+                    thumbnails.add(cursor.getString(1));
+                }
+            }
+        }
+        for (Long id : ids) {
+            String[] idArg = new String[]{String.valueOf(id)};
+            db.delete(TABLE, "id = ?", idArg);
+            db.delete(FTS_TABLE, "docid = ?", idArg);
+        }
+        for (String path : thumbnails) {
+            new File(path).delete();
+        }
+    }
+
+    /**
+     * 把文本转为索引用的词：中日韩文字切成相邻两字的词，并补上每段的最后一个字（单字搜索用前缀匹配）；
+     * 其他字母和数字按连续片段转为小写；其余字符作为分隔
+     *
+     * 例如 "点击OK按钮" -> "点击 击 ok 按钮 钮"
+     */
+    static String toSearchTokens(String text) {
+        StringBuilder tokens = new StringBuilder();
+        if (text == null) {
+            return "";
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int end = i;
+                while (end < length && isCjk(text.charAt(end))) {
+                    end++;
+                }
+                appendCjkTokens(tokens, text, i, end, true);
+                i = end;
+            } else if (Character.isLetterOrDigit(c)) {
+                int end = i;
+                while (end < length && Character.isLetterOrDigit(text.charAt(end)) && !isCjk(text.charAt(end))) {
+                    end++;
+                }
+                appendToken(tokens, text.substring(i, end).toLowerCase());
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return tokens.toString();
+    }
+
+    /**
+     * 把搜索文本转为 FTS 查询：每个关键词转为二元分词后的短语，关键词之间为"且"
+     * 单个汉字和英文数字片段用前缀匹配
+     *
+     * 例如 "OK按钮 登录" -> "\"ok 按钮\" \"登录\""
+     */
+    static String buildMatchQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        if (text == null) {
+            return "";
+        }
+        for (String word : text.trim().split("\\s+")) {
+            StringBuilder phrase = new StringBuilder();
+            int count = 0;
+            boolean prefix = false;
+            int length = word.length();
+            int i = 0;
+            while (i < length) {
+                char c = word.charAt(i);
+                if (isCjk(c)) {
+                    int end = i;
+                    while (end < length && isCjk(word.charAt(end))) {
+                        end++;
+                    }
+                    // 索引中每段末字都单独成词；查询中只有后面还有内容或只有一个字时才需要末字
+                    boolean withLast = end - i == 1 || hasLetterOrDigit(word, end);
+                    appendCjkTokens(phrase, word, i, end, withLast);
+                    count += end - i - 1 + (withLast ? 1 : 0);
+                    prefix = end - i == 1;
+                    i = end;
+                } else if (Character.isLetterOrDigit(c)) {
+                    int end = i;
+                    while (end < length && Character.isLetterOrDigit(word.charAt(end)) && !isCjk(word.charAt(end))) {
+                        end++;
+                    }
+                    appendToken(phrase, word.substring(i, end).toLowerCase());
+                    count++;
+                    prefix = true;
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            if (count == 1 && prefix) {
+                query.append(phrase).append('*');
+            } else {
+                query.append('"').append(phrase).append('"');
+            }
+        }
+        return query.toString();
+    }
+
+    private static boolean hasLetterOrDigit(String text, int start) {
+        for (int i = start; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendCjkTokens(StringBuilder tokens, String text, int start, int end, boolean withLast) {
+        for (int i = start; i + 1 < end; i++) {
+            appendToken(tokens, text.substring(i, i + 2));
+        }
+        if (withLast) {
+            appendToken(tokens, text.substring(end - 1, end));
+        }
+    }
+
+    private static void appendToken(StringBuilder tokens, String token) {
+        if (tokens.length() > 0) {
+            tokens.append(' ');
+        }
+        tokens.append(token);
+    }
+
+    /**
+     * 是否为中日韩文字（不含全角标点）
+     */
+    private static boolean isCjk(char c) {
+        return (c >= 0x3040 && c <= 0x30FF)      // 平假名、片假名
+                || (c >= 0x3400 && c <= 0x4DBF)  // 扩展A
+                || (c >= 0x4E00 && c <= 0x9FFF)  // 基本汉字
+                || (c >= 0xAC00 && c <= 0xD7AF)  // 韩文音节
+                || (c >= 0xF900 && c <= 0xFAFF); // 兼容汉字
+    }
+}
@@ -0,0 +1,372 @@
+package com.dy.autotask.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图片分析执行服务
+ *
+ * 进程内共享，不跟随任何界面的生命周期：空闲线程自动退出，不需要也不允许调用方关闭。
+ * - 并发数可配置，多个分析同时进行
+ * - 令牌桶限流，请求频率不超过API配额（缓存命中不消耗令牌）
+ * - 相同的请求（像素完全相同的图片、同一提示词）正在进行时，新的请求直接挂到进行中的请求上，共享一次接口调用；
+ *   判断是否相同需要读取整张图片，在分析线程中进行，不占用提交线程
+ *
+ * 使用方式：
+ * AnalysisService.getInstance().setConcurrency(4);
+ * AnalysisService.getInstance().setRateLimit(2, 4);
+ * AnalysisService.getInstance().analyze(bitmap, prompt, callback);
+ */
+public class AnalysisService {
+    private static final String TAG = "AnalysisService";
+
+    // 默认并发数
+    private static final int DEFAULT_CONCURRENCY = 3;
+
+    // 默认限流：每秒2个请求，最多突发3个
+    private static final double DEFAULT_PERMITS_PER_SECOND = 2;
+    private static final int DEFAULT_BURST = 3;
+
+    // 空闲线程的存活时间
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile AnalysisService instance;
+
+    private final ThreadPoolExecutor executor;
+    private final RateLimiter rateLimiter = new RateLimiter(DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST);
+
+    // 进行中的请求，按请求键合并，由自身加锁保护
+    private final Map<String, Group> inFlight = new HashMap<>();
+
+    // 统计
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * 回调等待者，回调抛出的异常只记录日志，不影响其他等待者
+     */
+    private static void deliverSuccess(AnalysisCallback callback, String result) {
+        try {
+            callback.onSuccess(result);
+        } catch (Exception e) {
+            Log.e(TAG, "分析结果回调异常: " + e.getMessage(), e);
+        }
+    }
+
+    private static void deliverError(AnalysisCallback callback, Exception error) {
+        try {
+            callback.onError(error);
+        } catch (Exception e) {
+            Log.e(TAG, "分析失败回调异常: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 一组合并的请求：一次接口调用，结果分发给所有等待者
+     */
+    private class Group implements Runnable {
+        private final String key;
+        private final Bitmap bitmap;
+        private final String prompt;
+        private final boolean stream;
+
+        // 以下字段由自身加锁保护
+        private final List<AnalysisCallback> callbacks = new ArrayList<>();
+        private boolean closed = false;
+
+        Group(String key, Bitmap bitmap, String prompt, boolean stream) {
+            this.key = key;
+            this.bitmap = bitmap;
+            this.prompt = prompt;
+            this.stream = stream;
+        }
+
+        /**
+         * 加入等待者
+         *
+         * @return 请求已结束（或流式请求的等待者都已提前离开）时返回false
+         */
+        synchronized boolean attach(AnalysisCallback callback) {
+            if (closed) {
+                return false;
+            }
+            callbacks.add(callback);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            String result = null;
+            Exception error = null;
+            try {
+                result = stream
+                        ? GLMImageAnalysisTool.analyzeImageStream(bitmap, prompt, partialDispatcher)
+                        : GLMImageAnalysisTool.analyzeImage(bitmap, prompt);
+                completedCount.incrementAndGet();
+            } catch (Exception e) {
+                error = e;
+                failedCount.incrementAndGet();
+                Log.e(TAG, "分析失败: " + e.getMessage());
+            }
+            // 回调在分析之外逐个调用，某个回调抛出异常不影响其他等待者
+            for (AnalysisCallback callback : close()) {
+                if (error == null) {
+                    deliverSuccess(callback, result);
+                } else {
+                    deliverError(callback, error);
+                }
+            }
+        }
+
+        /**
+         * 把部分结果分发给每个等待者；等待者要求结束时单独回调onSuccess并移出本组，
+         * 所有等待者都离开后才结束流式请求
+         */
+        private final AnalysisCallback partialDispatcher = new AnalysisCallback() {
+            @Override
+            public void onSuccess(String result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+
+            @Override
+            public boolean onPartialResult(String partialResult) {
+                List<AnalysisCallback> current;
+                synchronized (Group.this) {
+                    current = new ArrayList<>(callbacks);
+                }
+                for (AnalysisCallback callback : current) {
+                    boolean done;
+                    try {
+                        done = callback.onPartialResult(partialResult);
+                    } catch (Exception e) {
+                        Log.e(TAG, "部分结果回调异常: " + e.getMessage(), e);
+                        done = false;
+                    }
+                    if (done) {
+                        synchronized (Group.this) {
+                            callbacks.remove(callback);
+                        }
+                        deliverSuccess(callback, partialResult);
+                    }
+                }
+                synchronized (Group.this) {
+                    if (!callbacks.isEmpty()) {
+                        return false;
+                    }
+                }
+                close();
+                return true;
+            }
+        };
+
+        /**
+         * 结束本组：移出进行中列表，之后的相同请求会重新发起
+         *
+         * @return 仍在等待结果的回调
+         */
+        private List<AnalysisCallback> close() {
+            synchronized (inFlight) {
+                if (inFlight.get(key) == this) {
+                    inFlight.remove(key);
+                }
+            }
+            synchronized (this) {
+                closed = true;
+                List<AnalysisCallback> remaining = new ArrayList<>(callbacks);
+                callbacks.clear();
+                return remaining;
+            }
+        }
+    }
+
+    private AnalysisService() {
+        executor = new ThreadPoolExecutor(DEFAULT_CONCURRENCY, DEFAULT_CONCURRENCY,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "AnalysisService-" + count.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static AnalysisService getInstance() {
+        if (instance == null) {
+            synchronized (AnalysisService.class) {
+                if (instance == null) {
+                    instance = new AnalysisService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 设置最大并发数
+     *
+     * @param concurrency 同时进行的分析数（至少为1）
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        int value = Math.max(1, concurrency);
+        // 先调大上限再调核心数（或反之），避免核心数大于上限时抛异常
+        if (value > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(value);
+            executor.setCorePoolSize(value);
+        } else {
+            executor.setCorePoolSize(value);
+            executor.setMaximumPoolSize(value);
+        }
+        Log.d(TAG, "分析并发数: " + value);
+    }
+
+    public int getConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * 设置限流（与API配额一致）
+     *
+     * @param permitsPerSecond 每秒最多请求数（<=0 表示不限流）
+     * @param burst 允许的突发请求数
+     */
+    public void setRateLimit(double permitsPerSecond, int burst) {
+        rateLimiter.setRate(permitsPerSecond, burst);
+        Log.d(TAG, "分析限流: " + permitsPerSecond + "次/秒，突发 " + burst);
+    }
+
+    /**
+     * 接口调用共用的限流器（同步调用也受此限制）
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 提交分析
+     *
+     * @param bitmap 图片
+     * @param prompt 提示词
+     * @param callback 结果回调（在分析线程中）
+     */
+    public void analyze(Bitmap bitmap, String prompt, AnalysisCallback callback) {
+        submit(bitmap, prompt, false, callback);
+    }
+
+    /**
+     * 提交流式分析：部分结果通过onPartialResult回调，回调返回true时该调用方提前得到结果
+     *
+     * @param bitmap 图片
+     * @param prompt 提示词
+     * @param callback 结果回调（在分析线程中）
+     */
+    public void analyzeStream(Bitmap bitmap, String prompt, AnalysisCallback callback) {
+        submit(bitmap, prompt, true, callback);
+    }
+
+    private void submit(Bitmap bitmap, String prompt, boolean stream, AnalysisCallback callback) {
+        submittedCount.incrementAndGet();
+        executor.execute(() -> {
+            // 合并必须精确：感知哈希会把只差几个数字的两个画面当成同一画面，这里用全部像素的校验和
+            String key;
+            try {
+                key = AnalysisCache.contentHash(bitmap) + "|" + stream + "|" + (prompt != null ? prompt : "");
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                Log.e(TAG, "读取图片失败: " + e.getMessage());
+                callback.onError(e);
+                return;
+            }
+            Group group;
+            synchronized (inFlight) {
+                group = inFlight.get(key);
+                if (group != null && group.attach(callback)) {
+                    coalescedCount.incrementAndGet();
+                    Log.d(TAG, "相同请求正在进行，合并等待: " + getStatsSummary());
+                    return;
+                }
+                group = new Group(key, bitmap, prompt, stream);
+                group.attach(callback);
+                inFlight.put(key, group);
+            }
+            // 新的请求直接在当前分析线程中执行
+            group.run();
+        });
+    }
+
+    /**
+     * 排队等待执行的请求数
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 正在执行的请求数（包括等待限流令牌的请求）
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 正在等待限流令牌的请求数
+     */
+    public int getRateLimitedCount() {
+        return rateLimiter.getWaitingCount();
+    }
+
+    /**
+     * 进行中（排队或执行中）的不同请求数
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * 合并到进行中请求的次数（节省的接口调用数）
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 统计摘要（用于日志）
+     */
+    public String getStatsSummary() {
+        return "排队 " + getQueuedCount() + "，执行中 " + getActiveCount() + "，等待限流 " + getRateLimitedCount()
+                + "，已提交 " + submittedCount.get() + "，已合并 " + coalescedCount.get()
+                + "，完成 " + completedCount.get() + "，失败 " + failedCount.get();
+    }
+}
@@ -0,0 +1,130 @@
+package com.dy.autotask.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 批量分析：把多张图片放进一次请求，再把回答拆回每张图片
+ *
+ * - 分组：按后端的单次图片数上限和图片总字节数上限，按顺序把图片分成若干次请求
+ * - 提示词：每张图片前加标签 "图k"，要求模型以单独一行的 "[图k]" 开头逐张回答
+ * - 拆分：按 "[图k]"（也接受 "【图k】"、"图k："）把回答切开，缺少回答的图片由调用方单独补发
+ *
+ * 使用方式见 {@link GLMImageAnalysisTool#analyzeImages(List, String)}
+ */
+public class BatchAnalysis {
+
+    // 一次请求中图片的总字节数上限（Base64 后约为 1.33 倍）
+    public static final int MAX_REQUEST_IMAGE_BYTES = 1024 * 1024;
+
+    private static final String LABEL_FORMAT = "图%d";
+
+    // 回答中的图片标记，必须在行首：[图k]、【图k】 或 图k：（允许 Markdown 的 #、*、> 前缀）
+    private static final Pattern ANSWER_MARKER = Pattern.compile(
+            "(?m)^[ \\t>#*]*(?:[\\[【]\\s*图\\s*(\\d+)\\s*[\\]】]|图\\s*(\\d+)\\s*[:：])[ \\t*]*[:：]?");
+
+    private BatchAnalysis() {
+    }
+
+    /**
+     * 按顺序把图片分组
+     *
+     * @param sizes 每张图片编码后的字节数
+     * @param maxImages 每组最多图片数
+     * @param maxBytes 每组图片总字节数上限（单张超过上限时独占一组）
+     * @return 每组的 [起始下标, 结束下标)
+     */
+    public static List<int[]> split(int[] sizes, int maxImages, long maxBytes) {
+        List<int[]> groups = new ArrayList<>();
+        int start = 0;
+        long bytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            boolean full = i - start >= Math.max(1, maxImages) || (i > start && bytes + sizes[i] > maxBytes);
+            if (full) {
+                groups.add(new int[]{start, i});
+                start = i;
+                bytes = 0;
+            }
+            bytes += sizes[i];
+        }
+        if (start < sizes.length) {
+            groups.add(new int[]{start, sizes.length});
+        }
+        return groups;
+    }
+
+    /**
+     * 每张图片前的标签
+     *
+     * @param count 图片数
+     * @return "图1" 到 "图count"
+     */
+    public static List<String> labels(int count) {
+        List<String> labels = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            labels.add(String.format(LABEL_FORMAT, i));
+        }
+        return labels;
+    }
+
+    /**
+     * 生成批量提示词
+     *
+     * @param prompt 对每张图片的提示词
+     * @param count 图片数
+     * @return 批量提示词
+     */
+    public static String buildPrompt(String prompt, int count) {
+        return "下面共有 " + count + " 张图片，依次标记为 图1 到 图" + count + "。"
+                + "请对每张图片分别回答：" + prompt + "\n"
+                + "回答格式：每张图片的回答以单独一行的 [图k] 开头（k 为图片编号），按编号顺序逐张回答，"
+                + "不要遗漏，也不要把多张图片合并回答。";
+    }
+
+    /**
+     * 把批量回答拆回每张图片
+     *
+     * @param response 模型的完整回答
+     * @param count 图片数
+     * @return 每张图片的回答（下标从0开始），没有找到的为 null
+     */
+    public static String[] splitAnswers(String response, int count) {
+        String[] answers = new String[count];
+        if (response == null) {
+            return answers;
+        }
+        Matcher matcher = ANSWER_MARKER.matcher(response);
+        int index = -1;
+        int contentStart = 0;
+        while (matcher.find()) {
+            putAnswer(answers, index, response.substring(contentStart, matcher.start()));
+            String number = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            index = parseIndex(number, count);
+            contentStart = matcher.end();
+        }
+        putAnswer(answers, index, response.substring(contentStart));
+        return answers;
+    }
+
+    private static void putAnswer(String[] answers, int index, String text) {
+        if (index < 0) {
+            return;
+        }
+        String answer = text.trim();
+        // 同一编号出现多次时保留第一个非空回答
+        if (!answer.isEmpty() && answers[index] == null) {
+            answers[index] = answer;
+        }
+    }
+
+    private static int parseIndex(String number, int count) {
+        try {
+            int index = Integer.parseInt(number) - 1;
+            return index >= 0 && index < count ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.dy.autotask.utils;
+
+/**
+ * 熔断器
+ *
+ * 连续失败达到阈值后进入打开状态，此后的请求直接失败，不再等待超时；
+ * 打开一段时间后进入半开状态，只放行一个探测请求：成功则恢复正常，失败则重新打开。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class CircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED,     // 正常放行
+        OPEN,       // 熔断中，直接失败
+        HALF_OPEN   // 放行一个探测请求
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    // 以下字段由对象锁保护
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtNanos = 0;
+    private boolean probeInFlight = false;
+
+    /**
+     * @param failureThreshold 连续失败多少次后熔断
+     * @param openDurationMs 熔断持续时间，之后开始探测
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * 是否放行本次请求；放行后必须调用 {@link #recordSuccess()} 或 {@link #recordFailure()}
+     *
+     * @return 是否放行
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && getRemainingOpenMs() <= 0) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 记录一次成功（接口可达），关闭熔断
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * 记录一次失败，达到阈值或探测失败时打开熔断
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * 放行的请求被调用方取消（如到达截止时间），不能说明接口是否正常：
+     * 不改变状态，只归还半开状态下的探测名额
+     */
+    public synchronized void recordCancelled() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && getRemainingOpenMs() <= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * 距离开始探测还有多久
+     *
+     * @return 毫秒，未熔断时为0
+     */
+    public synchronized long getRemainingOpenMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long elapsedMs = (System.nanoTime() - openedAtNanos) / 1000000;
+        return Math.max(0, openDurationMs - elapsedMs);
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
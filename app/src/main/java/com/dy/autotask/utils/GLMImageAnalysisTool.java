@@ -1,30 +1,32 @@
 package com.dy.autotask.utils;
 
+import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.dy.autotask.BuildConfig;
-import com.dy.autotask.model.ImageAnalysisRequest;
-import com.dy.autotask.model.ImageAnalysisResponse;
-import com.google.gson.Gson;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import okhttp3.MediaType;
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 /**
  * 智谱 GLM 图片分析工具类（核心工具）
  *
  * 这是整个项目的 AI 分析接口，提供给其他模块使用
- * 支持同步和异步两种调用方式
+ * 支持同步和异步两种调用方式，异步调用由 {@link AnalysisService} 并发执行并统一限流
  *
  * 使用方式：
  * // 同步调用
@@ -36,33 +38,69 @@ import okhttp3.Response;
  *         public void onSuccess(String result) { ... }
  *         public void onError(Exception e) { ... }
  *     });
+ *
+ * // 流式调用：边生成边回调 onPartialResult，可在出现关键字后提前结束
+ * GLMImageAnalysisTool.analyzeImageStreamAsync(bitmap, "分析这张图片", callback);
+ *
+ * // 批量调用：多张图片合并为尽量少的请求，结果与图片一一对应
+ * List<String> results = GLMImageAnalysisTool.analyzeImages(bitmaps, "这是什么页面");
+ *
+ * 接口地址、鉴权和请求/响应格式由 {@link VisionBackend} 提供，默认使用智谱 GLM，
+ * 可通过 {@link #setBackend(VisionBackend)} 切换到其他 OpenAI 兼容服务或调试构建中的本地模拟服务器（MockVisionServer）
+ *
+ * 同一画面、同一提示词的分析结果会被缓存（见 {@link AnalysisCache}），
+ * 调用 {@link #enableDiskCache(Context)} 后缓存在应用重启后仍然有效
+ *
+ * 限流（429）、服务端临时错误（5xx）和网络超时按 {@link RetryPolicy} 退避重试；
+ * 连续失败后由 {@link CircuitBreaker} 熔断，接口不可用时直接失败而不是每次都等到超时。
+ * 带截止时间的调用（deadlineMs，{@link SystemClock#uptimeMillis()} 时间点）在截止前结束，包括重试等待
  */
 public class GLMImageAnalysisTool {
 
     private static final String TAG = "GLMImageAnalysisTool";
 
-    // 智谱 API 端点
-    private static final String API_URL = "https://open.bigmodel.cn/api/paas/v4/chat/completions";
+    // 默认提示词
+    private static final String DEFAULT_PROMPT = "请分析这张图片的内容";
+
+    // 磁盘缓存目录名
+    private static final String CACHE_FOLDER_NAME = "glm_analysis_cache";
 
-    // 模型名称
-    private static final String MODEL = "glm-4.6v-flash";
+    // 连接超时（秒）：连不上的端点尽快失败，交给重试和熔断处理
+    private static final int CONNECT_TIMEOUT_SECONDS = 10;
 
-    // 超时时间（秒）
+    // 读写超时（秒）
     private static final int TIMEOUT_SECONDS = 30;
 
-    // OkHttp 客户端（单例）
-    private static OkHttpClient okHttpClient;
+    // 重试：最多3次，首次退避0.5秒，单次最多8秒
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 8000;
 
-    // 异步执行器
-    private static final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    // 熔断：连续失败5次后熔断30秒
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MS = 30000;
 
-    // Gson 实例
-    private static final Gson gson = new Gson();
+    // 详细日志中单条内容的最大长度
+    private static final int LOG_LIMIT = 512;
+
+    // 是否输出详细日志（响应内容、鉴权信息等），默认关闭，避免热路径刷屏
+    private static volatile boolean verboseLogging = false;
+
+    // 当前使用的分析后端（默认智谱 GLM）
+    private static volatile VisionBackend backend = new GLMVisionBackend();
+
+    private static volatile RetryPolicy retryPolicy = new RetryPolicy(MAX_ATTEMPTS, BASE_BACKOFF_MS, MAX_BACKOFF_MS);
+
+    // 熔断器跟随后端，切换后端时重新创建
+    private static volatile CircuitBreaker circuitBreaker = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS);
+
+    // OkHttp 客户端（单例）
+    private static OkHttpClient okHttpClient;
 
     static {
         // 初始化 OkHttp 客户端
         okHttpClient = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .build();
@@ -77,49 +115,347 @@ public class GLMImageAnalysisTool {
      * @throws IOException 网络错误
      */
     public static String analyzeImage(Bitmap bitmap, String prompt) throws IOException {
+        return analyze(defaultPipeline(), bitmap, prompt, null, 0, null);
+    }
+
+    /**
+     * 带截止时间的同步分析（阻塞调用）
+     *
+     * @param bitmap 输入的 Bitmap 图片
+     * @param prompt 分析提示词（可选，为 null 时使用默认提示词）
+     * @param deadlineMs 截止时间（{@link SystemClock#uptimeMillis()} 时间点，0 表示不限）
+     * @return 分析结果字符串
+     * @throws IOException 网络错误或超过截止时间
+     */
+    public static String analyzeImage(Bitmap bitmap, String prompt, long deadlineMs) throws IOException {
+        return analyze(defaultPipeline(), bitmap, prompt, null, deadlineMs, null);
+    }
+
+    /**
+     * 带截止时间的同步分析，只缓存调用方认可的结果（例如只缓存能解析出目标的定位结果）
+     * 缓存中不被认可的旧结果会被删除并重新请求
+     *
+     * @param bitmap 输入的 Bitmap 图片
+     * @param prompt 分析提示词（可选，为 null 时使用默认提示词）
+     * @param deadlineMs 截止时间（{@link SystemClock#uptimeMillis()} 时间点，0 表示不限）
+     * @param cacheFilter 判断结果是否写入缓存
+     * @return 分析结果字符串（不被认可的结果也会返回，只是不写入缓存）
+     * @throws IOException 网络错误或超过截止时间
+     */
+    public static String analyzeImage(Bitmap bitmap, String prompt, long deadlineMs, CacheFilter cacheFilter) throws IOException {
+        return analyze(defaultPipeline(), bitmap, prompt, null, deadlineMs, cacheFilter);
+    }
+
+    /**
+     * 判断分析结果是否值得缓存
+     */
+    public interface CacheFilter {
+        /**
+         * @param result 分析结果
+         * @return 是否写入缓存
+         */
+        boolean shouldCache(String result);
+    }
+
+    /**
+     * 使用指定的后端、缓存和限流器同步分析图片，不读取也不修改全局配置（基准测试等场景使用）
+     *
+     * @param pipeline 使用的后端、缓存、限流器和熔断器
+     * @param bitmap 输入的 Bitmap 图片
+     * @param prompt 分析提示词（可选，为 null 时使用默认提示词）
+     * @return 分析结果字符串
+     * @throws IOException 网络错误
+     */
+    static String analyzeImage(Pipeline pipeline, Bitmap bitmap, String prompt) throws IOException {
+        return analyze(pipeline, bitmap, prompt, null, 0, null);
+    }
+
+    /**
+     * 流式分析图片（阻塞调用）
+     * 使用 SSE 逐段接收结果，每收到新内容回调 {@link AnalysisCallback#onPartialResult(String)}；
+     * 回调返回 true 时立即断开连接，不再等待剩余内容
+     *
+     * @param bitmap 输入的 Bitmap 图片
+     * @param prompt 分析提示词（可选，为 null 时使用默认提示词）
+     * @param callback 接收部分结果的回调（只会调用 onPartialResult）
+     * @return 分析结果字符串；提前结束时为结束时已收到的文本
+     * @throws IOException 网络错误
+     */
+    public static String analyzeImageStream(Bitmap bitmap, String prompt, AnalysisCallback callback) throws IOException {
+        if (callback == null) {
+            throw new IllegalArgumentException("回调不能为 null");
+        }
+        return analyze(defaultPipeline(), bitmap, prompt, callback, 0, null);
+    }
+
+    /**
+     * 流式分析图片，直到结果中出现任意一个关键字
+     * 出现关键字后立即结束请求，适合任务中只需要判断结论的场景
+     *
+     * @param bitmap 输入的 Bitmap 图片
+     * @param prompt 分析提示词
+     * @param keywords 关键字
+     * @return 最先出现的关键字，完整结果中都没有出现时返回 null
+     * @throws IOException 网络错误
+     */
+    public static String analyzeUntilKeyword(Bitmap bitmap, String prompt, String[] keywords) throws IOException {
+        return analyzeUntilKeyword(bitmap, prompt, keywords, 0);
+    }
+
+    /**
+     * 流式分析图片，直到结果中出现任意一个关键字，或到达截止时间
+     *
+     * @param bitmap 输入的 Bitmap 图片
+     * @param prompt 分析提示词
+     * @param keywords 关键字
+     * @param deadlineMs 截止时间（{@link SystemClock#uptimeMillis()} 时间点，0 表示不限）
+     * @return 最先出现的关键字，完整结果中都没有出现时返回 null
+     * @throws IOException 网络错误或超过截止时间
+     */
+    public static String analyzeUntilKeyword(Bitmap bitmap, String prompt, String[] keywords, long deadlineMs) throws IOException {
+        final String[] matched = new String[1];
+        analyze(defaultPipeline(), bitmap, prompt, new AnalysisCallback() {
+            @Override
+            public void onSuccess(String result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+
+            @Override
+            public boolean onPartialResult(String partialResult) {
+                for (String keyword : keywords) {
+                    if (partialResult.contains(keyword)) {
+                        matched[0] = keyword;
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }, deadlineMs, null);
+        return matched[0];
+    }
+
+    /**
+     * 批量分析多张图片（阻塞调用）
+     *
+     * @param bitmaps 图片列表
+     * @param prompt 对每张图片的提示词（可选，为 null 时使用默认提示词）
+     * @return 与图片一一对应的分析结果
+     * @throws IOException 网络错误
+     */
+    public static List<String> analyzeImages(List<Bitmap> bitmaps, String prompt) throws IOException {
+        return analyzeImages(bitmaps, prompt, 0);
+    }
+
+    /**
+     * 带截止时间的批量分析（阻塞调用）
+     * 图片按后端的单次图片数上限和 {@link BatchAnalysis#MAX_REQUEST_IMAGE_BYTES} 自动分组，
+     * 每组一次请求（共用一段提示词），回答按图片编号拆回每张图片；
+     * 回答中缺少的图片再单独请求一次。批量请求不经过分析缓存
+     *
+     * @param bitmaps 图片列表
+     * @param prompt 对每张图片的提示词（可选，为 null 时使用默认提示词）
+     * @param deadlineMs 截止时间（{@link SystemClock#uptimeMillis()} 时间点，0 表示不限）
+     * @return 与图片一一对应的分析结果
+     * @throws IOException 网络错误或超过截止时间
+     */
+    public static List<String> analyzeImages(List<Bitmap> bitmaps, String prompt, long deadlineMs) throws IOException {
+        if (bitmaps == null || bitmaps.isEmpty()) {
+            throw new IllegalArgumentException("图片列表不能为空");
+        }
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap == null) {
+                throw new IllegalArgumentException("Bitmap 不能为 null");
+            }
+        }
+
+        int count = bitmaps.size();
+        Log.d(TAG, "开始批量分析 " + count + " 张图片...");
+
+        Pipeline pipeline = defaultPipeline();
+        VisionBackend currentBackend = pipeline.backend;
+        String effectivePrompt = prompt == null || prompt.isEmpty() ? DEFAULT_PROMPT : prompt;
+        try {
+            // 1. 逐张自适应编码
+            List<AdaptiveImageEncoder.Encoded> encoded = new ArrayList<>(count);
+            int[] sizes = new int[count];
+            for (int i = 0; i < count; i++) {
+                AdaptiveImageEncoder.Encoded image = AdaptiveImageEncoder.getInstance().encode(bitmaps.get(i));
+                if (image == null) {
+                    throw new IOException("第 " + (i + 1) + " 张图片编码失败");
+                }
+                encoded.add(image);
+                sizes[i] = image.getLength();
+            }
+
+            // 2. 分组发送，拆分回答
+            String[] results = new String[count];
+            List<int[]> groups = BatchAnalysis.split(sizes, currentBackend.getMaxImagesPerRequest(),
+                    BatchAnalysis.MAX_REQUEST_IMAGE_BYTES);
+            Log.d(TAG, "批量分析分为 " + groups.size() + " 次请求");
+            for (int[] group : groups) {
+                int size = group[1] - group[0];
+                if (size == 1) {
+                    results[group[0]] = sendSingle(pipeline, effectivePrompt, encoded.get(group[0]), deadlineMs);
+                    continue;
+                }
+                RequestBody body = currentBackend.createBatchBody(BatchAnalysis.buildPrompt(effectivePrompt, size),
+                        encoded.subList(group[0], group[1]), BatchAnalysis.labels(size));
+                String response = sendRequest(pipeline, body, deadlineMs);
+                String[] answers = BatchAnalysis.splitAnswers(response, size);
+                System.arraycopy(answers, 0, results, group[0], size);
+            }
+
+            // 3. 回答中缺少的图片单独补发
+            for (int i = 0; i < count; i++) {
+                if (results[i] == null) {
+                    Log.w(TAG, "批量回答中缺少第 " + (i + 1) + " 张图片，单独请求");
+                    results[i] = sendSingle(pipeline, effectivePrompt, encoded.get(i), deadlineMs);
+                }
+            }
+
+            Log.d(TAG, "批量分析完成，共 " + count + " 张图片");
+            return Arrays.asList(results);
+
+        } catch (Exception e) {
+            Log.e(TAG, "批量分析失败: " + e.getMessage(), e);
+            throw new IOException("批量分析图片失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按 API 配额获取令牌，等待不超过截止时间
+     *
+     * @param limiter 限流器（为 null 时不限流）
+     * @param deadlineMs 截止时间（{@link SystemClock#uptimeMillis()} 时间点，0 表示不限）
+     * @throws InterruptedIOException 截止前拿不到令牌
+     */
+    private static void acquirePermit(RateLimiter limiter, long deadlineMs) throws InterruptedIOException, InterruptedException {
+        if (limiter == null) {
+            return;
+        }
+        if (deadlineMs <= 0) {
+            limiter.acquire();
+            return;
+        }
+        long remainingMs = deadlineMs - SystemClock.uptimeMillis();
+        if (remainingMs <= 0) {
+            throw new InterruptedIOException("已超过截止时间");
+        }
+        limiter.acquire(remainingMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 对已编码的单张图片发送一次性请求（不经过缓存）
+     */
+    private static String sendSingle(Pipeline pipeline, String prompt, AdaptiveImageEncoder.Encoded image,
+                                     long deadlineMs) throws IOException {
+        RequestBody body = pipeline.backend.createBody(prompt, image, false);
+        return sendRequest(pipeline, body, deadlineMs);
+    }
+
+    /**
+     * 一次分析用到的后端、缓存、限流器和熔断器
+     * 正常调用使用全局配置（{@link #defaultPipeline()}）；基准测试等场景传入自己的实例，不影响其他调用
+     */
+    static final class Pipeline {
+        final VisionBackend backend;
+        /** 分析缓存，为 null 时不使用缓存 */
+        final AnalysisCache cache;
+        /** 限流器，为 null 时不限流 */
+        final RateLimiter rateLimiter;
+        final CircuitBreaker circuitBreaker;
+
+        Pipeline(VisionBackend backend, AnalysisCache cache, RateLimiter rateLimiter, CircuitBreaker circuitBreaker) {
+            this.backend = backend;
+            this.cache = cache;
+            this.rateLimiter = rateLimiter;
+            this.circuitBreaker = circuitBreaker;
+        }
+    }
+
+    /**
+     * 全局配置：当前后端、共用的分析缓存、{@link AnalysisService} 的限流器和后端的熔断器
+     */
+    private static Pipeline defaultPipeline() {
+        return new Pipeline(backend, AnalysisCache.getInstance(),
+                AnalysisService.getInstance().getRateLimiter(), circuitBreaker);
+    }
+
+    /**
+     * 分析图片：查缓存、编码、发送请求、解析结果
+     *
+     * @param pipeline 使用的后端、缓存、限流器和熔断器
+     * @param streamCallback 为 null 时一次性请求，否则使用流式请求
+     * @param deadlineMs 截止时间（{@link SystemClock#uptimeMillis()} 时间点，0 表示不限）
+     * @param cacheFilter 判断结果是否写入缓存（为 null 时都写入）
+     */
+    private static String analyze(Pipeline pipeline, Bitmap bitmap, String prompt, AnalysisCallback streamCallback,
+                                  long deadlineMs, CacheFilter cacheFilter) throws IOException {
         if (bitmap == null) {
             Log.e(TAG, "Bitmap 为 null");
             throw new IllegalArgumentException("Bitmap 不能为 null");
         }
 
-        Log.d(TAG, "开始同步分析图片...");
+        Log.d(TAG, "开始" + (streamCallback != null ? "流式" : "同步") + "分析图片...");
 
+        VisionBackend currentBackend = pipeline.backend;
         try {
-            // 1. 压缩图片
-            Log.d(TAG, "压缩图片...");
-            Bitmap compressedBitmap = ImageCompressUtil.compressBitmap(bitmap);
-            if (compressedBitmap == null) {
-                throw new IOException("图片压缩失败");
+            // 1. 查询缓存：同一画面、同一提示词直接返回上次的结果（命中时不需要编码图片）
+            AnalysisCache cache = pipeline.cache != null && pipeline.cache.isEnabled() ? pipeline.cache : null;
+            String effectivePrompt = prompt == null || prompt.isEmpty() ? DEFAULT_PROMPT : prompt;
+            long imageHash = 0;
+            if (cache != null) {
+                imageHash = AnalysisCache.hashBitmap(bitmap);
+                String cached = cache.get(imageHash, effectivePrompt, currentBackend.getModel());
+                if (cached != null && cacheFilter != null && !cacheFilter.shouldCache(cached)) {
+                    // 不被认可的旧结果，删除后重新请求
+                    cache.remove(imageHash, effectivePrompt, currentBackend.getModel());
+                    cached = null;
+                }
+                if (cached != null) {
+                    if (streamCallback != null) {
+                        streamCallback.onPartialResult(cached);
+                    }
+                    return cached;
+                }
             }
-            Log.d(TAG, "压缩完成，尺寸: " + compressedBitmap.getWidth() + "x" + compressedBitmap.getHeight());
 
-            // 2. 转换为 Base64
-            Log.d(TAG, "转换为 Base64...");
-            String base64Image = Base64Util.bitmapToBase64(compressedBitmap);
-            if (base64Image == null) {
-                throw new IOException("Base64 编码失败");
+            // 2. 按字节预算自适应编码图片（按画面内容选择质量和尺寸）
+            AdaptiveImageEncoder.Encoded encoded = AdaptiveImageEncoder.getInstance().encode(bitmap);
+            if (encoded == null) {
+                throw new IOException("图片编码失败");
             }
-            Log.d(TAG, "Base64 编码完成，长度: " + base64Image.length());
 
-            // 3. 构建请求
+            // 构建流式请求体（图片在发送时才编码为 Base64，直接写入网络）
             Log.d(TAG, "构建 API 请求...");
-            String requestJson = buildRequestJson(base64Image, prompt);
-            Log.d(TAG, "请求体大小: " + requestJson.length() + " 字节");
-
-            // 4. 发送 HTTP 请求
-            Log.d(TAG, "发送请求到 GLM API...");
-            String responseJson = sendRequest(requestJson);
-            if (responseJson == null) {
-                throw new IOException("API 响应为空");
+            RequestBody body = currentBackend.createBody(effectivePrompt, encoded, streamCallback != null);
+
+            // 3. 发送 HTTP 请求，每次尝试前按 API 配额限流（缓存命中不消耗配额）
+            Log.d(TAG, "发送请求到 " + currentBackend.getName() + " API...");
+            if (streamCallback != null) {
+                StreamResult streamResult = sendStreamRequest(pipeline, body, streamCallback, deadlineMs);
+                // 提前结束的结果不完整，不写入缓存
+                if (!streamResult.stoppedEarly && cache != null
+                        && (cacheFilter == null || cacheFilter.shouldCache(streamResult.text))) {
+                    cache.put(imageHash, effectivePrompt, currentBackend.getModel(), streamResult.text);
+                }
+                Log.d(TAG, "流式分析完成，结果长度: " + streamResult.text.length()
+                        + (streamResult.stoppedEarly ? "（提前结束）" : ""));
+                return streamResult.text;
             }
-
-            // 5. 解析响应
-            Log.d(TAG, "解析 API 响应...");
-            String result = parseResponse(responseJson);
+            // 4. 边读取边解析响应
+            String result = sendRequest(pipeline, body, deadlineMs);
             if (result == null) {
                 throw new IOException("无法解析 API 响应");
             }
 
+            if (cache != null && (cacheFilter == null || cacheFilter.shouldCache(result))) {
+                cache.put(imageHash, effectivePrompt, currentBackend.getModel(), result);
+            }
+
             Log.d(TAG, "分析完成，结果长度: " + result.length());
             return result;
 
@@ -152,188 +488,298 @@ public class GLMImageAnalysisTool {
 
         Log.d(TAG, "启动异步分析任务...");
 
-        // 在后台线程执行分析
-        executorService.submit(() -> {
-            try {
-                String result = analyzeImage(bitmap, prompt);
-                callback.onSuccess(result);
-            } catch (Exception e) {
-                Log.e(TAG, "异步分析失败: " + e.getMessage(), e);
-                callback.onError(e);
-            }
-        });
+        // 在分析服务的线程池中执行，相同的进行中请求会被合并
+        AnalysisService.getInstance().analyze(bitmap, prompt, callback);
     }
 
     /**
-     * 构建 API 请求 JSON
+     * 异步流式分析图片
+     * 部分结果通过 onPartialResult 回调（在后台线程中），完成或提前结束后回调 onSuccess
      *
-     * @param base64Image Base64 编码的图片
+     * @param bitmap 输入的 Bitmap 图片
      * @param prompt 分析提示词
-     * @return JSON 字符串
+     * @param callback 结果回调
      */
-    private static String buildRequestJson(String base64Image, String prompt) {
-        // 使用默认提示词
-        if (prompt == null || prompt.isEmpty()) {
-            prompt = "请分析这张图片的内容";
+    public static void analyzeImageStreamAsync(Bitmap bitmap, String prompt, AnalysisCallback callback) {
+        if (callback == null) {
+            Log.w(TAG, "回调为 null");
+            return;
+        }
+        if (bitmap == null) {
+            Log.e(TAG, "Bitmap 为 null");
+            callback.onError(new IllegalArgumentException("Bitmap 不能为 null"));
+            return;
         }
 
-        // 构建请求对象
-        ImageAnalysisRequest request = new ImageAnalysisRequest(MODEL);
-
-        ImageAnalysisRequest.Message message = new ImageAnalysisRequest.Message();
-
-        // 添加文本内容
-        message.addContent(new ImageAnalysisRequest.Content(prompt));
-
-        // 添加图片内容
-        ImageAnalysisRequest.ImageUrl imageUrl = new ImageAnalysisRequest.ImageUrl(base64Image);
-        message.addContent(new ImageAnalysisRequest.Content(imageUrl));
+        Log.d(TAG, "启动异步流式分析任务...");
 
-        request.addMessage(message);
+        AnalysisService.getInstance().analyzeStream(bitmap, prompt, callback);
+    }
 
-        // 转换为 JSON
-        String jsonRequest = gson.toJson(request);
+    /**
+     * 流式请求的结果
+     */
+    private static class StreamResult {
+        final String text;
+        final boolean stoppedEarly;
 
-        Log.d(TAG, "请求结构: model=" + request.getModel() + ", messages count=" + request.getMessages().size());
-        Log.d(TAG, "第一条消息: role=" + message.getRole() + ", content items=" + message.getContent().size());
-        for (int i = 0; i < message.getContent().size(); i++) {
-            ImageAnalysisRequest.Content content = message.getContent().get(i);
-            Log.d(TAG, "  - Content " + i + ": type=" + content.getType() + ", has text=" + (content.getText() != null) + ", has image=" + (content.getImageUrl() != null));
+        StreamResult(String text, boolean stoppedEarly) {
+            this.text = text;
+            this.stoppedEarly = stoppedEarly;
         }
-
-        return jsonRequest;
     }
 
     /**
-     * 发送 HTTP 请求
+     * 发送流式请求，逐行读取 SSE 事件并回调部分结果
      *
-     * @param requestJson 请求 JSON
-     * @return 响应 JSON 字符串
-     * @throws IOException 网络错误
+     * 开始接收内容之前的失败会重试；已经回调过部分结果后不再重试，避免调用方收到重复内容
+     *
+     * @param pipeline 使用的后端和熔断器
+     * @param body 请求体（stream 为 true）
+     * @param callback 部分结果回调，返回 true 时断开连接
+     * @param deadlineMs 截止时间（0 表示不限）
+     * @return 收到的文本及是否提前结束
+     * @throws IOException 网络错误或响应中没有结果
      */
-    private static String sendRequest(String requestJson) throws IOException {
-        String apiKey = BuildConfig.GLM_API_KEY;
-        if (apiKey == null || apiKey.isEmpty() || apiKey.equals("default_key")) {
-            Log.e(TAG, "API Key 未配置或无效");
-            throw new IOException("API Key 未配置");
-        }
-
-        Log.d(TAG, "API Key 已读取（长度: " + apiKey.length() + "）");
-        Log.d(TAG, "API Key 格式: " + (apiKey.contains(".") ? "✓ 正确格式（包含点号）" : "✗ 可能格式错误"));
-
-        // 构建请求
-        RequestBody body = RequestBody.create(requestJson, MediaType.parse("application/json"));
-
-        Request request = new Request.Builder()
-                .url(API_URL)
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .post(body)
-                .build();
-
-        // 执行请求
-        try (Response response = okHttpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "";
-                Log.e(TAG, "API 返回错误: " + response.code() + " - " + response.message());
-                Log.e(TAG, "错误体: " + errorBody);
-                throw new IOException("API 错误: " + response.code() + " " + response.message());
-            }
-
-            String responseBody = response.body() != null ? response.body().string() : null;
+    private static StreamResult sendStreamRequest(Pipeline pipeline, RequestBody body, AnalysisCallback callback,
+                                                  long deadlineMs) throws IOException {
+        try (Response response = executeWithRetry(pipeline, body, deadlineMs)) {
+            ResponseBody responseBody = response.body();
             if (responseBody == null) {
                 throw new IOException("响应体为空");
             }
 
-            Log.d(TAG, "API 请求成功，响应体长度: " + responseBody.length());
-            Log.d(TAG, "完整响应内容: " + responseBody);
-            return responseBody;
+            BufferedSource source = responseBody.source();
+            StringBuilder content = new StringBuilder();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                // 只处理 data 字段，空行、注释和 event 字段直接跳过
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.equals("[DONE]")) {
+                    break;
+                }
+                String delta = pipeline.backend.parseStreamDelta(data);
+                if (delta == null || delta.isEmpty()) {
+                    continue;
+                }
+                content.append(delta);
+                if (callback.onPartialResult(content.toString())) {
+                    // 关闭未读完的响应会断开连接，服务端随即停止生成
+                    Log.d(TAG, "调用方已得到需要的内容，提前结束流式分析");
+                    return new StreamResult(content.toString(), true);
+                }
+            }
+
+            if (content.length() == 0) {
+                throw new IOException("流式响应中没有结果");
+            }
+            return new StreamResult(content.toString(), false);
         }
     }
 
     /**
-     * 解析 API 响应
+     * 发送请求，可重试的失败按退避策略重试，直到成功、不可重试、次数用完或到达截止时间
+     * 每次尝试（包括重试）前按 API 配额获取令牌，限流（429）后的重试同样受令牌桶约束；
+     * 之后检查熔断器，熔断中直接失败；每次尝试的整体超时不超过剩余时间
      *
-     * @param responseJson API 响应 JSON
-     * @return 分析结果文本
-     * @throws IOException 解析失败
+     * @param pipeline 使用的后端和熔断器
+     * @param body 请求体（可重复写入）
+     * @param deadlineMs 截止时间（0 表示不限）
+     * @return 成功的响应（调用方负责关闭）
+     * @throws IOException 最后一次失败的原因、熔断或超过截止时间
      */
-    private static String parseResponse(String responseJson) throws IOException {
-        try {
-            Log.d(TAG, "开始解析响应，内容长度: " + responseJson.length());
-            Log.d(TAG, "响应内容摘要: " + responseJson.substring(0, Math.min(200, responseJson.length())));
-
-            ImageAnalysisResponse response = gson.fromJson(responseJson, ImageAnalysisResponse.class);
-
-            // 检查响应码
-            if (response == null) {
-                Log.e(TAG, "响应对象为空");
-                throw new IOException("响应对象为空");
+    private static Response executeWithRetry(Pipeline pipeline, RequestBody body, long deadlineMs) throws IOException {
+        Request request = pipeline.backend.buildRequest(body);
+        RetryPolicy policy = retryPolicy;
+        CircuitBreaker circuitBreaker = pipeline.circuitBreaker;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                acquirePermit(pipeline.rateLimiter, deadlineMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待限流令牌被中断");
+            }
+            long remainingMs = deadlineMs > 0 ? deadlineMs - SystemClock.uptimeMillis() : 0;
+            if (deadlineMs > 0 && remainingMs <= 0) {
+                throw new InterruptedIOException("已超过截止时间");
+            }
+            if (!circuitBreaker.allowRequest()) {
+                throw new IOException("API 连续失败已熔断，" + (circuitBreaker.getRemainingOpenMs() / 1000) + " 秒后重新探测");
             }
 
-            // 新格式的 API 响应没有 code 和 msg，直接包含 choices
-            // 旧格式的响应有 code 和 msg，内容在 data 中
-
-            // 检查是否有 code 字段（如果有表示旧格式）
-            if (response.getCode() != 0) {
-                Log.d(TAG, "旧格式响应 - 响应码: " + response.getCode());
-                Log.d(TAG, "旧格式响应 - 响应消息: " + response.getMsg());
+            Call call = okHttpClient.newCall(request);
+            if (deadlineMs > 0) {
+                call.timeout().timeout(remainingMs, TimeUnit.MILLISECONDS);
+            }
 
-                if (response.getCode() != 200) {
-                    Log.e(TAG, "API 返回非成功码: " + response.getCode() + " - " + response.getMsg());
-                    throw new IOException("API 错误 (" + response.getCode() + "): " + response.getMsg());
+            IOException failure;
+            long retryAfterMs = -1;
+            boolean retryable = true;
+            // 本次请求是否已向熔断器报告结果
+            boolean settled = false;
+            try {
+                Response response = call.execute();
+                if (response.isSuccessful()) {
+                    circuitBreaker.recordSuccess();
+                    settled = true;
+                    return response;
+                }
+                int code = response.code();
+                String errorBody;
+                try {
+                    // 错误体可能是很长的 HTML 页面，只读取开头
+                    errorBody = response.peekBody(LOG_LIMIT).string();
+                } finally {
+                    response.close();
+                }
+                Log.e(TAG, "API 返回错误: " + code + " - " + response.message());
+                Log.e(TAG, "错误体: " + abbreviate(errorBody));
+                failure = new IOException("API 错误: " + code + " " + response.message());
+                if (RetryPolicy.isRetryableStatus(code)) {
+                    retryAfterMs = RetryPolicy.parseRetryAfter(response.header("Retry-After"));
+                } else {
+                    retryable = false;
+                }
+                settled = true;
+            } catch (IOException e) {
+                settled = true;
+                if (e instanceof InterruptedIOException && deadlineMs > 0 && SystemClock.uptimeMillis() >= deadlineMs) {
+                    // 截止时间到了，不能说明接口是否正常
+                    circuitBreaker.recordCancelled();
+                    throw new InterruptedIOException("请求超过截止时间: " + e.getMessage());
+                }
+                Log.e(TAG, "请求失败: " + e.getMessage());
+                failure = e;
+            } finally {
+                if (!settled) {
+                    // 意外的运行时异常不能说明接口是否正常，归还半开状态下的探测名额，否则熔断器不会再放行
+                    circuitBreaker.recordCancelled();
                 }
-            } else {
-                Log.d(TAG, "新格式响应 - 直接包含 choices");
             }
-
-            // 提取分析结果（getChoices() 会自动处理两种格式）
-            List<ImageAnalysisResponse.Choice> choicesList = response.getChoices();
-            if (choicesList == null || choicesList.isEmpty()) {
-                Log.e(TAG, "API 响应中没有 choices 数据");
-                throw new IOException("API 响应中没有结果");
+            if (!retryable) {
+                // 请求本身有问题（如鉴权失败），不重试；也不能说明接口已恢复，不改变熔断状态，只归还探测名额
+                circuitBreaker.recordCancelled();
+                throw failure;
             }
+            circuitBreaker.recordFailure();
 
-            Log.d(TAG, "choices 数量: " + choicesList.size());
-
-            ImageAnalysisResponse.Choice choice = choicesList.get(0);
-            if (choice.getMessage() == null) {
-                Log.e(TAG, "消息对象为空");
-                throw new IOException("消息对象为空");
+            long remainingAfterMs = deadlineMs > 0 ? deadlineMs - SystemClock.uptimeMillis() : Long.MAX_VALUE;
+            long delayMs = policy.nextDelayMs(attempt, retryAfterMs, remainingAfterMs);
+            if (delayMs < 0) {
+                Log.w(TAG, "第 " + attempt + " 次请求失败，不再重试（次数用完、服务端要求等待过久或剩余时间不足）");
+                throw failure;
             }
+            Log.w(TAG, "第 " + attempt + " 次请求失败，" + delayMs + "ms 后重试: " + failure.getMessage());
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("重试等待被中断");
+            }
+        }
+    }
 
-            String content = choice.getMessage().getContent();
-            if (content == null || content.isEmpty()) {
-                Log.e(TAG, "分析结果为空");
-                throw new IOException("分析结果为空");
+    /**
+     * 发送 HTTP 请求，直接从响应流中解析结果（不生成完整的响应字符串）
+     *
+     * @param pipeline 使用的后端和熔断器
+     * @param body 请求体
+     * @param deadlineMs 截止时间（0 表示不限）
+     * @return 分析结果文本
+     * @throws IOException 网络错误或解析失败
+     */
+    private static String sendRequest(Pipeline pipeline, RequestBody body, long deadlineMs) throws IOException {
+        // 执行请求（失败时按重试策略重试）
+        try (Response response = executeWithRetry(pipeline, body, deadlineMs)) {
+            ResponseBody responseBody = response.body();
+            if (responseBody == null) {
+                throw new IOException("响应体为空");
             }
+            if (verboseLogging) {
+                // peekBody 只复制开头的一部分，不影响后面的流式解析
+                Log.d(TAG, "API 请求成功，响应长度: " + responseBody.contentLength()
+                        + "，开头: " + response.peekBody(LOG_LIMIT).string());
+            }
+            return pipeline.backend.parseResponse(responseBody.charStream());
+        }
+    }
+
+    /**
+     * 切换分析后端（例如其他 OpenAI 兼容服务，或本地模拟服务器），传 null 恢复默认的 GLM 后端
+     * 熔断状态只属于原来的后端，切换后重新开始统计
+     *
+     * @param visionBackend 分析后端
+     */
+    public static void setBackend(VisionBackend visionBackend) {
+        backend = visionBackend != null ? visionBackend : new GLMVisionBackend();
+        circuitBreaker = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS);
+        Log.d(TAG, "分析后端: " + backend.getName() + " (" + backend.getModel() + ")");
+    }
 
-            Log.d(TAG, "成功解析 API 响应，内容长度: " + content.length());
-            return content;
+    public static VisionBackend getBackend() {
+        return backend;
+    }
 
-        } catch (com.google.gson.JsonSyntaxException e) {
-            Log.e(TAG, "JSON 解析异常: " + e.getMessage());
-            Log.e(TAG, "原始响应: " + responseJson);
-            throw new IOException("JSON 解析失败: " + e.getMessage(), e);
-        } catch (Exception e) {
-            Log.e(TAG, "解析响应失败: " + e.getMessage(), e);
-            throw new IOException("解析响应失败: " + e.getMessage(), e);
+    /**
+     * 开启或关闭详细日志（响应内容摘要等，单条不超过 {@value #LOG_LIMIT} 个字符）
+     *
+     * @param enabled 是否开启
+     */
+    public static void setVerboseLogging(boolean enabled) {
+        verboseLogging = enabled;
+    }
+
+    public static boolean isVerboseLogging() {
+        return verboseLogging;
+    }
+
+    /**
+     * 截断过长的日志内容
+     *
+     * @param text 日志内容
+     * @return 不超过 {@value #LOG_LIMIT} 个字符的内容
+     */
+    static String abbreviate(String text) {
+        if (text == null || text.length() <= LOG_LIMIT) {
+            return text;
         }
+        return text.substring(0, LOG_LIMIT) + "...（共 " + text.length() + " 个字符）";
     }
 
     /**
-     * 关闭执行器（应用退出时调用）
+     * 共用的 OkHttp 客户端（基准测试等需要直接发请求时使用）
      */
-    public static void shutdown() {
-        Log.d(TAG, "关闭异步执行器...");
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
+    static OkHttpClient getHttpClient() {
+        return okHttpClient;
+    }
+
+    /**
+     * 设置重试策略
+     *
+     * @param policy 重试策略（maxAttempts 为 1 时不重试）
+     */
+    public static void setRetryPolicy(RetryPolicy policy) {
+        if (policy != null) {
+            retryPolicy = policy;
         }
     }
+
+    /**
+     * 接口调用共用的熔断器（用于查看状态）
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 启用分析结果的磁盘缓存（缓存保存在应用缓存目录中）
+     *
+     * @param context 应用上下文
+     */
+    public static void enableDiskCache(Context context) {
+        AnalysisCache.getInstance().setDiskFolder(new File(context.getCacheDir(), CACHE_FOLDER_NAME));
+    }
 }
@@ -0,0 +1,48 @@
+package com.dy.autotask.utils;
+
+import android.util.Log;
+
+import com.dy.autotask.BuildConfig;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/**
+ * 智谱 GLM 视觉分析后端（默认后端）
+ * 接口与 OpenAI 兼容，API Key 来自 BuildConfig.GLM_API_KEY
+ */
+public class GLMVisionBackend extends OpenAICompatibleBackend {
+
+    private static final String TAG = "GLMVisionBackend";
+
+    // 智谱 API 端点
+    private static final String API_URL = "https://open.bigmodel.cn/api/paas/v4/chat/completions";
+
+    // 模型名称
+    private static final String MODEL = "glm-4.6v-flash";
+
+    public GLMVisionBackend() {
+        super("GLM", API_URL, BuildConfig.GLM_API_KEY, MODEL);
+    }
+
+    /**
+     * 构建请求，API Key 未配置时直接失败
+     */
+    @Override
+    public Request buildRequest(RequestBody body) throws IOException {
+        String apiKey = getApiKey();
+        if (apiKey == null || apiKey.isEmpty() || apiKey.equals("default_key")) {
+            Log.e(TAG, "API Key 未配置或无效");
+            throw new IOException("API Key 未配置");
+        }
+
+        if (GLMImageAnalysisTool.isVerboseLogging()) {
+            Log.d(TAG, "API Key 已读取（长度: " + apiKey.length() + "）");
+            Log.d(TAG, "API Key 格式: " + (apiKey.contains(".") ? "✓ 正确格式（包含点号）" : "✗ 可能格式错误"));
+        }
+
+        return super.buildRequest(body);
+    }
+}
@@ -0,0 +1,232 @@
+package com.dy.autotask.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.dy.autotask.model.ImageAnalysisRequest;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * 图片分析的流式请求体
+ *
+ * 图片只在内存中保留一份编码后的字节（JPEG或WebP）；JSON外壳（模型、提示词）由Gson生成，
+ * 图片的Base64在写入请求时分块编码，直接写进OkHttp的Sink，
+ * 不再生成Base64字符串、data URL字符串和完整的JSON字符串。
+ * 第一块编码完成后即开始上传，请求体长度预先算出，不需要分块传输编码。
+ * 一条消息可以包含多张图片（批量分析），每张图片前可以加一段文字标签。
+ *
+ * 使用方式：
+ * RequestBody body = ImageAnalysisRequestBody.create(model, prompt, encodedImage, false);
+ */
+public class ImageAnalysisRequestBody extends RequestBody {
+
+    private static final String TAG = "ImageAnalysisRequestBody";
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String DATA_URL_FORMAT = "data:%s;base64,";
+
+    // 图片数据在JSON中的占位符（后接图片序号），生成JSON后从这里切开
+    private static final String IMAGE_PLACEHOLDER = "IMAGE_DATA_PLACEHOLDER_";
+
+    // 每次编码的输入字节数（3的倍数，编码后为16KB）
+    private static final int CHUNK_INPUT_BYTES = 3 * 4096;
+
+    private static final byte[] BASE64_TABLE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(UTF_8);
+
+    private static final Gson gson = new Gson();
+
+    // JSON片段：segments[i] 写在第 i 张图片之前，最后一段写在所有图片之后
+    private final byte[][] segments;
+    private final byte[][] images;
+    private final int[] imageLengths;
+
+    private ImageAnalysisRequestBody(byte[][] segments, byte[][] images, int[] imageLengths) {
+        this.segments = segments;
+        this.images = images;
+        this.imageLengths = imageLengths;
+    }
+
+    /**
+     * 创建请求体：按固定质量压缩JPEG并生成JSON外壳
+     *
+     * @param model 模型名称
+     * @param prompt 提示词
+     * @param bitmap 图片（一般为压缩后的图片）
+     * @param quality JPEG质量（0-100）
+     * @param stream 是否请求流式（SSE）响应
+     * @return 请求体，JPEG压缩失败返回null
+     */
+    public static ImageAnalysisRequestBody create(String model, String prompt, Bitmap bitmap, int quality, boolean stream) {
+        AdaptiveImageEncoder.Encoded encoded = AdaptiveImageEncoder.encodeFixed(bitmap, Bitmap.CompressFormat.JPEG, quality);
+        if (encoded == null) {
+            Log.e(TAG, "JPEG 压缩失败");
+            return null;
+        }
+        return create(model, prompt, encoded, stream);
+    }
+
+    /**
+     * 创建请求体：使用已编码的图片生成JSON外壳
+     *
+     * @param model 模型名称
+     * @param prompt 提示词
+     * @param encoded 编码后的图片（见 {@link AdaptiveImageEncoder}）
+     * @param stream 是否请求流式（SSE）响应
+     * @return 请求体
+     */
+    public static ImageAnalysisRequestBody create(String model, String prompt, AdaptiveImageEncoder.Encoded encoded, boolean stream) {
+        return create(model, prompt, Collections.singletonList(encoded), null, stream);
+    }
+
+    /**
+     * 创建包含多张图片的请求体（一条消息：提示词，然后依次为每张图片的标签和图片）
+     *
+     * @param model 模型名称
+     * @param prompt 提示词
+     * @param images 编码后的图片
+     * @param labels 每张图片前的文字标签（如 "图1"），为 null 时不加标签
+     * @param stream 是否请求流式（SSE）响应
+     * @return 请求体
+     */
+    public static ImageAnalysisRequestBody create(String model, String prompt, List<AdaptiveImageEncoder.Encoded> images,
+                                                  List<String> labels, boolean stream) {
+        int count = images.size();
+        ImageAnalysisRequest request = new ImageAnalysisRequest(model);
+        if (stream) {
+            request.setStream(true);
+        }
+        ImageAnalysisRequest.Message message = new ImageAnalysisRequest.Message();
+        message.addContent(new ImageAnalysisRequest.Content(prompt));
+        for (int i = 0; i < count; i++) {
+            if (labels != null) {
+                message.addContent(new ImageAnalysisRequest.Content(labels.get(i)));
+            }
+            message.addContent(new ImageAnalysisRequest.Content(new ImageAnalysisRequest.ImageUrl(
+                    String.format(DATA_URL_FORMAT, images.get(i).getMimeType()) + IMAGE_PLACEHOLDER + i)));
+        }
+        request.addMessage(message);
+
+        // 按占位符切开JSON（查找时带上结尾的引号，避免 _1 匹配到 _10）
+        String envelope = gson.toJson(request);
+        byte[][] segments = new byte[count + 1][];
+        byte[][] data = new byte[count][];
+        int[] lengths = new int[count];
+        int start = 0;
+        long imageBytes = 0;
+        for (int i = 0; i < count; i++) {
+            String placeholder = IMAGE_PLACEHOLDER + i + "\"";
+            int split = envelope.indexOf(placeholder, start);
+            segments[i] = envelope.substring(start, split).getBytes(UTF_8);
+            start = split + placeholder.length() - 1;
+            data[i] = images.get(i).getData();
+            lengths[i] = images.get(i).getLength();
+            imageBytes += lengths[i];
+        }
+        segments[count] = envelope.substring(start).getBytes(UTF_8);
+
+        ImageAnalysisRequestBody body = new ImageAnalysisRequestBody(segments, data, lengths);
+        Log.d(TAG, (count > 1 ? count + " 张" : "") + "图片大小: " + imageBytes + " 字节，请求体大小: "
+                + body.contentLength() + " 字节");
+        return body;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        long length = 0;
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+        for (int imageLength : imageLengths) {
+            length += base64Length(imageLength);
+        }
+        return length;
+    }
+
+    /**
+     * 写入请求体：JSON片段和分块编码的Base64交替写入
+     * 请求重试时会被再次调用，每次都从头编码
+     */
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        byte[] chunk = new byte[base64Length(CHUNK_INPUT_BYTES)];
+        for (int i = 0; i < images.length; i++) {
+            sink.write(segments[i]);
+            byte[] image = images[i];
+            int imageLength = imageLengths[i];
+            for (int offset = 0; offset < imageLength; offset += CHUNK_INPUT_BYTES) {
+                int length = Math.min(CHUNK_INPUT_BYTES, imageLength - offset);
+                int encoded = encodeBase64(image, offset, length, chunk);
+                sink.write(chunk, 0, encoded);
+            }
+        }
+        sink.write(segments[images.length]);
+    }
+
+    /**
+     * 图片字节数（多张图片时为总和）
+     */
+    public int getImageSize() {
+        int size = 0;
+        for (int imageLength : imageLengths) {
+            size += imageLength;
+        }
+        return size;
+    }
+
+    /**
+     * 图片张数
+     */
+    public int getImageCount() {
+        return images.length;
+    }
+
+    private static int base64Length(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * 标准Base64编码（带填充，不换行）
+     * 除最后一块外每块长度都是3的倍数，所以分块编码的结果与整体编码相同
+     *
+     * @return 写入dst的字节数
+     */
+    private static int encodeBase64(byte[] src, int offset, int length, byte[] dst) {
+        int end = offset + length;
+        int out = 0;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            dst[out++] = BASE64_TABLE[bits >>> 18];
+            dst[out++] = BASE64_TABLE[(bits >>> 12) & 0x3F];
+            dst[out++] = BASE64_TABLE[(bits >>> 6) & 0x3F];
+            dst[out++] = BASE64_TABLE[bits & 0x3F];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xFF) << 16 | (remaining == 2 ? (src[i + 1] & 0xFF) << 8 : 0);
+            dst[out++] = BASE64_TABLE[bits >>> 18];
+            dst[out++] = BASE64_TABLE[(bits >>> 12) & 0x3F];
+            dst[out++] = remaining == 2 ? BASE64_TABLE[(bits >>> 6) & 0x3F] : (byte) '=';
+            dst[out++] = '=';
+        }
+        return out;
+    }
+}
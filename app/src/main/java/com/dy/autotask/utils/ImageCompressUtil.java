@@ -4,14 +4,25 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.ImageDecoder;
+import android.graphics.Rect;
 import android.net.Uri;
+import android.os.Build;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * 图片压缩工具类
  * 用于压缩和处理 Bitmap
+ *
+ * 从 URI 加载时直接解码到目标尺寸：
+ * - Android 9 及以上使用 ImageDecoder 的 setTargetSize，一次解码得到准确尺寸
+ * - 更早的版本只打开一次输入流，用 mark/reset 先读尺寸再解码，按2的幂采样后再缩放到准确尺寸
+ * - 只需要一部分时用 {@link #decodeRegion} 按区域解码，不解码整张图片
  */
 public class ImageCompressUtil {
 
@@ -21,6 +32,9 @@ public class ImageCompressUtil {
     private static final int MAX_WIDTH = 1024;
     private static final int MAX_HEIGHT = 1024;
 
+    // 读取图片尺寸时允许回退的字节数（文件头一般远小于此值）
+    private static final int MARK_LIMIT = 1024 * 1024;
+
     /**
      * 从 Content URI 加载并压缩图片
      *
@@ -29,73 +43,199 @@ public class ImageCompressUtil {
      * @return 压缩后的 Bitmap，失败返回 null
      */
     public static Bitmap loadAndCompressImage(Context context, Uri uri) {
+        return loadAndCompressImage(context, uri, MAX_WIDTH, MAX_HEIGHT);
+    }
+
+    /**
+     * 从 Content URI 加载图片，等比缩小到不超过指定尺寸
+     *
+     * @param context   应用上下文
+     * @param uri       图片的 Content URI
+     * @param maxWidth  最大宽度
+     * @param maxHeight 最大高度
+     * @return 压缩后的 Bitmap，失败返回 null
+     */
+    public static Bitmap loadAndCompressImage(Context context, Uri uri, int maxWidth, int maxHeight) {
         if (context == null || uri == null) {
             Log.e(TAG, "Context 或 URI 为 null");
             return null;
         }
 
-        InputStream inputStream = null;
         try {
-            ContentResolver contentResolver = context.getContentResolver();
-            inputStream = contentResolver.openInputStream(uri);
+            Bitmap bitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? decodeWithImageDecoder(context.getContentResolver(), uri, maxWidth, maxHeight)
+                    : decodeWithBitmapFactory(context.getContentResolver(), uri, maxWidth, maxHeight);
+            if (bitmap == null) {
+                Log.e(TAG, "解码 Bitmap 失败");
+                return null;
+            }
+            Log.d(TAG, "压缩后图片尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + "，占用内存: " + formatBytes(bitmap.getByteCount()));
+            return bitmap;
+        } catch (Exception e) {
+            Log.e(TAG, "加载或压缩图片失败: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 按区域解码图片（只解码区域覆盖的部分），并等比缩小到不超过指定尺寸
+     *
+     * @param context   应用上下文
+     * @param uri       图片的 Content URI
+     * @param region    原图中的区域（超出原图的部分会被裁掉）
+     * @param maxWidth  最大宽度
+     * @param maxHeight 最大高度
+     * @return 区域图片，失败或区域与原图不相交时返回 null
+     */
+    public static Bitmap decodeRegion(Context context, Uri uri, Rect region, int maxWidth, int maxHeight) {
+        if (context == null || uri == null || region == null) {
+            Log.e(TAG, "Context、URI 或区域为 null");
+            return null;
+        }
 
+        BitmapRegionDecoder decoder = null;
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
             if (inputStream == null) {
                 Log.e(TAG, "无法打开 URI: " + uri);
                 return null;
             }
+            decoder = newRegionDecoder(inputStream);
+            if (decoder == null) {
+                Log.e(TAG, "创建区域解码器失败");
+                return null;
+            }
+
+            Rect bounds = new Rect(region);
+            if (!bounds.intersect(0, 0, decoder.getWidth(), decoder.getHeight())) {
+                Log.e(TAG, "区域不在图片内: " + region + "，图片尺寸: " + decoder.getWidth() + "x" + decoder.getHeight());
+                return null;
+            }
+
+            int[] target = fitSize(bounds.width(), bounds.height(), maxWidth, maxHeight);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = calculateInSampleSize(bounds.width(), bounds.height(), target[0], target[1]);
+            Bitmap bitmap = decoder.decodeRegion(bounds, options);
+            if (bitmap == null) {
+                Log.e(TAG, "区域解码失败: " + bounds);
+                return null;
+            }
+            Log.d(TAG, "区域解码: " + bounds + "，采样率: " + options.inSampleSize);
+            return scaleToExact(bitmap, target[0], target[1]);
+        } catch (Exception e) {
+            Log.e(TAG, "区域解码图片失败: " + e.getMessage(), e);
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    /**
+     * Android 9 及以上：ImageDecoder 一次解码到准确尺寸
+     * 使用软件内存分配，结果可以直接读取像素和再次压缩
+     */
+    private static Bitmap decodeWithImageDecoder(ContentResolver contentResolver, Uri uri,
+                                                 int maxWidth, int maxHeight) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return null;
+        }
+        ImageDecoder.Source source = ImageDecoder.createSource(contentResolver, uri);
+        return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+            int width = info.getSize().getWidth();
+            int height = info.getSize().getHeight();
+            Log.d(TAG, "原始图片尺寸: " + width + "x" + height);
+            int[] target = fitSize(width, height, maxWidth, maxHeight);
+            if (target[0] != width || target[1] != height) {
+                decoder.setTargetSize(target[0], target[1]);
+            }
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+        });
+    }
 
+    /**
+     * 早期版本：只打开一次输入流，mark 后读取尺寸，reset 后解码
+     * 文件头超过 {@link #MARK_LIMIT} 导致无法回退时，才重新打开一次
+     */
+    private static Bitmap decodeWithBitmapFactory(ContentResolver contentResolver, Uri uri,
+                                                  int maxWidth, int maxHeight) throws IOException {
+        InputStream rawStream = contentResolver.openInputStream(uri);
+        if (rawStream == null) {
+            Log.e(TAG, "无法打开 URI: " + uri);
+            return null;
+        }
+        InputStream inputStream = new BufferedInputStream(rawStream, 64 * 1024);
+        try {
             // 第一步：获取原始图片尺寸
+            inputStream.mark(MARK_LIMIT);
             BitmapFactory.Options options = new BitmapFactory.Options();
             options.inJustDecodeBounds = true;
             BitmapFactory.decodeStream(inputStream, null, options);
-
             int originalWidth = options.outWidth;
             int originalHeight = options.outHeight;
-
+            if (originalWidth <= 0 || originalHeight <= 0) {
+                Log.e(TAG, "无法读取图片尺寸");
+                return null;
+            }
             Log.d(TAG, "原始图片尺寸: " + originalWidth + "x" + originalHeight);
 
-            // 重新打开输入流（因为前面已经读取过）
-            inputStream.close();
-            inputStream = contentResolver.openInputStream(uri);
-
-            // 第二步：计算采样率
-            int sampleSize = calculateInSampleSize(originalWidth, originalHeight, MAX_WIDTH, MAX_HEIGHT);
+            try {
+                inputStream.reset();
+            } catch (IOException e) {
+                Log.w(TAG, "输入流无法回退，重新打开 URI");
+                inputStream.close();
+                rawStream = contentResolver.openInputStream(uri);
+                if (rawStream == null) {
+                    Log.e(TAG, "无法打开 URI: " + uri);
+                    return null;
+                }
+                inputStream = new BufferedInputStream(rawStream, 64 * 1024);
+            }
 
-            // 第三步：以计算的采样率加载压缩图片
+            // 第二步：按2的幂采样（结果不小于目标尺寸），再缩放到准确尺寸
+            int[] target = fitSize(originalWidth, originalHeight, maxWidth, maxHeight);
             options.inJustDecodeBounds = false;
-            options.inSampleSize = sampleSize;
-            Bitmap compressedBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-
-            if (compressedBitmap == null) {
-                Log.e(TAG, "解码 Bitmap 失败");
+            options.inSampleSize = calculateInSampleSize(originalWidth, originalHeight, target[0], target[1]);
+            Bitmap sampled = BitmapFactory.decodeStream(inputStream, null, options);
+            if (sampled == null) {
                 return null;
             }
-
-            int compressedWidth = compressedBitmap.getWidth();
-            int compressedHeight = compressedBitmap.getHeight();
-
-            Log.d(TAG, "压缩后图片尺寸: " + compressedWidth + "x" + compressedHeight);
-            Log.d(TAG, "采样率: " + sampleSize);
-
-            return compressedBitmap;
-
-        } catch (Exception e) {
-            Log.e(TAG, "加载或压缩图片失败: " + e.getMessage(), e);
-            return null;
+            Log.d(TAG, "采样率: " + options.inSampleSize);
+            return scaleToExact(sampled, target[0], target[1]);
         } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (Exception e) {
-                    Log.e(TAG, "关闭输入流失败: " + e.getMessage());
-                }
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log.e(TAG, "关闭输入流失败: " + e.getMessage());
             }
         }
     }
 
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoder(InputStream inputStream) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(inputStream);
+        }
+        return BitmapRegionDecoder.newInstance(inputStream, false);
+    }
+
+    /**
+     * 等比缩小到不超过指定尺寸（不放大）
+     *
+     * @return {宽, 高}
+     */
+    private static int[] fitSize(int width, int height, int maxWidth, int maxHeight) {
+        if (width <= maxWidth && height <= maxHeight) {
+            return new int[]{width, height};
+        }
+        float scale = Math.min((float) maxWidth / width, (float) maxHeight / height);
+        return new int[]{Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale))};
+    }
+
     /**
      * 计算 Bitmap 的采样率
-     * 采样率决定了 Bitmap 的压缩程度
+     * 取不超过缩小倍数的最大的2的幂，采样后的尺寸不小于目标尺寸，再缩放时不会丢失清晰度
      *
      * @param width       原始宽度
      * @param height      原始高度
@@ -105,21 +245,26 @@ public class ImageCompressUtil {
      */
     private static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
         int sampleSize = 1;
-
-        // 如果原始尺寸超过目标尺寸，则进行压缩
-        if (width > reqWidth || height > reqHeight) {
-            // 计算宽度的采样率
-            final int widthRatio = Math.round((float) width / reqWidth);
-            // 计算高度的采样率
-            final int heightRatio = Math.round((float) height / reqHeight);
-
-            // 取较大的采样率
-            sampleSize = Math.max(widthRatio, heightRatio);
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
         }
-
         return sampleSize;
     }
 
+    /**
+     * 缩放到准确尺寸，尺寸已符合时直接返回（缩放后回收原图）
+     */
+    private static Bitmap scaleToExact(Bitmap bitmap, int width, int height) {
+        if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
     /**
      * 直接压缩 Bitmap 对象
      *
@@ -0,0 +1,321 @@
+package com.dy.autotask.utils;
+
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/**
+ * OpenAI 兼容的视觉分析后端（chat/completions 接口，图片以 data URL 放在 image_url 中）
+ *
+ * 响应用 {@link JsonReader} 直接从响应流中解析，只取第一个 choice 的文本，其余字段跳过，
+ * 不生成完整的响应字符串，也不构建对象树。
+ *
+ * 可用于自建服务、其他厂商的兼容接口，或指向调试构建中的 MockVisionServer 做测试：
+ * GLMImageAnalysisTool.setBackend(new OpenAICompatibleBackend("mock", server.getUrl(), null, "mock-vision"));
+ */
+public class OpenAICompatibleBackend implements VisionBackend {
+
+    private static final String TAG = "OpenAICompatibleBackend";
+
+    // 默认每次请求最多的图片数
+    private static final int DEFAULT_MAX_IMAGES_PER_REQUEST = 5;
+
+    private final String name;
+    private final String apiUrl;
+    private final String apiKey;
+    private final String model;
+    private volatile int maxImagesPerRequest = DEFAULT_MAX_IMAGES_PER_REQUEST;
+
+    /**
+     * @param name 后端名称（用于日志）
+     * @param apiUrl 完整的 chat/completions 地址
+     * @param apiKey API Key（为 null 或空时不发送 Authorization 头）
+     * @param model 模型名称
+     */
+    public OpenAICompatibleBackend(String name, String apiUrl, String apiKey, String model) {
+        this.name = name;
+        this.apiUrl = apiUrl;
+        this.apiKey = apiKey;
+        this.model = model;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getModel() {
+        return model;
+    }
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    protected String getApiKey() {
+        return apiKey;
+    }
+
+    /**
+     * 设置每次请求最多的图片数（按模型的限制设置）
+     *
+     * @param count 图片数，至少为1
+     * @return 当前实例
+     */
+    public OpenAICompatibleBackend setMaxImagesPerRequest(int count) {
+        maxImagesPerRequest = Math.max(1, count);
+        return this;
+    }
+
+    @Override
+    public int getMaxImagesPerRequest() {
+        return maxImagesPerRequest;
+    }
+
+    @Override
+    public RequestBody createBody(String prompt, AdaptiveImageEncoder.Encoded image, boolean stream) {
+        return ImageAnalysisRequestBody.create(model, prompt, image, stream);
+    }
+
+    @Override
+    public RequestBody createBatchBody(String prompt, List<AdaptiveImageEncoder.Encoded> images, List<String> labels) {
+        return ImageAnalysisRequestBody.create(model, prompt, images, labels, false);
+    }
+
+    @Override
+    public Request buildRequest(RequestBody body) throws IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(apiUrl)
+                .header("Content-Type", "application/json")
+                .post(body);
+        String key = getApiKey();
+        if (key != null && !key.isEmpty()) {
+            builder.header("Authorization", "Bearer " + key);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 从响应流中解析分析结果，支持两种格式：
+     * 1. 新格式：choices 直接在根层级
+     * 2. 旧格式：有 code 和 msg，choices 在 data 中
+     *
+     * @param reader 响应流
+     * @return 分析结果文本
+     * @throws IOException 解析失败、接口返回错误或没有结果
+     */
+    @Override
+    public String parseResponse(Reader reader) throws IOException {
+        int code = 0;
+        String msg = null;
+        String error = null;
+        ChoiceContent choice = null;
+        try {
+            JsonReader json = new JsonReader(reader);
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("choices") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                    choice = readFirstChoice(json, "message");
+                } else if (name.equals("data") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        if (json.nextName().equals("choices") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                            choice = readFirstChoice(json, "message");
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                } else if (name.equals("code") && json.peek() == JsonToken.NUMBER) {
+                    code = json.nextInt();
+                } else if (name.equals("msg") && json.peek() == JsonToken.STRING) {
+                    msg = json.nextString();
+                } else if (name.equals("error")) {
+                    error = readError(json);
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            Log.e(TAG, "JSON 解析异常: " + e.getMessage());
+            throw new IOException("JSON 解析失败: " + e.getMessage(), e);
+        }
+
+        // 旧格式有 code 字段，200 表示成功
+        if (code != 0 && code != 200) {
+            Log.e(TAG, "API 返回非成功码: " + code + " - " + msg);
+            throw new IOException("API 错误 (" + code + "): " + msg);
+        }
+        if (error != null) {
+            Log.e(TAG, "API 返回错误: " + GLMImageAnalysisTool.abbreviate(error));
+            throw new IOException("API 错误: " + error);
+        }
+        if (choice == null) {
+            Log.e(TAG, "API 响应中没有 choices 数据");
+            throw new IOException("API 响应中没有结果");
+        }
+        if (!choice.hasMessage) {
+            Log.e(TAG, "消息对象为空");
+            throw new IOException("消息对象为空");
+        }
+        if (choice.content == null || choice.content.isEmpty()) {
+            Log.e(TAG, "分析结果为空");
+            throw new IOException("分析结果为空");
+        }
+
+        if (GLMImageAnalysisTool.isVerboseLogging()) {
+            Log.d(TAG, "成功解析 API 响应，内容长度: " + choice.content.length()
+                    + "，内容: " + GLMImageAnalysisTool.abbreviate(choice.content));
+        }
+        return choice.content;
+    }
+
+    /**
+     * 解析一个 SSE 数据块，只取第一个 choice 的 delta.content
+     *
+     * @param json 数据块 JSON
+     * @return 新增的文本，没有内容时返回 null
+     * @throws IOException 数据块格式错误或包含错误信息
+     */
+    @Override
+    public String parseStreamDelta(String json) throws IOException {
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            ChoiceContent choice = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("choices") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    choice = readFirstChoice(reader, "delta");
+                } else if (name.equals("error")) {
+                    throw new IOException("API 流式响应错误: " + GLMImageAnalysisTool.abbreviate(json));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return choice != null ? choice.content : null;
+        } catch (IllegalStateException | MalformedJsonException e) {
+            Log.e(TAG, "流式数据块解析失败: " + GLMImageAnalysisTool.abbreviate(json));
+            throw new IOException("流式数据块解析失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 第一个 choice 中的文本
+     */
+    private static class ChoiceContent {
+        boolean hasMessage;
+        String content;
+    }
+
+    /**
+     * 读取 choices 数组，只解析第一个元素的 messageField.content，其余元素跳过
+     *
+     * @param reader 位于 choices 数组开始处
+     * @param messageField 一次性响应为 message，流式数据块为 delta
+     * @return 第一个 choice 的内容，数组为空时返回 null
+     */
+    private static ChoiceContent readFirstChoice(JsonReader reader, String messageField) throws IOException {
+        ChoiceContent result = null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (result != null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            result = new ChoiceContent();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(messageField) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    result.hasMessage = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("content")) {
+                            result.content = readContent(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return result;
+    }
+
+    /**
+     * 读取 content：字符串，或由 {"type":"text","text":...} 组成的数组（拼接其中的文本）
+     */
+    private static String readContent(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("text") && reader.peek() == JsonToken.STRING) {
+                    text.append(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return text.toString();
+    }
+
+    /**
+     * 读取 error 字段：字符串，或带 message 的对象
+     */
+    private static String readError(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        if (token != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String message = "未知错误";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("message") && reader.peek() == JsonToken.STRING) {
+                message = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return message;
+    }
+}
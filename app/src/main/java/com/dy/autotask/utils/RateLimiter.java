@@ -0,0 +1,140 @@
+package com.dy.autotask.utils;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 令牌桶限流器
+ *
+ * 令牌按固定速率生成，桶中最多存放burst个令牌：空闲一段时间后允许短时间内连续发出burst个请求，
+ * 之后按设定速率放行。用于让接口调用频率不超过API配额。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class RateLimiter {
+
+    private double permitsPerSecond;
+    private double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    // 正在等待令牌的线程数
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数（<=0 表示不限流）
+     * @param burst 桶容量（允许的突发请求数，至少为1）
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        setRate(permitsPerSecond, burst);
+        this.tokens = capacity;
+    }
+
+    /**
+     * 调整速率和桶容量，已有令牌数不超过新容量
+     *
+     * @param permitsPerSecond 每秒生成的令牌数（<=0 表示不限流）
+     * @param burst 桶容量
+     */
+    public synchronized void setRate(double permitsPerSecond, int burst) {
+        refill();
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, burst);
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * 获取一个令牌，没有令牌时阻塞等待
+     *
+     * @throws InterruptedException 等待被中断
+     */
+    public void acquire() throws InterruptedException {
+        acquireNanos(-1);
+    }
+
+    /**
+     * 获取一个令牌，最多等待指定时间
+     * 下一个令牌在等待时间内不会生成时立即失败，不会白等到超时
+     *
+     * @param timeout 最长等待时间（<=0 表示不等待，没有令牌时立即失败）
+     * @param unit 时间单位
+     * @throws InterruptedIOException 等待时间内拿不到令牌
+     * @throws InterruptedException 等待被中断
+     */
+    public void acquire(long timeout, TimeUnit unit) throws InterruptedIOException, InterruptedException {
+        if (!acquireNanos(Math.max(0, unit.toNanos(timeout)))) {
+            throw new InterruptedIOException("等待限流令牌超时");
+        }
+    }
+
+    /**
+     * @param timeoutNanos 最长等待时间，<0 表示不限
+     * @return 超时返回false
+     */
+    private boolean acquireNanos(long timeoutNanos) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + timeoutNanos;
+        waiting.incrementAndGet();
+        try {
+            while (true) {
+                long waitNanos;
+                synchronized (this) {
+                    if (permitsPerSecond <= 0) {
+                        return true;
+                    }
+                    refill();
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        return true;
+                    }
+                    waitNanos = Math.max(1000000L, (long) ((1 - tokens) / permitsPerSecond * 1e9));
+                }
+                if (timeoutNanos >= 0 && System.nanoTime() + waitNanos > deadlineNanos) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 尝试获取一个令牌，不等待
+     *
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire() {
+        if (permitsPerSecond <= 0) {
+            return true;
+        }
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 正在等待令牌的线程数
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public synchronized int getBurst() {
+        return (int) capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (lastRefillNanos != 0 && permitsPerSecond > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+        }
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,119 @@
+package com.dy.autotask.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 接口调用的重试策略
+ *
+ * 指数退避加随机抖动（full jitter）：第n次重试前等待 [0, min(上限, 基础间隔 * 2^(n-1))] 之间的随机时长，
+ * 多个客户端同时失败时不会在同一时刻一起重试。
+ * 服务端返回Retry-After时按它等待；要求的等待超过上限时不再重试，而不是提前打扰服务端。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Random random;
+
+    /**
+     * @param maxAttempts 最多尝试次数（包括第一次）
+     * @param baseDelayMs 第一次重试前的基础间隔
+     * @param maxDelayMs 单次等待上限
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this(maxAttempts, baseDelayMs, maxDelayMs, new Random());
+    }
+
+    /**
+     * 指定随机数生成器（测试时用固定种子）
+     */
+    RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, Random random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.random = random;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 计算第attempt次失败后的等待时间
+     *
+     * @param attempt 已经尝试的次数（从1开始）
+     * @param retryAfterMs 服务端要求的等待时间（没有时为-1）
+     * @return 等待时间（毫秒），服务端要求的等待超过上限时返回-1（不应重试）
+     */
+    public long computeDelayMs(int attempt, long retryAfterMs) {
+        if (retryAfterMs >= 0) {
+            return retryAfterMs <= maxDelayMs ? retryAfterMs : -1;
+        }
+        long ceiling = baseDelayMs << Math.min(20, attempt - 1);
+        ceiling = Math.min(maxDelayMs, ceiling);
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    /**
+     * 第attempt次失败后是否重试、等待多久
+     * 次数用完、服务端要求的等待超过上限，或等待后已经到截止时间时不再重试
+     *
+     * @param attempt 已经尝试的次数（从1开始）
+     * @param retryAfterMs 服务端要求的等待时间（没有时为-1）
+     * @param remainingMs 距离截止时间的毫秒数（没有截止时间时为 Long.MAX_VALUE）
+     * @return 等待时间（毫秒），不应重试时返回-1
+     */
+    public long nextDelayMs(int attempt, long retryAfterMs, long remainingMs) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+        long delayMs = computeDelayMs(attempt, retryAfterMs);
+        if (delayMs < 0 || delayMs >= remainingMs) {
+            return -1;
+        }
+        return delayMs;
+    }
+
+    /**
+     * HTTP状态码是否值得重试：请求超时、限流和服务端临时错误
+     *
+     * @param code HTTP状态码
+     * @return 是否可重试
+     */
+    public static boolean isRetryableStatus(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * 解析Retry-After头：秒数或HTTP日期
+     *
+     * @param value 头的值（可为null）
+     * @return 等待时间（毫秒），无法解析时返回-1
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException e) {
+            // 不是秒数，按HTTP日期解析
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try {
+            Date date = format.parse(trimmed);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.dy.autotask.utils;
 
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 
 /**
@@ -159,4 +163,34 @@ public class RootUtil {
         String command = "pm grant " + packageName + " " + permission;
         return executeCommandAsRoot(command);
     }
+
+    /**
+     * 使用root权限截取屏幕（screencap）
+     * 截图数据通过标准输出以PNG格式返回，不落盘
+     *
+     * @return 屏幕Bitmap，失败返回null
+     */
+    public static Bitmap screencapAsRoot() {
+        Process process = null;
+        try {
+            process = Runtime.getRuntime().exec(new String[]{"su", "-c", "screencap -p"});
+            InputStream inputStream = new BufferedInputStream(process.getInputStream());
+            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+            inputStream.close();
+            int exitCode = process.waitFor();
+            Log.d(TAG, "root截图结果: " + exitCode + ", bitmap=" + (bitmap != null));
+            if (exitCode != 0 && bitmap != null) {
+                bitmap.recycle();
+                return null;
+            }
+            return bitmap;
+        } catch (Exception e) {
+            Log.e(TAG, "root截图异常: " + e.getMessage());
+            return null;
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
 }
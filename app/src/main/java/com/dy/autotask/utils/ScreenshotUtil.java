@@ -1,35 +1,42 @@
 package com.dy.autotask.utils;
 
+import android.accessibilityservice.AccessibilityService;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.hardware.display.VirtualDisplay;
-import android.media.Image;
-import android.media.ImageReader;
+import android.graphics.Rect;
+import android.hardware.HardwareBuffer;
 import android.media.projection.MediaProjection;
 import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Display;
 import android.view.PixelCopy;
 import android.view.View;
-import android.view.WindowManager;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.dy.autotask.AccessibilityServiceUtil;
+import com.dy.autotask.capture.CaptureSession;
+import com.dy.autotask.capture.ScreenRecorder;
+import com.dy.autotask.capture.ScreenFrame;
+import com.dy.autotask.capture.ScreenshotSaver;
+import com.dy.autotask.capture.ScreenshotStore;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 截图工具类
@@ -39,8 +46,12 @@ import java.util.concurrent.TimeUnit;
 public class ScreenshotUtil {
     private static final String TAG = "ScreenshotUtil";
     private static final String SCREENSHOT_FOLDER_NAME = "screenshots";
+    private static final String RECORDING_FOLDER_NAME = "recordings";
+    // PNG为无损格式，压缩时质量参数会被忽略；仅JPEG等有损格式使用
     private static final int SCREENSHOT_QUALITY = 90;
     private static final int PIXEL_COPY_TIMEOUT_MS = 5000;
+    private static final long ACCESSIBILITY_SCREENSHOT_TIMEOUT_MS = 2000;
+    private static final long MEDIA_PROJECTION_FRAME_TIMEOUT_MS = 1000;
 
     private Context context;
     private File screenshotFolder;
@@ -50,7 +61,9 @@ public class ScreenshotUtil {
     private static int screenWidth = 0;
     private static int screenHeight = 0;
     private static int screenDensity = 0;
-    private static VirtualDisplay virtualDisplay;
+
+    // MediaProjection截图的渲染比例（1为全分辨率）
+    private static float captureScale = 1f;
 
     /**
      * 构造函数
@@ -263,6 +276,7 @@ public class ScreenshotUtil {
                 Log.i(TAG, "  文件路径: " + filePath);
                 Log.i(TAG, "  文件大小: " + formatFileSize(fileSize));
                 Log.i(TAG, "  图片尺寸: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+                getScreenshotStore().record(screenshotFile);
                 return filePath;
             } else {
                 Log.e(TAG, "压缩Bitmap失败");
@@ -289,9 +303,20 @@ public class ScreenshotUtil {
      * @return 文件名
      */
     private String generateScreenshotFilename() {
+        return generateScreenshotFilename(".png");
+    }
+
+    /**
+     * 生成指定扩展名的截图文件名
+     * 格式: screenshot_yyyyMMdd_HHmmss_SSS + 扩展名
+     *
+     * @param extension 扩展名（含"."）
+     * @return 文件名
+     */
+    private String generateScreenshotFilename(String extension) {
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault())
                 .format(new Date());
-        return "screenshot_" + timestamp + ".png";
+        return "screenshot_" + timestamp + extension;
     }
 
     /**
@@ -338,30 +363,13 @@ public class ScreenshotUtil {
             return 0;
         }
 
-        File[] files = screenshotFolder.listFiles();
-        if (files == null) {
-            Log.e(TAG, "无法列出截图文件夹中的文件");
-            return 0;
-        }
-
-        int deletedCount = 0;
-        for (File file : files) {
-            if (file.getName().startsWith("screenshot_") && file.getName().endsWith(".png")) {
-                if (file.delete()) {
-                    deletedCount++;
-                    Log.d(TAG, "删除截图: " + file.getName());
-                } else {
-                    Log.w(TAG, "删除截图失败: " + file.getName());
-                }
-            }
-        }
-
+        int deletedCount = getScreenshotStore().clear();
         Log.i(TAG, "清空截图完成，删除了 " + deletedCount + " 个文件");
         return deletedCount;
     }
 
     /**
-     * 打印截图文件夹信息
+     * 打印截图文件夹信息（从索引读取，不列目录）
      */
     public void printScreenshotFolderInfo() {
         if (screenshotFolder == null || !screenshotFolder.exists()) {
@@ -369,26 +377,32 @@ public class ScreenshotUtil {
             return;
         }
 
-        File[] files = screenshotFolder.listFiles();
-        if (files == null || files.length == 0) {
+        ScreenshotStore store = getScreenshotStore();
+        List<ScreenshotStore.Entry> entries = store.getEntries();
+        if (entries.isEmpty()) {
             Log.i(TAG, "截图文件夹为空");
             return;
         }
 
         Log.i(TAG, "=== 截图文件夹信息 ===");
         Log.i(TAG, "路径: " + screenshotFolder.getAbsolutePath());
-        Log.i(TAG, "文件数量: " + files.length);
-
-        long totalSize = 0;
-        for (File file : files) {
-            if (file.isFile()) {
-                long fileSize = file.length();
-                totalSize += fileSize;
-                Log.i(TAG, "  - " + file.getName() + " (" + formatFileSize(fileSize) + ")");
-            }
+        Log.i(TAG, "文件数量: " + entries.size());
+
+        for (ScreenshotStore.Entry entry : entries) {
+            Log.i(TAG, "  - " + entry.getName() + " (" + formatFileSize(entry.getSize())
+                    + (entry.isLink() ? "，硬链接" : "") + ")");
         }
 
-        Log.i(TAG, "总大小: " + formatFileSize(totalSize));
+        Log.i(TAG, "总大小: " + formatFileSize(store.getTotalBytes()));
+    }
+
+    /**
+     * 获取截图目录的管理器（去重、保留策略、索引）
+     *
+     * @return 截图目录管理器
+     */
+    public ScreenshotStore getScreenshotStore() {
+        return ScreenshotStore.getInstance(screenshotFolder);
     }
 
     // ======================== MediaProjection相关方法 ========================
@@ -408,6 +422,9 @@ public class ScreenshotUtil {
         screenHeight = height;
         screenDensity = densityDpi;
         Log.d(TAG, "MediaProjection已设置: " + width + "x" + height + ", dpi=" + densityDpi);
+
+        // 建立长期截图会话，后续截图直接复用
+        CaptureSession.start(projection, width, height, densityDpi, captureScale);
     }
 
     /**
@@ -423,6 +440,8 @@ public class ScreenshotUtil {
      * 释放MediaProjection资源
      */
     public static void releaseMediaProjection() {
+        ScreenRecorder.getInstance().stop();
+        CaptureSession.releaseInstance();
         if (mediaProjection != null) {
             mediaProjection.stop();
             mediaProjection = null;
@@ -438,246 +457,378 @@ public class ScreenshotUtil {
      * @return 截图保存的文件路径，失败返回null
      */
     public String captureWithMediaProjection(String filename) {
+        Bitmap bitmap = captureBitmapWithMediaProjection();
+        if (bitmap == null) {
+            return null;
+        }
+        Log.d(TAG, "MediaProjection截图成功，大小: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+        return saveBitmap(bitmap, filename);
+    }
+
+    /**
+     * 使用MediaProjection获取一帧屏幕Bitmap（不保存）
+     * 复用长期截图会话中的最新帧，不再每次创建VirtualDisplay
+     *
+     * @return 屏幕Bitmap，失败返回null
+     */
+    private Bitmap captureBitmapWithMediaProjection() {
         if (mediaProjection == null) {
             Log.e(TAG, "MediaProjection未初始化，无法进行后台截图");
             Log.e(TAG, "请先调用setMediaProjection()设置MediaProjection实例");
             return null;
         }
 
-        if (screenWidth <= 0 || screenHeight <= 0) {
-            Log.e(TAG, "屏幕尺寸无效: " + screenWidth + "x" + screenHeight);
+        CaptureSession session = obtainCaptureSession();
+        if (session == null) {
             return null;
         }
 
-        ImageReader imageReader = null;
-        VirtualDisplay vd = null;
-        try {
-            Log.d(TAG, "开始创建ImageReader，尺寸: " + screenWidth + "x" + screenHeight);
-
-            // 创建ImageReader用于获取屏幕内容
-            imageReader = ImageReader.newInstance(
-                    screenWidth,
-                    screenHeight,
-                    android.graphics.PixelFormat.RGBA_8888,
-                    5  // 增加缓冲大小到5，确保有足够的帧缓冲
-            );
-
-            Log.d(TAG, "ImageReader创建成功");
-
-            // 创建虚拟显示以获取屏幕内容
-            Log.d(TAG, "开始创建VirtualDisplay");
-            vd = mediaProjection.createVirtualDisplay(
-                    "ScreenCapture",
-                    screenWidth,
-                    screenHeight,
-                    screenDensity,
-                    0,  // 改为0，移除FLAG_SECURE（FLAG_SECURE会阻止截图）
-                    imageReader.getSurface(),
-                    null,
-                    null
-            );
-
-            if (vd == null) {
-                Log.e(TAG, "VirtualDisplay创建失败");
-                return null;
-            }
-
-            Log.d(TAG, "VirtualDisplay创建成功");
-
-            // 等待虚拟显示有足够时间渲染内容到Surface
-            // 需要更长的延迟来确保帧被渲染
-            Log.d(TAG, "等待内容渲染到虚拟显示...");
-            Thread.sleep(500);  // 增加到500ms
-
-            // 获取图像，支持重试
-            Image image = null;
-            int retryCount = 0;
-            int maxRetries = 10;  // 增加重试次数
-
-            while (image == null && retryCount < maxRetries) {
-                image = imageReader.acquireLatestImage();
-                if (image == null) {
-                    retryCount++;
-                    Log.w(TAG, "第 " + retryCount + " 次获取图像失败，等待后重试...");
-                    if (retryCount < maxRetries) {
-                        Thread.sleep(100);  // 增加间隔时间
-                    }
-                } else {
-                    Log.d(TAG, "成功获取图像，第 " + retryCount + " 次重试");
-                }
-            }
-
-            if (image == null) {
-                Log.e(TAG, "获取屏幕图像失败，已重试" + maxRetries + "次");
-                Log.e(TAG, "可能的原因：");
-                Log.e(TAG, "  1. VirtualDisplay的Surface没有接收到内容");
-                Log.e(TAG, "  2. ImageReader缓冲区问题");
-                Log.e(TAG, "  3. 屏幕内容渲染速度太慢");
-                Log.e(TAG, "  4. MediaProjection权限不足");
-                return null;
-            }
-
-            try {
-                // 将Image转换为Bitmap
-                Log.d(TAG, "开始转换Image为Bitmap");
-                Bitmap bitmap = imageToBitmap(image);
-                if (bitmap != null) {
-                    Log.d(TAG, "MediaProjection截图成功，大小: " + screenWidth + "x" + screenHeight);
-                    return saveBitmap(bitmap, filename);
-                } else {
-                    Log.e(TAG, "转换Image到Bitmap失败");
-                    return null;
-                }
-            } finally {
-                image.close();
-                Log.d(TAG, "已关闭Image对象");
-            }
-
-        } catch (InterruptedException e) {
-            Log.e(TAG, "MediaProjection截图被中断: " + e.getMessage());
-            return null;
-        } catch (Exception e) {
-            Log.e(TAG, "MediaProjection截图失败: " + e.getMessage(), e);
-            e.printStackTrace();
-            return null;
-        } finally {
-            if (imageReader != null) {
-                try {
-                    imageReader.close();
-                    Log.d(TAG, "已关闭ImageReader");
-                } catch (Exception e) {
-                    Log.e(TAG, "关闭ImageReader时出错: " + e.getMessage());
-                }
-            }
-
-            // 立即释放虚拟显示（重要！）
-            if (vd != null) {
-                try {
-                    vd.release();
-                    Log.d(TAG, "已释放VirtualDisplay");
-                } catch (Exception e) {
-                    Log.e(TAG, "释放VirtualDisplay时出错: " + e.getMessage());
-                }
-            }
+        Bitmap bitmap = session.captureBitmap(MEDIA_PROJECTION_FRAME_TIMEOUT_MS);
+        if (bitmap == null) {
+            Log.e(TAG, "获取屏幕图像失败");
         }
+        return bitmap;
     }
 
     /**
-     * 将Image转换为Bitmap
+     * 设置MediaProjection截图的渲染比例
+     * 图片匹配、找色、画面分析通常不需要全分辨率，按1/2或1/3渲染可以大幅降低开销；
+     * 由帧得到的坐标会按比例换算回屏幕坐标
      *
-     * @param image Image对象
-     * @return Bitmap或null
+     * @param scale 渲染比例（0.1-1）
      */
-    private Bitmap imageToBitmap(Image image) {
-        try {
-            int width = image.getWidth();
-            int height = image.getHeight();
-            int format = image.getFormat();
+    public static void setCaptureScale(float scale) {
+        captureScale = scale;
+        CaptureSession session = CaptureSession.getInstance();
+        if (session != null) {
+            session.setScale(scale);
+        }
+        Log.d(TAG, "截图渲染比例: " + scale);
+    }
 
-            Log.d(TAG, "Image格式: " + format + ", 尺寸: " + width + "x" + height);
+    public static float getCaptureScale() {
+        return captureScale;
+    }
 
-            // 处理RGBA_8888格式
-            if (format == android.graphics.PixelFormat.RGBA_8888) {
-                Image.Plane plane = image.getPlanes()[0];
-                ByteBuffer buffer = plane.getBuffer();
-                int pixelStride = plane.getPixelStride();
+    /**
+     * 获取长期截图会话，会话被释放时（例如MediaProjection停止后）尝试重建
+     *
+     * @return 截图会话，MediaProjection不可用时返回null
+     */
+    public static CaptureSession obtainCaptureSession() {
+        CaptureSession session = CaptureSession.getInstance();
+        if (session == null && mediaProjection != null) {
+            Log.w(TAG, "截图会话不存在，尝试重新建立");
+            session = CaptureSession.start(mediaProjection, screenWidth, screenHeight, screenDensity, captureScale);
+        }
+        return session;
+    }
 
-                Log.d(TAG, "PixelStride: " + pixelStride);
+    /**
+     * 开始录屏，分段保存在应用私有目录下的recordings文件夹中
+     * 录屏与截图共用截图会话，需要MediaProjection可用
+     *
+     * @param config 录屏配置（为null时使用默认配置）
+     * @return 是否成功开始
+     */
+    public boolean startRecording(ScreenRecorder.Config config) {
+        File folder = new File(context.getExternalFilesDir(null), RECORDING_FOLDER_NAME);
+        return ScreenRecorder.getInstance().start(obtainCaptureSession(), folder, config);
+    }
 
-                // 分配足够的字节数组来存储图像数据
-                int bufferSize = buffer.remaining();
-                byte[] pixels = new byte[bufferSize];
-                buffer.get(pixels);
+    /**
+     * 停止录屏并写完最后一段
+     */
+    public static void stopRecording() {
+        ScreenRecorder.getInstance().stop();
+    }
 
-                // 创建Bitmap
-                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    // ======================== 截图后端选择 ========================
 
-                // 复制数据到Bitmap
-                bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+    /**
+     * 按优先级选择截图后端获取一帧屏幕
+     * 选择顺序：MediaProjection → 无障碍takeScreenshot（API 30+） → root screencap
+     *
+     * @return 屏幕帧，所有后端都不可用时返回null；使用完毕后需调用 {@link ScreenFrame#release()}
+     */
+    public ScreenFrame captureFrame() {
+        // 方案1: MediaProjection（已授权时）
+        if (mediaProjection != null) {
+            CaptureSession session = obtainCaptureSession();
+            ScreenFrame frame = session != null ? session.acquireFrame(MEDIA_PROJECTION_FRAME_TIMEOUT_MS) : null;
+            if (frame != null) {
+                return frame;
+            }
+            Log.w(TAG, "MediaProjection截图失败，尝试无障碍takeScreenshot");
+        }
 
-                Log.d(TAG, "Image转换为Bitmap成功");
-                return bitmap;
+        // 方案2: 无障碍服务takeScreenshot（无需MediaProjection授权和VirtualDisplay）
+        if (isAccessibilityScreenshotAvailable()) {
+            ScreenFrame frame = captureWithAccessibilityService(ACCESSIBILITY_SCREENSHOT_TIMEOUT_MS);
+            if (frame != null) {
+                return frame;
             }
+            Log.w(TAG, "无障碍takeScreenshot失败，尝试root截图");
+        }
 
-            // 其他格式的降级处理
-            Log.w(TAG, "不支持的Image格式: " + format + "，尝试默认处理");
+        // 方案3: root screencap
+        Bitmap rootBitmap = RootUtil.screencapAsRoot();
+        if (rootBitmap != null) {
+            Log.d(TAG, "root截图成功，大小: " + rootBitmap.getWidth() + "x" + rootBitmap.getHeight());
+            return new ScreenFrame(rootBitmap, ScreenFrame.Source.ROOT);
+        }
 
-            Image.Plane plane = image.getPlanes()[0];
-            ByteBuffer buffer = plane.getBuffer();
-            buffer.rewind();
+        Log.e(TAG, "没有可用的截图后端（MediaProjection未授权、API < 30或无障碍服务未连接、无root权限）");
+        return null;
+    }
 
-            int bufferSize = buffer.remaining();
-            byte[] pixels = new byte[bufferSize];
-            buffer.get(pixels);
+    /**
+     * 无障碍takeScreenshot后端是否可用
+     *
+     * @return 是否可用
+     */
+    public static boolean isAccessibilityScreenshotAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                && AccessibilityServiceUtil.getInstance() != null;
+    }
 
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
-            return bitmap;
+    /**
+     * 使用AccessibilityService.takeScreenshot截图（API 30+）
+     * 不需要MediaProjection授权，也不创建VirtualDisplay；返回HardwareBuffer支持的硬件帧
+     * 注意：系统限制两次调用的最小间隔（约333ms），过于频繁会返回错误码
+     *
+     * @param timeoutMs 等待回调的超时时间（毫秒）
+     * @return 硬件帧，失败返回null
+     */
+    public ScreenFrame captureWithAccessibilityService(long timeoutMs) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            Log.w(TAG, "takeScreenshot需要API 30+，当前API级别: " + Build.VERSION.SDK_INT);
+            return null;
+        }
 
+        AccessibilityServiceUtil service = AccessibilityServiceUtil.getInstance();
+        if (service == null) {
+            Log.e(TAG, "无障碍服务未连接，无法使用takeScreenshot");
+            return null;
+        }
+
+        final AtomicReference<ScreenFrame> result = new AtomicReference<>();
+        // 调用方已放弃等待（超时或中断）：之后到达的截图没有人接收，必须在回调中释放
+        final AtomicBoolean abandoned = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            // 回调直接在binder线程执行，避免调用方在主线程等待时死锁
+            service.takeScreenshot(Display.DEFAULT_DISPLAY, Runnable::run,
+                    new AccessibilityService.TakeScreenshotCallback() {
+                        @Override
+                        public void onSuccess(AccessibilityService.ScreenshotResult screenshot) {
+                            HardwareBuffer buffer = screenshot.getHardwareBuffer();
+                            if (abandoned.get()) {
+                                buffer.close();
+                                Log.w(TAG, "takeScreenshot回调晚于超时，丢弃截图");
+                                return;
+                            }
+                            Bitmap bitmap = Bitmap.wrapHardwareBuffer(buffer, screenshot.getColorSpace());
+                            if (bitmap != null) {
+                                result.set(new ScreenFrame(bitmap, buffer, ScreenFrame.Source.ACCESSIBILITY));
+                                // 放入结果的同时调用方超时：谁取到结果谁负责释放
+                                if (abandoned.get()) {
+                                    releaseAbandoned(result);
+                                    return;
+                                }
+                                Log.d(TAG, "takeScreenshot截图成功，大小: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+                            } else {
+                                buffer.close();
+                                Log.e(TAG, "HardwareBuffer包装为Bitmap失败");
+                            }
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(int errorCode) {
+                            Log.e(TAG, "takeScreenshot返回错误码: " + errorCode);
+                            latch.countDown();
+                        }
+                    });
+
+            if (!latch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.e(TAG, "takeScreenshot截图超时");
+                abandoned.set(true);
+                releaseAbandoned(result);
+                return null;
+            }
+            return result.get();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "takeScreenshot截图被中断: " + e.getMessage());
+            abandoned.set(true);
+            releaseAbandoned(result);
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
-            Log.e(TAG, "转换Image失败: " + e.getMessage(), e);
+            Log.e(TAG, "takeScreenshot截图失败: " + e.getMessage(), e);
             return null;
         }
     }
 
     /**
-     * 使用无障碍服务截图整个屏幕
-     * 当MediaProjection不可用时的备选方案
-     * 通过定期检查是否获得了Activity实例来进行截图
-     *
-     * @param filename 保存文件名（可选，为null时自动生成）
-     * @return 截图保存的文件路径，失败返回null
+     * 释放调用方已放弃等待的截图（超时路径和迟到的回调都可能调用，只有一方取到结果）
      */
-    public String captureScreenWithAccessibility(String filename) {
-        Log.d(TAG, "使用无障碍服务进行全屏截图");
+    private static void releaseAbandoned(AtomicReference<ScreenFrame> result) {
+        ScreenFrame late = result.getAndSet(null);
+        if (late != null) {
+            late.release();
+        }
+    }
 
+    /**
+     * 保存屏幕帧到文件
+     *
+     * @param frame 屏幕帧
+     * @param filename 文件名（可选，为null时自动生成）
+     * @return 保存的文件路径，失败返回null
+     */
+    public String saveFrame(ScreenFrame frame, String filename) {
+        if (frame == null) {
+            Log.e(TAG, "ScreenFrame为null，无法保存");
+            return null;
+        }
+        Bitmap bitmap = frame.toSoftwareBitmap();
+        if (bitmap == null) {
+            return null;
+        }
         try {
-            // 获取屏幕尺寸
-            DisplayMetrics displayMetrics = new DisplayMetrics();
-            WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-            if (windowManager == null) {
-                Log.e(TAG, "无法获取WindowManager");
-                return null;
+            return saveBitmap(bitmap, filename);
+        } finally {
+            if (bitmap != frame.getBitmap()) {
+                bitmap.recycle();
             }
+        }
+    }
 
-            windowManager.getDefaultDisplay().getMetrics(displayMetrics);
-            int width = displayMetrics.widthPixels;
-            int height = displayMetrics.heightPixels;
-
-            Log.d(TAG, "屏幕尺寸: " + width + "x" + height);
-
-            // 方案1: 如果可用MediaProjection，优先使用
-            if (mediaProjection != null) {
-                Log.d(TAG, "检测到MediaProjection可用，使用MediaProjection进行截图");
-                return captureWithMediaProjection(filename);
-            }
+    /**
+     * 异步保存屏幕帧到文件
+     * 编码和写盘在后台线程执行，方法立即返回；保存器会持有帧的一次引用，
+     * 调用方提交后可以立即释放自己的引用。与已保存截图相同的画面按截图目录的去重方式处理
+     * （指定了文件名时结果文件总是该文件名）
+     *
+     * @param frame 屏幕帧
+     * @param filename 文件名（可选，为null时按保存格式自动生成）
+     * @param options 保存选项（为null时保存为PNG）
+     * @param callback 结果回调（在保存线程中回调，可为null）
+     * @return 保存结果，get()得到文件路径
+     */
+    public ScreenshotSaver.SaveFuture saveFrameAsync(ScreenFrame frame, String filename,
+                                                      ScreenshotSaver.Options options,
+                                                      ScreenshotSaver.SaveCallback callback) {
+        if (options == null) {
+            options = new ScreenshotSaver.Options();
+        }
+        boolean named = filename != null && !filename.isEmpty();
+        if (!named) {
+            filename = generateScreenshotFilename(options.getFormat().getExtension());
+        }
+        return getScreenshotStore().save(frame, filename, named, options, callback);
+    }
 
-            // 方案2: 尝试通过View的rootView进行截图
-            // 这需要从当前应用的Activity中获取
-            Log.w(TAG, "MediaProjection不可用，尝试其他方式");
+    /**
+     * 异步截图整个屏幕并保存，不等待编码和写盘完成
+     *
+     * @param filename 文件名（可选，为null时自动生成）
+     * @param options 保存选项（为null时保存为PNG）
+     * @param callback 结果回调（在保存线程中回调，可为null）
+     * @return 保存结果，截图失败返回null
+     */
+    public ScreenshotSaver.SaveFuture captureScreenAsync(String filename,
+                                                          ScreenshotSaver.Options options,
+                                                          ScreenshotSaver.SaveCallback callback) {
+        ScreenFrame frame = captureFrame();
+        if (frame == null) {
+            return null;
+        }
+        try {
+            return saveFrameAsync(frame, filename, options, callback);
+        } finally {
+            frame.release();
+        }
+    }
 
-            // 方案3: 创建一个虚拟的Bitmap来代表屏幕
-            // 这是最后的备选方案 - 生成一个黑色或灰色的占位符
-            Log.d(TAG, "创建屏幕占位符截图");
-            Bitmap placeholderBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    /**
+     * 截取元素所在区域
+     * 从最新一帧中只复制节点getBoundsInScreen范围内的像素
+     *
+     * @param node 无障碍节点
+     * @return 元素区域的帧（由调用方释放），失败返回null
+     */
+    public ScreenFrame captureElementFrame(AccessibilityNodeInfo node) {
+        if (node == null) {
+            Log.e(TAG, "节点为null，无法截取元素");
+            return null;
+        }
+        Rect bounds = new Rect();
+        node.getBoundsInScreen(bounds);
+        if (bounds.isEmpty()) {
+            Log.e(TAG, "元素区域为空: " + bounds.toShortString());
+            return null;
+        }
 
-            // 用灰色填充
-            Canvas canvas = new Canvas(placeholderBitmap);
-            canvas.drawColor(android.graphics.Color.DKGRAY);
+        ScreenFrame frame = captureFrame();
+        if (frame == null) {
+            return null;
+        }
+        try {
+            ScreenFrame cropped = frame.crop(frame.toFrameRect(bounds));
+            if (cropped != null) {
+                Log.d(TAG, "截取元素区域: " + bounds.toShortString()
+                        + "，尺寸: " + cropped.getWidth() + "x" + cropped.getHeight());
+            }
+            return cropped;
+        } finally {
+            frame.release();
+        }
+    }
 
-            // 添加提示文字
-            Paint paint = new Paint();
-            paint.setColor(android.graphics.Color.WHITE);
-            paint.setTextSize(50);
-            paint.setTextAlign(Paint.Align.CENTER);
-            canvas.drawText("MediaProjection未初始化", width / 2, height / 2, paint);
+    /**
+     * 截取元素所在区域并异步保存
+     *
+     * @param node 无障碍节点
+     * @param filename 文件名（可选，为null时自动生成）
+     * @param options 保存选项（为null时保存为PNG）
+     * @param callback 结果回调（在保存线程中回调，可为null）
+     * @return 保存结果，截取失败返回null
+     */
+    public ScreenshotSaver.SaveFuture captureElement(AccessibilityNodeInfo node, String filename,
+                                                      ScreenshotSaver.Options options,
+                                                      ScreenshotSaver.SaveCallback callback) {
+        ScreenFrame cropped = captureElementFrame(node);
+        if (cropped == null) {
+            return null;
+        }
+        try {
+            return saveFrameAsync(cropped, filename, options, callback);
+        } finally {
+            cropped.release();
+        }
+    }
 
-            Log.w(TAG, "警告：生成的是占位符截图，需要初始化MediaProjection获得真实内容");
-            return saveBitmap(placeholderBitmap, filename);
+    /**
+     * 截图整个屏幕并保存（不依赖Activity）
+     * 按 {@link #captureFrame()} 的优先级选择截图后端
+     *
+     * @param filename 保存文件名（可选，为null时自动生成）
+     * @return 截图保存的文件路径，失败返回null
+     */
+    public String captureScreenWithAccessibility(String filename) {
+        Log.d(TAG, "开始全屏截图（自动选择截图后端）");
 
-        } catch (Exception e) {
-            Log.e(TAG, "无障碍服务截图失败: " + e.getMessage(), e);
+        ScreenFrame frame = captureFrame();
+        if (frame == null) {
             return null;
         }
+        try {
+            Log.d(TAG, "截图后端: " + frame.getSource());
+            return saveFrame(frame, filename);
+        } finally {
+            frame.release();
+        }
     }
 }
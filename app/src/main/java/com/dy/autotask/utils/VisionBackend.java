@@ -0,0 +1,83 @@
+package com.dy.autotask.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+/**
+ * 视觉分析后端：接口地址、鉴权、请求格式和响应格式
+ *
+ * {@link GLMImageAnalysisTool} 负责缓存、编码、限流、重试和熔断，
+ * 与具体服务有关的部分由后端实现，可以切换到其他服务或本地模拟服务器。
+ *
+ * 已有实现：
+ * - {@link GLMVisionBackend}：智谱 GLM（默认）
+ * - {@link OpenAICompatibleBackend}：任意 OpenAI 兼容的 chat/completions 接口
+ */
+public interface VisionBackend {
+
+    /**
+     * 后端名称（用于日志）
+     */
+    String getName();
+
+    /**
+     * 模型名称（同时作为分析缓存键的一部分）
+     */
+    String getModel();
+
+    /**
+     * 创建请求体
+     *
+     * @param prompt 提示词
+     * @param image 编码后的图片
+     * @param stream 是否请求流式（SSE）响应
+     * @return 请求体（可重复写入，重试时会再次发送）
+     */
+    RequestBody createBody(String prompt, AdaptiveImageEncoder.Encoded image, boolean stream);
+
+    /**
+     * 创建包含多张图片的请求体（批量分析，见 {@link BatchAnalysis}）
+     *
+     * @param prompt 提示词
+     * @param images 编码后的图片（不超过 {@link #getMaxImagesPerRequest()} 张）
+     * @param labels 每张图片前的文字标签
+     * @return 请求体（一次性响应）
+     */
+    RequestBody createBatchBody(String prompt, List<AdaptiveImageEncoder.Encoded> images, List<String> labels);
+
+    /**
+     * 一次请求最多包含的图片数
+     */
+    int getMaxImagesPerRequest();
+
+    /**
+     * 构建带地址和鉴权头的请求
+     *
+     * @param body 请求体
+     * @return 请求
+     * @throws IOException 鉴权信息未配置
+     */
+    Request buildRequest(RequestBody body) throws IOException;
+
+    /**
+     * 从响应流中解析一次性响应（调用方负责关闭流）
+     *
+     * @param reader 响应流
+     * @return 分析结果文本
+     * @throws IOException 响应格式错误或不包含结果
+     */
+    String parseResponse(Reader reader) throws IOException;
+
+    /**
+     * 解析一个 SSE 数据块
+     *
+     * @param data data 字段的内容（不含 [DONE]）
+     * @return 新增的文本，没有内容时返回 null
+     * @throws IOException 数据块格式错误或包含错误信息
+     */
+    String parseStreamDelta(String data) throws IOException;
+}
@@ -0,0 +1,243 @@
+package com.dy.autotask.vision;
+
+import com.dy.autotask.capture.PixelBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 颜色查找（单点找色 / 多点找色）
+ *
+ * 直接读取原始RGBA像素缓冲区，每个像素一次getInt，不经过Bitmap.getPixel。
+ * 颜色比较按通道计算差值，三个通道的差值都不超过容差即认为匹配；
+ * 按行扫描，找到第一个匹配点立即返回。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class ColorFinder {
+
+    /**
+     * 找到的点（帧坐标）
+     */
+    public static class Point {
+        public final int x;
+        public final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + "," + y + ")";
+        }
+    }
+
+    /**
+     * 多点找色的偏移点：相对第一个点的偏移和期望颜色
+     */
+    public static class OffsetColor {
+        public final int dx;
+        public final int dy;
+        public final int color;
+
+        public OffsetColor(int dx, int dy, int color) {
+            this.dx = dx;
+            this.dy = dy;
+            this.color = color;
+        }
+    }
+
+    private ColorFinder() {
+    }
+
+    /**
+     * 判断指定坐标的颜色是否匹配
+     *
+     * @param pixels 原始像素
+     * @param x X坐标
+     * @param y Y坐标
+     * @param color 期望颜色（0xRRGGBB，忽略透明度）
+     * @param tolerance 每个通道允许的最大差值（0-255）
+     * @return 是否匹配，坐标超出画面时返回false
+     */
+    public static boolean matchesAt(PixelBuffer pixels, int x, int y, int color, int tolerance) {
+        if (x < 0 || y < 0 || x >= pixels.getWidth() || y >= pixels.getHeight()) {
+            return false;
+        }
+        ByteBuffer buffer = pixels.getBuffer();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return matches(buffer.getInt(y * pixels.getRowStride() + x * PixelBuffer.BYTES_PER_PIXEL),
+                color, tolerance);
+    }
+
+    /**
+     * 在区域内查找第一个指定颜色的点
+     *
+     * @param pixels 原始像素
+     * @param color 目标颜色（0xRRGGBB）
+     * @param tolerance 每个通道允许的最大差值
+     * @param left 区域左边界
+     * @param top 区域上边界
+     * @param right 区域右边界（不含）
+     * @param bottom 区域下边界（不含）
+     * @param step 扫描步长（像素，大于1时跳点扫描）
+     * @return 第一个匹配点，未找到返回null
+     */
+    public static Point findColor(PixelBuffer pixels, int color, int tolerance,
+                                  int left, int top, int right, int bottom, int step) {
+        return findMultiColors(pixels, color, null, tolerance, left, top, right, bottom, step);
+    }
+
+    /**
+     * 多点找色：查找颜色匹配、且各偏移位置颜色也都匹配的第一个点
+     *
+     * @param pixels 原始像素
+     * @param firstColor 第一个点的颜色（0xRRGGBB）
+     * @param offsets 偏移点（可为null）
+     * @param tolerance 每个通道允许的最大差值
+     * @param left 区域左边界
+     * @param top 区域上边界
+     * @param right 区域右边界（不含）
+     * @param bottom 区域下边界（不含）
+     * @param step 扫描步长（像素）
+     * @return 第一个点的坐标，未找到返回null
+     */
+    public static Point findMultiColors(PixelBuffer pixels, int firstColor, OffsetColor[] offsets, int tolerance,
+                                        int left, int top, int right, int bottom, int step) {
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        int stride = pixels.getRowStride();
+        int bpp = PixelBuffer.BYTES_PER_PIXEL;
+        step = Math.max(1, step);
+
+        // 根据偏移范围收缩扫描区域，保证偏移点都在画面内，循环中不再做边界判断
+        int minDx = 0;
+        int maxDx = 0;
+        int minDy = 0;
+        int maxDy = 0;
+        if (offsets != null) {
+            for (OffsetColor offset : offsets) {
+                minDx = Math.min(minDx, offset.dx);
+                maxDx = Math.max(maxDx, offset.dx);
+                minDy = Math.min(minDy, offset.dy);
+                maxDy = Math.max(maxDy, offset.dy);
+            }
+        }
+        int startX = Math.max(Math.max(0, left), -minDx);
+        int startY = Math.max(Math.max(0, top), -minDy);
+        int endX = Math.min(Math.min(width, right), width - maxDx);
+        int endY = Math.min(Math.min(height, bottom), height - maxDy);
+        if (startX >= endX || startY >= endY) {
+            return null;
+        }
+
+        int[] offsetBytes = null;
+        if (offsets != null) {
+            offsetBytes = new int[offsets.length];
+            for (int i = 0; i < offsets.length; i++) {
+                offsetBytes[i] = offsets[i].dy * stride + offsets[i].dx * bpp;
+            }
+        }
+
+        ByteBuffer buffer = pixels.getBuffer();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int tr = (firstColor >> 16) & 0xFF;
+        int tg = (firstColor >> 8) & 0xFF;
+        int tb = firstColor & 0xFF;
+        int stepBytes = step * bpp;
+
+        for (int y = startY; y < endY; y += step) {
+            int offset = y * stride + startX * bpp;
+            for (int x = startX; x < endX; x += step, offset += stepBytes) {
+                // RGBA按大端读取为 0xRRGGBBAA
+                int rgba = buffer.getInt(offset);
+                if (Math.abs((rgba >>> 24) - tr) > tolerance
+                        || Math.abs(((rgba >> 16) & 0xFF) - tg) > tolerance
+                        || Math.abs(((rgba >> 8) & 0xFF) - tb) > tolerance) {
+                    continue;
+                }
+                if (offsetBytes == null || matchOffsets(buffer, offset, offsetBytes, offsets, tolerance)) {
+                    return new Point(x, y);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchOffsets(ByteBuffer buffer, int base, int[] offsetBytes,
+                                        OffsetColor[] offsets, int tolerance) {
+        for (int i = 0; i < offsetBytes.length; i++) {
+            if (!matches(buffer.getInt(base + offsetBytes[i]), offsets[i].color, tolerance)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(int rgba, int color, int tolerance) {
+        return Math.abs((rgba >>> 24) - ((color >> 16) & 0xFF)) <= tolerance
+                && Math.abs(((rgba >> 16) & 0xFF) - ((color >> 8) & 0xFF)) <= tolerance
+                && Math.abs(((rgba >> 8) & 0xFF) - (color & 0xFF)) <= tolerance;
+    }
+
+    /**
+     * 按帧的渲染比例缩放偏移点（偏移点按屏幕像素定义）
+     *
+     * @param offsets 偏移点（可为null）
+     * @param scaleX 帧宽与屏幕宽的比例
+     * @param scaleY 帧高与屏幕高的比例
+     * @return 缩放后的偏移点，比例为1时返回原数组
+     */
+    public static OffsetColor[] scaleOffsets(OffsetColor[] offsets, float scaleX, float scaleY) {
+        if (offsets == null || (scaleX == 1f && scaleY == 1f)) {
+            return offsets;
+        }
+        OffsetColor[] scaled = new OffsetColor[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            scaled[i] = new OffsetColor(Math.round(offsets[i].dx * scaleX),
+                    Math.round(offsets[i].dy * scaleY), offsets[i].color);
+        }
+        return scaled;
+    }
+
+    /**
+     * 解析颜色字符串
+     *
+     * @param color 颜色（"#RRGGBB" 或 "0xRRGGBB"）
+     * @return 0xRRGGBB
+     */
+    public static int parseColor(String color) {
+        String value = color.trim();
+        if (value.startsWith("#")) {
+            value = value.substring(1);
+        } else if (value.startsWith("0x") || value.startsWith("0X")) {
+            value = value.substring(2);
+        }
+        return (int) (Long.parseLong(value, 16) & 0xFFFFFF);
+    }
+
+    /**
+     * 解析偏移点字符串
+     * 格式: "dx,dy,#RRGGBB;dx,dy,#RRGGBB"
+     *
+     * @param spec 偏移点字符串（为空时返回null）
+     * @return 偏移点数组
+     */
+    public static OffsetColor[] parseOffsets(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+        String[] items = spec.split(";");
+        OffsetColor[] offsets = new OffsetColor[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] parts = items[i].split(",");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("偏移点格式应为 dx,dy,#RRGGBB: " + items[i]);
+            }
+            offsets[i] = new OffsetColor(Integer.parseInt(parts[0].trim()),
+                    Integer.parseInt(parts[1].trim()), parseColor(parts[2]));
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,75 @@
+package com.dy.autotask.vision;
+
+/**
+ * 画面内容分类
+ *
+ * 统计相邻像素的亮度差：文字和界面是大片纯色背景加锐利边缘，
+ * 照片和视频是大量平缓过渡，纯色画面两者都很少。
+ * 分类结果用于选择图片压缩策略：文字画面优先保留分辨率，照片可以大幅降低质量和尺寸。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class ContentClassifier {
+
+    /**
+     * 画面内容类型
+     */
+    public enum ContentType {
+        TEXT,   // 文字、界面为主
+        PHOTO,  // 照片、视频为主
+        FLAT    // 大面积纯色
+    }
+
+    // 亮度差达到该值视为锐利边缘
+    private static final int SHARP_EDGE = 64;
+
+    // 亮度差达到该值（且低于锐利边缘）视为平缓过渡
+    private static final int SOFT_EDGE = 8;
+
+    // 边缘总占比低于该值时视为纯色画面
+    private static final double FLAT_RATIO = 0.03;
+
+    // 平缓过渡占比高于该值（且明显多于锐利边缘）时视为照片
+    private static final double PHOTO_SOFT_RATIO = 0.3;
+
+    private ContentClassifier() {
+    }
+
+    /**
+     * 对灰度图分类（一般传入缩略图，最近邻缩小以保留锐利边缘）
+     *
+     * @param image 灰度图
+     * @return 内容类型
+     */
+    public static ContentType classify(GrayImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getPixels();
+        int sharp = 0;
+        int soft = 0;
+        int total = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 1; x < width; x++) {
+                int diff = Math.abs(pixels[row + x] - pixels[row + x - 1]);
+                if (diff >= SHARP_EDGE) {
+                    sharp++;
+                } else if (diff >= SOFT_EDGE) {
+                    soft++;
+                }
+                total++;
+            }
+        }
+        if (total == 0) {
+            return ContentType.FLAT;
+        }
+        double sharpRatio = (double) sharp / total;
+        double softRatio = (double) soft / total;
+        if (sharpRatio + softRatio < FLAT_RATIO) {
+            return ContentType.FLAT;
+        }
+        if (softRatio > PHOTO_SOFT_RATIO && softRatio > sharpRatio * 2) {
+            return ContentType.PHOTO;
+        }
+        return ContentType.TEXT;
+    }
+}
@@ -0,0 +1,124 @@
+package com.dy.autotask.vision;
+
+import com.dy.autotask.capture.PixelBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 灰度图
+ * 每个像素用一个int（0-255）保存，供图片匹配、画面哈希等算法直接按下标读取，
+ * 不依赖Bitmap，可以在JVM单元测试中使用
+ */
+public class GrayImage {
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param pixels 灰度值数组，按行排列，长度为 width * height
+     * @param width 宽度
+     * @param height 高度
+     */
+    public GrayImage(int[] pixels, int width, int height) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("像素数组长度不足: " + pixels.length + " < " + width * height);
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 从原始像素帧生成灰度图
+     *
+     * @param source RGBA像素
+     * @return 灰度图
+     */
+    public static GrayImage fromPixelBuffer(PixelBuffer source) {
+        return fromRgba(source.getBuffer(), source.getWidth(), source.getHeight(), source.getRowStride());
+    }
+
+    /**
+     * 从RGBA字节缓冲区生成灰度图
+     * 使用整数近似的亮度公式 (R*77 + G*150 + B*29) >> 8
+     *
+     * @param rgba RGBA字节缓冲区（使用绝对位置读取，不改变position）
+     * @param width 宽度
+     * @param height 高度
+     * @param rowStride 每行字节数
+     * @return 灰度图
+     */
+    public static GrayImage fromRgba(ByteBuffer rgba, int width, int height, int rowStride) {
+        int[] gray = new int[width * height];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = y * rowStride;
+            for (int x = 0; x < width; x++) {
+                int r = rgba.get(offset) & 0xFF;
+                int g = rgba.get(offset + 1) & 0xFF;
+                int b = rgba.get(offset + 2) & 0xFF;
+                gray[index++] = (r * 77 + g * 150 + b * 29) >> 8;
+                offset += PixelBuffer.BYTES_PER_PIXEL;
+            }
+        }
+        return new GrayImage(gray, width, height);
+    }
+
+    /**
+     * 从ARGB颜色数组（Bitmap.getPixels的结果）生成灰度图
+     *
+     * @param argb ARGB颜色数组
+     * @param width 宽度
+     * @param height 高度
+     * @return 灰度图
+     */
+    public static GrayImage fromArgb(int[] argb, int width, int height) {
+        int[] gray = new int[width * height];
+        for (int i = 0; i < gray.length; i++) {
+            int color = argb[i];
+            int r = (color >> 16) & 0xFF;
+            int g = (color >> 8) & 0xFF;
+            int b = color & 0xFF;
+            gray[i] = (r * 77 + g * 150 + b * 29) >> 8;
+        }
+        return new GrayImage(gray, width, height);
+    }
+
+    /**
+     * 缩小为一半尺寸（2x2平均），用于构建图像金字塔
+     *
+     * @return 缩小后的灰度图
+     */
+    public GrayImage downscale() {
+        int w = Math.max(1, width / 2);
+        int h = Math.max(1, height / 2);
+        int[] out = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            int row0 = Math.min(y * 2, height - 1) * width;
+            int row1 = Math.min(y * 2 + 1, height - 1) * width;
+            for (int x = 0; x < w; x++) {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+                out[y * w + x] = (pixels[row0 + x0] + pixels[row0 + x1]
+                        + pixels[row1 + x0] + pixels[row1 + x1] + 2) >> 2;
+            }
+        }
+        return new GrayImage(out, w, h);
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int get(int x, int y) {
+        return pixels[y * width + x];
+    }
+}
@@ -0,0 +1,138 @@
+package com.dy.autotask.vision;
+
+import com.dy.autotask.capture.PixelBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 图片感知哈希（dHash）
+ *
+ * 把图片缩小到9x8的灰度格子，比较每行相邻格子的亮度得到64位哈希。
+ * 内容相同的画面哈希相同；压缩噪点、轻微缩放只会改变少数几位，
+ * 可以用汉明距离判断两张图片是否"看起来一样"。
+ * 每个格子只采样固定数量的点，整屏计算量与分辨率无关。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class ImageHash {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    // 每个格子每个方向的采样点数
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private ImageHash() {
+    }
+
+    /**
+     * 计算原始像素帧的dHash
+     *
+     * @param pixels 原始像素
+     * @return 64位哈希
+     */
+    public static long dHash(PixelBuffer pixels) {
+        ByteBuffer buffer = pixels.getBuffer();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int width = pixels.getWidth();
+        int height = pixels.getHeight();
+        int stride = pixels.getRowStride();
+
+        int[] cells = new int[HASH_WIDTH * HASH_HEIGHT];
+        for (int cy = 0; cy < HASH_HEIGHT; cy++) {
+            for (int cx = 0; cx < HASH_WIDTH; cx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = sampleCoordinate(cy, sy, HASH_HEIGHT, height);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = sampleCoordinate(cx, sx, HASH_WIDTH, width);
+                        int rgba = buffer.getInt(y * stride + x * PixelBuffer.BYTES_PER_PIXEL);
+                        sum += luminance(rgba >>> 24, (rgba >> 16) & 0xFF, (rgba >> 8) & 0xFF);
+                    }
+                }
+                cells[cy * HASH_WIDTH + cx] = sum;
+            }
+        }
+        return fromCells(cells);
+    }
+
+    /**
+     * 计算灰度图的dHash
+     *
+     * @param image 灰度图
+     * @return 64位哈希
+     */
+    public static long dHash(GrayImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] cells = new int[HASH_WIDTH * HASH_HEIGHT];
+        for (int cy = 0; cy < HASH_HEIGHT; cy++) {
+            for (int cx = 0; cx < HASH_WIDTH; cx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = sampleCoordinate(cy, sy, HASH_HEIGHT, height);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        sum += image.get(sampleCoordinate(cx, sx, HASH_WIDTH, width), y);
+                    }
+                }
+                cells[cy * HASH_WIDTH + cx] = sum;
+            }
+        }
+        return fromCells(cells);
+    }
+
+    /**
+     * 计算原始像素的内容校验和（64位FNV-1a，逐像素）
+     * 与dHash不同，任何一个像素变化都会改变结果，用于判断两帧是否完全相同
+     *
+     * @param pixels 原始像素
+     * @return 64位校验和
+     */
+    public static long contentHash(PixelBuffer pixels) {
+        ByteBuffer buffer = pixels.getBuffer();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        long hash = 0xcbf29ce484222325L;
+        int limit = pixels.getByteCount();
+        for (int offset = 0; offset < limit; offset += PixelBuffer.BYTES_PER_PIXEL) {
+            hash ^= buffer.getInt(offset);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 两个哈希的汉明距离（不同的位数）
+     *
+     * @param a 哈希a
+     * @param b 哈希b
+     * @return 0-64，越小越相似
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static long fromCells(int[] cells) {
+        long hash = 0;
+        for (int cy = 0; cy < HASH_HEIGHT; cy++) {
+            for (int cx = 0; cx < HASH_WIDTH - 1; cx++) {
+                hash <<= 1;
+                if (cells[cy * HASH_WIDTH + cx] < cells[cy * HASH_WIDTH + cx + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 格子内均匀分布的采样坐标
+     */
+    private static int sampleCoordinate(int cell, int sample, int cells, int size) {
+        int coordinate = ((cell * SAMPLES_PER_CELL + sample) * 2 + 1) * size / (cells * SAMPLES_PER_CELL * 2);
+        return Math.min(size - 1, coordinate);
+    }
+
+    private static int luminance(int r, int g, int b) {
+        return (r * 77 + g * 150 + b * 29) >> 8;
+    }
+}
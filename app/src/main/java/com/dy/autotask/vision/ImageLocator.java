@@ -0,0 +1,260 @@
+package com.dy.autotask.vision;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.dy.autotask.capture.PixelBuffer;
+import com.dy.autotask.capture.ScreenFrame;
+import com.dy.autotask.utils.ScreenshotUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 按参考图片在屏幕上定位元素
+ *
+ * 查询字符串格式: 图片路径[|阈值[|左,上,右,下]]
+ * 例如 "icons/start.png|0.85|0,1600,1080,2400"
+ * 图片路径为绝对路径时从文件读取，否则从assets读取；阈值默认0.8；区域默认全屏
+ *
+ * 模板只解码和预处理一次，之后从缓存中取用；降分辨率截图时按帧的比例缩小模板，
+ * 返回的匹配结果始终是屏幕坐标
+ */
+public class ImageLocator {
+    private static final String TAG = "ImageLocator";
+
+    // 默认相似度阈值
+    public static final float DEFAULT_THRESHOLD = 0.8f;
+
+    // 最多缓存的模板数
+    private static final int TEMPLATE_CACHE_SIZE = 32;
+
+    // 未找到时重新截图的间隔
+    private static final long RETRY_INTERVAL_MS = 200;
+
+    private static volatile ImageLocator instance;
+
+    private final Context context;
+    private final TemplateMatcher matcher = new TemplateMatcher();
+    private final LruCache<String, TemplateMatcher.Template> templateCache = new LruCache<>(TEMPLATE_CACHE_SIZE);
+
+    /**
+     * 解析后的查询
+     */
+    public static class Query {
+        private final String path;
+        private final float threshold;
+        private final int[] region;
+
+        private Query(String path, float threshold, int[] region) {
+            this.path = path;
+            this.threshold = threshold;
+            this.region = region;
+        }
+
+        /**
+         * 解析查询字符串
+         *
+         * @param query 查询字符串
+         * @return 查询
+         */
+        public static Query parse(String query) {
+            String[] parts = query.split("\\|");
+            float threshold = DEFAULT_THRESHOLD;
+            int[] region = null;
+            if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+                threshold = Float.parseFloat(parts[1].trim());
+            }
+            if (parts.length > 2 && !parts[2].trim().isEmpty()) {
+                String[] bounds = parts[2].split(",");
+                if (bounds.length != 4) {
+                    throw new IllegalArgumentException("区域格式应为 左,上,右,下: " + parts[2]);
+                }
+                region = new int[4];
+                for (int i = 0; i < 4; i++) {
+                    region[i] = Integer.parseInt(bounds[i].trim());
+                }
+            }
+            return new Query(parts[0].trim(), threshold, region);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public float getThreshold() {
+            return threshold;
+        }
+    }
+
+    private ImageLocator(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static ImageLocator getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageLocator.class) {
+                if (instance == null) {
+                    instance = new ImageLocator(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 在当前屏幕上查找参考图片，未找到时持续重试直到超时
+     *
+     * @param query 查询字符串
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 匹配结果（屏幕坐标），超时返回null
+     * @throws InterruptedException 等待被中断
+     */
+    public TemplateMatcher.Match locate(String query, long timeoutMs) throws InterruptedException {
+        Query parsed = Query.parse(query);
+        if (getTemplate(parsed.path, 1f) == null) {
+            return null;
+        }
+
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        ScreenshotUtil screenshotUtil = new ScreenshotUtil(context);
+        while (true) {
+            ScreenFrame frame = screenshotUtil.captureFrame();
+            if (frame != null) {
+                try {
+                    TemplateMatcher.Match match = locate(frame, parsed);
+                    if (match != null) {
+                        return match;
+                    }
+                } finally {
+                    frame.release();
+                }
+            }
+            if (SystemClock.uptimeMillis() + RETRY_INTERVAL_MS > deadline) {
+                Log.d(TAG, "未找到图片: " + parsed.path);
+                return null;
+            }
+            Thread.sleep(RETRY_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * 在指定帧中查找参考图片
+     *
+     * @param frame 屏幕帧
+     * @param query 查询字符串
+     * @return 匹配结果（屏幕坐标），未找到返回null
+     */
+    public TemplateMatcher.Match locate(ScreenFrame frame, String query) {
+        return locate(frame, Query.parse(query));
+    }
+
+    /**
+     * 在帧中匹配；降分辨率帧使用同比例缩小的模板，区域和结果在屏幕坐标与帧坐标间换算
+     */
+    private TemplateMatcher.Match locate(ScreenFrame frame, Query query) {
+        TemplateMatcher.Template template = getTemplate(query.path, frame.getScaleX());
+        if (template == null) {
+            return null;
+        }
+        PixelBuffer pixels = frame.getPixels();
+        if (pixels == null) {
+            return null;
+        }
+        long start = SystemClock.uptimeMillis();
+        GrayImage screen = GrayImage.fromPixelBuffer(pixels);
+        TemplateMatcher.Match match;
+        if (query.region != null) {
+            match = matcher.find(screen, template, frame.toFrameX(query.region[0]), frame.toFrameY(query.region[1]),
+                    frame.toFrameX(query.region[2]), frame.toFrameY(query.region[3]), query.threshold);
+        } else {
+            match = matcher.find(screen, template, query.threshold);
+        }
+        if (match != null && frame.isScaled()) {
+            match = new TemplateMatcher.Match(frame.toScreenX(match.getX()), frame.toScreenY(match.getY()),
+                    frame.toScreenX(match.getWidth()), frame.toScreenY(match.getHeight()), match.getScore());
+        }
+        Log.d(TAG, "图片匹配: " + query.path + " -> " + match + "，耗时: " + (SystemClock.uptimeMillis() - start) + "ms");
+        return match;
+    }
+
+    /**
+     * 获取预处理后的模板（带缓存）
+     *
+     * @param path 图片路径
+     * @param scale 缩放比例（与帧的渲染比例一致，全分辨率为1）
+     * @return 模板，加载失败返回null
+     */
+    public TemplateMatcher.Template getTemplate(String path, float scale) {
+        String key = scale == 1f ? path : path + "@" + scale;
+        TemplateMatcher.Template template = templateCache.get(key);
+        if (template != null) {
+            return template;
+        }
+
+        Bitmap bitmap = decodeTemplate(path);
+        if (bitmap == null) {
+            Log.e(TAG, "无法加载模板图片: " + path);
+            return null;
+        }
+        if (scale != 1f) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] argb = new int[width * height];
+        bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        template = TemplateMatcher.prepare(GrayImage.fromArgb(argb, width, height));
+        if (!template.isMatchable()) {
+            Log.e(TAG, "模板图片为纯色，无法匹配: " + path);
+            return null;
+        }
+        templateCache.put(key, template);
+        Log.d(TAG, "已加载模板: " + key + " (" + width + "x" + height + ")");
+        return template;
+    }
+
+    private Bitmap decodeTemplate(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        if (new File(path).isAbsolute()) {
+            return BitmapFactory.decodeFile(path, options);
+        }
+        InputStream is = null;
+        try {
+            is = context.getAssets().open(path);
+            return BitmapFactory.decodeStream(is, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "读取assets模板失败: " + e.getMessage());
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "关闭模板文件流失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空模板缓存
+     */
+    public void clearCache() {
+        templateCache.evictAll();
+    }
+}
@@ -0,0 +1,171 @@
+package com.dy.autotask.vision;
+
+import com.dy.autotask.capture.PixelBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 画面稳定检测
+ *
+ * 把检测区域划分成网格，每帧对每个格子做降采样校验和（隔若干像素取一点），
+ * 只和上一帧的格子校验和比较，不做整帧像素比较。
+ * 所有格子在quietMs内都没有变化即认为画面稳定（动画、加载已结束）。
+ *
+ * MediaProjection只在画面变化时才产生新帧，所以没有新帧本身就说明画面没变，
+ * 稳定判断以最后一次变化的时间为准。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class ScreenStabilityDetector {
+
+    // 默认网格列数和行数
+    private static final int DEFAULT_GRID = 8;
+
+    // 降采样步长：格子内每隔多少像素取一个点
+    private static final int SAMPLE_STEP = 8;
+
+    // 忽略每个通道的低位，避免抖动和渐变噪点被误判为变化
+    private static final int QUANTIZE_MASK = 0xF8F8F800;
+
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+    private final int columns;
+    private final int rows;
+    private final long[] tileHashes;
+
+    private boolean hasBaseline = false;
+    private long lastChangeMs = 0;
+    private int lastChangedTiles = 0;
+
+    /**
+     * 检测整个画面
+     */
+    public ScreenStabilityDetector() {
+        this(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, DEFAULT_GRID, DEFAULT_GRID);
+    }
+
+    /**
+     * 检测指定区域
+     *
+     * @param left 区域左边界
+     * @param top 区域上边界
+     * @param right 区域右边界（不含，超出画面时按画面宽度）
+     * @param bottom 区域下边界（不含，超出画面时按画面高度）
+     */
+    public ScreenStabilityDetector(int left, int top, int right, int bottom) {
+        this(left, top, right, bottom, DEFAULT_GRID, DEFAULT_GRID);
+    }
+
+    /**
+     * @param left 区域左边界
+     * @param top 区域上边界
+     * @param right 区域右边界（不含）
+     * @param bottom 区域下边界（不含）
+     * @param columns 网格列数
+     * @param rows 网格行数
+     */
+    public ScreenStabilityDetector(int left, int top, int right, int bottom, int columns, int rows) {
+        this.left = Math.max(0, left);
+        this.top = Math.max(0, top);
+        this.right = right;
+        this.bottom = bottom;
+        this.columns = Math.max(1, columns);
+        this.rows = Math.max(1, rows);
+        this.tileHashes = new long[this.columns * this.rows];
+    }
+
+    /**
+     * 输入一帧
+     *
+     * @param pixels 原始像素
+     * @param timeMs 帧时间（毫秒）
+     * @return 与上一帧相比是否有格子发生变化（第一帧返回true）
+     */
+    public synchronized boolean update(PixelBuffer pixels, long timeMs) {
+        int regionRight = Math.min(right, pixels.getWidth());
+        int regionBottom = Math.min(bottom, pixels.getHeight());
+        int regionWidth = regionRight - left;
+        int regionHeight = regionBottom - top;
+        if (regionWidth <= 0 || regionHeight <= 0) {
+            return false;
+        }
+
+        ByteBuffer buffer = pixels.getBuffer();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int stride = pixels.getRowStride();
+        int changed = 0;
+        for (int row = 0; row < rows; row++) {
+            int tileTop = top + regionHeight * row / rows;
+            int tileBottom = top + regionHeight * (row + 1) / rows;
+            for (int col = 0; col < columns; col++) {
+                int tileLeft = left + regionWidth * col / columns;
+                int tileRight = left + regionWidth * (col + 1) / columns;
+                long hash = hashTile(buffer, stride, tileLeft, tileTop, tileRight, tileBottom);
+                int index = row * columns + col;
+                if (!hasBaseline || tileHashes[index] != hash) {
+                    tileHashes[index] = hash;
+                    changed++;
+                }
+            }
+        }
+
+        lastChangedTiles = changed;
+        if (changed > 0) {
+            lastChangeMs = timeMs;
+        }
+        hasBaseline = true;
+        return changed > 0;
+    }
+
+    private static long hashTile(ByteBuffer buffer, int stride, int tileLeft, int tileTop, int tileRight, int tileBottom) {
+        long hash = 1125899906842597L;
+        int stepBytes = SAMPLE_STEP * PixelBuffer.BYTES_PER_PIXEL;
+        for (int y = tileTop + SAMPLE_STEP / 2; y < tileBottom; y += SAMPLE_STEP) {
+            int offset = y * stride + (tileLeft + SAMPLE_STEP / 2) * PixelBuffer.BYTES_PER_PIXEL;
+            for (int x = tileLeft + SAMPLE_STEP / 2; x < tileRight; x += SAMPLE_STEP, offset += stepBytes) {
+                hash = 31 * hash + (buffer.getInt(offset) & QUANTIZE_MASK);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 画面是否已稳定
+     *
+     * @param nowMs 当前时间（与update的时间基准相同）
+     * @param quietMs 要求的无变化时长
+     * @return 是否稳定，还没有输入过帧时返回false
+     */
+    public synchronized boolean isStable(long nowMs, long quietMs) {
+        return hasBaseline && nowMs - lastChangeMs >= quietMs;
+    }
+
+    /**
+     * 最后一次变化的时间
+     *
+     * @return 时间（毫秒）
+     */
+    public synchronized long getLastChangeMs() {
+        return lastChangeMs;
+    }
+
+    /**
+     * 最近一帧发生变化的格子数
+     *
+     * @return 格子数
+     */
+    public synchronized int getLastChangedTiles() {
+        return lastChangedTiles;
+    }
+
+    /**
+     * 重置状态，下一帧重新作为基准
+     */
+    public synchronized void reset() {
+        hasBaseline = false;
+        lastChangeMs = 0;
+        lastChangedTiles = 0;
+    }
+}
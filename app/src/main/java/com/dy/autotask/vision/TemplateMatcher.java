@@ -0,0 +1,407 @@
+package com.dy.autotask.vision;
+
+/**
+ * 图片模板匹配
+ *
+ * 在屏幕画面中查找参考图片的位置，用于没有无障碍节点的界面（自绘控件、游戏画面等）。
+ * 使用归一化互相关（NCC）作为相似度，对亮度和对比度的整体变化不敏感：
+ * 1. 模板和画面各自构建图像金字塔（每层缩小一半）
+ * 2. 在最粗的一层完整扫描，保留得分最高的几个候选位置
+ * 3. 逐层向下，只在上一层位置附近的小邻域内重新计算，直到原始分辨率
+ *
+ * 画面窗口的均值和方差通过积分图O(1)得到，只有互相关项需要逐像素计算。
+ * 本类不依赖Android API，可以直接在JVM上运行
+ */
+public class TemplateMatcher {
+
+    // 金字塔最粗一层模板的最小边长，再小就失去区分度
+    private static final int MIN_TEMPLATE_SIDE = 12;
+
+    // 金字塔最多层数
+    private static final int MAX_LEVELS = 5;
+
+    // 逐层细化时的搜索半径（像素）
+    private static final int REFINE_RADIUS = 2;
+
+    // 最粗一层保留的候选数
+    private static final int COARSE_CANDIDATES = 8;
+
+    /**
+     * 预处理后的模板
+     * 模板金字塔和每层的统计量只计算一次，可以缓存后重复使用
+     */
+    public static class Template {
+        private final GrayImage[] levels;
+        private final long[] sums;
+        private final double[] norms;
+
+        private Template(GrayImage image) {
+            int count = 1;
+            int w = image.getWidth();
+            int h = image.getHeight();
+            while (count < MAX_LEVELS && Math.min(w, h) / 2 >= MIN_TEMPLATE_SIDE) {
+                w /= 2;
+                h /= 2;
+                count++;
+            }
+
+            levels = new GrayImage[count];
+            sums = new long[count];
+            norms = new double[count];
+            levels[0] = image;
+            for (int i = 1; i < count; i++) {
+                levels[i] = levels[i - 1].downscale();
+            }
+            for (int i = 0; i < count; i++) {
+                int[] pixels = levels[i].getPixels();
+                int n = levels[i].getWidth() * levels[i].getHeight();
+                long sum = 0;
+                long sqSum = 0;
+                for (int p = 0; p < n; p++) {
+                    sum += pixels[p];
+                    sqSum += (long) pixels[p] * pixels[p];
+                }
+                sums[i] = sum;
+                norms[i] = Math.sqrt(Math.max(0d, sqSum - (double) sum * sum / n));
+            }
+        }
+
+        public int getWidth() {
+            return levels[0].getWidth();
+        }
+
+        public int getHeight() {
+            return levels[0].getHeight();
+        }
+
+        /**
+         * 模板是否有纹理（纯色模板无法用NCC匹配）
+         *
+         * @return 是否可用于匹配
+         */
+        public boolean isMatchable() {
+            return norms[0] > 0d;
+        }
+    }
+
+    /**
+     * 匹配结果（画面坐标）
+     */
+    public static class Match {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final float score;
+
+        Match(int x, int y, int width, int height, float score) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.score = score;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getCenterX() {
+            return x + width / 2;
+        }
+
+        public int getCenterY() {
+            return y + height / 2;
+        }
+
+        /**
+         * 相似度（-1 ~ 1，越接近1越相似）
+         */
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return "Match{" + x + "," + y + " " + width + "x" + height + ", score=" + score + '}';
+        }
+    }
+
+    /**
+     * 积分图（窗口求和与平方和）
+     */
+    private static class Integral {
+        private final long[] sum;
+        private final long[] sqSum;
+        private final int stride;
+
+        Integral(GrayImage image) {
+            int w = image.getWidth();
+            int h = image.getHeight();
+            int[] pixels = image.getPixels();
+            stride = w + 1;
+            sum = new long[stride * (h + 1)];
+            sqSum = new long[stride * (h + 1)];
+            for (int y = 0; y < h; y++) {
+                long rowSum = 0;
+                long rowSqSum = 0;
+                for (int x = 0; x < w; x++) {
+                    int v = pixels[y * w + x];
+                    rowSum += v;
+                    rowSqSum += (long) v * v;
+                    int index = (y + 1) * stride + x + 1;
+                    sum[index] = sum[index - stride] + rowSum;
+                    sqSum[index] = sqSum[index - stride] + rowSqSum;
+                }
+            }
+        }
+
+        long windowSum(long[] table, int x, int y, int w, int h) {
+            int top = y * stride;
+            int bottom = (y + h) * stride;
+            return table[bottom + x + w] - table[bottom + x] - table[top + x + w] + table[top + x];
+        }
+    }
+
+    /**
+     * 预处理模板
+     *
+     * @param image 模板灰度图
+     * @return 预处理后的模板
+     */
+    public static Template prepare(GrayImage image) {
+        return new Template(image);
+    }
+
+    /**
+     * 在整个画面中查找模板
+     *
+     * @param screen 画面灰度图
+     * @param template 预处理后的模板
+     * @param threshold 相似度阈值（0-1）
+     * @return 匹配结果，未达到阈值返回null
+     */
+    public Match find(GrayImage screen, Template template, float threshold) {
+        return find(screen, template, 0, 0, screen.getWidth(), screen.getHeight(), threshold);
+    }
+
+    /**
+     * 在画面的指定区域中查找模板
+     *
+     * @param screen 画面灰度图
+     * @param template 预处理后的模板
+     * @param left 区域左边界
+     * @param top 区域上边界
+     * @param right 区域右边界（不含）
+     * @param bottom 区域下边界（不含）
+     * @param threshold 相似度阈值（0-1）
+     * @return 匹配结果（画面坐标），未达到阈值返回null
+     */
+    public Match find(GrayImage screen, Template template, int left, int top, int right, int bottom, float threshold) {
+        Match best = findBest(screen, template, left, top, right, bottom);
+        if (best == null || best.getScore() < threshold) {
+            return null;
+        }
+        return best;
+    }
+
+    /**
+     * 在画面的指定区域中查找与模板最相似的位置（不判断阈值）
+     *
+     * @return 最相似的位置，区域小于模板或模板无纹理时返回null
+     */
+    public Match findBest(GrayImage screen, Template template, int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(screen.getWidth(), right);
+        bottom = Math.min(screen.getHeight(), bottom);
+        int roiWidth = right - left;
+        int roiHeight = bottom - top;
+        if (roiWidth < template.getWidth() || roiHeight < template.getHeight() || !template.isMatchable()) {
+            return null;
+        }
+
+        // 区域画面的金字塔，层数不超过模板金字塔且每层都要能放下模板
+        GrayImage roi = crop(screen, left, top, roiWidth, roiHeight);
+        int levelCount = template.levels.length;
+        GrayImage[] screens = new GrayImage[levelCount];
+        screens[0] = roi;
+        for (int i = 1; i < levelCount; i++) {
+            GrayImage next = screens[i - 1].downscale();
+            if (next.getWidth() < template.levels[i].getWidth() || next.getHeight() < template.levels[i].getHeight()) {
+                levelCount = i;
+                break;
+            }
+            screens[i] = next;
+        }
+
+        // 最粗一层完整扫描
+        int coarse = levelCount - 1;
+        GrayImage coarseScreen = screens[coarse];
+        GrayImage coarseTemplate = template.levels[coarse];
+        Integral coarseIntegral = new Integral(coarseScreen);
+        int tw = coarseTemplate.getWidth();
+        int th = coarseTemplate.getHeight();
+        int suppressRadius = Math.max(1, Math.min(tw, th) / 2);
+
+        int[] candX = new int[COARSE_CANDIDATES];
+        int[] candY = new int[COARSE_CANDIDATES];
+        double[] candScore = new double[COARSE_CANDIDATES];
+        int candCount = 0;
+
+        for (int y = 0; y <= coarseScreen.getHeight() - th; y++) {
+            for (int x = 0; x <= coarseScreen.getWidth() - tw; x++) {
+                double score = ncc(coarseScreen, coarseIntegral, template, coarse, x, y);
+                candCount = offerCandidate(candX, candY, candScore, candCount, x, y, score, suppressRadius);
+            }
+        }
+
+        // 逐层细化每个候选
+        Integral[] integrals = new Integral[levelCount];
+        integrals[coarse] = coarseIntegral;
+        int bestX = -1;
+        int bestY = -1;
+        double bestScore = -2d;
+        for (int c = 0; c < candCount; c++) {
+            int x = candX[c];
+            int y = candY[c];
+            double score = candScore[c];
+            for (int level = coarse - 1; level >= 0; level--) {
+                if (integrals[level] == null) {
+                    integrals[level] = new Integral(screens[level]);
+                }
+                GrayImage levelScreen = screens[level];
+                int lw = template.levels[level].getWidth();
+                int lh = template.levels[level].getHeight();
+                int centerX = x * 2;
+                int centerY = y * 2;
+                score = -2d;
+                for (int dy = -REFINE_RADIUS; dy <= REFINE_RADIUS; dy++) {
+                    int sy = centerY + dy;
+                    if (sy < 0 || sy > levelScreen.getHeight() - lh) {
+                        continue;
+                    }
+                    for (int dx = -REFINE_RADIUS; dx <= REFINE_RADIUS; dx++) {
+                        int sx = centerX + dx;
+                        if (sx < 0 || sx > levelScreen.getWidth() - lw) {
+                            continue;
+                        }
+                        double s = ncc(levelScreen, integrals[level], template, level, sx, sy);
+                        if (s > score) {
+                            score = s;
+                            x = sx;
+                            y = sy;
+                        }
+                    }
+                }
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestX = x;
+                bestY = y;
+            }
+        }
+
+        if (bestX < 0) {
+            return null;
+        }
+        return new Match(bestX + left, bestY + top, template.getWidth(), template.getHeight(), (float) bestScore);
+    }
+
+    /**
+     * 计算画面窗口与模板的归一化互相关
+     */
+    private static double ncc(GrayImage screen, Integral integral, Template template, int level, int x, int y) {
+        GrayImage tpl = template.levels[level];
+        int tw = tpl.getWidth();
+        int th = tpl.getHeight();
+        int n = tw * th;
+
+        long windowSum = integral.windowSum(integral.sum, x, y, tw, th);
+        long windowSqSum = integral.windowSum(integral.sqSum, x, y, tw, th);
+        double windowNorm = windowSqSum - (double) windowSum * windowSum / n;
+        if (windowNorm <= 0d) {
+            // 纯色窗口与有纹理的模板不相关
+            return 0d;
+        }
+
+        int[] s = screen.getPixels();
+        int[] t = tpl.getPixels();
+        int sw = screen.getWidth();
+        long cross = 0;
+        int ti = 0;
+        for (int row = 0; row < th; row++) {
+            int si = (y + row) * sw + x;
+            for (int col = 0; col < tw; col++) {
+                cross += s[si++] * t[ti++];
+            }
+        }
+
+        double numerator = cross - (double) windowSum * template.sums[level] / n;
+        return numerator / (Math.sqrt(windowNorm) * template.norms[level]);
+    }
+
+    /**
+     * 记录粗匹配候选，保留得分最高的几个且互相不重叠的位置
+     *
+     * @return 新的候选数
+     */
+    private static int offerCandidate(int[] candX, int[] candY, double[] candScore, int count,
+                                      int x, int y, double score, int suppressRadius) {
+        // 与已有候选太近时只保留得分高的一个
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(candX[i] - x) <= suppressRadius && Math.abs(candY[i] - y) <= suppressRadius) {
+                if (score <= candScore[i]) {
+                    return count;
+                }
+                // 移除旧候选，下面重新按得分插入
+                for (int j = i; j < count - 1; j++) {
+                    candX[j] = candX[j + 1];
+                    candY[j] = candY[j + 1];
+                    candScore[j] = candScore[j + 1];
+                }
+                count--;
+                break;
+            }
+        }
+
+        if (count == candScore.length && score <= candScore[count - 1]) {
+            return count;
+        }
+        int pos = Math.min(count, candScore.length - 1);
+        while (pos > 0 && candScore[pos - 1] < score) {
+            candX[pos] = candX[pos - 1];
+            candY[pos] = candY[pos - 1];
+            candScore[pos] = candScore[pos - 1];
+            pos--;
+        }
+        candX[pos] = x;
+        candY[pos] = y;
+        candScore[pos] = score;
+        return Math.min(count + 1, candScore.length);
+    }
+
+    private static GrayImage crop(GrayImage image, int left, int top, int width, int height) {
+        if (left == 0 && top == 0 && width == image.getWidth() && height == image.getHeight()) {
+            return image;
+        }
+        int[] src = image.getPixels();
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src, (top + y) * image.getWidth() + left, out, y * width, width);
+        }
+        return new GrayImage(out, width, height);
+    }
+}
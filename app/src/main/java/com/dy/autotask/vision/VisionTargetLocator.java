@@ -0,0 +1,272 @@
+package com.dy.autotask.vision;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.dy.autotask.utils.AnalysisCache;
+import com.dy.autotask.utils.GLMImageAnalysisTool;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 用视觉模型按文字描述在截图中定位目标（用于没有无障碍节点的画布、游戏界面）
+ *
+ * 要求模型只输出一行 JSON：{"found": true, "box": [x1, y1, x2, y2]}，坐标按图片宽高归一化到 0-1000，
+ * 与上传时图片是否被缩小无关。模型回答通过 {@link GLMImageAnalysisTool} 发送，
+ * 按（画面感知哈希, 描述, 模型）进入 {@link AnalysisCache}，同一画面再次定位时不再请求模型；
+ * 只有成功定位的回答会写入缓存，未找到或无法解析的回答不缓存，下次重新请求。
+ *
+ * 定位结果可以用无障碍节点树校验：目标中心落在一个大小合适的可点击节点内，
+ * 且节点与模型给出的区域基本重合时，改为点击该节点的中心（见 {@link #resolveTapPoint}）。
+ *
+ * 使用方式：
+ * VisionTargetLocator.Target target = VisionTargetLocator.getInstance().locate(bitmap, "蓝色的支付按钮", deadline);
+ * Rect box = target.toRect(bitmap.getWidth(), bitmap.getHeight());
+ */
+public class VisionTargetLocator {
+    private static final String TAG = "VisionTargetLocator";
+
+    // 归一化坐标的范围
+    private static final float COORDINATE_SCALE = 1000f;
+
+    // 可以校正到的节点最大面积（占屏幕的比例），更大的节点一般是整个画布
+    private static final float MAX_SNAP_AREA_RATIO = 0.25f;
+
+    // 模型区域与节点的重合比例（交集占两者中较小者的比例）下限
+    private static final float MIN_SNAP_OVERLAP = 0.5f;
+
+    // 回答中没有 JSON 时，按 [x1, y1, x2, y2] 格式查找坐标
+    private static final Pattern BOX_PATTERN = Pattern.compile(
+            "\\[\\s*(\\d+(?:\\.\\d+)?)\\s*,\\s*(\\d+(?:\\.\\d+)?)\\s*,\\s*(\\d+(?:\\.\\d+)?)\\s*,\\s*(\\d+(?:\\.\\d+)?)\\s*\\]");
+
+    private static volatile VisionTargetLocator instance;
+
+    /**
+     * 定位结果：目标区域（归一化到 0-1）
+     */
+    public static class Target {
+        public final float left;
+        public final float top;
+        public final float right;
+        public final float bottom;
+
+        Target(float left, float top, float right, float bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        /**
+         * 换算到指定尺寸的坐标
+         *
+         * @param width 宽度
+         * @param height 高度
+         * @return 目标区域
+         */
+        public Rect toRect(int width, int height) {
+            return new Rect(Math.round(left * width), Math.round(top * height),
+                    Math.round(right * width), Math.round(bottom * height));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "[%.3f, %.3f, %.3f, %.3f]", left, top, right, bottom);
+        }
+    }
+
+    /**
+     * 点击位置
+     */
+    public static class TapPoint {
+        public final int x;
+        public final int y;
+        // 是否已校正到无障碍节点的中心
+        public final boolean snapped;
+
+        TapPoint(int x, int y, boolean snapped) {
+            this.x = x;
+            this.y = y;
+            this.snapped = snapped;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + "," + y + ")" + (snapped ? "（已校正到无障碍节点）" : "");
+        }
+    }
+
+    private VisionTargetLocator() {
+    }
+
+    public static VisionTargetLocator getInstance() {
+        if (instance == null) {
+            synchronized (VisionTargetLocator.class) {
+                if (instance == null) {
+                    instance = new VisionTargetLocator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 在截图中定位目标
+     *
+     * @param bitmap 截图
+     * @param instruction 目标描述（如 "蓝色的支付按钮"）
+     * @param deadlineMs 截止时间（SystemClock.uptimeMillis 时间点，0 表示不限）
+     * @return 目标区域，模型回答未找到或无法解析时返回 null
+     * @throws IOException 网络错误或超过截止时间
+     */
+    public Target locate(Bitmap bitmap, String instruction, long deadlineMs) throws IOException {
+        String prompt = buildPrompt(instruction);
+        // 只缓存成功的定位，避免一次误判在过期前一直生效
+        String response = GLMImageAnalysisTool.analyzeImage(bitmap, prompt, deadlineMs,
+                result -> parseTarget(result) != null);
+        Target target = parseTarget(response);
+        if (target == null) {
+            Log.w(TAG, "模型未定位到目标: " + instruction + "，回答: " + response);
+            return null;
+        }
+        Log.d(TAG, "定位目标: " + instruction + " -> " + target);
+        return target;
+    }
+
+    /**
+     * 生成定位提示词（同一描述总是得到相同的提示词，以便命中缓存）
+     */
+    static String buildPrompt(String instruction) {
+        return "在这张截图中找到：" + instruction + "\n"
+                + "只输出一行 JSON，不要输出其他内容。"
+                + "找到时输出 {\"found\": true, \"box\": [x1, y1, x2, y2]}，"
+                + "其中 (x1, y1) 和 (x2, y2) 是目标的左上角和右下角，按图片宽高归一化为 0-1000 的整数；"
+                + "找不到时输出 {\"found\": false}。";
+    }
+
+    /**
+     * 解析模型回答
+     * 优先解析回答中的 JSON（允许被 Markdown 代码块包裹），没有 JSON 时查找 [x1, y1, x2, y2]
+     *
+     * @param response 模型回答
+     * @return 目标区域，未找到、格式错误或区域无效时返回 null
+     */
+    static Target parseTarget(String response) {
+        if (response == null) {
+            return null;
+        }
+        int start = response.indexOf('{');
+        int end = response.lastIndexOf('}');
+        if (start >= 0 && end > start) {
+            try {
+                JsonElement element = JsonParser.parseString(response.substring(start, end + 1));
+                if (element.isJsonObject()) {
+                    JsonObject object = element.getAsJsonObject();
+                    JsonElement found = object.get("found");
+                    if (found != null && found.isJsonPrimitive() && !found.getAsBoolean()) {
+                        return null;
+                    }
+                    JsonElement box = object.get("box");
+                    if (box != null && box.isJsonArray() && box.getAsJsonArray().size() == 4) {
+                        JsonArray values = box.getAsJsonArray();
+                        return toTarget(values.get(0).getAsFloat(), values.get(1).getAsFloat(),
+                                values.get(2).getAsFloat(), values.get(3).getAsFloat());
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "定位回答 JSON 解析失败: " + e.getMessage());
+            }
+        }
+        Matcher matcher = BOX_PATTERN.matcher(response);
+        if (matcher.find()) {
+            return toTarget(Float.parseFloat(matcher.group(1)), Float.parseFloat(matcher.group(2)),
+                    Float.parseFloat(matcher.group(3)), Float.parseFloat(matcher.group(4)));
+        }
+        return null;
+    }
+
+    private static Target toTarget(float x1, float y1, float x2, float y2) {
+        float left = clamp(Math.min(x1, x2) / COORDINATE_SCALE);
+        float top = clamp(Math.min(y1, y2) / COORDINATE_SCALE);
+        float right = clamp(Math.max(x1, x2) / COORDINATE_SCALE);
+        float bottom = clamp(Math.max(y1, y2) / COORDINATE_SCALE);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return new Target(left, top, right, bottom);
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+
+    /**
+     * 用无障碍节点树校验目标区域，得到点击位置
+     * 目标中心所在的最小可点击节点面积不超过屏幕的 1/4、且与目标区域基本重合时，点击节点中心；
+     * 否则（没有节点树、画布或游戏界面）点击目标区域中心
+     *
+     * @param root 当前窗口的根节点（可为 null，调用方负责回收）
+     * @param box 目标区域（屏幕坐标）
+     * @param screenWidth 屏幕宽度
+     * @param screenHeight 屏幕高度
+     * @return 点击位置
+     */
+    public static TapPoint resolveTapPoint(AccessibilityNodeInfo root, Rect box, int screenWidth, int screenHeight) {
+        int centerX = box.centerX();
+        int centerY = box.centerY();
+        if (root == null) {
+            return new TapPoint(centerX, centerY, false);
+        }
+        Rect node = findSmallestClickable(root, centerX, centerY);
+        if (node != null) {
+            long nodeArea = (long) node.width() * node.height();
+            long screenArea = (long) screenWidth * screenHeight;
+            Rect overlap = new Rect();
+            boolean intersects = overlap.setIntersect(node, box);
+            long overlapArea = intersects ? (long) overlap.width() * overlap.height() : 0;
+            long smallerArea = Math.min(nodeArea, (long) box.width() * box.height());
+            if (nodeArea <= screenArea * MAX_SNAP_AREA_RATIO && smallerArea > 0
+                    && overlapArea >= smallerArea * MIN_SNAP_OVERLAP) {
+                return new TapPoint(node.centerX(), node.centerY(), true);
+            }
+            Log.d(TAG, "可点击节点 " + node + " 与目标区域 " + box + " 不匹配，按模型坐标点击");
+        }
+        return new TapPoint(centerX, centerY, false);
+    }
+
+    /**
+     * 查找包含指定点的最小可见可点击节点
+     *
+     * @return 节点的屏幕区域，没有时返回 null
+     */
+    private static Rect findSmallestClickable(AccessibilityNodeInfo node, int x, int y) {
+        Rect bounds = new Rect();
+        node.getBoundsInScreen(bounds);
+        if (!node.isVisibleToUser() || !bounds.contains(x, y)) {
+            return null;
+        }
+        Rect best = node.isClickable() ? bounds : null;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            AccessibilityNodeInfo child = node.getChild(i);
+            if (child == null) {
+                continue;
+            }
+            Rect candidate = findSmallestClickable(child, x, y);
+            child.recycle();
+            if (candidate != null && (best == null
+                    || (long) candidate.width() * candidate.height() < (long) best.width() * best.height())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+}
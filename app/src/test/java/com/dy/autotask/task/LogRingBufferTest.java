@@ -0,0 +1,131 @@
+package com.dy.autotask.task;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 日志环形队列的JVM测试：多生产者并发写入、队列满和序号回绕
+ */
+public class LogRingBufferTest {
+
+    @Test
+    public void emptyQueueHasNothingToPoll() {
+        TaskLogFileWriter.LogRingBuffer queue = new TaskLogFileWriter.LogRingBuffer(4);
+        assertEquals(0, queue.size());
+        assertFalse(queue.poll());
+    }
+
+    @Test
+    public void pollsInOfferOrder() {
+        TaskLogFileWriter.LogRingBuffer queue = new TaskLogFileWriter.LogRingBuffer(4);
+        assertTrue(queue.offer(1, "a"));
+        assertTrue(queue.offer(2, "b"));
+        assertEquals(2, queue.size());
+
+        assertTrue(queue.poll());
+        assertEquals(1, queue.polledTime);
+        assertEquals("a", queue.polledMessage);
+        assertTrue(queue.poll());
+        assertEquals(2, queue.polledTime);
+        assertEquals("b", queue.polledMessage);
+        assertFalse(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        TaskLogFileWriter.LogRingBuffer queue = new TaskLogFileWriter.LogRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, "m" + i));
+        }
+        assertFalse(queue.offer(4, "m4"));
+        assertEquals(4, queue.size());
+
+        // 取出一条后腾出一个位置
+        assertTrue(queue.poll());
+        assertEquals("m0", queue.polledMessage);
+        assertTrue(queue.offer(4, "m4"));
+        assertFalse(queue.offer(5, "m5"));
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(queue.poll());
+            assertEquals("m" + i, queue.polledMessage);
+        }
+        assertFalse(queue.poll());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        TaskLogFileWriter.LogRingBuffer queue = new TaskLogFileWriter.LogRingBuffer(4);
+        long next = 0;
+        long expected = 0;
+        // 每轮放入 3 条、取出 3 条，序号跨过容量很多次
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.offer(next, "m" + next));
+                next++;
+            }
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.poll());
+                assertEquals(expected, queue.polledTime);
+                assertEquals("m" + expected, queue.polledMessage);
+                expected++;
+            }
+            assertFalse(queue.poll());
+        }
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingAndKeepPerProducerOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 50000;
+        final TaskLogFileWriter.LogRingBuffer queue = new TaskLogFileWriter.LogRingBuffer(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    // 时间字段编码生产者和序号；队列满时自旋重试，保证每条都放入
+                    while (!queue.offer((long) producer * perProducer + i, String.valueOf(producer))) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+
+        int[] nextIndex = new int[producers];
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received < producers * perProducer) {
+            if (!queue.poll()) {
+                assertTrue("消费超时，已收到 " + received + " 条", System.currentTimeMillis() < deadline);
+                Thread.yield();
+                continue;
+            }
+            int producer = Integer.parseInt(queue.polledMessage);
+            int index = (int) (queue.polledTime - (long) producer * perProducer);
+            assertEquals("生产者 " + producer + " 的顺序", nextIndex[producer], index);
+            nextIndex[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(queue.poll());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, nextIndex[p]);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.dy.autotask.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量分析的JVM测试：分组边界和回答拆分
+ */
+public class BatchAnalysisTest {
+
+    @Test
+    public void emptyInputHasNoGroups() {
+        assertTrue(BatchAnalysis.split(new int[0], 5, 1000).isEmpty());
+    }
+
+    @Test
+    public void splitsByImageCount() {
+        List<int[]> groups = BatchAnalysis.split(new int[]{1, 1, 1, 1, 1, 1, 1}, 3, 1000);
+        assertGroups(groups, new int[]{0, 3}, new int[]{3, 6}, new int[]{6, 7});
+    }
+
+    @Test
+    public void nonPositiveImageLimitMeansOnePerGroup() {
+        List<int[]> groups = BatchAnalysis.split(new int[]{1, 1}, 0, 1000);
+        assertGroups(groups, new int[]{0, 1}, new int[]{1, 2});
+    }
+
+    @Test
+    public void splitsByTotalBytes() {
+        List<int[]> groups = BatchAnalysis.split(new int[]{400, 400, 400}, 10, 1000);
+        assertGroups(groups, new int[]{0, 2}, new int[]{2, 3});
+    }
+
+    @Test
+    public void groupMayReachByteLimitExactly() {
+        List<int[]> groups = BatchAnalysis.split(new int[]{500, 500, 1}, 10, 1000);
+        assertGroups(groups, new int[]{0, 2}, new int[]{2, 3});
+    }
+
+    @Test
+    public void oversizedImageGetsItsOwnGroup() {
+        List<int[]> groups = BatchAnalysis.split(new int[]{100, 2000, 100}, 10, 1000);
+        assertGroups(groups, new int[]{0, 1}, new int[]{1, 2}, new int[]{2, 3});
+    }
+
+    @Test
+    public void splitsBracketMarkers() {
+        String[] answers = BatchAnalysis.splitAnswers("[图1]\n登录页面\n[图2]\n首页\n有多行内容\n[图3] 设置页", 3);
+        assertArrayEquals(new String[]{"登录页面", "首页\n有多行内容", "设置页"}, answers);
+    }
+
+    @Test
+    public void acceptsMarkerVariants() {
+        String response = "【图1】登录页面\n图2：首页\n图 3: 设置页\n【 图4 】：个人中心";
+        assertArrayEquals(new String[]{"登录页面", "首页", "设置页", "个人中心"},
+                BatchAnalysis.splitAnswers(response, 4));
+    }
+
+    @Test
+    public void acceptsMarkdownPrefixes() {
+        String response = "## [图1]\n登录页面\n**[图2]**：首页\n> 图3：设置页\n- 列表项保持原样";
+        assertArrayEquals(new String[]{"登录页面", "首页", "设置页\n- 列表项保持原样"},
+                BatchAnalysis.splitAnswers(response, 3));
+    }
+
+    @Test
+    public void ignoresTextBeforeFirstMarker() {
+        String[] answers = BatchAnalysis.splitAnswers("好的，下面逐张回答。\n[图1]\n登录页面\n[图2]\n首页", 2);
+        assertArrayEquals(new String[]{"登录页面", "首页"}, answers);
+    }
+
+    @Test
+    public void markerMustStartTheLine() {
+        String[] answers = BatchAnalysis.splitAnswers("[图1]\n与图2：相同的页面\n[图2]\n首页", 2);
+        assertArrayEquals(new String[]{"与图2：相同的页面", "首页"}, answers);
+    }
+
+    @Test
+    public void duplicateMarkerKeepsFirstNonEmptyAnswer() {
+        String[] answers = BatchAnalysis.splitAnswers("[图1]\n[图2]\n首页\n[图1]\n登录页面\n[图2]\n重复的回答", 2);
+        assertArrayEquals(new String[]{"登录页面", "首页"}, answers);
+    }
+
+    @Test
+    public void outOfRangeMarkerIsDropped() {
+        String[] answers = BatchAnalysis.splitAnswers("[图1]\n登录页面\n[图0]\n不存在\n[图3]\n也不存在\n[图2]\n首页", 2);
+        assertArrayEquals(new String[]{"登录页面", "首页"}, answers);
+    }
+
+    @Test
+    public void missingAnswersAreNull() {
+        String[] answers = BatchAnalysis.splitAnswers("[图1]\n登录页面\n[图3]\n设置页", 3);
+        assertEquals("登录页面", answers[0]);
+        assertNull(answers[1]);
+        assertEquals("设置页", answers[2]);
+    }
+
+    @Test
+    public void responseWithoutMarkersHasNoAnswers() {
+        assertArrayEquals(new String[2], BatchAnalysis.splitAnswers("两张图片都是登录页面", 2));
+        assertArrayEquals(new String[2], BatchAnalysis.splitAnswers(null, 2));
+    }
+
+    @Test
+    public void labelsMatchPromptNumbering() {
+        List<String> labels = BatchAnalysis.labels(3);
+        assertEquals(3, labels.size());
+        assertEquals("图1", labels.get(0));
+        assertEquals("图3", labels.get(2));
+        assertTrue(BatchAnalysis.buildPrompt("这是什么页面", 3).contains("图1 到 图3"));
+    }
+
+    private static void assertGroups(List<int[]> groups, int[]... expected) {
+        assertEquals(expected.length, groups.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals("group " + i, expected[i], groups.get(i));
+        }
+    }
+}
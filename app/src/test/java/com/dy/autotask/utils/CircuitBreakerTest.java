@@ -0,0 +1,103 @@
+package com.dy.autotask.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 熔断器状态变化的JVM测试
+ */
+public class CircuitBreakerTest {
+
+    // 测试中"很长"的熔断时间，保证测试期间不会进入半开状态
+    private static final long LONG_OPEN_MS = 60000;
+
+    // 测试中"很短"的熔断时间
+    private static final long SHORT_OPEN_MS = 30;
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, LONG_OPEN_MS);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.getRemainingOpenMs() > 0);
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, LONG_OPEN_MS);
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbe() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(SHORT_OPEN_MS);
+        Thread.sleep(SHORT_OPEN_MS * 2);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeReopens() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(SHORT_OPEN_MS);
+        Thread.sleep(SHORT_OPEN_MS * 2);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(SHORT_OPEN_MS * 2);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledProbeReleasesSlot() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(SHORT_OPEN_MS);
+        Thread.sleep(SHORT_OPEN_MS * 2);
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        // 探测请求被取消（或抛出意外异常）时归还名额，下一个请求可以继续探测
+        breaker.recordCancelled();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelDoesNotChangeClosedState() {
+        CircuitBreaker breaker = new CircuitBreaker(1, LONG_OPEN_MS);
+        assertTrue(breaker.allowRequest());
+        breaker.recordCancelled();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getConsecutiveFailures());
+    }
+
+    private static CircuitBreaker openBreaker(long openDurationMs) {
+        CircuitBreaker breaker = new CircuitBreaker(1, openDurationMs);
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
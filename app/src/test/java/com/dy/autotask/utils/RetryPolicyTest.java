@@ -0,0 +1,121 @@
+package com.dy.autotask.utils;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 重试策略的JVM测试：退避抖动范围、Retry-After解析和截止时间判断
+ */
+public class RetryPolicyTest {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    @Test
+    public void jitteredDelayStaysWithinExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, new Random(42));
+        long[] ceilings = {100, 200, 400, 800, 1000, 1000};
+        for (int attempt = 1; attempt <= ceilings.length; attempt++) {
+            for (int i = 0; i < 200; i++) {
+                long delay = policy.computeDelayMs(attempt, -1);
+                assertTrue("attempt " + attempt + " delay " + delay, delay >= 0 && delay < ceilings[attempt - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void jitterSpreadsDelays() {
+        RetryPolicy policy = new RetryPolicy(5, 1000, 10000, new Random(7));
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            delays.add(policy.computeDelayMs(3, -1));
+        }
+        // 同一次重试的等待时间应当分散，而不是所有客户端同一时刻重试
+        assertTrue(delays.size() > 40);
+    }
+
+    @Test
+    public void largeAttemptCountDoesNotOverflow() {
+        RetryPolicy policy = new RetryPolicy(100, 500, 30000, new Random(1));
+        long delay = policy.computeDelayMs(80, -1);
+        assertTrue(delay >= 0 && delay < 30000);
+    }
+
+    @Test
+    public void retryAfterIsHonouredUpToMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 5000, new Random(1));
+        assertEquals(2000, policy.computeDelayMs(1, 2000));
+        assertEquals(0, policy.computeDelayMs(1, 0));
+        assertEquals(-1, policy.computeDelayMs(1, 6000));
+    }
+
+    @Test
+    public void parsesRetryAfterSeconds() {
+        assertEquals(120000, RetryPolicy.parseRetryAfter("120"));
+        assertEquals(3000, RetryPolicy.parseRetryAfter(" 3 "));
+        assertEquals(0, RetryPolicy.parseRetryAfter("-5"));
+    }
+
+    @Test
+    public void parsesRetryAfterHttpDate() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String future = format.format(new Date(System.currentTimeMillis() + 30000));
+        long delay = RetryPolicy.parseRetryAfter(future);
+        // HTTP日期只精确到秒
+        assertTrue("delay " + delay, delay > 27000 && delay <= 30000);
+
+        String past = format.format(new Date(System.currentTimeMillis() - 60000));
+        assertEquals(0, RetryPolicy.parseRetryAfter(past));
+    }
+
+    @Test
+    public void invalidRetryAfterIsIgnored() {
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(""));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon"));
+    }
+
+    @Test
+    public void retryableStatusCodes() {
+        assertTrue(RetryPolicy.isRetryableStatus(429));
+        assertTrue(RetryPolicy.isRetryableStatus(503));
+        assertTrue(RetryPolicy.isRetryableStatus(408));
+        assertFalse(RetryPolicy.isRetryableStatus(400));
+        assertFalse(RetryPolicy.isRetryableStatus(401));
+        assertFalse(RetryPolicy.isRetryableStatus(404));
+    }
+
+    @Test
+    public void stopsAfterMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, new Random(1));
+        assertTrue(policy.nextDelayMs(1, -1, NO_DEADLINE) >= 0);
+        assertTrue(policy.nextDelayMs(2, -1, NO_DEADLINE) >= 0);
+        assertEquals(-1, policy.nextDelayMs(3, -1, NO_DEADLINE));
+    }
+
+    @Test
+    public void stopsWhenRetryAfterExceedsMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, new Random(1));
+        assertEquals(-1, policy.nextDelayMs(1, 5000, NO_DEADLINE));
+    }
+
+    @Test
+    public void stopsWhenDelayReachesDeadline() {
+        RetryPolicy policy = new RetryPolicy(5, 100, 10000, new Random(1));
+        assertEquals(500, policy.nextDelayMs(1, 500, 501));
+        assertEquals(-1, policy.nextDelayMs(1, 500, 500));
+        assertEquals(-1, policy.nextDelayMs(1, 500, 0));
+        assertEquals(-1, policy.nextDelayMs(1, 0, -10));
+    }
+}
@@ -0,0 +1,135 @@
+package com.dy.autotask.vision;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 图片模板匹配的JVM基准测试
+ * 在合成画面上验证定位准确性，并输出不同分辨率下的匹配耗时
+ */
+public class TemplateMatcherBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 10;
+
+    @Test
+    public void findsTemplateCutFromFrame() {
+        GrayImage screen = syntheticScreen(1080, 2400, 1);
+        GrayImage template = cut(screen, 612, 1733, 96, 96, 0);
+
+        TemplateMatcher.Match match = new TemplateMatcher()
+                .find(screen, TemplateMatcher.prepare(template), 0.9f);
+
+        assertNotNull(match);
+        assertEquals(612, match.getX());
+        assertEquals(1733, match.getY());
+        assertTrue(match.getScore() > 0.99f);
+    }
+
+    @Test
+    public void toleratesBrightnessShift() {
+        GrayImage screen = syntheticScreen(720, 1600, 2);
+        GrayImage template = cut(screen, 100, 1200, 64, 48, 30);
+
+        TemplateMatcher.Match match = new TemplateMatcher()
+                .find(screen, TemplateMatcher.prepare(template), 0.9f);
+
+        assertNotNull(match);
+        assertEquals(100, match.getX());
+        assertEquals(1200, match.getY());
+    }
+
+    @Test
+    public void respectsRegionOfInterest() {
+        GrayImage screen = syntheticScreen(1080, 2400, 3);
+        GrayImage template = cut(screen, 500, 300, 80, 80, 0);
+        TemplateMatcher.Template prepared = TemplateMatcher.prepare(template);
+        TemplateMatcher matcher = new TemplateMatcher();
+
+        assertNull(matcher.find(screen, prepared, 0, 1200, 1080, 2400, 0.9f));
+        TemplateMatcher.Match match = matcher.find(screen, prepared, 400, 200, 700, 500, 0.9f);
+        assertNotNull(match);
+        assertEquals(500, match.getX());
+        assertEquals(300, match.getY());
+    }
+
+    @Test
+    public void benchmarkScreenSizes() {
+        int[][] sizes = {{720, 1600}, {1080, 2400}, {1440, 3200}};
+        TemplateMatcher matcher = new TemplateMatcher();
+        for (int[] size : sizes) {
+            GrayImage screen = syntheticScreen(size[0], size[1], 4);
+            GrayImage template = cut(screen, size[0] / 3, size[1] * 2 / 3, 96, 96, 0);
+            TemplateMatcher.Template prepared = TemplateMatcher.prepare(template);
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                matcher.find(screen, prepared, 0.9f);
+            }
+            long start = System.nanoTime();
+            TemplateMatcher.Match match = null;
+            for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                match = matcher.find(screen, prepared, 0.9f);
+            }
+            double avgMs = (System.nanoTime() - start) / 1e6 / MEASURE_ROUNDS;
+
+            assertNotNull(match);
+            System.out.printf("TemplateMatcher %dx%d, 模板96x96: 平均 %.2f ms%n", size[0], size[1], avgMs);
+        }
+    }
+
+    /**
+     * 生成有纹理的合成画面：低频随机背景 + 随机色块（模拟图标和文字）
+     */
+    private static GrayImage syntheticScreen(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int cell = 64;
+        int gridW = width / cell + 2;
+        int gridH = height / cell + 2;
+        int[] grid = new int[gridW * gridH];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = random.nextInt(160);
+        }
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int gy = y / cell;
+            int fy = y % cell;
+            for (int x = 0; x < width; x++) {
+                int gx = x / cell;
+                int fx = x % cell;
+                int top = grid[gy * gridW + gx] * (cell - fx) + grid[gy * gridW + gx + 1] * fx;
+                int bottom = grid[(gy + 1) * gridW + gx] * (cell - fx) + grid[(gy + 1) * gridW + gx + 1] * fx;
+                pixels[y * width + x] = (top * (cell - fy) + bottom * fy) / (cell * cell) + random.nextInt(8);
+            }
+        }
+        int blocks = width * height / 800;
+        for (int i = 0; i < blocks; i++) {
+            int bw = 4 + random.nextInt(40);
+            int bh = 4 + random.nextInt(40);
+            int bx = random.nextInt(width - bw);
+            int by = random.nextInt(height - bh);
+            int value = random.nextInt(256);
+            for (int y = by; y < by + bh; y++) {
+                for (int x = bx; x < bx + bw; x++) {
+                    pixels[y * width + x] = value;
+                }
+            }
+        }
+        return new GrayImage(pixels, width, height);
+    }
+
+    private static GrayImage cut(GrayImage image, int left, int top, int width, int height, int brightness) {
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out[y * width + x] = Math.min(255, image.get(left + x, top + y) + brightness);
+            }
+        }
+        return new GrayImage(out, width, height);
+    }
+}